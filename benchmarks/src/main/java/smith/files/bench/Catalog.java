@@ -0,0 +1,125 @@
+package smith.files.bench;
+
+import smith.files.InHousePart;
+import smith.files.Inventory;
+import smith.files.OutsourcedPart;
+import smith.files.Part;
+import smith.files.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The Catalog class fills the inventory with made up parts and products for the
+ * benchmarks. Names are built from word lists the way a real parts catalog reads
+ * ("Stainless Hex Bolt M8 x 40"), and words are picked with a skewed distribution so a
+ * few words are very common and most are rare, like in a real catalog.
+ */
+public final class Catalog {
+
+    private static final String[] MATERIALS = {
+            "Steel", "Stainless", "Aluminum", "Brass", "Nylon", "Carbon", "Copper", "Titanium",
+            "Zinc", "Rubber", "Plastic", "Chrome", "Bronze", "Ceramic", "Oak", "Walnut"};
+    private static final String[] TYPES = {
+            "Bolt", "Screw", "Nut", "Washer", "Bearing", "Gear", "Spring", "Bracket", "Hinge",
+            "Wheel", "Tire", "Chain", "Pedal", "Seat", "Handle", "Cable", "Valve", "Gasket",
+            "Pulley", "Sprocket", "Rivet", "Clamp", "Axle", "Spoke", "Frame", "Fork", "Crank"};
+    private static final String[] STYLES = {
+            "Hex", "Flat", "Round", "Socket", "Lock", "Ball", "Roller", "Spur", "Coil", "Angle",
+            "Butt", "Quick Release", "Heavy Duty", "Low Profile"};
+    private static final String[] PRODUCTS = {
+            "Bike", "Scooter", "Tricycle", "Wagon", "Skateboard", "Cart", "Trailer", "Unicycle"};
+    private static final String[] LINES = {
+            "Mountain", "Road", "City", "Trail", "Kids", "Touring", "Racing", "Cargo", "Folding"};
+
+    /**
+     * Text looked for by the name search benchmarks. A common word, a rarer phrase, a
+     * size that needs the full check and text too short to have a trigram.
+     */
+    public static final String[] PART_QUERIES = {"Bolt", "Titanium Hex", "M8 x 40", "Nu"};
+    /**
+     * Text looked for by the product name search benchmarks.
+     */
+    public static final String[] PRODUCT_QUERIES = {"Bike", "Racing Scooter", "Model 7", "Ca"};
+
+    private Catalog() {
+    }
+
+    /**
+     * Method to empty the inventory and fill it with a new catalog. There is one
+     * product for every ten parts, and each product uses a few parts.
+     * @param partCount number of parts to make
+     * @param seed seed for the names and numbers
+     * @return the IDs of the parts made, in order
+     */
+    public static int[] fill(int partCount, long seed) {
+        Inventory.productInventory.clear();
+        Inventory.partInventory.clear();
+        SplittableRandom random = new SplittableRandom(seed);
+
+        int firstPart = Inventory.reservePartIDs(partCount);
+        List<Part> parts = new ArrayList<>(partCount);
+        int[] ids = new int[partCount];
+        for (int i = 0; i < partCount; i++) {
+            ids[i] = firstPart + i;
+            parts.add(part(ids[i], random));
+        }
+        Inventory.partInventory.addAll(parts);
+
+        int productCount = Math.max(1, partCount / 10);
+        int firstProduct = Inventory.reserveProductIDs(productCount);
+        List<Product> products = new ArrayList<>(productCount);
+        for (int i = 0; i < productCount; i++) {
+            Product product = product(firstProduct + i, random);
+            int uses = 2 + random.nextInt(6);
+            for (int u = 0; u < uses; u++) {
+                product.associatedParts.add(parts.get(random.nextInt(partCount)));
+            }
+            products.add(product);
+        }
+        Inventory.productInventory.addAll(products);
+        return ids;
+    }
+
+    /**
+     * Method to make one part with a realistic name.
+     * @param id id of the part
+     * @param random source of the name and numbers
+     * @return the part
+     */
+    public static Part part(int id, SplittableRandom random) {
+        String name = pick(MATERIALS, random) + " " + pick(STYLES, random) + " " + pick(TYPES, random)
+                + " M" + (2 + random.nextInt(23)) + " x " + (5 * (1 + random.nextInt(40)));
+        double price = (100 + random.nextInt(100_000)) / 100.0;
+        int min = random.nextInt(10);
+        int max = min + 10 + random.nextInt(1000);
+        int stock = min + random.nextInt(max - min + 1);
+        if (random.nextInt(3) == 0) {
+            return new OutsourcedPart(id, name, price, stock, min, max, "Supplier " + random.nextInt(500));
+        }
+        return new InHousePart(id, name, price, stock, min, max, random.nextInt(10_000));
+    }
+
+    /**
+     * Method to make one product with a realistic name and no parts.
+     * @param id id of the product
+     * @param random source of the name and numbers
+     * @return the product
+     */
+    public static Product product(int id, SplittableRandom random) {
+        String name = pick(LINES, random) + " " + pick(PRODUCTS, random) + " Model " + random.nextInt(1000);
+        double price = (1_000 + random.nextInt(500_000)) / 100.0;
+        int min = random.nextInt(5);
+        int max = min + 5 + random.nextInt(200);
+        int stock = min + random.nextInt(max - min + 1);
+        return new Product(id, name, price, stock, min, max);
+    }
+
+    // picks a word, favoring the start of the list. Squaring a uniform number gives
+    // the first words most of the picks, close to the skew of real catalogs.
+    private static String pick(String[] words, SplittableRandom random) {
+        double u = random.nextDouble();
+        return words[(int) (u * u * words.length)];
+    }
+}
@@ -0,0 +1,98 @@
+package smith.files.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import smith.files.Inventory;
+import smith.files.Part;
+import smith.files.Product;
+
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for changes to the Inventory: new IDs, a part added while the oldest one is
+ * deleted, and saving a product with many associated parts. The catalog size stays the
+ * same for the whole run, so each size shows how much the indexes cost as it grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class ChurnBenchmark {
+
+    /**
+     * number of parts in the catalog, with one product for every ten parts
+     */
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    /**
+     * number of parts associated with the saved product
+     */
+    @Param({"10", "1000"})
+    public int associated;
+
+    private final Inventory inventory = new Inventory();
+    private final ArrayDeque<Part> oldest = new ArrayDeque<>();
+    private final SplittableRandom random = new SplittableRandom(11);
+    private Part[] parts;
+
+    /**
+     * Method to build the catalog once for each size.
+     */
+    @Setup(Level.Trial)
+    public void fill() {
+        Catalog.fill(size, 42);
+        oldest.clear();
+        oldest.addAll(Inventory.partInventory);
+        parts = Inventory.partInventory.toArray(new Part[0]);
+    }
+
+    /**
+     * @return a new part ID, the way the add screens get one
+     */
+    @Benchmark
+    public int autoGenID() {
+        return Inventory.nextPartID();
+    }
+
+    /**
+     * Adds a new part and deletes the oldest one, so the catalog keeps its size.
+     * @return true if the delete went through
+     */
+    @Benchmark
+    public boolean addDeletePart() {
+        Part part = Catalog.part(Inventory.nextPartID(), random);
+        inventory.AddPart(part);
+        oldest.addLast(part);
+        return inventory.DeletePart(oldest.removeFirst());
+    }
+
+    /**
+     * Saves a new product with many associated parts, the way the add product screen
+     * does, then deletes it again.
+     * @return true if the delete went through
+     */
+    @Benchmark
+    public boolean saveProduct() {
+        Product product = Catalog.product(Inventory.nextProductID(), random);
+        for (int i = 0; i < associated; i++) {
+            product.AddAssociatedParts(parts[random.nextInt(parts.length)]);
+        }
+        inventory.AddProduct(product);
+        return inventory.DeleteProduct(product);
+    }
+}
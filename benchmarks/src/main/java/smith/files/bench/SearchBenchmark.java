@@ -0,0 +1,91 @@
+package smith.files.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import smith.files.Inventory;
+import smith.files.Part;
+import smith.files.Product;
+
+import javafx.collections.ObservableList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the Inventory searches. Each search is measured as throughput and as
+ * sampled time, so the report has ops/sec and the 99th and 99.9th percentile latency.
+ * Run with "-prof gc" to see the allocation rate of each search.
+ *
+ * Every ID searched for is in the inventory, since a miss opens an Alert and the
+ * benchmarks run without the FX toolkit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class SearchBenchmark {
+
+    /**
+     * number of parts in the catalog, with one product for every ten parts
+     */
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    /**
+     * which of the queries in Catalog to search for
+     */
+    @Param({"0", "1", "2", "3"})
+    public int query;
+
+    private int[] ids;
+    private int[] lookups;
+    private int next;
+
+    /**
+     * Method to build the catalog once for each size, and a shuffled list of IDs to look up.
+     */
+    @Setup(Level.Trial)
+    public void fill() {
+        ids = Catalog.fill(size, 42);
+        SplittableRandom random = new SplittableRandom(7);
+        lookups = new int[1 << 16];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = ids[random.nextInt(ids.length)];
+        }
+    }
+
+    /**
+     * @return the part with the next ID
+     */
+    @Benchmark
+    public Part searchByPartID() {
+        return Inventory.searchByPartID(lookups[next++ & (lookups.length - 1)]);
+    }
+
+    /**
+     * @return the parts with a name containing the query
+     */
+    @Benchmark
+    public ObservableList<Part> searchByPartName() {
+        return Inventory.searchByPartName(Catalog.PART_QUERIES[query]);
+    }
+
+    /**
+     * @return the products with a name containing the query
+     */
+    @Benchmark
+    public ObservableList<Product> searchByProductName() {
+        return Inventory.searchByProductName(Catalog.PRODUCT_QUERIES[query]);
+    }
+}
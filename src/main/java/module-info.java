@@ -1,6 +1,7 @@
 module smith.firstscreen {
     requires javafx.controls;
     requires javafx.fxml;
+    requires jdk.httpserver;
 
 
     opens smith.files to javafx.fxml;
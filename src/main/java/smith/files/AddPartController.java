@@ -3,16 +3,9 @@ package smith.files;
 //imports needed to run the add-part screen
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.stage.Stage;
 import java.io.IOException;
-import java.util.Objects;
 import java.util.Optional;
-import static smith.files.Inventory.partInventory;
 
 /**
  * This class contains functions for the add-part screen.  This screen
@@ -20,7 +13,7 @@ import static smith.files.Inventory.partInventory;
  * a user can add a part to the part inventory.  The radio buttons at the top determine
  * whether it is an in-house part or an outsourced part.  Both are objects that inherit
  * the "Part" class.*/
-public class AddPartController {
+public class AddPartController implements Screens.Resettable {
 
     // labels, buttons and text fields that will be used
     @FXML private Label addPartMachineIDLabel;
@@ -69,11 +62,7 @@ public class AddPartController {
 
         // Loads the main screen if the user confirms the cancel
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("main-view.fxml")));
-            Scene mainScreenScene = new Scene(mainScreenParent);
-            Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-            mainStage.setScene(mainScreenScene);
-            mainStage.show();
+            Screens.open(event, Screens.MAIN);
         }
     }
 
@@ -89,24 +78,17 @@ public class AddPartController {
     @FXML
     public void onSaveButtonClick(ActionEvent event) throws IOException{
         try {
-            // Storing values from the text box to a variable.  The partID is auto
-            // generated by the AutoGenID method.
-            int partID = AutoGenID();
+            // Storing values from the text box to a variable.
             String partName = addPartNameText.getText();
             int inv = Integer.parseInt(addPartInvText.getText());
             int max = Integer.parseInt(addPartMaxText.getText());
             int min = Integer.parseInt(addPartMinText.getText());
             double price = Double.parseDouble(addPartPriceText.getText());
 
-            // max cannot be less than min, or else an error shows.
-            if (max < min){
-                Alert alert = new Alert(Alert.AlertType.ERROR, "Max cannot be less than Min.");
-                alert.showAndWait();
-                return;
-            }
-            // inv has to be in between  min and max.
-            if (inv < min || inv > max){
-                Alert alert = new Alert(Alert.AlertType.ERROR, "Inv must be in between Min and Max.");
+            // max cannot be less than min, and inv has to be in between min and max.
+            Optional<String> problem = InventoryEngine.checkFields(inv, min, max);
+            if (problem.isPresent()) {
+                Alert alert = new Alert(Alert.AlertType.ERROR, problem.get());
                 alert.showAndWait();
                 return;
             }
@@ -116,23 +98,22 @@ public class AddPartController {
             alert.setContentText("Are you sure you want to Save?");
             Optional<ButtonType> result = alert.showAndWait();
             if (result.isPresent() && result.get() == ButtonType.OK) {
+                // The partID is auto generated by the AutoGenID method once the save
+                // is confirmed, so a cancelled save does not use up an ID.
+                int partID = AutoGenID();
                 // If the InHouseButton is selected, save it as an InHousePart
                 if (addPartInHouseButton.isSelected()) {
                     int machineID = Integer.parseInt(addPartMachineIDText.getText());
                     InHousePart savePart = new InHousePart(partID, partName, price, inv, min, max, machineID);
-                    partInventory.add(savePart);
+                    InventoryEngine.undoStack().addPart(savePart);
                 // If the OutsourcedButton is selected, save it as an OutsourcedPart.
                 } else if (addPartOutsourcedButton.isSelected()) {
                     String company = addPartMachineIDText.getText();
                     OutsourcedPart savePart = new OutsourcedPart(partID, partName, price, inv, min, max, company);
-                    partInventory.add(savePart);
+                    InventoryEngine.undoStack().addPart(savePart);
                 }
                 // Load the main screen.
-                Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("main-view.fxml")));
-                Scene mainScreenScene = new Scene(mainScreenParent);
-                Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-                mainStage.setScene(mainScreenScene);
-                mainStage.show();
+                Screens.open(event, Screens.MAIN);
             }
         // If one of the fields has the wrong data type in it, display an error.
         }catch (NumberFormatException e) {
@@ -143,25 +124,29 @@ public class AddPartController {
         }
     }
     /**
-     * This method generates an ID for a new part. The method takes all the currently
-     * created parts and finds the highest ID.  The return is that highest number + 1.
-     * If there are no parts in the partInventory, then the method returns 1.
-     * @return 1 if partInventory is empty, or the highestID + 1
+     * This method generates an ID for a new part. The ID comes from the part ID sequence
+     * kept by the Inventory, which is always higher than any part ID in use.
+     * @return the new part ID
      * */
     @FXML
     public int AutoGenID(){
-        // checks if the partInventory is empty. If so, return 1
-        if(partInventory.isEmpty()) {return 1;}
-        else {
-            // checks for the highest ID from the partInventory
-            int highestID = 1;
-            for (Part p : partInventory) {
-                if(p.getId() > highestID)
-                {highestID = p.getId();}
-            }
-            // returns the highest ID plus 1 so that it is a new unique ID.
-            return highestID + 1;
-        }
+        return Inventory.nextPartID();
+    }
+
+    /**
+     * Clears the text boxes and moves the radio dial back to "In-House" so the screen
+     * is empty each time it is opened.
+     */
+    @Override
+    public void reset() {
+        addPartNameText.clear();
+        addPartInvText.clear();
+        addPartPriceText.clear();
+        addPartMaxText.clear();
+        addPartMinText.clear();
+        addPartMachineIDText.clear();
+        addPartInHouseButton.setSelected(true);
+        addPartMachineIDLabel.setText("Machine ID");
     }
 
     /**
@@ -5,15 +5,10 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.stage.Stage;
 import java.io.IOException;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
 import static smith.files.Inventory.*;
 
@@ -22,7 +17,7 @@ import static smith.files.Inventory.*;
  * a user can add a product to the product inventory. The Table on top is a display of
  * all the parts from the main screen.  The bottom parts are the parts that are being
  * associated with the current product being stored*/
-public class AddProductController {
+public class AddProductController implements Screens.Resettable {
 
     // labels, buttons and text fields that will be used
     @FXML private TableView<Part> allPartsTable;
@@ -45,6 +40,9 @@ public class AddProductController {
     // temporary list of parts that will be stored to the product when saved.
     ObservableList<Part> tempPartList = FXCollections.observableArrayList();
 
+    // every part, fetched a page at a time as the table scrolls
+    private final PagedList<Part> partRows = PagedList.parts();
+
     /**
      * This method cancels the "add product" function. When pressed, an alert will pop up
      * asking if the user is sure they want to cancel. If the user says yes, they will
@@ -65,17 +63,14 @@ public class AddProductController {
             tempPartList.clear();
 
             // Loads the main screen if the user confirms the cancel
-            Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("main-view.fxml")));
-            Scene mainScreenScene = new Scene(mainScreenParent);
-            Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-            mainStage.setScene(mainScreenScene);
-            mainStage.show();
+            Screens.open(event, Screens.MAIN);
         }
     }
     /** This method searches the parts table. The search first looks for a common string
      * anywhere in the part name.  If found, it will display all parts matching the
      * string in the parts table.  If no string can be matched, it then searches by ID
-     * number.  This will only display 1 item if the ID matches exactly.  If nothing
+     * number.  This will only display 1 item if the ID matches exactly.  If the text is not
+     * an ID, parts with names a few typos away are displayed, closest first.  If nothing
      * matches, an error message will appear saying that no match can be found. If
      * the nothing is in the text box, all parts will be displayed.*/
     @FXML
@@ -95,10 +90,14 @@ public class AddProductController {
             }
             // display an alert if nothing matches.
             catch(NumberFormatException e) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setContentText("Part not found");
-                alert.showAndWait();
+                // not an ID either, so names a few typos away are shown, closest first
+                searchedParts.addAll(searchBySimilarPartName(searchString));
+                if (searchedParts.isEmpty()) {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.setTitle("Error");
+                    alert.setContentText("Part not found");
+                    alert.showAndWait();
+                }
             }
         }
         //displays all matching parts in the table.
@@ -168,9 +167,8 @@ public class AddProductController {
     @FXML
     private void onSaveClick(ActionEvent event) throws IOException{
         try {
-            //creates a new Product that will be saved. ID is auto generated
+            //creates a new Product that will be saved.
             Product saveProduct = new Product();
-            int productID = AutoGenID();
             //getting the data from the text boxes
             String productName = addProductNameText.getText();
             int productStock = Integer.parseInt(addProductInvText.getText());
@@ -179,22 +177,16 @@ public class AddProductController {
             int productMax = Integer.parseInt(addProductMaxText.getText());
 
             // saving data into the product
-            saveProduct.setId(productID);
             saveProduct.setName(productName);
             saveProduct.setStock(productStock);
             saveProduct.setPrice(productPrice);
             saveProduct.setMax(productMax);
             saveProduct.setMin(productMin);
 
-            // max cannot be more than min
-            if (productMax < productMin) {
-                Alert alert = new Alert(Alert.AlertType.ERROR, "Max cannot be less than Min.");
-                alert.showAndWait();
-                return;
-            }
-            //Inventory must be in between min and max
-            if (productStock < productMin || productStock > productMax) {
-                Alert alert = new Alert(Alert.AlertType.ERROR, "Inv must be in between Min and Max.");
+            // max cannot be less than min, and inv has to be in between min and max.
+            Optional<String> problem = InventoryEngine.checkFields(productStock, productMin, productMax);
+            if (problem.isPresent()) {
+                Alert alert = new Alert(Alert.AlertType.ERROR, problem.get());
                 alert.showAndWait();
                 return;
             }
@@ -208,16 +200,14 @@ public class AddProductController {
             alert.setContentText("Are you sure you want to Save?");
             Optional<ButtonType> result = alert.showAndWait();
             if (result.isPresent() && result.get() == ButtonType.OK) {
-                //saves the product and clears the temporary parts list.
-                productInventory.add(saveProduct);
+                //ID is auto generated once the save is confirmed. Then saves the product
+                // and clears the temporary parts list.
+                saveProduct.setId(AutoGenID());
+                undoStack().addProduct(saveProduct);
                 tempPartList.clear();
 
                 //loads the main screen
-                Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("main-view.fxml")));
-                Scene mainScreenScene = new Scene(mainScreenParent);
-                Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-                mainStage.setScene(mainScreenScene);
-                mainStage.show();
+                Screens.open(event, Screens.MAIN);
             }
         }
 
@@ -230,23 +220,26 @@ public class AddProductController {
         }
     }
 
-    /** This method generates an ID for a new Product. The method takes all the currently
-     * created products and finds the highest ID.  The return is that highest number + 1.
-     * If there are no products in the partInventory, then the method returns 1.
-     * @return 1 if partInventory is empty, or the highestID + 1. */
+    /** This method generates an ID for a new Product. The ID comes from the product ID
+     * sequence kept by the Inventory, which is always higher than any product ID in use.
+     * @return the new product ID. */
     public int AutoGenID(){
-        // checks if the product inventory is empty. If so, return 1
-        if(productInventory.isEmpty()) {return 1;}
-        else {
-            int highestID = 1;
-            // checks for the highest id from the products inventory
-            for (Product p : productInventory) {
-                if(p.getId() > highestID)
-                {highestID = p.getId();}
-            }
-            // returns the highest ID +1.
-            return highestID + 1;
-        }
+        return Inventory.nextProductID();
+    }
+
+    /** Clears the text boxes, the search and the associated parts so the screen is
+     * empty each time it is opened. */
+    @Override
+    public void reset() {
+        addProductNameText.clear();
+        addProductInvText.clear();
+        addProductPriceText.clear();
+        addProductMaxText.clear();
+        addProductMinText.clear();
+        addProductSearchText.clear();
+        tempPartList.clear();
+        allPartsTable.setItems(partRows);
+        allPartsTable.getSelectionModel().clearSelection();
     }
 
     /** This initializes both the all parts table and the associated parts table.
@@ -254,7 +247,11 @@ public class AddProductController {
    @FXML
     private void initialize(){
        //places items in all parts table
-       allPartsTable.setItems(partInventory);
+       partRows.bind(allPartsTable, Map.of(
+               allPartsID, ColumnStore.Field.ID,
+               allPartsName, ColumnStore.Field.NAME,
+               allPartsInv, ColumnStore.Field.STOCK,
+               allPartsCost, ColumnStore.Field.PRICE));
 
        // initializes the columns
        allPartsID.setCellValueFactory(new PropertyValueFactory<>("id"));
@@ -270,6 +267,9 @@ public class AddProductController {
        associatedName.setCellValueFactory(new PropertyValueFactory<>("Name"));
        associatedInv.setCellValueFactory(new PropertyValueFactory<>("stock"));
        associatedCost.setCellValueFactory(new PropertyValueFactory<>("price"));
+
+       // suggests part names as a search is typed
+       SearchSuggestions.attach(addProductSearchText, InventoryEngine::suggestPartNames, this::onClickSearch);
     }
 
 }
@@ -0,0 +1,265 @@
+package smith.files;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The BuildableCalculator class works out how many of each product can be built from the
+ * parts in stock, and which part runs out first (the bottleneck). A product that lists a
+ * part twice needs two of it for each unit.
+ *
+ * computeAll works out every product at once. The stock of every part is copied first, so
+ * all products are worked out against the same stock, and the products are then split
+ * between the fork/join threads. After that the calculator listens to the inventory and
+ * only works out again the products a change touches: the products using a part whose
+ * stock changed, found through the where used index, or a product whose parts changed.
+ *
+ * Like the inventory lists, the calculator is used from the FX thread. Only computeAll
+ * uses other threads, and it waits for them before it returns.
+ */
+public class BuildableCalculator implements InventoryObserver, AutoCloseable {
+
+    // products handled by one fork/join task
+    private static final int CHUNK = 1024;
+
+    // row of each product ID, and the product ID, units and bottleneck part ID in each row
+    private IntIntMap rowOfID = new IntIntMap();
+    private int[] ids = new int[64];
+    private int[] units = new int[64];
+    private int[] bottlenecks = new int[64];
+    private int rows;
+
+    /**
+     * Method to make a calculator, work out every product and keep it up to date.
+     * @return the calculator, which should be closed when it is no longer needed
+     */
+    public static BuildableCalculator open() {
+        BuildableCalculator calculator = new BuildableCalculator();
+        calculator.computeAll();
+        InventoryEngine.addObserver(calculator);
+        return calculator;
+    }
+
+    /**
+     * Method to stop keeping the calculator up to date.
+     */
+    @Override
+    public void close() {
+        InventoryEngine.removeObserver(this);
+    }
+
+    /**
+     * Method to work out every product again, in parallel, from a copy of the stock of
+     * every part.
+     */
+    public void computeAll() {
+        // copies the stock, so every product sees the same stock
+        ColumnStore partColumns = InventoryEngine.partColumns();
+        IntIntMap stock = new IntIntMap();
+        for (int row = 0; row < partColumns.size(); row++) {
+            stock.put(partColumns.id(row), Math.max(0, partColumns.stock(row)));
+        }
+        Product[] products = InventoryEngine.productInventory.toArray(new Product[0]);
+        int count = products.length;
+        int[] newIDs = new int[Math.max(64, count)];
+        int[] newUnits = new int[newIDs.length];
+        int[] newBottlenecks = new int[newIDs.length];
+        IntUnaryOperator stockOf = id -> Math.max(0, stock.get(id));
+
+        ForkJoinPool.commonPool().invoke(new ComputeTask(products, 0, count, stockOf, newIDs, newUnits, newBottlenecks));
+
+        IntIntMap newRows = new IntIntMap();
+        for (int row = 0; row < count; row++) {
+            newRows.put(newIDs[row], row);
+        }
+        rowOfID = newRows;
+        ids = newIDs;
+        units = newUnits;
+        bottlenecks = newBottlenecks;
+        rows = count;
+    }
+
+    /**
+     * @param productID the ID of the product
+     * @return how many units of the product can be built, 0 if it has no parts or is unknown
+     */
+    public int buildable(int productID) {
+        int row = rowOfID.get(productID);
+        return row < 0 ? 0 : units[row];
+    }
+
+    /**
+     * @param productID the ID of the product
+     * @return the ID of the part that limits how many can be built, or -1 if the product
+     * has no parts or is unknown
+     */
+    public int bottleneck(int productID) {
+        int row = rowOfID.get(productID);
+        return row < 0 ? -1 : bottlenecks[row];
+    }
+
+    // works out one product against the stock given, packed as units in the high half and
+    // the bottleneck part ID in the low half
+    private static long compute(Product product, IntUnaryOperator stockOf) {
+        List<Part> parts = product.getAssociatedParts();
+        if (parts.isEmpty()) {
+            return pack(0, -1);
+        }
+        int[] partIDs = new int[parts.size()];
+        for (int i = 0; i < partIDs.length; i++) {
+            partIDs[i] = parts.get(i).getId();
+        }
+        // sorted, so each run of one ID is how many of that part a unit needs
+        Arrays.sort(partIDs);
+        int best = Integer.MAX_VALUE;
+        int bottleneck = -1;
+        int i = 0;
+        while (i < partIDs.length) {
+            int id = partIDs[i];
+            int need = 0;
+            while (i < partIDs.length && partIDs[i] == id) {
+                need++;
+                i++;
+            }
+            int canBuild = stockOf.applyAsInt(id) / need;
+            if (canBuild < best) {
+                best = canBuild;
+                bottleneck = id;
+            }
+        }
+        return pack(best, bottleneck);
+    }
+
+    private static long pack(int units, int bottleneck) {
+        return ((long) units << 32) | (bottleneck & 0xFFFFFFFFL);
+    }
+
+    // works out one product again against the stock in the inventory now
+    private void recompute(Product product) {
+        ColumnStore partColumns = InventoryEngine.partColumns();
+        long result = compute(product, id -> {
+            int row = partColumns.rowOf(id);
+            return row < 0 ? 0 : Math.max(0, partColumns.stock(row));
+        });
+        int row = rowOfID.get(product.getId());
+        if (row < 0) {
+            if (rows == ids.length) {
+                ids = Arrays.copyOf(ids, rows * 2);
+                units = Arrays.copyOf(units, rows * 2);
+                bottlenecks = Arrays.copyOf(bottlenecks, rows * 2);
+            }
+            row = rows++;
+            rowOfID.put(product.getId(), row);
+            ids[row] = product.getId();
+        }
+        units[row] = (int) (result >>> 32);
+        bottlenecks[row] = (int) result;
+    }
+
+    private void remove(int productID) {
+        int row = rowOfID.remove(productID);
+        if (row < 0) {
+            return;
+        }
+        int last = --rows;
+        if (row != last) {
+            ids[row] = ids[last];
+            units[row] = units[last];
+            bottlenecks[row] = bottlenecks[last];
+            rowOfID.put(ids[row], row);
+        }
+    }
+
+    // works out again every product using a part
+    private void recomputeUsers(int partID) {
+        for (Product product : InventoryEngine.whereUsed(partID)) {
+            recompute(product);
+        }
+    }
+
+    @Override
+    public void partAdded(Part part) {
+        recomputeUsers(part.getId());
+    }
+
+    @Override
+    public void partRemoved(Part part) {
+        recomputeUsers(part.getId());
+    }
+
+    @Override
+    public void partReplaced(Part oldPart, Part newPart) {
+        recomputeUsers(newPart.getId());
+    }
+
+    @Override
+    public void partUpdated(Part part) {
+        recomputeUsers(part.getId());
+    }
+
+    @Override
+    public void productAdded(Product product) {
+        recompute(product);
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        remove(product.getId());
+    }
+
+    @Override
+    public void productReplaced(Product oldProduct, Product newProduct) {
+        recompute(newProduct);
+    }
+
+    @Override
+    public void productUpdated(Product product) {
+        recompute(product);
+    }
+
+    /**
+     * Works out a range of products, splitting it in half until it is small enough.
+     */
+    private static final class ComputeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Product[] products;
+        private final int from;
+        private final int to;
+        private final IntUnaryOperator stockOf;
+        private final int[] ids;
+        private final int[] units;
+        private final int[] bottlenecks;
+
+        ComputeTask(Product[] products, int from, int to, IntUnaryOperator stockOf,
+                    int[] ids, int[] units, int[] bottlenecks) {
+            this.products = products;
+            this.from = from;
+            this.to = to;
+            this.stockOf = stockOf;
+            this.ids = ids;
+            this.units = units;
+            this.bottlenecks = bottlenecks;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                for (int row = from; row < to; row++) {
+                    long result = BuildableCalculator.compute(products[row], stockOf);
+                    ids[row] = products[row].getId();
+                    units[row] = (int) (result >>> 32);
+                    bottlenecks[row] = (int) result;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ComputeTask(products, from, middle, stockOf, ids, units, bottlenecks),
+                    new ComputeTask(products, middle, to, stockOf, ids, units, bottlenecks));
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package smith.files;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * The ColumnStore class keeps the number fields of every part (or every product) in
+ * columns instead of objects. Each field has its own column, an int column for id, stock,
+ * min and max and a double column for price, and row i of every column belongs to the
+ * same item. Names are stored once each in a dictionary and the name column holds the
+ * number of the name in the dictionary.
+ *
+ * Scanning a column reads memory in order, which is much faster than following a
+ * reference to each Part and reading its fields. Rows are kept packed together: when an
+ * item is removed the last row is moved into its place. The columns can be kept on the
+ * Java heap or off heap in direct buffers.
+ */
+public class ColumnStore {
+
+    /**
+     * The fields rows can be sorted by.
+     */
+    public enum Field {ID, NAME, PRICE, STOCK, MIN, MAX}
+
+    // number of columns of each type
+    private static final int INT_COLUMNS = 5;
+    private static final int ID = 0;
+    private static final int STOCK = 1;
+    private static final int MIN = 2;
+    private static final int MAX = 3;
+    private static final int NAME = 4;
+
+    private final boolean offHeap;
+    private final IntBuffer[] ints = new IntBuffer[INT_COLUMNS];
+    private DoubleBuffer price;
+    private Object[] items;
+    private int rows;
+    private int capacity;
+
+    // row of each ID
+    private final IntIntMap rowOfID = new IntIntMap();
+
+    // name dictionary: number of each name, the name of each number and how many rows use it
+    private final HashMap<String, Integer> nameNumbers = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] nameUses = new int[16];
+    private final List<Integer> freeNames = new ArrayList<>();
+
+    /**
+     * ColumnStore constructor
+     * @param offHeap true to keep the columns in direct buffers outside the Java heap
+     */
+    public ColumnStore(boolean offHeap) {
+        this.offHeap = offHeap;
+        grow(1024);
+    }
+
+    /**
+     * @return the number of rows in the store
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * @return true if the columns are kept off heap
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Method to add an item, or overwrite the row of an item with the same ID.
+     * @param item the part or product the row belongs to
+     * @param id id
+     * @param name name
+     * @param price price
+     * @param stock stock
+     * @param min min
+     * @param max max
+     */
+    public void put(Object item, int id, String name, double price, int stock, int min, int max) {
+        int row = rowOfID.get(id);
+        if (row < 0) {
+            if (rows == capacity) {
+                grow(capacity * 2);
+            }
+            row = rows++;
+            rowOfID.put(id, row);
+        } else {
+            releaseName(ints[NAME].get(row));
+        }
+        items[row] = item;
+        ints[ID].put(row, id);
+        ints[STOCK].put(row, stock);
+        ints[MIN].put(row, min);
+        ints[MAX].put(row, max);
+        ints[NAME].put(row, nameNumber(name));
+        this.price.put(row, price);
+    }
+
+    /**
+     * Method to remove the row of an item. The last row is moved into its place.
+     * @param id the ID of the item to remove
+     * @param item the item expected in the row, the row is kept if another item has taken it
+     */
+    public void remove(int id, Object item) {
+        int row = rowOfID.get(id);
+        if (row < 0 || items[row] != item) {
+            return;
+        }
+        releaseName(ints[NAME].get(row));
+        rowOfID.remove(id);
+        int last = --rows;
+        if (row != last) {
+            for (IntBuffer column : ints) {
+                column.put(row, column.get(last));
+            }
+            price.put(row, price.get(last));
+            items[row] = items[last];
+            rowOfID.put(ints[ID].get(row), row);
+        }
+        items[last] = null;
+    }
+
+    /**
+     * Method to remove every row.
+     */
+    public void clear() {
+        for (int row = 0; row < rows; row++) {
+            items[row] = null;
+        }
+        rows = 0;
+        rowOfID.clear();
+        nameNumbers.clear();
+        names.clear();
+        freeNames.clear();
+    }
+
+    /**
+     * Method to get the item stored in a row.
+     * @param row the row
+     * @return the part or product
+     */
+    public Object item(int row) {
+        return items[row];
+    }
+
+    /**
+     * @return the total stock of every row
+     */
+    public long totalStock() {
+        IntBuffer stock = ints[STOCK];
+        long total = 0;
+        for (int row = 0; row < rows; row++) {
+            total += stock.get(row);
+        }
+        return total;
+    }
+
+    /**
+     * @return the value of the stock on hand, the sum of price times stock of every row
+     */
+    public double stockValue() {
+        IntBuffer stock = ints[STOCK];
+        double total = 0;
+        for (int row = 0; row < rows; row++) {
+            total += price.get(row) * stock.get(row);
+        }
+        return total;
+    }
+
+    /**
+     * Method to find every row with stock below its min or above its max.
+     * @param idConsumer called with the ID of each row found
+     */
+    public void outOfRange(IntConsumer idConsumer) {
+        IntBuffer id = ints[ID];
+        IntBuffer stock = ints[STOCK];
+        IntBuffer min = ints[MIN];
+        IntBuffer max = ints[MAX];
+        for (int row = 0; row < rows; row++) {
+            int s = stock.get(row);
+            if (s < min.get(row) || s > max.get(row)) {
+                idConsumer.accept(id.get(row));
+            }
+        }
+    }
+
+    /**
+     * Method to find every row with a price between low and high, including both.
+     * @param low lowest price
+     * @param high highest price
+     * @param idConsumer called with the ID of each row found
+     */
+    public void priceBetween(double low, double high, IntConsumer idConsumer) {
+        IntBuffer id = ints[ID];
+        for (int row = 0; row < rows; row++) {
+            double p = price.get(row);
+            if (p >= low && p <= high) {
+                idConsumer.accept(id.get(row));
+            }
+        }
+    }
+
+    /**
+     * Method to find every row with exactly the given name. The name is looked up in the
+     * dictionary once, then the scan only compares numbers.
+     * @param name the name to find
+     * @param idConsumer called with the ID of each row found
+     */
+    public void named(String name, IntConsumer idConsumer) {
+        Integer number = nameNumbers.get(name);
+        if (number == null) {
+            return;
+        }
+        IntBuffer id = ints[ID];
+        IntBuffer nameColumn = ints[NAME];
+        for (int row = 0; row < rows; row++) {
+            if (nameColumn.get(row) == number) {
+                idConsumer.accept(id.get(row));
+            }
+        }
+    }
+
+    /**
+     * @param row the row
+     * @return the ID in the row
+     */
+    public int id(int row) {
+        return ints[ID].get(row);
+    }
+
+    /**
+     * @param row the row
+     * @return the name in the row
+     */
+    public String name(int row) {
+        int number = ints[NAME].get(row);
+        return number < 0 ? null : names.get(number);
+    }
+
+    /**
+     * @param row the row
+     * @return the price in the row
+     */
+    public double price(int row) {
+        return price.get(row);
+    }
+
+    /**
+     * @param row the row
+     * @return the stock in the row
+     */
+    public int stock(int row) {
+        return ints[STOCK].get(row);
+    }
+
+    /**
+     * @param row the row
+     * @return the min in the row
+     */
+    public int min(int row) {
+        return ints[MIN].get(row);
+    }
+
+    /**
+     * @param row the row
+     * @return the max in the row
+     */
+    public int max(int row) {
+        return ints[MAX].get(row);
+    }
+
+    /**
+     * Method to sort the rows by a field. Each row gets an int key, the field itself or
+     * its rank among the distinct prices or names, and the key and row are packed in one
+     * long so the sort is a plain sort of longs with no objects. Rows with the same key
+     * stay in row order.
+     * @param field the field to sort by
+     * @return every row, from the lowest value of the field to the highest
+     */
+    public int[] rowsSortedBy(Field field) {
+        int[] key = keys(field);
+        long[] packed = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            packed[row] = ((long) key[row] << 32) | row;
+        }
+        Arrays.sort(packed);
+        int[] sorted = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            sorted[i] = (int) packed[i];
+        }
+        return sorted;
+    }
+
+    /**
+     * Method to sort the IDs by a field, the same way as rowsSortedBy but with IDs of the
+     * same key in ID order, which is the order compare keeps. IDs do not move when rows
+     * are removed, so a list of them can be kept sorted as rows change.
+     * @param field the field to sort by
+     * @return every ID, from the lowest value of the field to the highest
+     */
+    public int[] idsSortedBy(Field field) {
+        int[] key = keys(field);
+        IntBuffer id = ints[ID];
+        long[] packed = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            // flipping the sign bit keeps negative IDs below positive ones in the low half
+            packed[row] = ((long) key[row] << 32) | ((id.get(row) ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+        int[] sorted = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            sorted[i] = (int) packed[i] ^ Integer.MIN_VALUE;
+        }
+        return sorted;
+    }
+
+    /**
+     * Method to compare two rows by a field, then by ID.
+     * @param field the field to compare
+     * @param a first row
+     * @param b second row
+     * @return below 0 if a comes first, above 0 if b comes first, 0 for the same row
+     */
+    public int compare(Field field, int a, int b) {
+        int c = switch (field) {
+            case ID -> 0;
+            case STOCK -> Integer.compare(stock(a), stock(b));
+            case MIN -> Integer.compare(min(a), min(b));
+            case MAX -> Integer.compare(max(a), max(b));
+            case PRICE -> Double.compare(price(a), price(b));
+            case NAME -> {
+                String nameA = name(a);
+                String nameB = name(b);
+                if (nameA == null || nameB == null) {
+                    yield nameA == null ? (nameB == null ? 0 : -1) : 1;
+                }
+                yield nameA.compareTo(nameB);
+            }
+        };
+        return c != 0 ? c : Integer.compare(id(a), id(b));
+    }
+
+    // the sort key of every row, the field itself or its rank among the distinct values
+    private int[] keys(Field field) {
+        int[] key = new int[rows];
+        switch (field) {
+            case ID -> ints[ID].get(0, key);
+            case STOCK -> ints[STOCK].get(0, key);
+            case MIN -> ints[MIN].get(0, key);
+            case MAX -> ints[MAX].get(0, key);
+            case PRICE -> {
+                double[] prices = new double[rows];
+                price.get(0, prices);
+                double[] distinct = prices.clone();
+                Arrays.sort(distinct);
+                int count = 0;
+                for (int i = 0; i < distinct.length; i++) {
+                    if (i == 0 || Double.compare(distinct[i], distinct[count - 1]) != 0) {
+                        distinct[count++] = distinct[i];
+                    }
+                }
+                for (int row = 0; row < rows; row++) {
+                    key[row] = Arrays.binarySearch(distinct, 0, count, prices[row]);
+                }
+            }
+            case NAME -> {
+                // ranks the dictionary once, then each row looks up the rank of its name number
+                String[] sortedNames = nameNumbers.keySet().toArray(new String[0]);
+                Arrays.sort(sortedNames);
+                int[] rankOfNumber = new int[names.size()];
+                for (int rank = 0; rank < sortedNames.length; rank++) {
+                    rankOfNumber[nameNumbers.get(sortedNames[rank])] = rank;
+                }
+                IntBuffer nameColumn = ints[NAME];
+                for (int row = 0; row < rows; row++) {
+                    int number = nameColumn.get(row);
+                    key[row] = number < 0 ? -1 : rankOfNumber[number];
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @param id the ID to find
+     * @return the row holding the ID, or -1
+     */
+    public int rowOf(int id) {
+        return rowOfID.get(id);
+    }
+
+    // gives a name its number in the dictionary, -1 for a null name
+    private int nameNumber(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer number = nameNumbers.get(name);
+        if (number == null) {
+            if (freeNames.isEmpty()) {
+                number = names.size();
+                names.add(name);
+                if (number == nameUses.length) {
+                    int[] bigger = new int[nameUses.length * 2];
+                    System.arraycopy(nameUses, 0, bigger, 0, nameUses.length);
+                    nameUses = bigger;
+                }
+            } else {
+                number = freeNames.remove(freeNames.size() - 1);
+                names.set(number, name);
+            }
+            nameNumbers.put(name, number);
+        }
+        nameUses[number]++;
+        return number;
+    }
+
+    // drops a name from the dictionary once no row uses it
+    private void releaseName(int number) {
+        if (number >= 0 && --nameUses[number] == 0) {
+            nameNumbers.remove(names.get(number));
+            names.set(number, null);
+            freeNames.add(number);
+        }
+    }
+
+    // makes every column bigger, copying the rows already stored
+    private void grow(int newCapacity) {
+        for (int c = 0; c < INT_COLUMNS; c++) {
+            IntBuffer bigger = offHeap
+                    ? ByteBuffer.allocateDirect(newCapacity * 4).order(ByteOrder.nativeOrder()).asIntBuffer()
+                    : IntBuffer.allocate(newCapacity);
+            if (ints[c] != null) {
+                bigger.put(0, ints[c], 0, rows);
+            }
+            ints[c] = bigger;
+        }
+        DoubleBuffer biggerPrice = offHeap
+                ? ByteBuffer.allocateDirect(newCapacity * 8).order(ByteOrder.nativeOrder()).asDoubleBuffer()
+                : DoubleBuffer.allocate(newCapacity);
+        if (price != null) {
+            biggerPrice.put(0, price, 0, rows);
+        }
+        price = biggerPrice;
+        Object[] biggerItems = new Object[newCapacity];
+        if (items != null) {
+            System.arraycopy(items, 0, biggerItems, 0, rows);
+        }
+        items = biggerItems;
+        capacity = newCapacity;
+    }
+}
@@ -0,0 +1,946 @@
+package smith.files;
+
+import javafx.application.Platform;
+import smith.files.InventoryHistory.PartState;
+import smith.files.InventoryHistory.ProductState;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * The ConcurrentInventory class lets scanners, imports and sync jobs change the inventory
+ * from their own threads while the screens keep running. It holds its own copy of every
+ * part and product by ID, as PartState and ProductState records that cannot be changed,
+ * so a reader never sees a part while a screen is halfway through changing it.
+ *
+ * Finding by ID and taking snapshots never take a lock. Finding by ID reads a concurrent
+ * map. Every write, from a screen or from another thread, is also linked onto the end of
+ * a log with compare and set, and takes the next version number as it does. A full list is a snapshot at one
+ * version: the last snapshot made, with the writes logged after it put into an IdTree.
+ * The tree shares everything but the changed paths with the last snapshot, so a new
+ * snapshot costs O(log n) for each write since the last one, not a copy of every item.
+ * Writers lock the stripe that covers the ID range of the item, so writers working on
+ * different ranges do not wait on each other, and each add, update and delete happens at
+ * one point in time.
+ *
+ * Changes are not made to the inventory lists straight away. The FX thread reads the log
+ * in batches and puts new parts and products built from the latest version of each ID in
+ * the lists, so the tables only change on the FX thread and a busy writer never holds up
+ * drawing the screen. A change made on a screen is already in the lists, so when the
+ * latest version of an ID came from a screen the older versions are not copied over it.
+ *
+ * While it is open, parts and products added on the screens are checked against it, so a
+ * screen cannot add an ID that was added here but not yet copied to the lists.
+ *
+ * Deleting a part only if no product uses it, deleting a product only if it has no parts,
+ * and adding a part to a product are checked against the latest versions here, under one
+ * lock they share, so a part cannot be added to a product while it is being deleted.
+ * Products and part deletes from the screens are logged under the same lock. A product
+ * saved on a screen with a part that another thread deleted in the meantime is logged
+ * without the part, and copied back to the lists that way.
+ *
+ * When a part is copied to the lists, the products in the lists that use the old part
+ * object are copied with the new one, so no product keeps pointing at a part that is no
+ * longer in the lists.
+ *
+ * Each table also keeps a trigram index of the folded names, and the products keep a
+ * where used index, changed with every write. Searches and finding the products that use
+ * a part look at those instead of every item, and take only a read lock that writers
+ * hold while they change the indexes.
+ */
+public class ConcurrentInventory implements AutoCloseable {
+
+    // number of writer locks, and the size of the ID range covered by each one
+    private static final int STRIPES = 64;
+    private static final int RANGE_SHIFT = 10;
+    // fewest writes logged after the last snapshot before the FX thread makes a new one
+    private static final int MIN_TRIM = 1024;
+
+    /**
+     * Every item at one version of the inventory.
+     * @param version the version, which goes up by one with each change
+     * @param items the items in order of ID, which cannot be changed
+     * @param <T> the type of item
+     */
+    public record Snapshot<T>(long version, List<T> items) {
+    }
+
+    private final Executor fxExecutor;
+    // the indexes are changed by the tables while they hold their index locks
+    private final Names<PartState> partNames = new Names<>(PartState::id, PartState::name);
+    private final Names<ProductState> productNames = new Names<>(ProductState::id, ProductState::name);
+    private final WhereUsedIndex whereUsed = new WhereUsedIndex();
+    private final Table<PartState> parts;
+    private final Table<ProductState> products;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    // held while a part or product is checked for uses and deleted, and while parts are
+    // added to or removed from a product
+    private final ReentrantLock uses = new ReentrantLock();
+    // true while logged changes are copied, so they are not logged again as screen changes
+    private boolean applying;
+
+    // logs changes made on the screens
+    private final InventoryObserver screenChanges = new InventoryObserver() {
+        @Override
+        public void partAdded(Part part) {
+            if (!applying) {parts.putFromScreen(part.getId(), InventoryHistory.stateOf(part));}
+        }
+
+        @Override
+        public void partRemoved(Part part) {
+            if (!applying) {
+                uses.lock();
+                try {
+                    parts.putFromScreen(part.getId(), null);
+                } finally {
+                    uses.unlock();
+                }
+            }
+        }
+
+        @Override
+        public void partReplaced(Part oldPart, Part newPart) {
+            partAdded(newPart);
+        }
+
+        @Override
+        public void partUpdated(Part part) {
+            partAdded(part);
+        }
+
+        @Override
+        public void productAdded(Product product) {
+            if (!applying) {putProductFromScreen(InventoryHistory.stateOf(product));}
+        }
+
+        @Override
+        public void productRemoved(Product product) {
+            if (!applying) {products.putFromScreen(product.getId(), null);}
+        }
+
+        @Override
+        public void productReplaced(Product oldProduct, Product newProduct) {
+            productAdded(newProduct);
+        }
+
+        @Override
+        public void productUpdated(Product product) {
+            productAdded(product);
+        }
+    };
+
+    /**
+     * Method to start the concurrent mode with changes copied on the FX thread. Must be
+     * called on the FX thread, or before the application is launched.
+     * @return the concurrent inventory
+     */
+    public static ConcurrentInventory open() {
+        return new ConcurrentInventory(Platform::runLater);
+    }
+
+    /**
+     * ConcurrentInventory constructor. Copies the parts and products already in the
+     * inventory, so it must be called on the thread that owns the inventory lists.
+     * @param fxExecutor runs the copying of changes on the thread that owns the lists
+     */
+    public ConcurrentInventory(Executor fxExecutor) {
+        this.fxExecutor = fxExecutor;
+        Map<Integer, PartState> partStates = new HashMap<>();
+        for (Part p : InventoryEngine.partInventory) {
+            partStates.put(p.getId(), InventoryHistory.stateOf(p));
+        }
+        Map<Integer, ProductState> productStates = new HashMap<>();
+        for (Product p : InventoryEngine.productInventory) {
+            productStates.put(p.getId(), InventoryHistory.stateOf(p));
+        }
+        this.parts = new Table<>(partStates, PartState::id,
+                p -> InventoryEngine.checkFields(p.stock(), p.min(), p.max()),
+                (old, part) -> partNames.put(old, part));
+        this.products = new Table<>(productStates, ProductState::id,
+                p -> InventoryEngine.checkFields(p.stock(), p.min(), p.max()),
+                (old, product) -> {
+                    productNames.put(old, product);
+                    indexUses(old, product);
+                });
+        InventoryEngine.addObserver(screenChanges);
+        InventoryEngine.setClaims(
+                part -> parts.claim(part.getId(), () -> InventoryHistory.stateOf(part)),
+                product -> products.claim(product.getId(), () -> InventoryHistory.stateOf(product)));
+    }
+
+    /**
+     * Method to stop the concurrent mode. Changes not yet copied are dropped.
+     */
+    @Override
+    public void close() {
+        InventoryEngine.setClaims(null, null);
+        InventoryEngine.removeObserver(screenChanges);
+    }
+
+    /**
+     * @return the number of changes made so far, to parts and products together
+     */
+    public long version() {
+        return parts.last().version + products.last().version;
+    }
+
+    /**
+     * Method to find a part by ID without taking a lock.
+     * @param partID the ID to find
+     * @return the part, or an empty Optional if there is none
+     */
+    public Optional<PartState> findPart(int partID) {
+        return Optional.ofNullable(parts.items.get(partID));
+    }
+
+    /**
+     * Method to find a product by ID without taking a lock. The array of part IDs is
+     * shared and must not be changed.
+     * @param productID the ID to find
+     * @return the product, or an empty Optional if there is none
+     */
+    public Optional<ProductState> findProduct(int productID) {
+        return Optional.ofNullable(products.items.get(productID));
+    }
+
+    /**
+     * @return every part at the latest version
+     */
+    public Snapshot<PartState> partSnapshot() {
+        return parts.snapshot();
+    }
+
+    /**
+     * @return every product at the latest version
+     */
+    public Snapshot<ProductState> productSnapshot() {
+        return products.snapshot();
+    }
+
+    /**
+     * Method to add a part. Refused if the fields are not valid or the ID is in use.
+     * @param part the part to add
+     * @return the result of the add
+     */
+    public InventoryEngine.Result<PartState> addPart(PartState part) {
+        Optional<String> problem = InventoryEngine.checkFields(part.stock(), part.min(), part.max());
+        if (problem.isPresent()) {
+            return InventoryEngine.Result.failed(problem.get());
+        }
+        // new IDs from the screens are kept above this one before it can reach the list
+        InventoryEngine.observePartID(part.id());
+        if (!parts.add(part)) {
+            return InventoryEngine.Result.failed("Part ID " + part.id() + " is already in use.");
+        }
+        scheduleDrain();
+        return InventoryEngine.Result.ok(part);
+    }
+
+    /**
+     * Method to put a part in place of the part with the same ID.
+     * @param part the new version of the part
+     * @return the result of the update
+     */
+    public InventoryEngine.Result<PartState> updatePart(PartState part) {
+        return updatePart(part.id(), old -> part);
+    }
+
+    /**
+     * Method to update a part from its current version. The change function runs while
+     * the stripe of the ID is locked, so no other writer can change the part in between.
+     * @param partID the ID of the part to update
+     * @param change makes the new version from the current one, with the same ID
+     * @return the result of the update
+     */
+    public InventoryEngine.Result<PartState> updatePart(int partID, UnaryOperator<PartState> change) {
+        InventoryEngine.Result<PartState> result = parts.update(partID, change, "Part not found");
+        if (result.isOk()) {
+            scheduleDrain();
+        }
+        return result;
+    }
+
+    /**
+     * Method to delete the part with the given ID.
+     * @param partID the ID of the part to delete
+     * @return the part that was deleted, or an empty Optional if there was none
+     */
+    public Optional<PartState> deletePart(int partID) {
+        Optional<PartState> old = parts.delete(partID);
+        if (old.isPresent()) {
+            scheduleDrain();
+        }
+        return old;
+    }
+
+    /**
+     * Method to add a product. Refused if the fields are not valid or the ID is in use.
+     * @param product the product to add
+     * @return the result of the add
+     */
+    public InventoryEngine.Result<ProductState> addProduct(ProductState product) {
+        Optional<String> problem = InventoryEngine.checkFields(product.stock(), product.min(), product.max());
+        if (problem.isPresent()) {
+            return InventoryEngine.Result.failed(problem.get());
+        }
+        InventoryEngine.observeProductID(product.id());
+        ProductState copy = copyOf(product);
+        if (!products.add(copy)) {
+            return InventoryEngine.Result.failed("Product ID " + product.id() + " is already in use.");
+        }
+        scheduleDrain();
+        return InventoryEngine.Result.ok(copy);
+    }
+
+    /**
+     * Method to put a product in place of the product with the same ID.
+     * @param product the new version of the product
+     * @return the result of the update
+     */
+    public InventoryEngine.Result<ProductState> updateProduct(ProductState product) {
+        ProductState copy = copyOf(product);
+        return updateProduct(product.id(), old -> copy);
+    }
+
+    /**
+     * Method to update a product from its current version while its stripe is locked.
+     * @param productID the ID of the product to update
+     * @param change makes the new version from the current one, with the same ID
+     * @return the result of the update
+     */
+    public InventoryEngine.Result<ProductState> updateProduct(int productID, UnaryOperator<ProductState> change) {
+        InventoryEngine.Result<ProductState> result = products.update(productID, change, "Product not found");
+        if (result.isOk()) {
+            scheduleDrain();
+        }
+        return result;
+    }
+
+    /**
+     * Method to delete the product with the given ID.
+     * @param productID the ID of the product to delete
+     * @return the product that was deleted, or an empty Optional if there was none
+     */
+    public Optional<ProductState> deleteProduct(int productID) {
+        Optional<ProductState> old = products.delete(productID);
+        if (old.isPresent()) {
+            scheduleDrain();
+        }
+        return old;
+    }
+
+    /**
+     * Method to delete a part only if no product lists it in its associated parts.
+     * @param partID the ID of the part to delete
+     * @return the part that was deleted, or the reason it was not
+     */
+    public InventoryEngine.Result<PartState> deleteUnusedPart(int partID) {
+        uses.lock();
+        try {
+            if (findPart(partID).isEmpty()) {
+                return InventoryEngine.Result.failed("Part not found");
+            }
+            int usedBy = products.query(() -> whereUsed.productCount(partID));
+            if (usedBy > 0) {
+                return InventoryEngine.Result.failed(
+                        "This part is used by " + usedBy + " product(s) and cannot be deleted.");
+            }
+            return deletePart(partID).map(InventoryEngine.Result::ok)
+                    .orElseGet(() -> InventoryEngine.Result.failed("Part not found"));
+        } finally {
+            uses.unlock();
+        }
+    }
+
+    /**
+     * Method to delete a product only if it has no associated parts.
+     * @param productID the ID of the product to delete
+     * @return the product that was deleted, or the reason it was not
+     */
+    public InventoryEngine.Result<ProductState> deleteProductWithoutParts(int productID) {
+        uses.lock();
+        try {
+            Optional<ProductState> product = findProduct(productID);
+            if (product.isEmpty()) {
+                return InventoryEngine.Result.failed("Product not found");
+            }
+            if (product.get().partIDs().length > 0) {
+                return InventoryEngine.Result.failed("Product cannot be deleted if it has associated parts");
+            }
+            return deleteProduct(productID).map(InventoryEngine.Result::ok)
+                    .orElseGet(() -> InventoryEngine.Result.failed("Product not found"));
+        } finally {
+            uses.unlock();
+        }
+    }
+
+    /**
+     * Method to add a part to the associated parts of a product.
+     * @param productID the ID of the product
+     * @param partID the ID of the part
+     * @return the new version of the product, or the reason it was not changed
+     */
+    public InventoryEngine.Result<ProductState> associate(int productID, int partID) {
+        uses.lock();
+        try {
+            if (findPart(partID).isEmpty()) {
+                return InventoryEngine.Result.failed("Part not found");
+            }
+            return updateProduct(productID, old -> {
+                int[] partIDs = Arrays.copyOf(old.partIDs(), old.partIDs().length + 1);
+                partIDs[partIDs.length - 1] = partID;
+                return withParts(old, partIDs);
+            });
+        } finally {
+            uses.unlock();
+        }
+    }
+
+    /**
+     * Method to take one use of a part out of the associated parts of a product.
+     * @param productID the ID of the product
+     * @param partID the ID of the part
+     * @return the new version of the product, or the reason it was not changed
+     */
+    public InventoryEngine.Result<ProductState> dissociate(int productID, int partID) {
+        uses.lock();
+        try {
+            Optional<ProductState> product = findProduct(productID);
+            if (product.isEmpty()) {
+                return InventoryEngine.Result.failed("Product not found");
+            }
+            if (Arrays.stream(product.get().partIDs()).noneMatch(id -> id == partID)) {
+                return InventoryEngine.Result.failed("Part is not associated with the product");
+            }
+            return updateProduct(productID, old -> {
+                int[] partIDs = old.partIDs();
+                for (int i = 0; i < partIDs.length; i++) {
+                    if (partIDs[i] == partID) {
+                        int[] fewer = new int[partIDs.length - 1];
+                        System.arraycopy(partIDs, 0, fewer, 0, i);
+                        System.arraycopy(partIDs, i + 1, fewer, i, fewer.length - i);
+                        return withParts(old, fewer);
+                    }
+                }
+                return old;
+            });
+        } finally {
+            uses.unlock();
+        }
+    }
+
+    /**
+     * Method to find every product that lists a part in its associated parts, in order
+     * of ID. The products are found in the where used index.
+     * @param partID the ID of the part
+     * @return the products using the part
+     */
+    public List<ProductState> productsUsing(int partID) {
+        return products.query(() -> {
+            int[] ids = whereUsed.productIDs(partID);
+            Arrays.sort(ids);
+            List<ProductState> using = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                using.add(products.items.get(id));
+            }
+            return using;
+        });
+    }
+
+    /**
+     * Method to find every part whose name contains the given text, ignoring case and
+     * accents, in order of ID. The text is folded once and looked up in the trigram index.
+     * @param partialName text to look for
+     * @return the matching parts
+     */
+    public List<PartState> searchParts(String partialName) {
+        return parts.query(() -> partNames.search(partialName));
+    }
+
+    /**
+     * Method to find every product whose name contains the given text, the same way as
+     * for parts.
+     * @param partialName text to look for
+     * @return the matching products
+     */
+    public List<ProductState> searchProducts(String partialName) {
+        return products.query(() -> productNames.search(partialName));
+    }
+
+    // moves the uses of a product from its old part IDs to its new ones
+    private void indexUses(ProductState old, ProductState product) {
+        if (old != null) {
+            for (int partID : old.partIDs()) {
+                whereUsed.remove(partID, old.id());
+            }
+        }
+        if (product != null) {
+            for (int partID : product.partIDs()) {
+                whereUsed.add(partID, product.id());
+            }
+        }
+    }
+
+    private static ProductState withParts(ProductState p, int[] partIDs) {
+        return new ProductState(p.id(), p.name(), p.price(), p.stock(), p.min(), p.max(), partIDs);
+    }
+
+    // the part IDs are copied, so the caller can go on using its array
+    private static ProductState copyOf(ProductState p) {
+        return new ProductState(p.id(), p.name(), p.price(), p.stock(), p.min(), p.max(), p.partIDs().clone());
+    }
+
+    // Logs a product saved on a screen, under the lock that guards uses of parts. A part
+    // deleted by another thread after the screen read it is left out, and that version
+    // is logged as a write to copy, so the lists get the product without it.
+    private void putProductFromScreen(ProductState product) {
+        uses.lock();
+        try {
+            int[] partIDs = product.partIDs();
+            int kept = 0;
+            for (int partID : partIDs) {
+                if (parts.items.containsKey(partID)) {
+                    kept++;
+                }
+            }
+            if (kept == partIDs.length) {
+                products.putFromScreen(product.id(), product);
+                return;
+            }
+            int[] existing = new int[kept];
+            kept = 0;
+            for (int partID : partIDs) {
+                if (parts.items.containsKey(partID)) {
+                    existing[kept++] = partID;
+                }
+            }
+            products.put(product.id(), withParts(product, existing));
+            scheduleDrain();
+        } finally {
+            uses.unlock();
+        }
+    }
+
+    // only one copy job is waiting at a time, it picks up every change logged before it runs
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            fxExecutor.execute(this::drain);
+        }
+    }
+
+    // copies the logged changes to the inventory lists as one batch. Runs on the FX thread.
+    private void drain() {
+        drainScheduled.set(false);
+        // a product is always written after the parts it uses, so once the end of the
+        // product log is taken, reading the part log to its end finds all of them
+        Node<ProductState> productsTo = products.last();
+        Map<Integer, Node<PartState>> partChanges = parts.takeChanges(parts.last());
+        Map<Integer, Node<ProductState>> productChanges = products.takeChanges(productsTo);
+        applying = true;
+        try {
+            InventoryEngine.batch(batch -> {
+                Map<Integer, Part> newParts = new HashMap<>();
+                for (Node<PartState> change : partChanges.values()) {
+                    if (change.state == null) {
+                        batch.deletePart(change.id);
+                    } else {
+                        Part part = newPart(change.state);
+                        newParts.put(part.getId(), part);
+                        batch.updatePart(part);
+                    }
+                }
+                for (Node<ProductState> change : productChanges.values()) {
+                    if (change.state == null) {
+                        batch.deleteProduct(change.id);
+                    } else {
+                        batch.updateProduct(newProduct(change.state, newParts));
+                    }
+                }
+                // products left in the lists still hold the old part objects
+                for (Part part : newParts.values()) {
+                    for (Product user : InventoryEngine.whereUsed(part.getId())) {
+                        // not when the batch already changes the product
+                        if (batch.findProduct(user.getId()).orElse(null) == user) {
+                            batch.updateProduct(rebound(user, newParts));
+                        }
+                    }
+                }
+            });
+        } finally {
+            applying = false;
+        }
+        parts.trim();
+        products.trim();
+    }
+
+    private static Part newPart(PartState s) {
+        if (s.inHouse()) {
+            return new InHousePart(s.id(), s.name(), s.price(), s.stock(), s.min(), s.max(), s.machineID());
+        }
+        return new OutsourcedPart(s.id(), s.name(), s.price(), s.stock(), s.min(), s.max(), s.companyName());
+    }
+
+    // links the product to the parts copied in the same batch, or else to the parts in the
+    // lists. A part deleted since is left out.
+    private static Product newProduct(ProductState s, Map<Integer, Part> newParts) {
+        Product product = new Product(s.id(), s.name(), s.price(), s.stock(), s.min(), s.max());
+        List<Part> associated = new ArrayList<>(s.partIDs().length);
+        for (int partID : s.partIDs()) {
+            Part part = newParts.get(partID);
+            if (part == null) {
+                part = InventoryEngine.findPart(partID).orElse(null);
+            }
+            if (part != null) {
+                associated.add(part);
+            }
+        }
+        product.getAssociatedParts().setAll(associated);
+        return product;
+    }
+
+    // a copy of a product in the lists, with the parts copied in the same batch put in
+    // place of the old ones
+    private static Product rebound(Product old, Map<Integer, Part> newParts) {
+        Product product = new Product(old.getId(), old.getName(), old.getPrice(), old.getStock(),
+                old.getMin(), old.getMax());
+        List<Part> associated = new ArrayList<>(old.getAssociatedParts().size());
+        for (Part part : old.getAssociatedParts()) {
+            if (part != null) {
+                associated.add(newParts.getOrDefault(part.getId(), part));
+            }
+        }
+        product.getAssociatedParts().setAll(associated);
+        return product;
+    }
+
+    /**
+     * An item with the search key of its name, folded once when the item is written.
+     * @param state the item
+     * @param key the folded name
+     * @param <S> the type of state
+     */
+    private record Named<S>(S state, String key) {
+    }
+
+    /**
+     * The trigram index over the folded names of one type of item. Only used while the
+     * index lock of its table is held.
+     * @param <S> the type of state
+     */
+    private static final class Names<S> {
+
+        private final ToIntFunction<S> idOf;
+        private final Function<S, String> nameOf;
+        private final NGramIndex<Named<S>> index;
+        // the indexed entry of each ID, to take it out again
+        private final IntObjectMap<Named<S>> byID = new IntObjectMap<>();
+
+        Names(ToIntFunction<S> idOf, Function<S, String> nameOf) {
+            this.idOf = idOf;
+            this.nameOf = nameOf;
+            this.index = new NGramIndex<>(named -> idOf.applyAsInt(named.state()), Named::key);
+        }
+
+        // indexes the new version of an item in place of the old one, or takes it out.
+        // Adding an entry with the ID of one already indexed takes the old one out.
+        void put(S old, S item) {
+            if (item == null) {
+                Named<S> named = old == null ? null : byID.remove(idOf.applyAsInt(old));
+                if (named != null) {
+                    index.remove(named, named.key());
+                }
+                return;
+            }
+            Named<S> named = new Named<>(item, SearchKeys.fold(nameOf.apply(item)));
+            byID.put(idOf.applyAsInt(item), named);
+            index.add(named, named.key());
+        }
+
+        // the items whose folded name contains the folded text, in order of ID
+        List<S> search(String partialName) {
+            List<Named<S>> found = new ArrayList<>();
+            index.search(SearchKeys.fold(partialName), found);
+            List<S> items = new ArrayList<>(found.size());
+            for (Named<S> named : found) {
+                items.add(named.state());
+            }
+            items.sort(Comparator.comparingInt(idOf));
+            return items;
+        }
+    }
+
+    /**
+     * One write in the log. The state is null for a delete.
+     * @param <S> the type of state
+     */
+    private static final class Node<S> {
+        final int id;
+        final S state;
+        final boolean fromScreen;
+        // set before the node is linked on, and read after next is read
+        long version;
+        final AtomicReference<Node<S>> next = new AtomicReference<>();
+
+        Node(int id, S state, boolean fromScreen) {
+            this.id = id;
+            this.state = state;
+            this.fromScreen = fromScreen;
+        }
+    }
+
+    /**
+     * The last snapshot made and the log node it was made at.
+     * @param node the last write in the snapshot
+     * @param byID the items of the snapshot by ID
+     * @param snapshot the snapshot
+     * @param <S> the type of state
+     */
+    private record Cached<S>(Node<S> node, IdTree<S> byID, Snapshot<S> snapshot) {
+    }
+
+    /**
+     * The items of one type, with the writer locks and the log of writes.
+     * @param <S> the type of state
+     */
+    private static final class Table<S> {
+
+        private final ToIntFunction<S> idOf;
+        private final Function<S, Optional<String>> check;
+        // told the old and new version of each write, to keep the indexes up to date
+        private final BiConsumer<S, S> indexes;
+        private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+        private final ConcurrentHashMap<Integer, S> items;
+        private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+        // the end of the log, which may be one node behind while a write is linked on
+        private final AtomicReference<Node<S>> tail;
+        private final AtomicReference<Cached<S>> cached;
+        // the last write copied to the lists. Only used on the FX thread. Nothing else
+        // points into the log before it and the cached snapshot, so older writes are freed.
+        private Node<S> drained;
+
+        Table(Map<Integer, S> start, ToIntFunction<S> idOf, Function<S, Optional<String>> check,
+              BiConsumer<S, S> indexes) {
+            this.idOf = idOf;
+            this.check = check;
+            this.indexes = indexes;
+            this.items = new ConcurrentHashMap<>(start);
+            for (S item : start.values()) {
+                indexes.accept(null, item);
+            }
+            for (int i = 0; i < STRIPES; i++) {
+                locks[i] = new ReentrantLock();
+            }
+            Node<S> first = new Node<>(0, null, true);
+            IdTree<S> byID = IdTree.of(start);
+            tail = new AtomicReference<>(first);
+            cached = new AtomicReference<>(new Cached<>(first, byID, new Snapshot<>(0, byID.items())));
+            drained = first;
+        }
+
+        private ReentrantLock lockFor(int id) {
+            return locks[(id >>> RANGE_SHIFT) & (STRIPES - 1)];
+        }
+
+        boolean add(S item) {
+            int id = idOf.applyAsInt(item);
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                if (items.containsKey(id)) {
+                    return false;
+                }
+                write(id, item, false);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        InventoryEngine.Result<S> update(int id, UnaryOperator<S> change, String notFound) {
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                S old = items.get(id);
+                if (old == null) {
+                    return InventoryEngine.Result.failed(notFound);
+                }
+                S item = change.apply(old);
+                if (item == null || idOf.applyAsInt(item) != id) {
+                    return InventoryEngine.Result.failed("The ID of an item cannot be changed.");
+                }
+                Optional<String> problem = check.apply(item);
+                if (problem.isPresent()) {
+                    return InventoryEngine.Result.failed(problem.get());
+                }
+                write(id, item, false);
+                return InventoryEngine.Result.ok(item);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Optional<S> delete(int id) {
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                S old = items.get(id);
+                if (old != null) {
+                    write(id, null, false);
+                }
+                return Optional.ofNullable(old);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // a write to copy to the lists, made without checking what was there before
+        void put(int id, S item) {
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                write(id, item, false);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // a change made on a screen is already in the inventory list, so it is logged
+        // only to be seen by readers and to stop older writes being copied over it
+        void putFromScreen(int id, S item) {
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                write(id, item, true);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // an ID about to be added on a screen is refused while a write from another
+        // thread holds it. Otherwise the item is logged before the add, so no other
+        // writer can take the ID in between.
+        boolean claim(int id, Supplier<S> item) {
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                if (items.containsKey(id)) {
+                    return false;
+                }
+                write(id, item.get(), true);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // called with the stripe locked, so the writes to one ID are logged in order
+        private void write(int id, S item, boolean fromScreen) {
+            Node<S> node = new Node<>(id, item, fromScreen);
+            while (true) {
+                Node<S> last = tail.get();
+                Node<S> after = last.next.get();
+                if (after != null) {
+                    // another writer linked a node but has not moved the tail yet
+                    tail.compareAndSet(last, after);
+                    continue;
+                }
+                node.version = last.version + 1;
+                if (last.next.compareAndSet(null, node)) {
+                    tail.compareAndSet(last, node);
+                    break;
+                }
+            }
+            // the map and the indexes change together, so a query sees both or neither
+            indexLock.writeLock().lock();
+            try {
+                S old = item == null ? items.remove(id) : items.put(id, item);
+                indexes.accept(old, item);
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+
+        // runs a query on the indexes while no write is changing them
+        <R> R query(Supplier<R> query) {
+            indexLock.readLock().lock();
+            try {
+                return query.get();
+            } finally {
+                indexLock.readLock().unlock();
+            }
+        }
+
+        // the true end of the log
+        Node<S> last() {
+            Node<S> last = tail.get();
+            Node<S> after;
+            while ((after = last.next.get()) != null) {
+                last = after;
+            }
+            return last;
+        }
+
+        // puts the writes logged after the last snapshot into its tree, which leaves the
+        // last snapshot as it was. No lock is taken: the log is read up to a node, and the
+        // snapshot holds exactly the writes up to that node.
+        Snapshot<S> snapshot() {
+            Cached<S> from = cached.get();
+            Node<S> node = from.node();
+            if (node.next.get() == null) {
+                return from.snapshot();
+            }
+            IdTree<S> byID = from.byID();
+            Node<S> after;
+            while ((after = node.next.get()) != null) {
+                node = after;
+                byID = node.state == null ? byID.remove(node.id) : byID.put(node.id, node.state);
+            }
+            Cached<S> made = new Cached<>(node, byID, new Snapshot<>(node.version, byID.items()));
+            // kept unless another reader has already kept a later one
+            Cached<S> current = from;
+            while (current.node().version < node.version && !cached.compareAndSet(current, made)) {
+                current = cached.get();
+            }
+            return made.snapshot();
+        }
+
+        // the latest write to each ID up to a node, leaving out IDs whose latest write came
+        // from a screen since those are in the lists already. Only used on the FX thread.
+        Map<Integer, Node<S>> takeChanges(Node<S> to) {
+            Map<Integer, Node<S>> latest = new HashMap<>();
+            Node<S> node = drained;
+            while (node != to) {
+                node = node.next.get();
+                latest.put(node.id, node);
+            }
+            drained = to;
+            latest.values().removeIf(n -> n.fromScreen);
+            return latest;
+        }
+
+        // makes a new snapshot once the writes since the last one are many, so the log
+        // between them can be freed even if no reader asks for a snapshot
+        void trim() {
+            Cached<S> from = cached.get();
+            if (last().version - from.node().version > Math.max(MIN_TRIM, from.byID().size())) {
+                snapshot();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package smith.files;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * The CostRollup class keeps the material cost of every product, which is the total
+ * price of its associated parts. The cost is stored when a product is added and worked
+ * out again only for the products a change touches: a product whose parts list changed,
+ * or the products using a part whose price changed. Reading a cost is a lookup.
+ *
+ * Parts are priced by ID, using the version of the part in the inventory, so a product
+ * still holding an older copy of a part that was modified is priced with the new price.
+ */
+public class CostRollup {
+
+    // finds the part in the inventory with an ID, or null
+    private final IntFunction<Part> partByID;
+
+    // row of each product ID, and the ID and cost in each row
+    private final IntIntMap rowOfID = new IntIntMap();
+    private int[] ids = new int[64];
+    private double[] costs = new double[64];
+    private int rows;
+
+    /**
+     * CostRollup constructor
+     * @param partByID finds the part in the inventory with an ID, or returns null
+     */
+    public CostRollup(IntFunction<Part> partByID) {
+        this.partByID = partByID;
+    }
+
+    /**
+     * Method to work out the cost of a product again and store it.
+     * @param product the product
+     */
+    public void recompute(Product product) {
+        double cost = 0;
+        for (Part part : product.getAssociatedParts()) {
+            Part current = partByID.apply(part.getId());
+            cost += current != null ? current.getPrice() : part.getPrice();
+        }
+        int row = rowOfID.get(product.getId());
+        if (row < 0) {
+            if (rows == ids.length) {
+                ids = Arrays.copyOf(ids, rows * 2);
+                costs = Arrays.copyOf(costs, rows * 2);
+            }
+            row = rows++;
+            rowOfID.put(product.getId(), row);
+            ids[row] = product.getId();
+        }
+        costs[row] = cost;
+    }
+
+    /**
+     * Method to forget the cost of a product. The last row is moved into its place.
+     * @param productID the ID of the product
+     */
+    public void remove(int productID) {
+        int row = rowOfID.remove(productID);
+        if (row < 0) {
+            return;
+        }
+        int last = --rows;
+        if (row != last) {
+            ids[row] = ids[last];
+            costs[row] = costs[last];
+            rowOfID.put(ids[row], row);
+        }
+    }
+
+    /**
+     * Method to forget every product.
+     */
+    public void clear() {
+        rowOfID.clear();
+        rows = 0;
+    }
+
+    /**
+     * @param productID the ID of the product
+     * @return the total price of the parts of the product, or 0 if it is not stored
+     */
+    public double cost(int productID) {
+        int row = rowOfID.get(productID);
+        return row < 0 ? 0 : costs[row];
+    }
+
+    /**
+     * @param product the product
+     * @return the price of the product less the cost of its parts
+     */
+    public double margin(Product product) {
+        return product.getPrice() - cost(product.getId());
+    }
+}
@@ -0,0 +1,406 @@
+package smith.files;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static smith.files.InventoryEngine.partInventory;
+import static smith.files.InventoryEngine.productInventory;
+
+/**
+ * The CsvImporter class loads parts and products from a CSV file into the Inventory. The
+ * file is read as a stream in chunks of lines. Each chunk is parsed and checked on a pool
+ * of worker threads, and the finished chunks are added to the inventory in file order,
+ * one batch per chunk. Only a few chunks are in memory at once, so the size of the file
+ * does not matter.
+ *
+ * Each line is one part or product:
+ * <pre>
+ * inhouse,id,name,price,stock,min,max,machineID
+ * outsourced,id,name,price,stock,min,max,companyName
+ * product,id,name,price,stock,min,max,partID;partID;...
+ * </pre>
+ * The id can be left blank to have one generated. Fields can be quoted with double quotes.
+ * A first line starting with "type" is taken as a header and skipped. Lines are checked
+ * with the same rules as the add part and add product screens: max cannot be less than
+ * min, and the inventory must be between min and max. Lines that fail are not imported
+ * and are listed in the report.
+ */
+public class CsvImporter {
+
+    /**
+     * A line that was not imported.
+     * @param line line number in the file, starting at 1
+     * @param text the text of the line
+     * @param reason why the line was not imported
+     */
+    public record Rejected(long line, String text, String reason) {}
+
+    /**
+     * The result of an import.
+     * @param partsImported number of parts added to the inventory
+     * @param productsImported number of products added to the inventory
+     * @param rejectedCount number of lines that were not imported
+     * @param rejected the lines that were not imported, up to the importer's limit
+     */
+    public record Report(long partsImported, long productsImported, long rejectedCount, List<Rejected> rejected) {}
+
+    // a part with the line it came from
+    private record ParsedPart(Part part, boolean needsID, long line, String text) {}
+
+    // a product with the IDs of its parts, which are looked up when it is added
+    private record ParsedProduct(Product product, boolean needsID, int[] partIDs, long line, String text) {}
+
+    // the parsed lines of one chunk
+    private static class Chunk {
+        final List<ParsedPart> parts = new ArrayList<>();
+        final List<ParsedProduct> products = new ArrayList<>();
+        final List<Rejected> rejected = new ArrayList<>();
+    }
+
+    private final int chunkSize;
+    private final int threads;
+    private final int maxRejected;
+    private final Executor publisher;
+
+    // progress of the current import
+    private long partsImported;
+    private long productsImported;
+    private long rejectedCount;
+    private List<Rejected> rejected;
+    private List<ParsedProduct> waitingProducts;
+
+    /**
+     * Constructor that imports on the calling thread with one worker per processor.
+     * Use this when calling from the JavaFX thread.
+     */
+    public CsvImporter() {
+        this(10_000, Runtime.getRuntime().availableProcessors(), 10_000, Runnable::run);
+    }
+
+    /**
+     * CsvImporter constructor
+     * @param chunkSize number of lines parsed together
+     * @param threads number of worker threads parsing chunks
+     * @param maxRejected most rejected lines kept in the report, the rest are only counted
+     * @param publisher runs the updates to the inventory. Use Runnable::run on the JavaFX
+     *                  thread, or Platform::runLater when importing from another thread.
+     */
+    public CsvImporter(int chunkSize, int threads, int maxRejected, Executor publisher) {
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+        this.maxRejected = maxRejected;
+        this.publisher = publisher;
+    }
+
+    /**
+     * Method to import a CSV file.
+     * @param file the file to read
+     * @return what was imported and what was rejected
+     * @throws IOException if the file cannot be read
+     */
+    public Report importFile(Path file) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(in);
+        }
+    }
+
+    /**
+     * Method to import CSV text.
+     * @param reader the text to read
+     * @return what was imported and what was rejected
+     * @throws IOException if the text cannot be read
+     */
+    public synchronized Report importFrom(Reader reader) throws IOException {
+        partsImported = 0;
+        productsImported = 0;
+        rejectedCount = 0;
+        rejected = new ArrayList<>();
+        waitingProducts = new ArrayList<>();
+
+        BufferedReader in = reader instanceof BufferedReader b ? b : new BufferedReader(reader, 1 << 16);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "csv-import");
+            t.setDaemon(true);
+            return t;
+        });
+        // chunks being parsed, oldest first. Never more than two per worker.
+        ArrayDeque<Future<Chunk>> parsing = new ArrayDeque<>();
+        try {
+            List<String> lines = new ArrayList<>(chunkSize);
+            long lineNumber = 0;
+            long chunkStart = 1;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && line.regionMatches(true, 0, "type", 0, 4)) {
+                    chunkStart = 2;
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    parsing.add(submit(pool, lines, chunkStart));
+                    lines = new ArrayList<>(chunkSize);
+                    chunkStart = lineNumber + 1;
+                    if (parsing.size() >= threads * 2) {
+                        publish(parsing.poll());
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                parsing.add(submit(pool, lines, chunkStart));
+            }
+            while (!parsing.isEmpty()) {
+                publish(parsing.poll());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // products that used parts from later in the file get one more try
+        List<ParsedProduct> waiting = waitingProducts;
+        waitingProducts = null;
+        runOnPublisher(() -> addProducts(waiting, true));
+        return new Report(partsImported, productsImported, rejectedCount, rejected);
+    }
+
+    private Future<Chunk> submit(ExecutorService pool, List<String> lines, long firstLine) {
+        return pool.submit(() -> parse(lines, firstLine));
+    }
+
+    // waits for a chunk to be parsed, then adds it to the inventory
+    private void publish(Future<Chunk> future) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed", e.getCause());
+        }
+        for (Rejected r : chunk.rejected) {
+            reject(r);
+        }
+        runOnPublisher(() -> {
+            addParts(chunk);
+            addProducts(chunk.products, false);
+        });
+    }
+
+    private void runOnPublisher(Runnable task) {
+        CompletableFuture.runAsync(task, publisher).join();
+    }
+
+    // gives new IDs to parts without one and adds the chunk's parts in one batch. Each ID
+    // is claimed last, since a ConcurrentInventory may be holding it for a change not yet
+    // in the list.
+    private void addParts(Chunk chunk) {
+        List<ParsedPart> kept = new ArrayList<>(chunk.parts.size());
+        List<Part> needingID = new ArrayList<>();
+        Set<Integer> batchIDs = new HashSet<>();
+        for (ParsedPart parsed : chunk.parts) {
+            Part part = parsed.part();
+            if (parsed.needsID()) {
+                needingID.add(part);
+            } else if (!batchIDs.add(part.getId())) {
+                reject(new Rejected(parsed.line(), parsed.text(), "Part ID " + part.getId() + " is already in use"));
+                continue;
+            }
+            kept.add(parsed);
+        }
+        if (!needingID.isEmpty()) {
+            int id = InventoryEngine.reservePartIDs(needingID.size());
+            for (Part part : needingID) {
+                part.setId(id++);
+            }
+        }
+        List<Part> batch = new ArrayList<>(kept.size());
+        for (ParsedPart parsed : kept) {
+            if (InventoryEngine.claimPartID(parsed.part())) {
+                batch.add(parsed.part());
+            } else {
+                reject(new Rejected(parsed.line(), parsed.text(), "Part ID " + parsed.part().getId() + " is already in use"));
+            }
+        }
+        partInventory.addAll(batch);
+        partsImported += batch.size();
+    }
+
+    // links each product to its parts and adds them in one batch. A product using a part
+    // that is not in the inventory yet waits for the end of the import, unless this is
+    // the last try.
+    private void addProducts(List<ParsedProduct> products, boolean lastTry) {
+        List<ParsedProduct> kept = new ArrayList<>(products.size());
+        List<Product> needingID = new ArrayList<>();
+        Set<Integer> batchIDs = new HashSet<>();
+        for (ParsedProduct parsed : products) {
+            Product product = parsed.product();
+            if (!parsed.needsID() && !batchIDs.add(product.getId())) {
+                reject(new Rejected(parsed.line(), parsed.text(), "Product ID " + product.getId() + " is already in use"));
+                continue;
+            }
+            int missing = missingPart(parsed.partIDs());
+            if (missing >= 0) {
+                if (lastTry) {
+                    reject(new Rejected(parsed.line(), parsed.text(), "Unknown part ID " + parsed.partIDs()[missing]));
+                } else {
+                    waitingProducts.add(parsed);
+                }
+                continue;
+            }
+            if (parsed.needsID()) {
+                needingID.add(product);
+            }
+            kept.add(parsed);
+        }
+        if (!needingID.isEmpty()) {
+            int id = InventoryEngine.reserveProductIDs(needingID.size());
+            for (Product product : needingID) {
+                product.setId(id++);
+            }
+        }
+        List<Product> batch = new ArrayList<>(kept.size());
+        for (ParsedProduct parsed : kept) {
+            Product product = parsed.product();
+            for (int partID : parsed.partIDs()) {
+                product.getAssociatedParts().add(InventoryEngine.findPart(partID).orElseThrow());
+            }
+            if (InventoryEngine.claimProductID(product)) {
+                batch.add(product);
+            } else {
+                reject(new Rejected(parsed.line(), parsed.text(), "Product ID " + product.getId() + " is already in use"));
+            }
+        }
+        productInventory.addAll(batch);
+        productsImported += batch.size();
+    }
+
+    // returns the position of a part ID that is not in the inventory, or -1 if all are there
+    private static int missingPart(int[] partIDs) {
+        for (int i = 0; i < partIDs.length; i++) {
+            if (InventoryEngine.findPart(partIDs[i]).isEmpty()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void reject(Rejected r) {
+        rejectedCount++;
+        if (rejected.size() < maxRejected) {
+            rejected.add(r);
+        }
+    }
+
+    // parses and checks a chunk of lines. Runs on a worker thread, so it only builds
+    // objects and never touches the inventory.
+    private static Chunk parse(List<String> lines, long firstLine) {
+        Chunk chunk = new Chunk();
+        List<String> fields = new ArrayList<>(8);
+        for (int i = 0; i < lines.size(); i++) {
+            String text = lines.get(i);
+            long line = firstLine + i;
+            if (text.isBlank()) {
+                continue;
+            }
+            try {
+                if (!split(text, fields)) {
+                    chunk.rejected.add(new Rejected(line, text, "A quoted field is not closed"));
+                    continue;
+                }
+                if (fields.size() != 8) {
+                    chunk.rejected.add(new Rejected(line, text, "Expected 8 fields but found " + fields.size()));
+                    continue;
+                }
+                String type = fields.get(0).trim().toLowerCase();
+                boolean needsID = fields.get(1).isBlank();
+                int id = needsID ? 0 : Integer.parseInt(fields.get(1).trim());
+                String name = fields.get(2);
+                double price = Double.parseDouble(fields.get(3).trim());
+                int stock = Integer.parseInt(fields.get(4).trim());
+                int min = Integer.parseInt(fields.get(5).trim());
+                int max = Integer.parseInt(fields.get(6).trim());
+                String extra = fields.get(7);
+
+                // same rules as the add part and add product screens
+                if (max < min) {
+                    chunk.rejected.add(new Rejected(line, text, "Max cannot be less than Min."));
+                    continue;
+                }
+                if (stock < min || stock > max) {
+                    chunk.rejected.add(new Rejected(line, text, "Inv must be in between Min and Max."));
+                    continue;
+                }
+
+                switch (type) {
+                    case "inhouse" -> {
+                        Part part = new InHousePart(id, name, price, stock, min, max, Integer.parseInt(extra.trim()));
+                        chunk.parts.add(new ParsedPart(part, needsID, line, text));
+                    }
+                    case "outsourced" -> {
+                        Part part = new OutsourcedPart(id, name, price, stock, min, max, extra);
+                        chunk.parts.add(new ParsedPart(part, needsID, line, text));
+                    }
+                    case "product" -> {
+                        String[] ids = extra.isBlank() ? new String[0] : extra.split(";");
+                        int[] partIDs = new int[ids.length];
+                        for (int j = 0; j < ids.length; j++) {
+                            partIDs[j] = Integer.parseInt(ids[j].trim());
+                        }
+                        Product product = new Product(id, name, price, stock, min, max);
+                        chunk.products.add(new ParsedProduct(product, needsID, partIDs, line, text));
+                    }
+                    default -> chunk.rejected.add(new Rejected(line, text, "Unknown type " + fields.get(0)));
+                }
+            } catch (NumberFormatException e) {
+                chunk.rejected.add(new Rejected(line, text,
+                        "Inv, Max, Min, Machine ID and part IDs must be integers. Price must be an integer or double."));
+            }
+        }
+        return chunk;
+    }
+
+    // splits a CSV line into fields, allowing quoted fields with "" for a quote. Returns
+    // false if a quote is opened and never closed.
+    private static boolean split(String text, List<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return !quoted;
+    }
+}
@@ -0,0 +1,55 @@
+package smith.files;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The IdSequence class hands out IDs for new parts or products. It holds the highest ID
+ * given out or seen so far in an atomic counter, so creating an ID takes the same time
+ * no matter how big the inventory is, and two screens or an import running at the same
+ * time never get the same ID.
+ */
+public class IdSequence {
+
+    // highest ID that is in use
+    private final AtomicInteger last = new AtomicInteger();
+
+    /**
+     * Method to get the next unused ID.
+     * @return a new unique ID
+     */
+    public int next() {
+        return last.incrementAndGet();
+    }
+
+    /**
+     * Method to reserve a block of IDs at once, used by bulk imports.
+     * @param count how many IDs to reserve
+     * @return the first ID of the block. The block runs from this ID to this ID + count - 1
+     */
+    public int reserve(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be at least 1");
+        }
+        return last.getAndAdd(count) + 1;
+    }
+
+    /**
+     * Method to tell the sequence an ID is in use. Items that already have an ID, like
+     * test data or loaded data, are observed when they are added so that new IDs are
+     * always higher.
+     * @param id the ID in use
+     */
+    public void observe(int id) {
+        int current = last.get();
+        while (id > current && !last.compareAndSet(current, id)) {
+            current = last.get();
+        }
+    }
+
+    /**
+     * @return the highest ID in use
+     */
+    public int current() {
+        return last.get();
+    }
+}
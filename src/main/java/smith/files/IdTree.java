@@ -0,0 +1,297 @@
+package smith.files;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * The IdTree class is a map from IDs to items in order of ID that is never changed once
+ * made. Putting or removing an ID gives a new tree that shares every node off the path to
+ * the ID with the old tree, so a change copies O(log n) nodes and anyone still reading
+ * the old tree keeps seeing it as it was. The concurrent inventory uses it for snapshots:
+ * a new snapshot is the last one with the writes since it put in, instead of a copy of
+ * every item.
+ *
+ * The tree is a treap. Each node has a priority worked out from its ID, every node has a
+ * higher priority than the nodes under it, and the IDs are in order from left to right.
+ * Since the priorities come from the IDs, the same IDs always make the same shape, and the
+ * tree is balanced on average whatever order the IDs come in. Each node also counts the
+ * nodes under it, so the item at any place in ID order is found in O(log n).
+ * @param <S> the type of item
+ */
+final class IdTree<S> {
+
+    private static final IdTree<?> EMPTY = new IdTree<>(null);
+
+    /**
+     * One node of the tree, never changed once made.
+     * @param <S> the type of item
+     */
+    private static final class Node<S> {
+        final int id;
+        final int priority;
+        final S item;
+        final Node<S> left;
+        final Node<S> right;
+        final int size;
+
+        Node(int id, int priority, S item, Node<S> left, Node<S> right) {
+            this.id = id;
+            this.priority = priority;
+            this.item = item;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+        }
+
+        Node<S> withLeft(Node<S> newLeft) {
+            return new Node<>(id, priority, item, newLeft, right);
+        }
+
+        Node<S> withRight(Node<S> newRight) {
+            return new Node<>(id, priority, item, left, newRight);
+        }
+    }
+
+    private final Node<S> root;
+
+    private IdTree(Node<S> root) {
+        this.root = root;
+    }
+
+    /**
+     * @param <S> the type of item
+     * @return a tree with no items
+     */
+    @SuppressWarnings("unchecked")
+    static <S> IdTree<S> empty() {
+        return (IdTree<S>) EMPTY;
+    }
+
+    /**
+     * Method to make a tree holding the items of a map.
+     * @param items the items by ID
+     * @param <S> the type of item
+     * @return the tree
+     */
+    static <S> IdTree<S> of(Map<Integer, S> items) {
+        IdTree<S> tree = empty();
+        for (Map.Entry<Integer, S> entry : new TreeMap<>(items).entrySet()) {
+            tree = tree.put(entry.getKey(), entry.getValue());
+        }
+        return tree;
+    }
+
+    /**
+     * @return the number of items
+     */
+    int size() {
+        return sizeOf(root);
+    }
+
+    /**
+     * Method to find an item by ID.
+     * @param id the ID to find
+     * @return the item, or null if there is none
+     */
+    S get(int id) {
+        Node<S> node = root;
+        while (node != null) {
+            if (id < node.id) {
+                node = node.left;
+            } else if (id > node.id) {
+                node = node.right;
+            } else {
+                return node.item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method to get a tree with an item put in, in place of any item with the same ID.
+     * @param id the ID of the item
+     * @param item the item
+     * @return the new tree. This tree is not changed.
+     */
+    IdTree<S> put(int id, S item) {
+        return new IdTree<>(put(root, id, priorityOf(id), item));
+    }
+
+    /**
+     * Method to get a tree without the item with an ID.
+     * @param id the ID of the item
+     * @return the new tree, or this tree if it has no item with the ID
+     */
+    IdTree<S> remove(int id) {
+        Node<S> newRoot = remove(root, id);
+        return newRoot == root ? this : new IdTree<>(newRoot);
+    }
+
+    /**
+     * @return the items in order of ID, as a list that cannot be changed. Getting the item
+     * at a place takes O(log n), and going through the list in order takes O(n).
+     */
+    List<S> items() {
+        return new Items<>(root);
+    }
+
+    private static int sizeOf(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // mixes the bits of the ID, so IDs next to each other get unrelated priorities
+    private static int priorityOf(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // true if a node with this ID and priority goes above the other node. Equal
+    // priorities are broken by ID, so the shape only depends on the IDs.
+    private static boolean above(int id, int priority, Node<?> other) {
+        return priority > other.priority || (priority == other.priority && id < other.id);
+    }
+
+    private static <S> Node<S> put(Node<S> node, int id, int priority, S item) {
+        if (node == null) {
+            return new Node<>(id, priority, item, null, null);
+        }
+        if (id == node.id) {
+            return new Node<>(id, priority, item, node.left, node.right);
+        }
+        if (above(id, priority, node)) {
+            // the ID cannot be under a node it goes above, so it is not in this subtree
+            Node<S> less = splitLess(node, id);
+            Node<S> greater = splitGreater(node, id);
+            return new Node<>(id, priority, item, less, greater);
+        }
+        if (id < node.id) {
+            return node.withLeft(put(node.left, id, priority, item));
+        }
+        return node.withRight(put(node.right, id, priority, item));
+    }
+
+    // the nodes of a subtree with IDs below an ID
+    private static <S> Node<S> splitLess(Node<S> node, int id) {
+        if (node == null) {
+            return null;
+        }
+        if (node.id < id) {
+            return node.withRight(splitLess(node.right, id));
+        }
+        return splitLess(node.left, id);
+    }
+
+    // the nodes of a subtree with IDs above an ID
+    private static <S> Node<S> splitGreater(Node<S> node, int id) {
+        if (node == null) {
+            return null;
+        }
+        if (node.id > id) {
+            return node.withLeft(splitGreater(node.left, id));
+        }
+        return splitGreater(node.right, id);
+    }
+
+    private static <S> Node<S> remove(Node<S> node, int id) {
+        if (node == null) {
+            return null;
+        }
+        if (id < node.id) {
+            Node<S> left = remove(node.left, id);
+            return left == node.left ? node : node.withLeft(left);
+        }
+        if (id > node.id) {
+            Node<S> right = remove(node.right, id);
+            return right == node.right ? node : node.withRight(right);
+        }
+        return merge(node.left, node.right);
+    }
+
+    // joins two subtrees where every ID on the left is below every ID on the right
+    private static <S> Node<S> merge(Node<S> left, Node<S> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (above(left.id, left.priority, right)) {
+            return left.withRight(merge(left.right, right));
+        }
+        return right.withLeft(merge(left, right.left));
+    }
+
+    /**
+     * The items of a tree in order of ID.
+     * @param <S> the type of item
+     */
+    private static final class Items<S> extends AbstractList<S> {
+        private final Node<S> root;
+
+        Items(Node<S> root) {
+            this.root = root;
+        }
+
+        @Override
+        public S get(int index) {
+            if (index < 0 || index >= sizeOf(root)) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            Node<S> node = root;
+            while (true) {
+                int leftSize = sizeOf(node.left);
+                if (index < leftSize) {
+                    node = node.left;
+                } else if (index == leftSize) {
+                    return node.item;
+                } else {
+                    index -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return sizeOf(root);
+        }
+
+        // walks the tree in order with a stack of the nodes still to visit
+        @Override
+        public Iterator<S> iterator() {
+            return new Iterator<>() {
+                private final ArrayDeque<Node<S>> path = new ArrayDeque<>();
+
+                {
+                    pushLeft(root);
+                }
+
+                private void pushLeft(Node<S> node) {
+                    for (; node != null; node = node.left) {
+                        path.push(node);
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return !path.isEmpty();
+                }
+
+                @Override
+                public S next() {
+                    if (path.isEmpty()) {
+                        throw new NoSuchElementException();
+                    }
+                    Node<S> node = path.pop();
+                    pushLeft(node.right);
+                    return node.item;
+                }
+            };
+        }
+    }
+}
@@ -38,5 +38,6 @@ public class InHousePart extends Part {
      */
     public void setMachineID(int machineID){
         this.machineID = machineID;
+        InventoryEngine.partUpdated(this);
     }
 }
@@ -0,0 +1,214 @@
+package smith.files;
+
+import java.util.Arrays;
+
+/**
+ * The IntIntMap class is a hash map from primitive ints to primitive ints. It works like
+ * IntObjectMap, but values are stored in an int array so nothing is boxed. Values cannot
+ * be negative, get returns -1 for a missing key.
+ */
+public class IntIntMap {
+
+    // keys and values are stored side by side in two arrays
+    private int[] keys;
+    // values are stored plus one, so 0 marks an empty slot
+    private int[] values;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    /**
+     * default constructor
+     */
+    public IntIntMap() {
+        this(16);
+    }
+
+    /**
+     * Constructor that sizes the table for the expected number of entries.
+     * @param expected number of entries expected
+     */
+    public IntIntMap(int expected) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Method to look up a value by key.
+     * @param key the key to find
+     * @return the value stored for the key, or -1 if there is none
+     */
+    public int get(int key) {
+        int slot = hash(key) & mask;
+        int value;
+        while ((value = values[slot]) != 0) {
+            if (keys[slot] == key) {
+                return value - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Method to check if a key is in the map.
+     * @param key the key to check
+     * @return true if the key has a value
+     */
+    public boolean containsKey(int key) {
+        return get(key) >= 0;
+    }
+
+    /**
+     * Method to store a value for a key.
+     * @param key the key
+     * @param value the value, cannot be negative
+     * @return the value that was replaced, or -1
+     */
+    public int put(int key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value cannot be negative");
+        }
+        int slot = hash(key) & mask;
+        int current;
+        while ((current = values[slot]) != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value + 1;
+                return current - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value + 1;
+        if (++size >= resizeAt) {
+            allocateAndCopy(values.length << 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Method to add to the value of a key. A missing key starts at 0. If the value
+     * reaches 0 the key is removed, which makes the map work as a counter.
+     * @param key the key
+     * @param delta amount to add
+     * @return the new value
+     */
+    public int add(int key, int delta) {
+        int current = get(key);
+        int updated = (current < 0 ? 0 : current) + delta;
+        if (updated == 0) {
+            remove(key);
+        } else {
+            put(key, updated);
+        }
+        return updated;
+    }
+
+    /**
+     * Method to remove a key from the map.
+     * @param key the key to remove
+     * @return the value that was removed, or -1
+     */
+    public int remove(int key) {
+        int slot = hash(key) & mask;
+        int current;
+        while ((current = values[slot]) != 0) {
+            if (keys[slot] == key) {
+                deleteSlot(slot);
+                return current - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Method to visit every entry in the map.
+     * @param visitor called with each key and value
+     */
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                visitor.visit(keys[i], values[i] - 1);
+            }
+        }
+    }
+
+    /**
+     * Receives the entries of the map from forEach.
+     */
+    public interface Visitor {
+        /**
+         * @param key the key
+         * @param value the value
+         */
+        void visit(int key, int value);
+    }
+
+    /**
+     * @return the number of entries in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to remove every entry from the map.
+     */
+    public void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    // removes the entry at a slot and shifts later entries of the same probe run back,
+    // so no tombstones are left behind.
+    private void deleteSlot(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != 0) {
+            int home = hash(keys[next]) & mask;
+            // an entry can move into the gap only if its home slot is not between the
+            // gap and its current slot.
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = 0;
+        size--;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity * 3 / 4;
+    }
+
+    private void allocateAndCopy(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // spreads sequential IDs across the table
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
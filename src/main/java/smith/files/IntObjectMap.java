@@ -0,0 +1,213 @@
+package smith.files;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The IntObjectMap class is a hash map keyed by primitive ints. It uses open addressing
+ * with linear probing, so looking up a key never boxes the key or allocates an entry.
+ * Null values are not allowed, an empty slot is marked by a null value.
+ * @param <V> the type of value stored in the map
+ */
+public class IntObjectMap<V> {
+
+    // keys and values are stored side by side in two arrays
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    /**
+     * default constructor
+     */
+    public IntObjectMap() {
+        this(16);
+    }
+
+    /**
+     * Constructor that sizes the table for the expected number of entries.
+     * @param expected number of entries expected
+     */
+    public IntObjectMap(int expected) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Method to look up a value by key.
+     * @param key the key to find
+     * @return the value stored for the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = hash(key) & mask;
+        Object value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                return (V) value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Method to check if a key is in the map.
+     * @param key the key to check
+     * @return true if the key has a value
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Method to store a value for a key.
+     * @param key the key
+     * @param value the value, cannot be null
+     * @return the value that was replaced, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+        int slot = hash(key) & mask;
+        Object current;
+        while ((current = values[slot]) != null) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return (V) current;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeAt) {
+            allocateAndCopy(values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Method to remove a key from the map.
+     * @param key the key to remove
+     * @return the value that was removed, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = hash(key) & mask;
+        Object current;
+        while ((current = values[slot]) != null) {
+            if (keys[slot] == key) {
+                deleteSlot(slot);
+                return (V) current;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Method to remove a key only if it still holds the given value. This is used when
+     * two objects share an ID for a moment, such as when a part is replaced.
+     * @param key the key to remove
+     * @param value the value expected for the key
+     * @return true if the key was removed
+     */
+    public boolean remove(int key, V value) {
+        int slot = hash(key) & mask;
+        Object current;
+        while ((current = values[slot]) != null) {
+            if (keys[slot] == key) {
+                if (current != value) {
+                    return false;
+                }
+                deleteSlot(slot);
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Method to visit every value in the map.
+     * @param visitor called with each value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> visitor) {
+        for (Object value : values) {
+            if (value != null) {
+                visitor.accept((V) value);
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to remove every entry from the map.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // removes the entry at a slot and shifts later entries of the same probe run back,
+    // so no tombstones are left behind.
+    private void deleteSlot(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            // an entry can move into the gap only if its home slot is not between the
+            // gap and its current slot.
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        size--;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity * 3 / 4;
+    }
+
+    private void allocateAndCopy(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // spreads sequential IDs across the table
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -4,34 +4,204 @@ package smith.files;
 import javafx.collections.ObservableList;
 import javafx.collections.FXCollections;
 import javafx.scene.control.Alert;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 /** The Inventory class keeps track of the products and parts. It places them in lists
- * and contains methods to add, remove, search and set individual parts*/
+ * and contains methods to add, remove, search and set individual parts. The parts,
+ * products and indexes are held by the InventoryEngine, and this class adapts it for
+ * the screens by showing an Alert when a search finds nothing.*/
 public class Inventory {
     /**
      * list for all parts created
      */
-    public static ObservableList<Part> partInventory = FXCollections.observableArrayList();
+    public static ObservableList<Part> partInventory = InventoryEngine.partInventory;
     /**
      * list for all products created
      */
-    public static ObservableList<Product> productInventory = FXCollections.observableArrayList();
+    public static ObservableList<Product> productInventory = InventoryEngine.productInventory;
 
     /**
-     * Method to add parts to inventory.
+     * Method to get the column store of parts, used to scan every part quickly.
+     * @return the part columns
+     */
+    public static ColumnStore partColumns() {
+        return InventoryEngine.partColumns();
+    }
+
+    /**
+     * Method to get the column store of products, used to scan every product quickly.
+     * @return the product columns
+     */
+    public static ColumnStore productColumns() {
+        return InventoryEngine.productColumns();
+    }
+
+    /**
+     * Method to get the parts and products that are below min or above max, worst first.
+     * @return the low stock tracker
+     */
+    public static LowStockTracker lowStock() {
+        return InventoryEngine.lowStock();
+    }
+
+    /**
+     * Method to get the undo stack the screens make their changes through.
+     * @return the undo stack
+     */
+    public static UndoStack undoStack() {
+        return InventoryEngine.undoStack();
+    }
+
+    /**
+     * Method to register an observer that is told about every change to the inventory.
+     * @param observer the observer to add
+     */
+    public static void addObserver(InventoryObserver observer) {
+        InventoryEngine.addObserver(observer);
+    }
+
+    /**
+     * Method to stop telling an observer about changes.
+     * @param observer the observer to remove
+     */
+    public static void removeObserver(InventoryObserver observer) {
+        InventoryEngine.removeObserver(observer);
+    }
+
+    /**
+     * Method to register a listener that is given a short diff after each change.
+     * @param listener the listener to add
+     */
+    public static void addDiffListener(Consumer<InventoryDiff> listener) {
+        InventoryEngine.addDiffListener(listener);
+    }
+
+    /**
+     * Method to stop giving diffs to a listener.
+     * @param listener the listener to remove
+     */
+    public static void removeDiffListener(Consumer<InventoryDiff> listener) {
+        InventoryEngine.removeDiffListener(listener);
+    }
+
+    /**
+     * Method to make many adds, deletes and updates as one change. The tables showing the
+     * inventory are laid out once for the whole batch instead of once per item.
+     * @param changes adds the changes to the batch
+     */
+    public static void batch(Consumer<InventoryBatch> changes) {
+        InventoryEngine.batch(changes);
+    }
+
+    /**
+     * Method to find the products that use a part.
+     * @param partID the ID of the part
+     * @return the products that list the part in their associated parts
+     */
+    public static List<Product> whereUsed(int partID) {
+        return InventoryEngine.whereUsed(partID);
+    }
+
+    /**
+     * Method to check if any product uses a part, used before a part is deleted.
+     * @param partID the ID of the part
+     * @return true if a product lists the part in its associated parts
+     */
+    public static boolean isPartUsed(int partID) {
+        return InventoryEngine.isPartUsed(partID);
+    }
+
+    /**
+     * Method to get the material cost of a product, the total price of its parts.
+     * @param productID the ID of the product
+     * @return the material cost
+     */
+    public static double materialCost(int productID) {
+        return InventoryEngine.materialCost(productID);
+    }
+
+    /**
+     * Method to get how many units of a product can be built from the parts in stock.
+     * @param productID the ID of the product
+     * @return the units that can be built
+     */
+    public static int buildable(int productID) {
+        return InventoryEngine.buildable(productID);
+    }
+
+    /**
+     * Method to get the margin of a product, its price less its material cost.
+     * @param product the product
+     * @return the margin
+     */
+    public static double margin(Product product) {
+        return InventoryEngine.margin(product);
+    }
+
+    /**
+     * Method to get an ID for a new part.
+     * @return an ID higher than any part ID in use
+     */
+    public static int nextPartID() {
+        return InventoryEngine.nextPartID();
+    }
+
+    /**
+     * Method to get an ID for a new product.
+     * @return an ID higher than any product ID in use
+     */
+    public static int nextProductID() {
+        return InventoryEngine.nextProductID();
+    }
+
+    /**
+     * Method to reserve a block of part IDs for a bulk import.
+     * @param count how many IDs to reserve
+     * @return the first ID of the block
+     */
+    public static int reservePartIDs(int count) {
+        return InventoryEngine.reservePartIDs(count);
+    }
+
+    /**
+     * Method to reserve a block of product IDs for a bulk import.
+     * @param count how many IDs to reserve
+     * @return the first ID of the block
+     */
+    public static int reserveProductIDs(int count) {
+        return InventoryEngine.reserveProductIDs(count);
+    }
+
+    /**
+     * Method to add parts to inventory. The part is checked the same way as on the
+     * screens, so an ID already in use, or waiting to be copied from another thread, is
+     * refused with an Alert.
      * @param part the part to add
      */
     public void AddPart (Part part){
-        partInventory.add(part);
+        InventoryEngine.Result<Part> result = InventoryEngine.addPart(part);
+        if (!result.isOk()) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setContentText(result.error());
+            alert.showAndWait();
+        }
     }
 
     /**
-     * Method to add products to inventory.
+     * Method to add products to inventory, checked the same way as parts.
      * @param product the product to add
      */
     public void AddProduct (Product product){
-
-        productInventory.add(product);
+        InventoryEngine.Result<Product> result = InventoryEngine.addProduct(product);
+        if (!result.isOk()) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setContentText(result.error());
+            alert.showAndWait();
+        }
     }
 
     /**
@@ -55,71 +225,125 @@ public class Inventory {
     }
 
     /**
-     * Method to search the Part Inventory by ID.
+     * Method to search the Part Inventory by ID. Looks up the ID index, so the
+     * search does not depend on the size of the inventory.
      * @param partID ID used to search the part Inventory
      * @return part with matching id, or return nothing if no match
      */
     public static Part searchByPartID(int partID){
-        for (Part p : partInventory) {
-            if (p.getId() == partID) {
-                return p;
-            }
+        Optional<Part> p = InventoryEngine.findPart(partID);
+        if (p.isEmpty()) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setContentText("Product not found");
+            alert.showAndWait();
         }
-        Alert alert = new Alert(Alert.AlertType.ERROR);
-        alert.setTitle("Error");
-        alert.setContentText("Product not found");
-        alert.showAndWait();
-        return null;
+        return p.orElse(null);
     }
 
     /**
-     *Method to search the Part Inventory by Name.
+     *Method to search the Part Inventory by Name. Looks up the trigram name index
+     * instead of checking every part.
      * @param partialName used to search Part List
      * @return list of parts with matching string.
      */
     public static ObservableList<Part> searchByPartName(String partialName){
         ObservableList<Part> namedParts = FXCollections.observableArrayList();
-        for(Part p: partInventory){
-            if (p.getName().contains(partialName)){
-                namedParts.add(p);
-            }
-        }
+        InventoryEngine.searchParts(partialName, namedParts);
         return namedParts;
     }
 
     /**
-     * Method to search the Product Inventory by ID.
+     * Method to search the Product Inventory by ID. Looks up the ID index, so the
+     * search does not depend on the size of the inventory.
      * @param productID used to search product list
      * @return product with matching id, or return nothing
      */
     public static Product searchByProductID(int productID){
-        for (Product p : productInventory) {
-            if (p.getId() == productID) {
-                return p;
-            }
+        Optional<Product> p = InventoryEngine.findProduct(productID);
+        if (p.isEmpty()) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setContentText("Product not found");
+            alert.showAndWait();
         }
-        Alert alert = new Alert(Alert.AlertType.ERROR);
-        alert.setTitle("Error");
-        alert.setContentText("Product not found");
-        alert.showAndWait();
-        return null;
+        return p.orElse(null);
     }
 
     /**
-     * Method to search the Product Inventory by Name.
+     * Method to search the Product Inventory by Name. Looks up the trigram name index
+     * instead of checking every product.
      * @param partialName used to search product list
      * @return list of products with matching strings
      */
     public static ObservableList<Product> searchByProductName(String partialName){
         ObservableList<Product> namedProducts =  FXCollections.observableArrayList();
-        for(Product p: productInventory){
-            if (p.getName().contains(partialName)){
-                namedProducts.add(p);
-            }
-        }
+        InventoryEngine.searchProducts(partialName, namedProducts);
         return namedProducts;
     }
 
+    /**
+     * Method to search the Part Inventory for names a few typos away from the text, such
+     * as "blot" for "bolt". Walks the name prefix tree instead of checking every name.
+     * @param text the misspelled name
+     * @return list of parts with a close name, closest first
+     */
+    public static ObservableList<Part> searchBySimilarPartName(String text){
+        return FXCollections.observableArrayList(
+                InventoryEngine.similarParts(text, InventoryEngine.typosAllowed(text)));
+    }
+
+    /**
+     * Method to search the Product Inventory for names a few typos away from the text.
+     * @param text the misspelled name
+     * @return list of products with a close name, closest first
+     */
+    public static ObservableList<Product> searchBySimilarProductName(String text){
+        return FXCollections.observableArrayList(
+                InventoryEngine.similarProducts(text, InventoryEngine.typosAllowed(text)));
+    }
+
+    /**
+     * Method to search the Part Inventory by price. Looks up the price index, so only the
+     * parts found are looked at.
+     * @param low lowest price
+     * @param high highest price
+     * @return list of parts priced between low and high, cheapest first
+     */
+    public static ObservableList<Part> searchByPartPrice(double low, double high){
+        return FXCollections.observableArrayList(InventoryEngine.partsPricedBetween(low, high));
+    }
+
+    /**
+     * Method to search the Part Inventory by inventory level.
+     * @param low lowest stock
+     * @param high highest stock
+     * @return list of parts with a stock between low and high, lowest first
+     */
+    public static ObservableList<Part> searchByPartStock(int low, int high){
+        return FXCollections.observableArrayList(InventoryEngine.partsStockedBetween(low, high));
+    }
+
+    /**
+     * Method to search the Product Inventory by price.
+     * @param low lowest price
+     * @param high highest price
+     * @return list of products priced between low and high, cheapest first
+     */
+    public static ObservableList<Product> searchByProductPrice(double low, double high){
+        return FXCollections.observableArrayList(InventoryEngine.productsPricedBetween(low, high));
+    }
+
+    /**
+     * Method to search the Product Inventory by inventory level.
+     * @param low lowest stock
+     * @param high highest stock
+     * @return list of products with a stock between low and high, lowest first
+     */
+    public static ObservableList<Product> searchByProductStock(int low, int high){
+        return FXCollections.observableArrayList(InventoryEngine.productsStockedBetween(low, high));
+    }
+
     /**
      * Method to return all parts in the inventory.
      * @return list of all parts from inventory
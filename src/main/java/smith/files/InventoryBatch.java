@@ -0,0 +1,178 @@
+package smith.files;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The InventoryBatch class collects changes for InventoryEngine.batch. Nothing changes in
+ * the inventory until the batch ends, then every change is applied at once. Changes are
+ * kept by ID, so if one ID is changed more than once only the last change is applied.
+ * New items go at the end of the list unless they are given a place.
+ */
+public final class InventoryBatch {
+
+    // latest version of each part or product changed, null for a delete
+    private final Map<Integer, Part> parts = new LinkedHashMap<>();
+    private final Map<Integer, Product> products = new LinkedHashMap<>();
+    // place in the list of each new item that was given one
+    private final Map<Integer, Integer> partPlaces = new HashMap<>();
+    private final Map<Integer, Integer> productPlaces = new HashMap<>();
+
+    InventoryBatch() {
+    }
+
+    /**
+     * Method to add a part when the batch ends.
+     * @param part the part to add
+     */
+    public void addPart(Part part) {
+        parts.put(part.getId(), part);
+        partPlaces.remove(part.getId());
+    }
+
+    /**
+     * Method to add a part at a place in the list when the batch ends, such as putting
+     * back a deleted part where it was. The place is counted after the batch has removed
+     * its parts, with the parts put in at lower places already there, and past the end
+     * of the list the part goes at the end.
+     * @param part the part to add
+     * @param index the place of the part in the list
+     */
+    public void addPart(Part part, int index) {
+        parts.put(part.getId(), part);
+        partPlaces.put(part.getId(), index);
+    }
+
+    /**
+     * Method to put a part in place of the part with the same ID when the batch ends.
+     * @param part the new version of the part
+     */
+    public void updatePart(Part part) {
+        parts.put(part.getId(), part);
+        partPlaces.remove(part.getId());
+    }
+
+    /**
+     * Method to delete a part when the batch ends.
+     * @param partID the ID of the part to delete
+     */
+    public void deletePart(int partID) {
+        parts.put(partID, null);
+        partPlaces.remove(partID);
+    }
+
+    /**
+     * Method to find a part as it will be when the batch ends.
+     * @param partID the ID of the part
+     * @return the part changed or added by the batch, otherwise the part in the inventory,
+     * or an empty Optional if there is none or the batch deletes it
+     */
+    public Optional<Part> findPart(int partID) {
+        if (parts.containsKey(partID)) {
+            return Optional.ofNullable(parts.get(partID));
+        }
+        return InventoryEngine.findPart(partID);
+    }
+
+    /**
+     * Method to check the ID of a part is free as the inventory will be when the batch
+     * ends, just before the part is added to the batch.
+     * @param part the part about to be added
+     * @return true if the batch deletes the part with the ID, or no part has it
+     */
+    boolean claimPartID(Part part) {
+        if (parts.containsKey(part.getId())) {
+            return parts.get(part.getId()) == null;
+        }
+        return InventoryEngine.claimPartID(part);
+    }
+
+    /**
+     * Method to add a product when the batch ends.
+     * @param product the product to add
+     */
+    public void addProduct(Product product) {
+        products.put(product.getId(), product);
+        productPlaces.remove(product.getId());
+    }
+
+    /**
+     * Method to add a product at a place in the list when the batch ends, counted the
+     * same way as for parts.
+     * @param product the product to add
+     * @param index the place of the product in the list
+     */
+    public void addProduct(Product product, int index) {
+        products.put(product.getId(), product);
+        productPlaces.put(product.getId(), index);
+    }
+
+    /**
+     * Method to put a product in place of the product with the same ID when the batch ends.
+     * @param product the new version of the product
+     */
+    public void updateProduct(Product product) {
+        products.put(product.getId(), product);
+        productPlaces.remove(product.getId());
+    }
+
+    /**
+     * Method to delete a product when the batch ends.
+     * @param productID the ID of the product to delete
+     */
+    public void deleteProduct(int productID) {
+        products.put(productID, null);
+        productPlaces.remove(productID);
+    }
+
+    /**
+     * Method to find a product as it will be when the batch ends.
+     * @param productID the ID of the product
+     * @return the product changed or added by the batch, otherwise the product in the
+     * inventory, or an empty Optional if there is none or the batch deletes it
+     */
+    public Optional<Product> findProduct(int productID) {
+        if (products.containsKey(productID)) {
+            return Optional.ofNullable(products.get(productID));
+        }
+        return InventoryEngine.findProduct(productID);
+    }
+
+    /**
+     * Method to check the ID of a product is free as the inventory will be when the
+     * batch ends, just before the product is added to the batch.
+     * @param product the product about to be added
+     * @return true if the batch deletes the product with the ID, or no product has it
+     */
+    boolean claimProductID(Product product) {
+        if (products.containsKey(product.getId())) {
+            return products.get(product.getId()) == null;
+        }
+        return InventoryEngine.claimProductID(product);
+    }
+
+    /**
+     * @return the number of parts and products changed by the batch
+     */
+    public int size() {
+        return parts.size() + products.size();
+    }
+
+    Map<Integer, Part> parts() {
+        return parts;
+    }
+
+    Map<Integer, Product> products() {
+        return products;
+    }
+
+    Map<Integer, Integer> partPlaces() {
+        return partPlaces;
+    }
+
+    Map<Integer, Integer> productPlaces() {
+        return productPlaces;
+    }
+}
@@ -0,0 +1,156 @@
+package smith.files;
+
+import javafx.collections.ListChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * The InventoryDiff class is a short summary of a change to the inventory, given to diff
+ * listeners instead of one event per item. It holds the runs of rows added to and
+ * removed from each list with their items, and the IDs of items that were updated or
+ * replaced.
+ * @param parts what changed in the part list
+ * @param products what changed in the product list
+ */
+public record InventoryDiff(Section parts, Section products) {
+
+    /**
+     * A run of rows added to or removed from a list. Ranges are listed in the order the
+     * list reported them, and each one starts at the row of its change after the ranges
+     * before it were applied.
+     * @param added true for rows that were added, false for rows that were removed
+     * @param from first row of the run
+     * @param items the items of the run, for a removed run the items that were removed
+     */
+    public record Range(boolean added, int from, List<?> items) {
+
+        /**
+         * @return the number of rows in the run
+         */
+        public int count() {
+            return items.size();
+        }
+    }
+
+    /**
+     * What changed in one list.
+     * @param ranges runs of rows that were added or removed, in order
+     * @param updatedIDs IDs of items that were changed in place or swapped for a new
+     *                   version with the same ID
+     */
+    public record Section(List<Range> ranges, int[] updatedIDs) {
+
+        /**
+         * @return true if nothing changed in the list
+         */
+        public boolean isEmpty() {
+            return ranges.isEmpty() && updatedIDs.length == 0;
+        }
+
+        /**
+         * @return the runs of rows that were added
+         */
+        public List<Range> added() {
+            return ranges.stream().filter(Range::added).toList();
+        }
+
+        /**
+         * @return the runs of rows that were removed
+         */
+        public List<Range> removed() {
+            return ranges.stream().filter(r -> !r.added()).toList();
+        }
+    }
+
+    /**
+     * @return true if nothing changed in either list
+     */
+    public boolean isEmpty() {
+        return parts.isEmpty() && products.isEmpty();
+    }
+
+    /**
+     * Collects the changes of one list until a diff is made from them.
+     * @param <T> the type of item in the list
+     */
+    static final class Builder<T> {
+
+        private final ToIntFunction<T> idOf;
+        private final List<Range> ranges = new ArrayList<>();
+        private final IntIntMap updated = new IntIntMap();
+
+        Builder(ToIntFunction<T> idOf) {
+            this.idOf = idOf;
+        }
+
+        /**
+         * Method to add the sub changes of a list change.
+         * @param change the change, before next has been called on it
+         */
+        void record(ListChangeListener.Change<? extends T> change) {
+            while (change.next()) {
+                if (change.wasPermutated()) {
+                    continue;
+                }
+                if (change.wasUpdated()) {
+                    for (int i = change.getFrom(); i < change.getTo(); i++) {
+                        updated(idOf.applyAsInt(change.getList().get(i)));
+                    }
+                    continue;
+                }
+                List<? extends T> gone = change.getRemoved();
+                List<? extends T> come = change.getAddedSubList();
+                // rows swapped one for one for a new version with the same ID count as
+                // updates, anything else is told as the rows removed and the rows added
+                if (swappedInPlace(gone, come)) {
+                    for (T item : come) {
+                        updated(idOf.applyAsInt(item));
+                    }
+                    continue;
+                }
+                if (!gone.isEmpty()) {
+                    ranges.add(new Range(false, change.getFrom(), new ArrayList<>(gone)));
+                }
+                if (!come.isEmpty()) {
+                    ranges.add(new Range(true, change.getFrom(), new ArrayList<>(come)));
+                }
+            }
+        }
+
+        // true if each row was swapped for an item with the same ID
+        private boolean swappedInPlace(List<? extends T> gone, List<? extends T> come) {
+            if (gone.isEmpty() || gone.size() != come.size()) {
+                return false;
+            }
+            for (int i = 0; i < gone.size(); i++) {
+                if (idOf.applyAsInt(gone.get(i)) != idOf.applyAsInt(come.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Method to note an item changed in place.
+         * @param id the ID of the item
+         */
+        void updated(int id) {
+            updated.put(id, 0);
+        }
+
+        /**
+         * Method to make a section from the changes so far and start over.
+         * @return the section
+         */
+        Section build() {
+            int[] ids = new int[updated.size()];
+            int[] at = {0};
+            updated.forEach((id, unused) -> ids[at[0]++] = id);
+            Section section = new Section(List.copyOf(ranges), ids);
+            ranges.clear();
+            updated.clear();
+            return section;
+        }
+    }
+}
@@ -0,0 +1,1086 @@
+package smith.files;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * The InventoryEngine class holds the parts and products and every index over them. It
+ * never shows a screen or an Alert: lookups return an Optional and changes return a
+ * Result that carries the error message when the change is refused. This lets the same
+ * inventory run in a server, a batch job or a benchmark, with no FX toolkit started.
+ *
+ * The lists are observable lists from javafx.base, which work without the toolkit, so
+ * the tables on the screens can still show them directly. The Inventory class wraps the
+ * engine for the screens and shows an Alert where the engine returns nothing.
+ *
+ * The engine stays in smith.files because Part and Product tell it about their own
+ * changes through package private methods. EngineHeadlessTest checks that none of the
+ * engine side classes use javafx.scene, javafx.stage or javafx.application.
+ */
+public final class InventoryEngine {
+
+    private InventoryEngine() {
+    }
+
+    /**
+     * The outcome of a change to the inventory. Holds the item on success, or the reason
+     * the change was refused.
+     * @param value the item that was saved, null if the change was refused
+     * @param error the reason the change was refused, null on success
+     * @param <T> the type of item
+     */
+    public record Result<T>(T value, String error) {
+
+        /**
+         * @param value the item that was saved
+         * @param <T> the type of item
+         * @return a successful result
+         */
+        public static <T> Result<T> ok(T value) {
+            return new Result<>(value, null);
+        }
+
+        /**
+         * @param error the reason the change was refused
+         * @param <T> the type of item
+         * @return a failed result
+         */
+        public static <T> Result<T> failed(String error) {
+            return new Result<>(null, error);
+        }
+
+        /**
+         * @return true if the change was made
+         */
+        public boolean isOk() {
+            return error == null;
+        }
+    }
+
+    // the lists below, with the batch methods that ObservableList does not have
+    private static final InventoryList<Part> partRows = new InventoryList<>();
+    private static final InventoryList<Product> productRows = new InventoryList<>();
+    /**
+     * list for all parts created
+     */
+    public static final ObservableList<Part> partInventory = partRows;
+    /**
+     * list for all products created
+     */
+    public static final ObservableList<Product> productInventory = productRows;
+    /**
+     * index of parts by ID, kept in sync with partInventory
+     */
+    private static final IntObjectMap<Part> partIDIndex = new IntObjectMap<>();
+    /**
+     * index of products by ID, kept in sync with productInventory
+     */
+    private static final IntObjectMap<Product> productIDIndex = new IntObjectMap<>();
+    /**
+     * trigram index of part search keys, kept in sync with partInventory
+     */
+    private static final NGramIndex<Part> partNameIndex = new NGramIndex<>(Part::getId, Part::getSearchKey);
+    /**
+     * trigram index of product search keys, kept in sync with productInventory
+     */
+    private static final NGramIndex<Product> productNameIndex = new NGramIndex<>(Product::getId, Product::getSearchKey);
+    /**
+     * prefix trees of part and product search keys, for suggesting names as a search is
+     * typed and finding names with typos
+     */
+    private static final RadixTree<Part> partNames = new RadixTree<>(Part::getName, Part::getId);
+    private static final RadixTree<Product> productNames = new RadixTree<>(Product::getName, Product::getId);
+    /**
+     * products using each part, kept in sync with productInventory and the associated
+     * parts of each product in it
+     */
+    private static final WhereUsedIndex whereUsed = new WhereUsedIndex();
+    /**
+     * material cost of each product, worked out again only for products a change touches
+     */
+    private static final CostRollup costs = new CostRollup(partIDIndex::get);
+    /**
+     * ID sequence for new parts
+     */
+    private static final IdSequence partIDs = new IdSequence();
+    /**
+     * ID sequence for new products
+     */
+    private static final IdSequence productIDs = new IdSequence();
+
+    /**
+     * observers told about every change to the inventory
+     */
+    private static final List<InventoryObserver> observers = new CopyOnWriteArrayList<>();
+    /**
+     * listeners given one diff per change to the lists, or one per batch
+     */
+    private static final List<Consumer<InventoryDiff>> diffListeners = new CopyOnWriteArrayList<>();
+    private static final InventoryDiff.Builder<Part> partDiff = new InventoryDiff.Builder<>(Part::getId);
+    private static final InventoryDiff.Builder<Product> productDiff = new InventoryDiff.Builder<>(Product::getId);
+    // how many batches are running, diffs are held back until the outer one ends
+    private static int batchDepth;
+    /**
+     * columns of part fields used for fast scans. Kept off heap when the
+     * "inventory.offHeap" property is true.
+     */
+    private static final ColumnStore partColumns = new ColumnStore(Boolean.getBoolean("inventory.offHeap"));
+    /**
+     * columns of product fields used for fast scans
+     */
+    private static final ColumnStore productColumns = new ColumnStore(Boolean.getBoolean("inventory.offHeap"));
+    /**
+     * part IDs sorted by price and by stock, for range queries
+     */
+    private static final RangeIndex partPrices = new RangeIndex();
+    private static final RangeIndex partStocks = new RangeIndex();
+    /**
+     * product IDs sorted by price and by stock, for range queries
+     */
+    private static final RangeIndex productPrices = new RangeIndex();
+    private static final RangeIndex productStocks = new RangeIndex();
+    /**
+     * parts and products out of their min and max range, checked on every change
+     */
+    private static final LowStockTracker lowStock = new LowStockTracker();
+    /**
+     * changes made on the screens that can be undone, the last 100 steps or a million changes
+     */
+    private static final UndoStack undoStack = new UndoStack(100, 1_000_000);
+    /**
+     * how many of each product can be built from the parts in stock, opened the first
+     * time it is asked for so starting the program does not wait for it
+     */
+    private static BuildableCalculator buildable;
+
+    // set while a ConcurrentInventory is open. It is asked before a part or product is
+    // added here, so an ID it holds for a change not yet copied to the lists is not used twice.
+    private static volatile Predicate<Part> partClaim;
+    private static volatile Predicate<Product> productClaim;
+
+    // The indexes listen to the inventory lists, so every add, remove and set is
+    // picked up no matter if it comes from this class or straight from a controller.
+    static {
+        partInventory.addListener((ListChangeListener<Part>) change -> {
+            while (change.next()) {
+                List<? extends Part> removed = change.getRemoved();
+                List<? extends Part> added = change.getAddedSubList();
+                for (Part p : removed) {
+                    partIDIndex.remove(p.getId(), p);
+                    partNameIndex.remove(p, p.getSearchKey());
+                    partNames.remove(p, p.getSearchKey());
+                }
+                for (Part p : added) {
+                    partIDIndex.put(p.getId(), p);
+                    partNameIndex.add(p, p.getSearchKey());
+                    partNames.add(p, p.getSearchKey());
+                    partIDs.observe(p.getId());
+                }
+                // products using a part that came or went are priced again
+                for (Part p : removed) {
+                    repriceUsers(p.getId());
+                }
+                for (Part p : added) {
+                    repriceUsers(p.getId());
+                }
+                // a part swapped for one with the same ID is reported as a replacement. A
+                // batch can merge several swaps and removes into one sub change, so the
+                // old and new versions are matched by ID, not by place.
+                IntObjectMap<Part> swapped = swaps(removed, added, Part::getId);
+                for (InventoryObserver o : observers) {
+                    for (Part oldPart : removed) {
+                        Part newPart = swapped.get(oldPart.getId());
+                        if (newPart != null) {
+                            o.partReplaced(oldPart, newPart);
+                        } else {
+                            o.partRemoved(oldPart);
+                        }
+                    }
+                    for (Part newPart : added) {
+                        if (swapped.get(newPart.getId()) != newPart) {
+                            o.partAdded(newPart);
+                        }
+                    }
+                }
+            }
+        });
+        productInventory.addListener((ListChangeListener<Product>) change -> {
+            while (change.next()) {
+                List<? extends Product> removed = change.getRemoved();
+                List<? extends Product> added = change.getAddedSubList();
+                for (Product p : removed) {
+                    if (productIDIndex.remove(p.getId(), p)) {
+                        for (Part part : p.getAssociatedParts()) {
+                            whereUsed.remove(part.getId(), p.getId());
+                        }
+                        costs.remove(p.getId());
+                    }
+                    productNameIndex.remove(p, p.getSearchKey());
+                    productNames.remove(p, p.getSearchKey());
+                }
+                for (Product p : added) {
+                    productIDIndex.put(p.getId(), p);
+                    productNameIndex.add(p, p.getSearchKey());
+                    productNames.add(p, p.getSearchKey());
+                    productIDs.observe(p.getId());
+                    for (Part part : p.getAssociatedParts()) {
+                        whereUsed.add(part.getId(), p.getId());
+                    }
+                    costs.recompute(p);
+                }
+                // a product swapped for one with the same ID is reported as a replacement. A
+                // batch can merge several swaps and removes into one sub change, so the
+                // old and new versions are matched by ID, not by place.
+                IntObjectMap<Product> swapped = swaps(removed, added, Product::getId);
+                for (InventoryObserver o : observers) {
+                    for (Product oldProduct : removed) {
+                        Product newProduct = swapped.get(oldProduct.getId());
+                        if (newProduct != null) {
+                            o.productReplaced(oldProduct, newProduct);
+                        } else {
+                            o.productRemoved(oldProduct);
+                        }
+                    }
+                    for (Product newProduct : added) {
+                        if (swapped.get(newProduct.getId()) != newProduct) {
+                            o.productAdded(newProduct);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    // new versions of items in a sub change that took the place of a removed item with
+    // the same ID, by ID
+    private static <T> IntObjectMap<T> swaps(List<? extends T> removed, List<? extends T> added, ToIntFunction<T> idOf) {
+        IntObjectMap<T> swapped = new IntObjectMap<>();
+        if (removed.isEmpty() || added.isEmpty()) {
+            return swapped;
+        }
+        IntObjectMap<T> addedByID = new IntObjectMap<>(added.size());
+        for (T item : added) {
+            addedByID.put(idOf.applyAsInt(item), item);
+        }
+        for (T item : removed) {
+            T match = addedByID.get(idOf.applyAsInt(item));
+            if (match != null) {
+                swapped.put(idOf.applyAsInt(item), match);
+            }
+        }
+        return swapped;
+    }
+
+    // keeps the column stores and the range indexes in step with the inventory. The row
+    // in the column store still holds the old price and stock, so they are read from it
+    // to move the item in the range indexes.
+    static {
+        addObserver(new InventoryObserver() {
+            @Override
+            public void partAdded(Part part) {
+                int row = partColumns.rowOf(part.getId());
+                if (row >= 0) {
+                    partPrices.remove(RangeIndex.priceKey(partColumns.price(row)), part.getId());
+                    partStocks.remove(partColumns.stock(row), part.getId());
+                }
+                partColumns.put(part, part.getId(), part.getName(), part.getPrice(),
+                        part.getStock(), part.getMin(), part.getMax());
+                partPrices.add(RangeIndex.priceKey(part.getPrice()), part.getId());
+                partStocks.add(part.getStock(), part.getId());
+            }
+
+            @Override
+            public void partRemoved(Part part) {
+                int row = partColumns.rowOf(part.getId());
+                if (row >= 0 && partColumns.item(row) == part) {
+                    partPrices.remove(RangeIndex.priceKey(partColumns.price(row)), part.getId());
+                    partStocks.remove(partColumns.stock(row), part.getId());
+                }
+                partColumns.remove(part.getId(), part);
+            }
+
+            @Override
+            public void partReplaced(Part oldPart, Part newPart) {
+                partAdded(newPart);
+            }
+
+            @Override
+            public void partUpdated(Part part) {
+                partAdded(part);
+            }
+
+            @Override
+            public void productAdded(Product product) {
+                int row = productColumns.rowOf(product.getId());
+                if (row >= 0) {
+                    productPrices.remove(RangeIndex.priceKey(productColumns.price(row)), product.getId());
+                    productStocks.remove(productColumns.stock(row), product.getId());
+                }
+                productColumns.put(product, product.getId(), product.getName(), product.getPrice(),
+                        product.getStock(), product.getMin(), product.getMax());
+                productPrices.add(RangeIndex.priceKey(product.getPrice()), product.getId());
+                productStocks.add(product.getStock(), product.getId());
+            }
+
+            @Override
+            public void productRemoved(Product product) {
+                int row = productColumns.rowOf(product.getId());
+                if (row >= 0 && productColumns.item(row) == product) {
+                    productPrices.remove(RangeIndex.priceKey(productColumns.price(row)), product.getId());
+                    productStocks.remove(productColumns.stock(row), product.getId());
+                }
+                productColumns.remove(product.getId(), product);
+            }
+
+            @Override
+            public void productReplaced(Product oldProduct, Product newProduct) {
+                productAdded(newProduct);
+            }
+
+            @Override
+            public void productUpdated(Product product) {
+                productAdded(product);
+            }
+        });
+        addObserver(lowStock);
+    }
+
+    // collects list changes for the diff listeners
+    static {
+        partInventory.addListener((ListChangeListener<Part>) change -> {
+            if (!diffListeners.isEmpty()) {
+                partDiff.record(change);
+                fireDiff();
+            }
+        });
+        productInventory.addListener((ListChangeListener<Product>) change -> {
+            if (!diffListeners.isEmpty()) {
+                productDiff.record(change);
+                fireDiff();
+            }
+        });
+    }
+
+    /**
+     * Method to get the column store of parts, used to scan every part quickly.
+     * @return the part columns
+     */
+    public static ColumnStore partColumns() {
+        return partColumns;
+    }
+
+    /**
+     * Method to get the column store of products, used to scan every product quickly.
+     * @return the product columns
+     */
+    public static ColumnStore productColumns() {
+        return productColumns;
+    }
+
+    /**
+     * Method to get the parts and products that are below min or above max, worst first.
+     * @return the low stock tracker
+     */
+    public static LowStockTracker lowStock() {
+        return lowStock;
+    }
+
+    /**
+     * Method to get the undo stack the screens make their changes through.
+     * @return the undo stack
+     */
+    public static UndoStack undoStack() {
+        return undoStack;
+    }
+
+    /**
+     * Method to register an observer that is told about every change to the inventory.
+     * @param observer the observer to add
+     */
+    public static void addObserver(InventoryObserver observer) {
+        observers.add(observer);
+    }
+
+    /**
+     * Method to stop telling an observer about changes.
+     * @param observer the observer to remove
+     */
+    public static void removeObserver(InventoryObserver observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Method to register a listener that is given a short diff after each change to the
+     * lists, or a single diff for a whole batch.
+     * @param listener the listener to add
+     */
+    public static void addDiffListener(Consumer<InventoryDiff> listener) {
+        diffListeners.add(listener);
+    }
+
+    /**
+     * Method to stop giving diffs to a listener.
+     * @param listener the listener to remove
+     */
+    public static void removeDiffListener(Consumer<InventoryDiff> listener) {
+        diffListeners.remove(listener);
+    }
+
+    /**
+     * Method to make many changes as one. The changes are collected by the batch and
+     * applied when the changes function returns, in a single pass over each list. Each
+     * list then reports one change, and diff listeners get one diff for the whole batch.
+     * Batches can be nested, the diff is sent when the outer one ends.
+     * @param changes adds the changes to the batch
+     */
+    public static void batch(Consumer<InventoryBatch> changes) {
+        InventoryBatch batch = new InventoryBatch();
+        batchDepth++;
+        try {
+            changes.accept(batch);
+            commit(partRows, partIDIndex, batch.parts(), batch.partPlaces());
+            commit(productRows, productIDIndex, batch.products(), batch.productPlaces());
+        } finally {
+            batchDepth--;
+            fireDiff();
+        }
+    }
+
+    // sorts the changes of a batch into removes, replacements and adds for the list
+    private static <T> void commit(InventoryList<T> list, IntObjectMap<T> index, Map<Integer, T> changes,
+                                   Map<Integer, Integer> places) {
+        Set<T> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<T, T> replaced = new IdentityHashMap<>();
+        List<T> added = new ArrayList<>();
+        List<Map.Entry<Integer, T>> placed = new ArrayList<>();
+        for (Map.Entry<Integer, T> e : changes.entrySet()) {
+            T current = index.get(e.getKey());
+            T latest = e.getValue();
+            if (current == latest) {
+                continue;
+            }
+            if (current == null) {
+                Integer place = places.get(e.getKey());
+                if (place == null) {
+                    added.add(latest);
+                } else {
+                    placed.add(Map.entry(place, latest));
+                }
+            } else if (latest == null) {
+                removed.add(current);
+            } else {
+                replaced.put(current, latest);
+            }
+        }
+        placed.sort(Map.Entry.comparingByKey());
+        list.applyBatch(removed, replaced, placed, added);
+    }
+
+    // sends the changes collected so far, unless a batch is still running
+    private static void fireDiff() {
+        if (batchDepth > 0 || diffListeners.isEmpty()) {
+            return;
+        }
+        InventoryDiff diff = new InventoryDiff(partDiff.build(), productDiff.build());
+        if (!diff.isEmpty()) {
+            for (Consumer<InventoryDiff> listener : diffListeners) {
+                listener.accept(diff);
+            }
+        }
+    }
+
+    /**
+     * Called by Part.setId before the ID changes. Every index is kept by ID, so a part in
+     * the inventory keeps its ID and a part with a new ID is put in its place instead.
+     * @param part the part whose ID is about to change
+     * @throws IllegalStateException if the part is in the inventory
+     */
+    static void partIDChanging(Part part) {
+        if (partIDIndex.get(part.getId()) == part) {
+            throw new IllegalStateException("The ID of a part in the inventory cannot be changed. Replace the part instead.");
+        }
+    }
+
+    /**
+     * Called by Product.setId before the ID changes.
+     * @param product the product whose ID is about to change
+     * @throws IllegalStateException if the product is in the inventory
+     */
+    static void productIDChanging(Product product) {
+        if (productIDIndex.get(product.getId()) == product) {
+            throw new IllegalStateException("The ID of a product in the inventory cannot be changed. Replace the product instead.");
+        }
+    }
+
+    /**
+     * Called by Part.setName so the name index follows a rename. Parts that are not in
+     * the inventory yet are skipped, they are indexed when they are added.
+     * @param part the part that was renamed
+     * @param oldKey the search key it had before
+     */
+    static void partRenamed(Part part, String oldKey) {
+        if (partIDIndex.get(part.getId()) == part) {
+            partNameIndex.rename(part, oldKey, part.getSearchKey());
+            partNames.rename(part, oldKey, part.getSearchKey());
+            partUpdated(part);
+        }
+    }
+
+    /**
+     * Called by the Part setters so observers hear about the change. Parts that are not
+     * in the inventory yet are skipped.
+     * @param part the part that was changed
+     */
+    static void partUpdated(Part part) {
+        if (partIDIndex.get(part.getId()) == part) {
+            repriceUsers(part.getId());
+            for (InventoryObserver o : observers) {
+                o.partUpdated(part);
+            }
+            if (!diffListeners.isEmpty()) {
+                partDiff.updated(part.getId());
+                fireDiff();
+            }
+        }
+    }
+
+    /**
+     * Called by Product.setName so the name index follows a rename.
+     * @param product the product that was renamed
+     * @param oldKey the search key it had before
+     */
+    static void productRenamed(Product product, String oldKey) {
+        if (productIDIndex.get(product.getId()) == product) {
+            productNameIndex.rename(product, oldKey, product.getSearchKey());
+            productNames.rename(product, oldKey, product.getSearchKey());
+            productUpdated(product);
+        }
+    }
+
+    /**
+     * Called by the Product setters and associated part methods so observers hear about
+     * the change. Products that are not in the inventory yet are skipped.
+     * @param product the product that was changed
+     */
+    static void productUpdated(Product product) {
+        if (productIDIndex.get(product.getId()) == product) {
+            for (InventoryObserver o : observers) {
+                o.productUpdated(product);
+            }
+            if (!diffListeners.isEmpty()) {
+                productDiff.updated(product.getId());
+                fireDiff();
+            }
+        }
+    }
+
+    /**
+     * Called when parts are added to or removed from the associated parts of a product,
+     * so the where used index and the costs follow and observers hear about it. Products that are not in the inventory are
+     * skipped, their parts are counted when they are added.
+     * @param product the product whose parts changed
+     * @param change the change to its associated parts
+     */
+    static void associationsChanged(Product product, ListChangeListener.Change<? extends Part> change) {
+        if (productIDIndex.get(product.getId()) != product) {
+            return;
+        }
+        while (change.next()) {
+            for (Part part : change.getRemoved()) {
+                whereUsed.remove(part.getId(), product.getId());
+            }
+            for (Part part : change.getAddedSubList()) {
+                whereUsed.add(part.getId(), product.getId());
+            }
+        }
+        costs.recompute(product);
+        productUpdated(product);
+    }
+
+    // works out the cost again of every product using a part
+    private static void repriceUsers(int partID) {
+        for (int productID : whereUsed.productIDs(partID)) {
+            Product product = productIDIndex.get(productID);
+            if (product != null) {
+                costs.recompute(product);
+            }
+        }
+    }
+
+    /**
+     * Method to get the material cost of a product, the total price of its associated
+     * parts. The cost is kept up to date as parts and products change, so this is a lookup.
+     * @param productID the ID of the product
+     * @return the material cost, or 0 if the product is not in the inventory
+     */
+    public static double materialCost(int productID) {
+        return costs.cost(productID);
+    }
+
+    /**
+     * Method to get how many units of a product can be built from the parts in stock. The
+     * first call works out every product, after that only the products a change touches
+     * are worked out again.
+     * @param productID the ID of the product
+     * @return the units that can be built, 0 if the product has no parts or is not in the inventory
+     */
+    public static int buildable(int productID) {
+        return buildableCalculator().buildable(productID);
+    }
+
+    /**
+     * Method to get the part that limits how many units of a product can be built.
+     * @param productID the ID of the product
+     * @return the ID of the part that runs out first, or -1 if the product has no parts
+     */
+    public static int bottleneck(int productID) {
+        return buildableCalculator().bottleneck(productID);
+    }
+
+    private static BuildableCalculator buildableCalculator() {
+        if (buildable == null) {
+            buildable = BuildableCalculator.open();
+        }
+        return buildable;
+    }
+
+    /**
+     * Method to get the margin of a product, its price less its material cost.
+     * @param product the product
+     * @return the margin
+     */
+    public static double margin(Product product) {
+        return costs.margin(product);
+    }
+
+    /**
+     * Method to find the products that use a part.
+     * @param partID the ID of the part
+     * @return the products that list the part in their associated parts
+     */
+    public static List<Product> whereUsed(int partID) {
+        int[] productIDs = whereUsed.productIDs(partID);
+        List<Product> products = new ArrayList<>(productIDs.length);
+        for (int productID : productIDs) {
+            products.add(productIDIndex.get(productID));
+        }
+        return products;
+    }
+
+    /**
+     * Method to check if any product uses a part. Takes the same time no matter how many
+     * products there are, so it can guard every part delete.
+     * @param partID the ID of the part
+     * @return true if a product lists the part in its associated parts
+     */
+    public static boolean isPartUsed(int partID) {
+        return whereUsed.isUsed(partID);
+    }
+
+    /**
+     * @param partID the ID of the part
+     * @return the number of products that use the part
+     */
+    public static int productsUsing(int partID) {
+        return whereUsed.productCount(partID);
+    }
+
+    /**
+     * Method to find a part by ID. Looks up the ID index, so the search does not depend
+     * on the size of the inventory.
+     * @param partID the ID to find
+     * @return the part, or an empty Optional if there is none
+     */
+    public static Optional<Part> findPart(int partID) {
+        return Optional.ofNullable(partIDIndex.get(partID));
+    }
+
+    /**
+     * Method to find a product by ID.
+     * @param productID the ID to find
+     * @return the product, or an empty Optional if there is none
+     */
+    public static Optional<Product> findProduct(int productID) {
+        return Optional.ofNullable(productIDIndex.get(productID));
+    }
+
+    /**
+     * Called by ConcurrentInventory when it opens and closes, to be asked before every
+     * part or product is added to the lists.
+     * @param parts claims the ID of a part, false if it is taken. null to stop asking.
+     * @param products claims the ID of a product, false if it is taken. null to stop asking.
+     */
+    static void setClaims(Predicate<Part> parts, Predicate<Product> products) {
+        partClaim = parts;
+        productClaim = products;
+    }
+
+    /**
+     * Method to check the ID of a part is free just before the part is added to the list.
+     * @param part the part about to be added
+     * @return true if no part in the list or waiting to be copied to it has the ID
+     */
+    static boolean claimPartID(Part part) {
+        Predicate<Part> claim = partClaim;
+        return !partIDIndex.containsKey(part.getId()) && (claim == null || claim.test(part));
+    }
+
+    /**
+     * Method to check the ID of a product is free just before the product is added.
+     * @param product the product about to be added
+     * @return true if no product in the list or waiting to be copied to it has the ID
+     */
+    static boolean claimProductID(Product product) {
+        Predicate<Product> claim = productClaim;
+        return !productIDIndex.containsKey(product.getId()) && (claim == null || claim.test(product));
+    }
+
+    /**
+     * Called when a part with a given ID is added off the FX thread, so new IDs are
+     * higher before the part reaches the list.
+     * @param partID the ID in use
+     */
+    static void observePartID(int partID) {
+        partIDs.observe(partID);
+    }
+
+    /**
+     * Called when a product with a given ID is added off the FX thread.
+     * @param productID the ID in use
+     */
+    static void observeProductID(int productID) {
+        productIDs.observe(productID);
+    }
+
+    /**
+     * Method to get an ID for a new part.
+     * @return an ID higher than any part ID in use
+     */
+    public static int nextPartID() {
+        return partIDs.next();
+    }
+
+    /**
+     * Method to get an ID for a new product.
+     * @return an ID higher than any product ID in use
+     */
+    public static int nextProductID() {
+        return productIDs.next();
+    }
+
+    /**
+     * Method to reserve a block of part IDs for a bulk import.
+     * @param count how many IDs to reserve
+     * @return the first ID of the block
+     */
+    public static int reservePartIDs(int count) {
+        return partIDs.reserve(count);
+    }
+
+    /**
+     * Method to reserve a block of product IDs for a bulk import.
+     * @param count how many IDs to reserve
+     * @return the first ID of the block
+     */
+    public static int reserveProductIDs(int count) {
+        return productIDs.reserve(count);
+    }
+
+    /**
+     * Method to check the stock fields of a part or product before it is saved.
+     * @param stock the stock
+     * @param min the min
+     * @param max the max
+     * @return the reason the fields are not valid, or an empty Optional if they are
+     */
+    public static Optional<String> checkFields(int stock, int min, int max) {
+        if (max < min) {
+            return Optional.of("Max cannot be less than Min.");
+        }
+        if (stock < min || stock > max) {
+            return Optional.of("Inv must be in between Min and Max.");
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Method to find every part whose name contains the given text, ignoring case and
+     * accents. The text is folded once and compared to the search key of each part.
+     * @param partialName text to look for
+     * @return the matching parts
+     */
+    public static List<Part> searchParts(String partialName) {
+        List<Part> found = new ArrayList<>();
+        partNameIndex.search(SearchKeys.fold(partialName), found);
+        return found;
+    }
+
+    /**
+     * Method to add every part whose name contains the given text to a collection.
+     * @param partialName text to look for
+     * @param results collection the matching parts are added to
+     */
+    static void searchParts(String partialName, Collection<? super Part> results) {
+        partNameIndex.search(SearchKeys.fold(partialName), results);
+    }
+
+    /**
+     * Method to find every product whose name contains the given text, ignoring case and
+     * accents.
+     * @param partialName text to look for
+     * @return the matching products
+     */
+    public static List<Product> searchProducts(String partialName) {
+        List<Product> found = new ArrayList<>();
+        productNameIndex.search(SearchKeys.fold(partialName), found);
+        return found;
+    }
+
+    /**
+     * Method to add every product whose name contains the given text to a collection.
+     * @param partialName text to look for
+     * @param results collection the matching products are added to
+     */
+    static void searchProducts(String partialName, Collection<? super Product> results) {
+        productNameIndex.search(SearchKeys.fold(partialName), results);
+    }
+
+    /**
+     * Method to suggest part names that start with the text typed so far, ignoring case
+     * and accents. The names are shown as they are written.
+     * @param prefix the text typed so far
+     * @param into filled with the names in order, as many as it can hold
+     * @return the number of names written into the array
+     */
+    public static int suggestPartNames(String prefix, String[] into) {
+        return partNames.suggest(SearchKeys.fold(prefix), into);
+    }
+
+    /**
+     * Method to suggest product names that start with the text typed so far, ignoring
+     * case and accents.
+     * @param prefix the text typed so far
+     * @param into filled with the names in order, as many as it can hold
+     * @return the number of names written into the array
+     */
+    public static int suggestProductNames(String prefix, String[] into) {
+        return productNames.suggest(SearchKeys.fold(prefix), into);
+    }
+
+    /**
+     * Method to find every part whose name is within a few typos of the given text,
+     * closest first. Used when a search finds nothing, so a misspelled name still finds
+     * the part.
+     * @param text text to look for
+     * @param maxDistance most typos allowed, a typo being a letter added, dropped,
+     *                    changed, or swapped with the one next to it
+     * @return the matching parts, by number of typos and then by name
+     */
+    public static List<Part> similarParts(String text, int maxDistance) {
+        return similar(partNames, text, maxDistance);
+    }
+
+    /**
+     * Method to find every product whose name is within a few typos of the given text,
+     * closest first.
+     * @param text text to look for
+     * @param maxDistance most typos allowed
+     * @return the matching products, by number of typos and then by name
+     */
+    public static List<Product> similarProducts(String text, int maxDistance) {
+        return similar(productNames, text, maxDistance);
+    }
+
+    /**
+     * Method to get the number of typos a search of this length allows: none for one or
+     * two letters, one up to five letters and two after that.
+     * @param text the search
+     * @return the most typos allowed
+     */
+    public static int typosAllowed(String text) {
+        return text.length() <= 2 ? 0 : text.length() <= 5 ? 1 : 2;
+    }
+
+    /**
+     * A name found by a typo tolerant search.
+     * @param name the name
+     * @param distance number of typos from the search
+     */
+    private record CloseName(String name, int distance) {
+    }
+
+    // finds the search keys close to the folded text in the prefix tree, then the items
+    // with each key
+    private static <T> List<T> similar(RadixTree<T> names, String text, int maxDistance) {
+        List<CloseName> close = new ArrayList<>();
+        names.similar(SearchKeys.fold(text), maxDistance, (name, distance) -> close.add(new CloseName(name, distance)));
+        close.sort(Comparator.comparingInt(CloseName::distance).thenComparing(CloseName::name));
+        List<T> found = new ArrayList<>();
+        for (CloseName c : close) {
+            names.named(c.name(), found);
+        }
+        return found;
+    }
+
+    /**
+     * Method to find every part with a price between low and high, including both, in
+     * order of price. Looks up the price index, so only the parts found are visited.
+     * @param low lowest price
+     * @param high highest price
+     * @return the matching parts
+     */
+    public static List<Part> partsPricedBetween(double low, double high) {
+        List<Part> found = new ArrayList<>();
+        partPrices.between(RangeIndex.priceKey(low), RangeIndex.priceKey(high), id -> found.add(partIDIndex.get(id)));
+        return found;
+    }
+
+    /**
+     * Method to find every part with a stock between low and high, including both, in
+     * order of stock.
+     * @param low lowest stock
+     * @param high highest stock
+     * @return the matching parts
+     */
+    public static List<Part> partsStockedBetween(int low, int high) {
+        List<Part> found = new ArrayList<>();
+        partStocks.between(low, high, id -> found.add(partIDIndex.get(id)));
+        return found;
+    }
+
+    /**
+     * Method to find every product with a price between low and high, including both, in
+     * order of price.
+     * @param low lowest price
+     * @param high highest price
+     * @return the matching products
+     */
+    public static List<Product> productsPricedBetween(double low, double high) {
+        List<Product> found = new ArrayList<>();
+        productPrices.between(RangeIndex.priceKey(low), RangeIndex.priceKey(high), id -> found.add(productIDIndex.get(id)));
+        return found;
+    }
+
+    /**
+     * Method to find every product with a stock between low and high, including both, in
+     * order of stock.
+     * @param low lowest stock
+     * @param high highest stock
+     * @return the matching products
+     */
+    public static List<Product> productsStockedBetween(int low, int high) {
+        List<Product> found = new ArrayList<>();
+        productStocks.between(low, high, id -> found.add(productIDIndex.get(id)));
+        return found;
+    }
+
+    /**
+     * Method to add a part. Refused if the fields are not valid or the ID is in use.
+     * @param part the part to add
+     * @return the result of the add
+     */
+    public static Result<Part> addPart(Part part) {
+        Optional<String> problem = checkFields(part.getStock(), part.getMin(), part.getMax());
+        if (problem.isPresent()) {
+            return Result.failed(problem.get());
+        }
+        if (!claimPartID(part)) {
+            return Result.failed("Part ID " + part.getId() + " is already in use.");
+        }
+        partInventory.add(part);
+        return Result.ok(part);
+    }
+
+    /**
+     * Method to put a part in place of the part with the same ID. The part keeps its
+     * place in the list and observers are told it was replaced.
+     * @param part the new version of the part
+     * @return the result of the update
+     */
+    public static Result<Part> replacePart(Part part) {
+        Optional<String> problem = checkFields(part.getStock(), part.getMin(), part.getMax());
+        if (problem.isPresent()) {
+            return Result.failed(problem.get());
+        }
+        Part old = partIDIndex.get(part.getId());
+        if (old == null) {
+            return Result.failed("Part not found");
+        }
+        partInventory.set(partInventory.indexOf(old), part);
+        return Result.ok(part);
+    }
+
+    /**
+     * Method to delete the part with the given ID.
+     * @param partID the ID of the part to delete
+     * @return the part that was deleted, or an empty Optional if there was none
+     */
+    public static Optional<Part> deletePart(int partID) {
+        Part old = partIDIndex.get(partID);
+        if (old != null) {
+            partInventory.remove(old);
+        }
+        return Optional.ofNullable(old);
+    }
+
+    /**
+     * Method to add a product. Refused if the fields are not valid or the ID is in use.
+     * @param product the product to add
+     * @return the result of the add
+     */
+    public static Result<Product> addProduct(Product product) {
+        Optional<String> problem = checkFields(product.getStock(), product.getMin(), product.getMax());
+        if (problem.isPresent()) {
+            return Result.failed(problem.get());
+        }
+        if (!claimProductID(product)) {
+            return Result.failed("Product ID " + product.getId() + " is already in use.");
+        }
+        productInventory.add(product);
+        return Result.ok(product);
+    }
+
+    /**
+     * Method to put a product in place of the product with the same ID.
+     * @param product the new version of the product
+     * @return the result of the update
+     */
+    public static Result<Product> replaceProduct(Product product) {
+        Optional<String> problem = checkFields(product.getStock(), product.getMin(), product.getMax());
+        if (problem.isPresent()) {
+            return Result.failed(problem.get());
+        }
+        Product old = productIDIndex.get(product.getId());
+        if (old == null) {
+            return Result.failed("Product not found");
+        }
+        productInventory.set(productInventory.indexOf(old), product);
+        return Result.ok(product);
+    }
+
+    /**
+     * Method to delete the product with the given ID.
+     * @param productID the ID of the product to delete
+     * @return the product that was deleted, or an empty Optional if there was none
+     */
+    public static Optional<Product> deleteProduct(int productID) {
+        Product old = productIDIndex.get(productID);
+        if (old != null) {
+            productInventory.remove(old);
+        }
+        return Optional.ofNullable(old);
+    }
+}
@@ -0,0 +1,1307 @@
+package smith.files;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+
+/**
+ * The InventoryHistory class keeps every change ever made to the inventory, so the
+ * inventory can be looked at as it was at any time since the history was started. The
+ * journal only keeps what is needed to rebuild the inventory as it is now, and empties
+ * itself after each snapshot, so it cannot answer what a part looked like last week.
+ *
+ * Changes are written to an append only log as small typed events: a new part or
+ * product, a removed one, or one field that changed, such as the stock of part 12
+ * becoming 40. The history keeps the last value it saw of every field, so an update
+ * writes only the fields that actually changed. Each change holds its time as the
+ * milliseconds since the change before it.
+ *
+ * Every so many events the history writes a checkpoint, a file holding every part and
+ * product as they were at that time with an index sorted by ID. The writer thread builds
+ * it by replaying the last checkpoint and the log after it, so the thread changing the
+ * inventory only asks for it and never copies the items. To find the inventory
+ * at a time, the last checkpoint before it is opened and only the events after the
+ * checkpoint are read, stopping at the first event after the time asked for. Looking
+ * up one part reads its row from the mapped checkpoint and skips events for other
+ * items, so no query reads more than one checkpoint interval of the log.
+ *
+ * Only so many checkpoints are kept. The first and the last always stay, and when there
+ * are too many the one with the least log between its neighbours is deleted, so the ones
+ * left stay spread over the whole log. The log itself is never cut, so any time since
+ * the history was started can still be looked at, only with more of the log to read.
+ *
+ * When the history is opened it rebuilds what it last saw from the last checkpoint and
+ * the log after it, and writes whatever differs in the inventory now as a change, so a
+ * start with nothing changed writes nothing.
+ *
+ * Like the journal, events are encoded on the thread that changes the inventory and
+ * written by a background thread, and the history stops taking events once the writer
+ * has failed.
+ */
+public class InventoryHistory implements InventoryObserver, AutoCloseable {
+
+    // event types
+    private static final byte PART_ADDED = 1;
+    private static final byte PART_REMOVED = 2;
+    private static final byte PART_NAME = 3;
+    private static final byte PART_PRICE = 4;
+    private static final byte PART_STOCK = 5;
+    private static final byte PART_MIN = 6;
+    private static final byte PART_MAX = 7;
+    private static final byte PART_MACHINE_ID = 8;
+    private static final byte PART_COMPANY = 9;
+    private static final byte PRODUCT_ADDED = 10;
+    private static final byte PRODUCT_REMOVED = 11;
+    private static final byte PRODUCT_NAME = 12;
+    private static final byte PRODUCT_PRICE = 13;
+    private static final byte PRODUCT_STOCK = 14;
+    private static final byte PRODUCT_MIN = 15;
+    private static final byte PRODUCT_MAX = 16;
+    private static final byte PRODUCT_PARTS = 17;
+
+    // file names inside the history directory
+    private static final String LOG_FILE = "history.log";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".dat";
+
+    // "INVH" and the version of the checkpoint layout
+    private static final int MAGIC = 0x494E5648;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    // largest change that is believed when reading, anything bigger is a torn write
+    private static final int MAX_CHANGE = 64 * 1024 * 1024;
+    // most changes written in one group before forcing to disk
+    private static final int MAX_GROUP = 4096;
+    // default number of events between checkpoints
+    private static final int DEFAULT_CHECKPOINT_EVERY = 100_000;
+    // default number of checkpoints kept
+    private static final int DEFAULT_KEEP_CHECKPOINTS = 64;
+
+    // marker put on the queue by close
+    private static final Object STOP = new Object();
+
+    /**
+     * A part as it was at some time.
+     * @param id id
+     * @param name name
+     * @param price price
+     * @param stock stock
+     * @param min min
+     * @param max max
+     * @param inHouse true for an in-house part, false for an outsourced one
+     * @param machineID machine ID of an in-house part
+     * @param companyName company name of an outsourced part
+     */
+    public record PartState(int id, String name, double price, int stock, int min, int max,
+                            boolean inHouse, int machineID, String companyName) {
+    }
+
+    /**
+     * A product as it was at some time.
+     * @param id id
+     * @param name name
+     * @param price price
+     * @param stock stock
+     * @param min min
+     * @param max max
+     * @param partIDs IDs of the associated parts
+     */
+    public record ProductState(int id, String name, double price, int stock, int min, int max, int[] partIDs) {
+    }
+
+    /**
+     * The whole inventory as it was at some time, each list in order of ID.
+     * @param parts every part
+     * @param products every product
+     */
+    public record State(List<PartState> parts, List<ProductState> products) {
+    }
+
+    /**
+     * Asks the writer thread to write a checkpoint of the items as they were when the
+     * request was queued, which is after every change queued before it.
+     */
+    private record Checkpoint(long time) {
+    }
+
+    /**
+     * A checkpoint on disk: the time it was taken and where the log was at that time.
+     */
+    private record CheckpointFile(long time, long logOffset, Path file) {
+    }
+
+    private final Path directory;
+    private final int checkpointEvery;
+    private final int keepCheckpoints;
+    private final Clock clock;
+    private final FileChannel log;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    // only touched by the thread changing the inventory
+    private final IntObjectMap<PartState> parts = new IntObjectMap<>();
+    private final IntObjectMap<ProductState> products = new IntObjectMap<>();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private long lastTime;
+    private int sinceCheckpoint;
+
+    // progress of the writer thread, guarded by this
+    private final List<CheckpointFile> checkpoints = new ArrayList<>();
+    private long queued;
+    private long durable;
+    private IOException failure;
+    private boolean closed;
+    private Consumer<IOException> onFailure = e ->
+            System.err.println("Inventory history failed, changes are no longer kept: " + e.getMessage());
+
+    private InventoryHistory(Path directory, int checkpointEvery, int keepCheckpoints, Clock clock) throws IOException {
+        this.directory = directory;
+        this.checkpointEvery = checkpointEvery;
+        this.keepCheckpoints = Math.max(2, keepCheckpoints);
+        this.clock = clock;
+        this.log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.writer = new Thread(this::writeLoop, "inventory-history");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Method to open the history in a directory and start recording every change. Any
+     * change made to the inventory while the history was closed is written first, and
+     * the first time the inventory as it is now is written as the first checkpoint.
+     * @param directory the directory holding the history files
+     * @return the open history
+     * @throws IOException if the files cannot be read or created
+     */
+    public static InventoryHistory open(Path directory) throws IOException {
+        return open(directory, DEFAULT_CHECKPOINT_EVERY, Clock.systemUTC());
+    }
+
+    /**
+     * Method to open the history in a directory.
+     * @param directory the directory holding the history files
+     * @param checkpointEvery number of events written between checkpoints
+     * @param clock gives the time of each change
+     * @return the open history
+     * @throws IOException if the files cannot be read or created
+     */
+    public static InventoryHistory open(Path directory, int checkpointEvery, Clock clock) throws IOException {
+        return open(directory, checkpointEvery, DEFAULT_KEEP_CHECKPOINTS, clock);
+    }
+
+    /**
+     * Method to open the history in a directory.
+     * @param directory the directory holding the history files
+     * @param checkpointEvery number of events written between checkpoints
+     * @param keepCheckpoints most checkpoints kept, at least 2
+     * @param clock gives the time of each change
+     * @return the open history
+     * @throws IOException if the files cannot be read or created
+     */
+    public static InventoryHistory open(Path directory, int checkpointEvery, int keepCheckpoints, Clock clock)
+            throws IOException {
+        Files.createDirectories(directory);
+        InventoryHistory history = new InventoryHistory(directory, checkpointEvery, keepCheckpoints, clock);
+        history.recover();
+        history.catchUp();
+        if (history.checkpoints.isEmpty()) {
+            history.lastTime = Math.max(history.lastTime, clock.millis());
+            history.checkpoint();
+        }
+        history.writer.start();
+        InventoryEngine.addObserver(history);
+        return history;
+    }
+
+    /**
+     * Method to set what is done when the writer fails. It is called once, on the writer
+     * thread, and no more changes are taken after it.
+     * @param onFailure handler given the error
+     */
+    public synchronized void setOnFailure(Consumer<IOException> onFailure) {
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * @return true if the writer failed and changes are no longer kept
+     */
+    public synchronized boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Method to wait until every change recorded so far is on disk.
+     * @throws IOException if the writer thread failed to write
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            long target = queued;
+            while (durable < target && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while flushing the history", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Method to stop recording changes. Waits for every queued change to be written,
+     * then closes the log.
+     * @throws IOException if the writer thread failed to write
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        InventoryEngine.removeObserver(this);
+        enqueue(STOP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Method to find a part as it was at a time.
+     * @param partID the ID of the part
+     * @param when the time to look at
+     * @return the part, or an empty Optional if it did not exist then or the time is
+     * before the history was started
+     * @throws IOException if the history cannot be read
+     */
+    public Optional<PartState> partAt(int partID, Instant when) throws IOException {
+        IntObjectMap<PartState> found = new IntObjectMap<>();
+        if (!replay(when, partID, found, Integer.MIN_VALUE, new IntObjectMap<>())) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(found.get(partID));
+    }
+
+    /**
+     * Method to find a product as it was at a time.
+     * @param productID the ID of the product
+     * @param when the time to look at
+     * @return the product, or an empty Optional if it did not exist then or the time is
+     * before the history was started
+     * @throws IOException if the history cannot be read
+     */
+    public Optional<ProductState> productAt(int productID, Instant when) throws IOException {
+        IntObjectMap<ProductState> found = new IntObjectMap<>();
+        if (!replay(when, Integer.MIN_VALUE, new IntObjectMap<>(), productID, found)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(found.get(productID));
+    }
+
+    /**
+     * Method to rebuild the whole inventory as it was at a time.
+     * @param when the time to look at
+     * @return every part and product then, or an empty Optional if the time is before
+     * the history was started
+     * @throws IOException if the history cannot be read
+     */
+    public Optional<State> stateAt(Instant when) throws IOException {
+        IntObjectMap<PartState> partsThen = new IntObjectMap<>();
+        IntObjectMap<ProductState> productsThen = new IntObjectMap<>();
+        if (!replay(when, null, partsThen, null, productsThen)) {
+            return Optional.empty();
+        }
+        List<PartState> partList = new ArrayList<>(partsThen.size());
+        partsThen.forEach(partList::add);
+        partList.sort(Comparator.comparingInt(PartState::id));
+        List<ProductState> productList = new ArrayList<>(productsThen.size());
+        productsThen.forEach(productList::add);
+        productList.sort(Comparator.comparingInt(ProductState::id));
+        return Optional.of(new State(partList, productList));
+    }
+
+    // loads the last checkpoint at or before the time, then applies the events after it
+    // up to the time. A null ID takes every item of that type, MIN_VALUE takes none.
+    private boolean replay(Instant when, Integer partID, IntObjectMap<PartState> partsThen,
+                           Integer productID, IntObjectMap<ProductState> productsThen) throws IOException {
+        flush();
+        long time = when.toEpochMilli();
+        CheckpointFile checkpoint;
+        while (true) {
+            checkpoint = null;
+            synchronized (this) {
+                for (CheckpointFile c : checkpoints) {
+                    if (c.time() <= time) {
+                        checkpoint = c;
+                    }
+                }
+            }
+            if (checkpoint == null) {
+                return false;
+            }
+            try {
+                readCheckpoint(checkpoint.file(), partID, partsThen, productID, productsThen);
+                break;
+            } catch (NoSuchFileException e) {
+                // deleted since it was picked, an earlier one is picked instead
+                synchronized (this) {
+                    if (checkpoints.contains(checkpoint)) {
+                        throw e;
+                    }
+                }
+                partsThen.clear();
+                productsThen.clear();
+            }
+        }
+        IntPredicate wantPart = partID == null ? id -> true : id -> id == partID;
+        IntPredicate wantProduct = productID == null ? id -> true : id -> id == productID;
+        readLog(checkpoint.logOffset(), checkpoint.time(), (changeTime, change) -> {
+            if (changeTime > time) {
+                return false;
+            }
+            apply(change, partsThen, wantPart, productsThen, wantProduct);
+            return true;
+        });
+        return true;
+    }
+
+    @Override
+    public void partAdded(Part part) {
+        PartState now = stateOf(part);
+        parts.put(now.id(), now);
+        begin();
+        writePart(PART_ADDED, now);
+        end();
+    }
+
+    @Override
+    public void partRemoved(Part part) {
+        partRemoved(part.getId());
+    }
+
+    private void partRemoved(int id) {
+        parts.remove(id);
+        begin();
+        writeEvent(PART_REMOVED, id);
+        end();
+    }
+
+    @Override
+    public void partReplaced(Part oldPart, Part newPart) {
+        partUpdated(newPart);
+    }
+
+    @Override
+    public void partUpdated(Part part) {
+        PartState now = stateOf(part);
+        PartState before = parts.put(now.id(), now);
+        begin();
+        if (before == null || before.inHouse() != now.inHouse()) {
+            writePart(PART_ADDED, now);
+        } else {
+            try {
+                int id = now.id();
+                if (!Objects.equals(before.name(), now.name())) {
+                    writeEvent(PART_NAME, id);
+                    writeString(out, now.name());
+                }
+                if (Double.compare(before.price(), now.price()) != 0) {
+                    writeEvent(PART_PRICE, id);
+                    out.writeDouble(now.price());
+                }
+                writeIntField(PART_STOCK, id, before.stock(), now.stock());
+                writeIntField(PART_MIN, id, before.min(), now.min());
+                writeIntField(PART_MAX, id, before.max(), now.max());
+                if (now.inHouse()) {
+                    writeIntField(PART_MACHINE_ID, id, before.machineID(), now.machineID());
+                } else if (!Objects.equals(before.companyName(), now.companyName())) {
+                    writeEvent(PART_COMPANY, id);
+                    writeString(out, now.companyName());
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        end();
+    }
+
+    @Override
+    public void productAdded(Product product) {
+        ProductState now = stateOf(product);
+        products.put(now.id(), now);
+        begin();
+        writeProduct(now);
+        end();
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        productRemoved(product.getId());
+    }
+
+    private void productRemoved(int id) {
+        products.remove(id);
+        begin();
+        writeEvent(PRODUCT_REMOVED, id);
+        end();
+    }
+
+    @Override
+    public void productReplaced(Product oldProduct, Product newProduct) {
+        productUpdated(newProduct);
+    }
+
+    @Override
+    public void productUpdated(Product product) {
+        ProductState now = stateOf(product);
+        ProductState before = products.put(now.id(), now);
+        begin();
+        if (before == null) {
+            writeProduct(now);
+        } else {
+            try {
+                int id = now.id();
+                if (!Objects.equals(before.name(), now.name())) {
+                    writeEvent(PRODUCT_NAME, id);
+                    writeString(out, now.name());
+                }
+                if (Double.compare(before.price(), now.price()) != 0) {
+                    writeEvent(PRODUCT_PRICE, id);
+                    out.writeDouble(now.price());
+                }
+                writeIntField(PRODUCT_STOCK, id, before.stock(), now.stock());
+                writeIntField(PRODUCT_MIN, id, before.min(), now.min());
+                writeIntField(PRODUCT_MAX, id, before.max(), now.max());
+                if (!Arrays.equals(before.partIDs(), now.partIDs())) {
+                    writeEvent(PRODUCT_PARTS, id);
+                    writeIDs(out, now.partIDs());
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        end();
+    }
+
+    // Writes the difference between what the history last saw and the inventory now,
+    // such as changes kept by the journal while the history could not be written. One
+    // pass over each list compares the items in place and notes their IDs, then the
+    // remembered items whose IDs were not seen are written as removed.
+    private void catchUp() {
+        IntIntMap seen = new IntIntMap(InventoryEngine.partInventory.size());
+        for (Part part : InventoryEngine.partInventory) {
+            seen.put(part.getId(), 1);
+            if (!samePart(part, parts.get(part.getId()))) {
+                partUpdated(part);
+            }
+        }
+        List<Integer> goneParts = new ArrayList<>();
+        parts.forEach(p -> {
+            if (!seen.containsKey(p.id())) {
+                goneParts.add(p.id());
+            }
+        });
+        goneParts.forEach(this::partRemoved);
+        seen.clear();
+        for (Product product : InventoryEngine.productInventory) {
+            seen.put(product.getId(), 1);
+            if (!sameProduct(product, products.get(product.getId()))) {
+                productUpdated(product);
+            }
+        }
+        List<Integer> goneProducts = new ArrayList<>();
+        products.forEach(p -> {
+            if (!seen.containsKey(p.id())) {
+                goneProducts.add(p.id());
+            }
+        });
+        goneProducts.forEach(this::productRemoved);
+    }
+
+    // compares a part with a state without copying it
+    private static boolean samePart(Part part, PartState state) {
+        if (state == null || part.getId() != state.id() || !Objects.equals(part.getName(), state.name())
+                || Double.compare(part.getPrice(), state.price()) != 0 || part.getStock() != state.stock()
+                || part.getMin() != state.min() || part.getMax() != state.max()) {
+            return false;
+        }
+        if (part instanceof InHousePart inHousePart) {
+            return state.inHouse() && inHousePart.GetMachineID() == state.machineID();
+        }
+        return !state.inHouse() && Objects.equals(((OutsourcedPart) part).GetCompanyName(), state.companyName());
+    }
+
+    // compares a product and the IDs of its parts with a state without copying them
+    private static boolean sameProduct(Product product, ProductState state) {
+        if (state == null || product.getId() != state.id() || !Objects.equals(product.getName(), state.name())
+                || Double.compare(product.getPrice(), state.price()) != 0 || product.getStock() != state.stock()
+                || product.getMin() != state.min() || product.getMax() != state.max()) {
+            return false;
+        }
+        int[] partIDs = state.partIDs();
+        int count = 0;
+        for (Part p : product.getAssociatedParts()) {
+            if (p != null) {
+                if (count == partIDs.length || partIDs[count] != p.getId()) {
+                    return false;
+                }
+                count++;
+            }
+        }
+        return count == partIDs.length;
+    }
+
+    // also used by the journal to copy the inventory for a snapshot
+    static PartState stateOf(Part part) {
+        if (part instanceof InHousePart inHousePart) {
+            return new PartState(part.getId(), part.getName(), part.getPrice(), part.getStock(),
+                    part.getMin(), part.getMax(), true, inHousePart.GetMachineID(), null);
+        }
+        return new PartState(part.getId(), part.getName(), part.getPrice(), part.getStock(),
+                part.getMin(), part.getMax(), false, 0, ((OutsourcedPart) part).GetCompanyName());
+    }
+
+    static ProductState stateOf(Product product) {
+        Part[] associated = product.getAssociatedParts().toArray(new Part[0]);
+        int[] partIDs = new int[associated.length];
+        int count = 0;
+        for (Part p : associated) {
+            if (p != null) {
+                partIDs[count++] = p.getId();
+            }
+        }
+        return new ProductState(product.getId(), product.getName(), product.getPrice(),
+                product.getStock(), product.getMin(), product.getMax(), Arrays.copyOf(partIDs, count));
+    }
+
+    // starts the events of one change. The events are written after the time, which is
+    // kept from going backwards so the log stays in order of time.
+    private void begin() {
+        bytes.reset();
+        long now = Math.max(lastTime, clock.millis());
+        try {
+            writeVarLong(out, now - lastTime);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        lastTime = now;
+    }
+
+    // frames the events of the change with its length and CRC and queues it, and a
+    // checkpoint once enough events have been written since the last one.
+    private void end() {
+        byte[] change = bytes.toByteArray();
+        ByteArrayOutputStream framed = new ByteArrayOutputStream(change.length + 9);
+        DataOutputStream data = new DataOutputStream(framed);
+        CRC32 crc = new CRC32();
+        crc.update(change);
+        try {
+            writeVarInt(data, change.length);
+            data.writeInt((int) crc.getValue());
+            data.write(change);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        enqueue(framed.toByteArray());
+        if (sinceCheckpoint >= checkpointEvery) {
+            checkpoint();
+        }
+    }
+
+    // asks the writer for a checkpoint of every part and product as they are now
+    private void checkpoint() {
+        sinceCheckpoint = 0;
+        enqueue(new Checkpoint(lastTime));
+    }
+
+    private void writeEvent(byte type, int id) {
+        sinceCheckpoint++;
+        try {
+            out.writeByte(type);
+            writeVarInt(out, id);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeIntField(byte type, int id, int before, int now) throws IOException {
+        if (before != now) {
+            writeEvent(type, id);
+            writeVarInt(out, zigZag(now));
+        }
+    }
+
+    private void writePart(byte type, PartState part) {
+        writeEvent(type, part.id());
+        try {
+            writePartFields(out, part);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeProduct(ProductState product) {
+        writeEvent(PRODUCT_ADDED, product.id());
+        try {
+            writeProductFields(out, product);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // queues an entry for the writer, or drops it once the writer has failed
+    private void enqueue(Object entry) {
+        synchronized (this) {
+            if (failure != null) {
+                return;
+            }
+            queued++;
+            queue.add(entry);
+        }
+    }
+
+    // body of the writer thread. Takes everything waiting in the queue, writes it and
+    // forces it to disk once for the whole group.
+    private void writeLoop() {
+        List<Object> group = new ArrayList<>();
+        List<ByteBuffer> buffers = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                group.add(queue.take());
+                queue.drainTo(group, MAX_GROUP - 1);
+                for (Object entry : group) {
+                    if (entry instanceof byte[] change) {
+                        buffers.add(ByteBuffer.wrap(change));
+                    } else if (entry instanceof Checkpoint checkpoint) {
+                        writeAll(buffers);
+                        writeCheckpoint(checkpoint);
+                    } else if (entry == STOP) {
+                        running = false;
+                    }
+                }
+                writeAll(buffers);
+                log.force(false);
+                synchronized (this) {
+                    durable += group.size();
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                Consumer<IOException> handler;
+                synchronized (this) {
+                    failure = e;
+                    queue.clear();
+                    handler = onFailure;
+                    notifyAll();
+                }
+                handler.accept(e);
+                return;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                group.clear();
+                buffers.clear();
+            }
+        }
+    }
+
+    private void writeAll(List<ByteBuffer> buffers) throws IOException {
+        if (buffers.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] array = buffers.toArray(new ByteBuffer[0]);
+        long remaining = 0;
+        for (ByteBuffer b : array) {
+            remaining += b.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= log.write(array);
+        }
+        buffers.clear();
+    }
+
+    // Writes a checkpoint named after the end of the log, so it is replayed from there.
+    // The items are the last checkpoint with every change written after it applied, which
+    // is every change queued before the checkpoint was asked for.
+    // Layout: a header, the part index and product index as (ID, offset) pairs sorted by
+    // ID, then the items encoded the same way as in the events.
+    private void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+        log.force(false);
+        long logOffset = log.position();
+        IntObjectMap<PartState> partsNow = new IntObjectMap<>();
+        IntObjectMap<ProductState> productsNow = new IntObjectMap<>();
+        CheckpointFile latest;
+        synchronized (this) {
+            latest = checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+        }
+        if (latest != null) {
+            readCheckpoint(latest.file(), null, partsNow, null, productsNow);
+        }
+        readLog(latest == null ? 0 : latest.logOffset(), latest == null ? 0 : latest.time(), (changeTime, change) -> {
+            apply(change, partsNow, id -> true, productsNow, id -> true);
+            return true;
+        });
+        PartState[] partArray = new PartState[partsNow.size()];
+        int[] at = {0};
+        partsNow.forEach(p -> partArray[at[0]++] = p);
+        ProductState[] productArray = new ProductState[productsNow.size()];
+        at[0] = 0;
+        productsNow.forEach(p -> productArray[at[0]++] = p);
+        Arrays.sort(partArray, Comparator.comparingInt(PartState::id));
+        Arrays.sort(productArray, Comparator.comparingInt(ProductState::id));
+
+        ByteArrayOutputStream itemBytes = new ByteArrayOutputStream();
+        DataOutputStream items = new DataOutputStream(itemBytes);
+        int[] partOffsets = new int[partArray.length];
+        for (int i = 0; i < partArray.length; i++) {
+            partOffsets[i] = items.size();
+            writePartFields(items, partArray[i]);
+        }
+        int[] productOffsets = new int[productArray.length];
+        for (int i = 0; i < productArray.length; i++) {
+            productOffsets[i] = items.size();
+            writeProductFields(items, productArray[i]);
+        }
+
+        ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE + 8 * (partArray.length + productArray.length));
+        head.putInt(MAGIC).putInt(VERSION).putInt(partArray.length).putInt(productArray.length)
+                .putLong(checkpoint.time()).putLong(logOffset);
+        for (int i = 0; i < partArray.length; i++) {
+            head.putInt(partArray[i].id()).putInt(partOffsets[i]);
+        }
+        for (int i = 0; i < productArray.length; i++) {
+            head.putInt(productArray[i].id()).putInt(productOffsets[i]);
+        }
+        head.flip();
+
+        Path file = directory.resolve(String.format("%s%020d%s", CHECKPOINT_PREFIX, logOffset, CHECKPOINT_SUFFIX));
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] sections = {head, ByteBuffer.wrap(itemBytes.toByteArray())};
+            long remaining = sections[0].remaining() + sections[1].remaining();
+            while (remaining > 0) {
+                remaining -= channel.write(sections);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        List<CheckpointFile> pruned;
+        synchronized (this) {
+            // a checkpoint at the same place in the log replaces the one written before it
+            checkpoints.removeIf(c -> c.logOffset() == logOffset);
+            checkpoints.add(new CheckpointFile(checkpoint.time(), logOffset, file));
+            pruned = prune();
+        }
+        delete(pruned);
+    }
+
+    // Drops checkpoints past the number kept, and returns them to be deleted. The first
+    // and the last stay, and the one whose removal leaves the shortest stretch of log
+    // between its neighbours goes first. Called holding the lock.
+    private List<CheckpointFile> prune() {
+        List<CheckpointFile> pruned = new ArrayList<>();
+        while (checkpoints.size() > keepCheckpoints) {
+            int shortest = 1;
+            for (int i = 2; i < checkpoints.size() - 1; i++) {
+                if (checkpoints.get(i + 1).logOffset() - checkpoints.get(i - 1).logOffset()
+                        < checkpoints.get(shortest + 1).logOffset() - checkpoints.get(shortest - 1).logOffset()) {
+                    shortest = i;
+                }
+            }
+            pruned.add(checkpoints.remove(shortest));
+        }
+        return pruned;
+    }
+
+    // a file that cannot be deleted now is found again and dropped at the next start
+    private static void delete(List<CheckpointFile> pruned) {
+        for (CheckpointFile c : pruned) {
+            try {
+                Files.deleteIfExists(c.file());
+            } catch (IOException e) {
+                System.err.println("Inventory history checkpoint could not be deleted: " + e.getMessage());
+            }
+        }
+    }
+
+    // Finds the checkpoints and reads the log after the last one, to find the time of
+    // the last change and to cut off a torn change at the end of the log.
+    private void recover() throws IOException {
+        List<CheckpointFile> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX)) {
+            for (Path file : files) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+                    if (channel.read(head, 0) == HEADER_SIZE && head.getInt(0) == MAGIC) {
+                        found.add(new CheckpointFile(head.getLong(16), head.getLong(24), file));
+                    }
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(CheckpointFile::logOffset));
+        // a checkpoint past the end of the log was written after a change that was lost
+        long logSize = log.size();
+        found.removeIf(c -> c.logOffset() > logSize);
+        List<CheckpointFile> pruned;
+        synchronized (this) {
+            checkpoints.addAll(found);
+            pruned = prune();
+        }
+        delete(pruned);
+
+        // what the history last saw: the last checkpoint and every change after it
+        CheckpointFile latest = checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+        long start = latest == null ? 0 : latest.logOffset();
+        long baseTime = latest == null ? 0 : latest.time();
+        if (latest != null) {
+            readCheckpoint(latest.file(), null, parts, null, products);
+        }
+        long[] last = {baseTime};
+        long valid = readLog(start, baseTime, (changeTime, change) -> {
+            last[0] = changeTime;
+            sinceCheckpoint += apply(change, parts, id -> true, products, id -> true);
+            return true;
+        });
+        if (valid < logSize) {
+            log.truncate(valid);
+            log.force(true);
+        }
+        log.position(valid);
+        lastTime = last[0];
+    }
+
+    /**
+     * Receives the changes read from the log.
+     */
+    private interface ChangeVisitor {
+        /**
+         * @param time the time of the change
+         * @param change the events of the change, after the time
+         * @return false to stop reading
+         * @throws IOException if the change cannot be applied
+         */
+        boolean visit(long time, ByteBuffer change) throws IOException;
+    }
+
+    // reads changes from the log starting at an offset, until the end, the first bad
+    // change or the visitor stops. Returns the offset after the last good change.
+    private long readLog(long offset, long baseTime, ChangeVisitor visitor) throws IOException {
+        long valid = offset;
+        long time = baseTime;
+        CRC32 crc = new CRC32();
+        FileChannel channel = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.READ);
+        try (InputStream stream = Channels.newInputStream(channel.position(offset))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+            while (true) {
+                byte[] change;
+                int lengthBytes;
+                try {
+                    long length = readVarInt(in);
+                    lengthBytes = varIntSize((int) length);
+                    int checksum = in.readInt();
+                    if (length < 1 || length > MAX_CHANGE) {
+                        break;
+                    }
+                    change = new byte[(int) length];
+                    in.readFully(change);
+                    crc.reset();
+                    crc.update(change);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(change);
+                time += readVarLong(buffer);
+                if (!visitor.visit(time, buffer)) {
+                    break;
+                }
+                valid += lengthBytes + 4 + change.length;
+            }
+        }
+        return valid;
+    }
+
+    // reads the items wanted from a checkpoint. A null ID reads every item of that type.
+    private static void readCheckpoint(Path file, Integer partID, IntObjectMap<PartState> partsThen,
+                                       Integer productID, IntObjectMap<ProductState> productsThen) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int partCount = buffer.getInt(8);
+        int productCount = buffer.getInt(12);
+        int partIndexAt = HEADER_SIZE;
+        int productIndexAt = partIndexAt + 8 * partCount;
+        int itemsAt = productIndexAt + 8 * productCount;
+        if (partID == null) {
+            for (int i = 0; i < partCount; i++) {
+                PartState part = readPartFields(buffer.position(itemsAt + buffer.getInt(partIndexAt + i * 8 + 4)), buffer.getInt(partIndexAt + i * 8));
+                partsThen.put(part.id(), part);
+            }
+        } else {
+            int i = findInIndex(buffer, partIndexAt, partCount, partID);
+            if (i >= 0) {
+                partsThen.put(partID, readPartFields(buffer.position(itemsAt + buffer.getInt(partIndexAt + i * 8 + 4)), partID));
+            }
+        }
+        if (productID == null) {
+            for (int i = 0; i < productCount; i++) {
+                ProductState product = readProductFields(buffer.position(itemsAt + buffer.getInt(productIndexAt + i * 8 + 4)), buffer.getInt(productIndexAt + i * 8));
+                productsThen.put(product.id(), product);
+            }
+        } else {
+            int i = findInIndex(buffer, productIndexAt, productCount, productID);
+            if (i >= 0) {
+                productsThen.put(productID, readProductFields(buffer.position(itemsAt + buffer.getInt(productIndexAt + i * 8 + 4)), productID));
+            }
+        }
+    }
+
+    // binary search of an (ID, offset) index, returns the entry or -1
+    private static int findInIndex(ByteBuffer buffer, int indexAt, int count, int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int found = buffer.getInt(indexAt + mid * 8);
+            if (found < id) {
+                low = mid + 1;
+            } else if (found > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // applies the events of one change to the items wanted, and returns how many there were
+    private static int apply(ByteBuffer in, IntObjectMap<PartState> partsThen, IntPredicate wantPart,
+                             IntObjectMap<ProductState> productsThen, IntPredicate wantProduct) throws IOException {
+        int events = 0;
+        while (in.hasRemaining()) {
+            events++;
+            byte type = in.get();
+            int id = readVarInt(in);
+            PartState part = type <= PART_COMPANY && wantPart.test(id) ? partsThen.get(id) : null;
+            ProductState product = type >= PRODUCT_ADDED && wantProduct.test(id) ? productsThen.get(id) : null;
+            switch (type) {
+                case PART_ADDED -> {
+                    PartState added = readPartFields(in, id);
+                    if (wantPart.test(id)) {
+                        partsThen.put(id, added);
+                    }
+                }
+                case PART_REMOVED -> {
+                    if (wantPart.test(id)) {
+                        partsThen.remove(id);
+                    }
+                }
+                case PART_NAME -> {
+                    String name = readString(in);
+                    if (part != null) {
+                        partsThen.put(id, new PartState(id, name, part.price(), part.stock(), part.min(),
+                                part.max(), part.inHouse(), part.machineID(), part.companyName()));
+                    }
+                }
+                case PART_PRICE -> {
+                    double price = in.getDouble();
+                    if (part != null) {
+                        partsThen.put(id, new PartState(id, part.name(), price, part.stock(), part.min(),
+                                part.max(), part.inHouse(), part.machineID(), part.companyName()));
+                    }
+                }
+                case PART_STOCK -> {
+                    int stock = unZigZag(readVarInt(in));
+                    if (part != null) {
+                        partsThen.put(id, new PartState(id, part.name(), part.price(), stock, part.min(),
+                                part.max(), part.inHouse(), part.machineID(), part.companyName()));
+                    }
+                }
+                case PART_MIN -> {
+                    int min = unZigZag(readVarInt(in));
+                    if (part != null) {
+                        partsThen.put(id, new PartState(id, part.name(), part.price(), part.stock(), min,
+                                part.max(), part.inHouse(), part.machineID(), part.companyName()));
+                    }
+                }
+                case PART_MAX -> {
+                    int max = unZigZag(readVarInt(in));
+                    if (part != null) {
+                        partsThen.put(id, new PartState(id, part.name(), part.price(), part.stock(), part.min(),
+                                max, part.inHouse(), part.machineID(), part.companyName()));
+                    }
+                }
+                case PART_MACHINE_ID -> {
+                    int machineID = unZigZag(readVarInt(in));
+                    if (part != null) {
+                        partsThen.put(id, new PartState(id, part.name(), part.price(), part.stock(), part.min(),
+                                part.max(), true, machineID, null));
+                    }
+                }
+                case PART_COMPANY -> {
+                    String company = readString(in);
+                    if (part != null) {
+                        partsThen.put(id, new PartState(id, part.name(), part.price(), part.stock(), part.min(),
+                                part.max(), false, 0, company));
+                    }
+                }
+                case PRODUCT_ADDED -> {
+                    ProductState added = readProductFields(in, id);
+                    if (wantProduct.test(id)) {
+                        productsThen.put(id, added);
+                    }
+                }
+                case PRODUCT_REMOVED -> {
+                    if (wantProduct.test(id)) {
+                        productsThen.remove(id);
+                    }
+                }
+                case PRODUCT_NAME -> {
+                    String name = readString(in);
+                    if (product != null) {
+                        productsThen.put(id, new ProductState(id, name, product.price(), product.stock(),
+                                product.min(), product.max(), product.partIDs()));
+                    }
+                }
+                case PRODUCT_PRICE -> {
+                    double price = in.getDouble();
+                    if (product != null) {
+                        productsThen.put(id, new ProductState(id, product.name(), price, product.stock(),
+                                product.min(), product.max(), product.partIDs()));
+                    }
+                }
+                case PRODUCT_STOCK -> {
+                    int stock = unZigZag(readVarInt(in));
+                    if (product != null) {
+                        productsThen.put(id, new ProductState(id, product.name(), product.price(), stock,
+                                product.min(), product.max(), product.partIDs()));
+                    }
+                }
+                case PRODUCT_MIN -> {
+                    int min = unZigZag(readVarInt(in));
+                    if (product != null) {
+                        productsThen.put(id, new ProductState(id, product.name(), product.price(), product.stock(),
+                                min, product.max(), product.partIDs()));
+                    }
+                }
+                case PRODUCT_MAX -> {
+                    int max = unZigZag(readVarInt(in));
+                    if (product != null) {
+                        productsThen.put(id, new ProductState(id, product.name(), product.price(), product.stock(),
+                                product.min(), max, product.partIDs()));
+                    }
+                }
+                case PRODUCT_PARTS -> {
+                    int[] partIDs = readIDs(in);
+                    if (product != null) {
+                        productsThen.put(id, new ProductState(id, product.name(), product.price(), product.stock(),
+                                product.min(), product.max(), partIDs));
+                    }
+                }
+                default -> throw new IOException("Unknown history event type " + type);
+            }
+        }
+        return events;
+    }
+
+    // Item fields, as written in PART_ADDED and PRODUCT_ADDED events and in checkpoints.
+    // The ID is written before them.
+
+    private static void writePartFields(DataOutputStream out, PartState part) throws IOException {
+        writeString(out, part.name());
+        out.writeDouble(part.price());
+        writeVarInt(out, zigZag(part.stock()));
+        writeVarInt(out, zigZag(part.min()));
+        writeVarInt(out, zigZag(part.max()));
+        out.writeBoolean(part.inHouse());
+        if (part.inHouse()) {
+            writeVarInt(out, zigZag(part.machineID()));
+        } else {
+            writeString(out, part.companyName());
+        }
+    }
+
+    private static PartState readPartFields(ByteBuffer in, int id) {
+        String name = readString(in);
+        double price = in.getDouble();
+        int stock = unZigZag(readVarInt(in));
+        int min = unZigZag(readVarInt(in));
+        int max = unZigZag(readVarInt(in));
+        if (in.get() != 0) {
+            return new PartState(id, name, price, stock, min, max, true, unZigZag(readVarInt(in)), null);
+        }
+        return new PartState(id, name, price, stock, min, max, false, 0, readString(in));
+    }
+
+    private static void writeProductFields(DataOutputStream out, ProductState product) throws IOException {
+        writeString(out, product.name());
+        out.writeDouble(product.price());
+        writeVarInt(out, zigZag(product.stock()));
+        writeVarInt(out, zigZag(product.min()));
+        writeVarInt(out, zigZag(product.max()));
+        writeIDs(out, product.partIDs());
+    }
+
+    private static ProductState readProductFields(ByteBuffer in, int id) {
+        String name = readString(in);
+        double price = in.getDouble();
+        int stock = unZigZag(readVarInt(in));
+        int min = unZigZag(readVarInt(in));
+        int max = unZigZag(readVarInt(in));
+        return new ProductState(id, name, price, stock, min, max, readIDs(in));
+    }
+
+    private static void writeIDs(DataOutputStream out, int[] ids) throws IOException {
+        writeVarInt(out, ids.length);
+        for (int id : ids) {
+            writeVarInt(out, id);
+        }
+    }
+
+    private static int[] readIDs(ByteBuffer in) {
+        int[] ids = new int[readVarInt(in)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = readVarInt(in);
+        }
+        return ids;
+    }
+
+    // strings are written as their UTF-8 length plus one, 0 for a null string
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, utf8.length + 1);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    // Numbers are written 7 bits to a byte, low bits first, with the top bit set on
+    // every byte but the last. Signed fields are zig zag encoded first so small
+    // negative numbers stay small.
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long readVarInt(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
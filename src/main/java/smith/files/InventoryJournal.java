@@ -0,0 +1,648 @@
+package smith.files;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import smith.files.InventoryHistory.PartState;
+import smith.files.InventoryHistory.ProductState;
+import static smith.files.InventoryEngine.partInventory;
+import static smith.files.InventoryEngine.productInventory;
+
+/**
+ * The InventoryJournal class saves the inventory to disk so it survives a restart. Every
+ * add, delete and update of a part or product is written as a record to an append only
+ * journal file. Each record starts with its length and a CRC32 of its contents, so a
+ * record cut off by a crash is found and dropped when the journal is read back.
+ *
+ * Records are written by a background thread. The thread that changes the inventory
+ * (normally the JavaFX thread) only encodes the record and puts it in a queue, and the
+ * writer thread writes everything waiting in the queue and forces it to disk once for
+ * the whole group. After a set number of records the writer saves an InventorySnapshot
+ * and empties the journal, so the journal does not grow forever. The writer builds the
+ * snapshot from the last snapshot and the journal on disk, the same way the inventory
+ * is read back at startup, so the thread changing the inventory never copies it.
+ *
+ * If the writer fails to write, the journal stops taking records, since nothing after a
+ * lost record could be read back correctly. The failure is passed to the handler set
+ * with setOnFailure, which the program uses to tell the user.
+ */
+public class InventoryJournal implements InventoryObserver, AutoCloseable {
+
+    // record types
+    static final byte ADD_PART = 1;
+    static final byte DELETE_PART = 2;
+    static final byte UPDATE_PART = 3;
+    static final byte ADD_PRODUCT = 4;
+    static final byte DELETE_PRODUCT = 5;
+    static final byte UPDATE_PRODUCT = 6;
+
+    // part types
+    static final byte IN_HOUSE = 1;
+    static final byte OUTSOURCED = 2;
+
+    // file names inside the journal directory
+    static final String JOURNAL_FILE = "journal.log";
+    static final String SNAPSHOT_FILE = "snapshot.dat";
+
+    // length and CRC in front of every record
+    private static final int RECORD_HEADER = 8;
+    // largest record that is believed when reading, anything bigger is a torn write
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+    // most records written in one group before forcing to disk
+    private static final int MAX_GROUP = 4096;
+    // default number of records between snapshots
+    private static final int DEFAULT_COMPACT_EVERY = 50_000;
+
+    // marker put on the queue by close
+    private static final Object STOP = new Object();
+
+    /**
+     * What the snapshot and journal in a directory hold, read back in order.
+     * @param parts the parts
+     * @param products the products, without their associated parts
+     * @param productParts the IDs of the parts each product uses, by product position
+     * @param journalLength the number of journal bytes that hold good records
+     */
+    private record Saved(List<Part> parts, List<Product> products, List<int[]> productParts, long journalLength) {
+    }
+
+    private final Path directory;
+    private final int compactEvery;
+    private final FileChannel journal;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    // only touched by the writer thread
+    private int sinceSnapshot;
+
+    // progress of the writer thread, guarded by this
+    private long queued;
+    private long durable;
+    private IOException failure;
+    private boolean closed;
+    private Consumer<IOException> onFailure = e ->
+            System.err.println("Inventory journal failed, changes are no longer saved: " + e.getMessage());
+
+    private InventoryJournal(Path directory, int compactEvery) throws IOException {
+        this.directory = directory;
+        this.compactEvery = compactEvery;
+        this.journal = FileChannel.open(directory.resolve(JOURNAL_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.journal.position(journal.size());
+        this.writer = new Thread(this::writeLoop, "inventory-journal");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Method to open the journal in a directory. The snapshot and journal found there are
+     * read back into the Inventory, then the journal starts recording every change.
+     * @param directory the directory holding the journal files
+     * @return the open journal
+     * @throws IOException if the files cannot be read or created
+     */
+    public static InventoryJournal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_COMPACT_EVERY);
+    }
+
+    /**
+     * Method to open the journal in a directory.
+     * @param directory the directory holding the journal files
+     * @param compactEvery number of records written between snapshots
+     * @return the open journal
+     * @throws IOException if the files cannot be read or created
+     */
+    public static InventoryJournal open(Path directory, int compactEvery) throws IOException {
+        Files.createDirectories(directory);
+        recover(directory);
+        InventoryJournal journal = new InventoryJournal(directory, compactEvery);
+        journal.writer.start();
+        InventoryEngine.addObserver(journal);
+        return journal;
+    }
+
+    /**
+     * Method to set what is done when the writer fails. It is called once, on the writer
+     * thread, and no more records are taken after it.
+     * @param onFailure handler given the error
+     */
+    public synchronized void setOnFailure(Consumer<IOException> onFailure) {
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * @return true if the writer failed and changes are no longer saved
+     */
+    public synchronized boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Method to wait until every record queued so far is on disk.
+     * @throws IOException if the writer thread failed to write
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            long target = queued;
+            while (durable < target && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while flushing the journal", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Method to stop recording changes. Waits for every queued record to be written,
+     * then closes the journal file.
+     * @throws IOException if the writer thread failed to write
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        InventoryEngine.removeObserver(this);
+        enqueue(STOP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    @Override
+    public void partAdded(Part part) {
+        enqueue(encodePart(ADD_PART, part));
+    }
+
+    @Override
+    public void partRemoved(Part part) {
+        enqueue(encodeID(DELETE_PART, part.getId()));
+    }
+
+    @Override
+    public void partReplaced(Part oldPart, Part newPart) {
+        enqueue(encodePart(UPDATE_PART, newPart));
+    }
+
+    @Override
+    public void partUpdated(Part part) {
+        enqueue(encodePart(UPDATE_PART, part));
+    }
+
+    @Override
+    public void productAdded(Product product) {
+        enqueue(encodeProduct(ADD_PRODUCT, product));
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        enqueue(encodeID(DELETE_PRODUCT, product.getId()));
+    }
+
+    @Override
+    public void productReplaced(Product oldProduct, Product newProduct) {
+        enqueue(encodeProduct(UPDATE_PRODUCT, newProduct));
+    }
+
+    @Override
+    public void productUpdated(Product product) {
+        enqueue(encodeProduct(UPDATE_PRODUCT, product));
+    }
+
+    // queues an entry for the writer. Returns false, dropping the entry, once the writer
+    // has failed, so the queue does not grow with records that will never be written.
+    private boolean enqueue(Object entry) {
+        synchronized (this) {
+            if (failure != null) {
+                return false;
+            }
+            queued++;
+            queue.add(entry);
+        }
+        return true;
+    }
+
+    // body of the writer thread. Takes everything waiting in the queue, writes it and
+    // forces it to disk once for the whole group.
+    private void writeLoop() {
+        List<Object> group = new ArrayList<>();
+        List<ByteBuffer> buffers = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                group.add(queue.take());
+                queue.drainTo(group, MAX_GROUP - 1);
+                for (Object entry : group) {
+                    if (entry instanceof byte[] record) {
+                        buffers.add(ByteBuffer.wrap(record));
+                        if (++sinceSnapshot >= compactEvery) {
+                            sinceSnapshot = 0;
+                            writeAll(buffers);
+                            writeSnapshot();
+                        }
+                    } else if (entry == STOP) {
+                        running = false;
+                    }
+                }
+                writeAll(buffers);
+                journal.force(false);
+                synchronized (this) {
+                    durable += group.size();
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                Consumer<IOException> handler;
+                synchronized (this) {
+                    failure = e;
+                    queue.clear();
+                    handler = onFailure;
+                    notifyAll();
+                }
+                handler.accept(e);
+                return;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                group.clear();
+                buffers.clear();
+            }
+        }
+    }
+
+    private void writeAll(List<ByteBuffer> buffers) throws IOException {
+        if (buffers.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] array = buffers.toArray(new ByteBuffer[0]);
+        long remaining = 0;
+        for (ByteBuffer b : array) {
+            remaining += b.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= journal.write(array);
+        }
+        buffers.clear();
+    }
+
+    // Saves every part and product to a new snapshot, then empties the journal. The
+    // items are read back from the last snapshot and the records written since, which
+    // are every record up to this one. The snapshot is written to a temporary file and
+    // moved into place so a crash never leaves half a snapshot. If the program stops
+    // between the move and emptying the journal, the old records are applied again on
+    // top of the snapshot, which gives the same result because every record replaces or
+    // removes by ID.
+    private void writeSnapshot() throws IOException {
+        Saved saved = read(directory);
+        List<PartState> parts = new ArrayList<>(saved.parts().size());
+        for (Part part : saved.parts()) {
+            parts.add(InventoryHistory.stateOf(part));
+        }
+        List<ProductState> products = new ArrayList<>(saved.products().size());
+        for (int i = 0; i < saved.products().size(); i++) {
+            Product product = saved.products().get(i);
+            products.add(new ProductState(product.getId(), product.getName(), product.getPrice(),
+                    product.getStock(), product.getMin(), product.getMax(), saved.productParts().get(i)));
+        }
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        InventorySnapshot.writeStates(temp, parts, products);
+        Files.move(temp, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        journal.truncate(0);
+        journal.position(0);
+        journal.force(true);
+    }
+
+    // Reads the snapshot and then the journal back into the Inventory. A torn or corrupt
+    // record at the end of the journal is cut off. Associations are linked last, since a
+    // product can be saved before a part it uses, and the inventory lists are filled
+    // once at the end.
+    private static void recover(Path directory) throws IOException {
+        Saved saved = read(directory);
+        Path log = directory.resolve(JOURNAL_FILE);
+        if (Files.exists(log) && saved.journalLength() < Files.size(log)) {
+            try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+                channel.truncate(saved.journalLength());
+                channel.force(true);
+            }
+        }
+        IntObjectMap<Part> partsByID = new IntObjectMap<>(saved.parts().size());
+        for (Part part : saved.parts()) {
+            partsByID.put(part.getId(), part);
+        }
+        for (int i = 0; i < saved.products().size(); i++) {
+            List<Part> associated = saved.products().get(i).getAssociatedParts();
+            for (int partID : saved.productParts().get(i)) {
+                Part part = partsByID.get(partID);
+                if (part != null) {
+                    associated.add(part);
+                }
+            }
+        }
+        partInventory.setAll(saved.parts());
+        productInventory.setAll(saved.products());
+    }
+
+    // Reads the items in the snapshot and the journal of a directory. The records are
+    // applied to maps keyed by ID, and the IDs they delete are noted. Then the snapshot
+    // rows are read once in order: a row the journal replaced takes the journal's item in
+    // its place, a row it deleted is skipped and every other row is built straight from
+    // the mapped file. Items the journal added follow the snapshot rows.
+    private static Saved read(Path directory) throws IOException {
+        Map<Integer, Part> parts = new LinkedHashMap<>();
+        Map<Integer, Product> products = new LinkedHashMap<>();
+        Map<Integer, int[]> associations = new LinkedHashMap<>();
+        IntIntMap deletedParts = new IntIntMap();
+        IntIntMap deletedProducts = new IntIntMap();
+
+        long journalLength = 0;
+        Path log = directory.resolve(JOURNAL_FILE);
+        if (Files.exists(log)) {
+            journalLength = readRecords(log, parts, products, associations, deletedParts, deletedProducts);
+        }
+
+        List<Part> partList = new ArrayList<>();
+        List<Product> productList = new ArrayList<>();
+        List<int[]> productParts = new ArrayList<>();
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotFile)) {
+            InventorySnapshot snapshot = InventorySnapshot.open(snapshotFile);
+            try {
+                partList = new ArrayList<>(snapshot.partCount() + parts.size());
+                for (int row = 0; row < snapshot.partCount(); row++) {
+                    int id = snapshot.partID(row);
+                    if (deletedParts.containsKey(id)) {
+                        continue;
+                    }
+                    Part replaced = parts.remove(id);
+                    partList.add(replaced != null ? replaced : snapshot.readPart(row));
+                }
+                productList = new ArrayList<>(snapshot.productCount() + products.size());
+                for (int row = 0; row < snapshot.productCount(); row++) {
+                    int id = snapshot.productID(row);
+                    if (deletedProducts.containsKey(id)) {
+                        continue;
+                    }
+                    Product replaced = products.remove(id);
+                    productList.add(replaced != null ? replaced : snapshot.readProduct(row));
+                    productParts.add(replaced != null ? associations.get(id) : snapshot.associatedPartIDs(row));
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        partList.addAll(parts.values());
+        for (Product product : products.values()) {
+            productList.add(product);
+            productParts.add(associations.get(product.getId()));
+        }
+        return new Saved(partList, productList, productParts, journalLength);
+    }
+
+    // reads records from a file until the end or the first bad record.
+    // returns the number of bytes that held good records.
+    private static long readRecords(Path file, Map<Integer, Part> parts, Map<Integer, Product> products,
+                                    Map<Integer, int[]> associations, IntIntMap deletedParts,
+                                    IntIntMap deletedProducts) throws IOException {
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length < 1 || length > MAX_RECORD) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                apply(payload, parts, products, associations, deletedParts, deletedProducts);
+                valid += RECORD_HEADER + payload.length;
+            }
+        }
+        return valid;
+    }
+
+    // applies one record. A delete is noted by ID, so an item the snapshot holds is left
+    // out, and an item added again after it follows the snapshot rows like any new item.
+    private static void apply(byte[] payload, Map<Integer, Part> parts, Map<Integer, Product> products,
+                              Map<Integer, int[]> associations, IntIntMap deletedParts,
+                              IntIntMap deletedProducts) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case ADD_PART, UPDATE_PART -> {
+                Part part = readPart(in);
+                parts.put(part.getId(), part);
+            }
+            case DELETE_PART -> {
+                int id = in.readInt();
+                parts.remove(id);
+                deletedParts.put(id, 1);
+            }
+            case ADD_PRODUCT, UPDATE_PRODUCT -> {
+                Product product = readProduct(in);
+                int[] partIDs = new int[in.readInt()];
+                for (int i = 0; i < partIDs.length; i++) {
+                    partIDs[i] = in.readInt();
+                }
+                products.put(product.getId(), product);
+                associations.put(product.getId(), partIDs);
+            }
+            case DELETE_PRODUCT -> {
+                int id = in.readInt();
+                products.remove(id);
+                associations.remove(id);
+                deletedProducts.put(id, 1);
+            }
+            default -> throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    // Builds a record for a part: type, part type, fields, then the machine ID or company name.
+    static byte[] encodePart(byte type, Part part) {
+        RecordWriter out = new RecordWriter(type);
+        try {
+            if (part instanceof InHousePart inHousePart) {
+                out.data.writeByte(IN_HOUSE);
+                writeFields(out.data, part.getId(), part.getName(), part.getPrice(),
+                        part.getStock(), part.getMin(), part.getMax());
+                out.data.writeInt(inHousePart.GetMachineID());
+            } else {
+                out.data.writeByte(OUTSOURCED);
+                writeFields(out.data, part.getId(), part.getName(), part.getPrice(),
+                        part.getStock(), part.getMin(), part.getMax());
+                writeString(out.data, ((OutsourcedPart) part).GetCompanyName());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.finish();
+    }
+
+    // Builds a record for a product: type, fields, then the IDs of the associated parts.
+    static byte[] encodeProduct(byte type, Product product) {
+        RecordWriter out = new RecordWriter(type);
+        try {
+            writeFields(out.data, product.getId(), product.getName(), product.getPrice(),
+                    product.getStock(), product.getMin(), product.getMax());
+            // the list is copied once, then the null entries are skipped
+            Part[] associated = product.getAssociatedParts().toArray(new Part[0]);
+            int count = 0;
+            for (Part p : associated) {
+                if (p != null) {
+                    count++;
+                }
+            }
+            out.data.writeInt(count);
+            for (Part p : associated) {
+                if (p != null) {
+                    out.data.writeInt(p.getId());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.finish();
+    }
+
+    static byte[] encodeID(byte type, int id) {
+        RecordWriter out = new RecordWriter(type);
+        try {
+            out.data.writeInt(id);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.finish();
+    }
+
+    static Part readPart(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        int id = in.readInt();
+        String name = readString(in);
+        double price = in.readDouble();
+        int stock = in.readInt();
+        int min = in.readInt();
+        int max = in.readInt();
+        if (kind == IN_HOUSE) {
+            return new InHousePart(id, name, price, stock, min, max, in.readInt());
+        }
+        return new OutsourcedPart(id, name, price, stock, min, max, readString(in));
+    }
+
+    static Product readProduct(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        String name = readString(in);
+        double price = in.readDouble();
+        int stock = in.readInt();
+        int min = in.readInt();
+        int max = in.readInt();
+        return new Product(id, name, price, stock, min, max);
+    }
+
+    private static void writeFields(DataOutputStream out, int id, String name, double price,
+                                    int stock, int min, int max) throws IOException {
+        out.writeInt(id);
+        writeString(out, name);
+        out.writeDouble(price);
+        out.writeInt(stock);
+        out.writeInt(min);
+        out.writeInt(max);
+    }
+
+    // a string is its length in UTF-8 bytes then the bytes, or -1 for null. Unlike
+    // writeUTF this has no 64KB limit.
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new EOFException("String runs past the end of the record");
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Collects the payload of one record, then frames it with its length and CRC.
+     */
+    private static class RecordWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream data = new DataOutputStream(bytes);
+
+        RecordWriter(byte type) {
+            // room for the length and CRC, filled in by finish
+            bytes.write(new byte[RECORD_HEADER], 0, RECORD_HEADER);
+            try {
+                data.writeByte(type);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        byte[] finish() {
+            byte[] record = bytes.toByteArray();
+            int length = record.length - RECORD_HEADER;
+            CRC32 crc = new CRC32();
+            crc.update(record, RECORD_HEADER, length);
+            ByteBuffer.wrap(record).putInt(length).putInt((int) crc.getValue());
+            return record;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package smith.files;
+
+import javafx.collections.ModifiableObservableListBase;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The InventoryList class is the observable list that holds the parts or the products.
+ * It works like FXCollections.observableArrayList, with a few differences that matter for
+ * big lists.
+ *
+ * Adding or removing many items at once is reported as one change, and clearing the list
+ * does not remove the items one at a time.
+ *
+ * A batch of adds, removes and replacements can be applied in one pass over the list with
+ * applyBatch. The listeners then get a single change for the whole batch, so a table
+ * bound to the list lays itself out once instead of once per item.
+ *
+ * Finding where an item is does not walk the list. Items are kept in slots that do not
+ * move when an item before them is removed: the slot is only left empty. A Fenwick tree
+ * counts the filled slots, so the place of a slot in the list and the slot at a place are
+ * both found in O(log n), and a map keeps the slot of each item. indexOf, remove and set of an
+ * item are O(log n) instead of a scan. The slots are packed again once more than half of
+ * them are empty, and putting an item between two others packs them as well.
+ * @param <T> the type of item in the list
+ */
+public class InventoryList<T> extends ModifiableObservableListBase<T> {
+
+    // fewest empty slots before the slots are packed
+    private static final int MIN_PACK = 1024;
+
+    // the items by slot, null where an item was removed
+    private Object[] slots = new Object[16];
+    // slots used so far, filled or empty
+    private int used;
+    private int size;
+    // Fenwick tree over the slots, 1 for a filled slot. tree[i] covers the slots before
+    // i, back to i less its lowest set bit.
+    private int[] tree = new int[17];
+    // the slot of each item
+    private final HashMap<T, Integer> slotOf = new HashMap<>();
+    // set once two equal items are in the list, then indexOf walks the list as before
+    private boolean shared;
+    // the last place looked up and its slot, so reading the list in order does not search
+    private int lastIndex = -1;
+    private int lastSlot;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) slots[slotAt(index)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (shared) {
+            return super.indexOf(o);
+        }
+        Integer slot = slotOf.get(o);
+        return slot == null ? -1 : rank(slot);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return shared ? super.lastIndexOf(o) : indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    protected void doAdd(int index, T element) {
+        if (index == size) {
+            append(element);
+            return;
+        }
+        // the slots have no room in the middle, so they are packed with the item put in
+        List<T> items = new ArrayList<>(size + 1);
+        for (int i = 0; i < index; i++) {
+            items.add(get(i));
+        }
+        items.add(element);
+        for (int i = index; i < size; i++) {
+            items.add(get(i));
+        }
+        rebuild(items);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected T doSet(int index, T element) {
+        int slot = slotAt(index);
+        T old = (T) slots[slot];
+        forget(old, slot);
+        slots[slot] = element;
+        remember(element, slot);
+        return old;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected T doRemove(int index) {
+        int slot = slotAt(index);
+        T old = (T) slots[slot];
+        forget(old, slot);
+        slots[slot] = null;
+        add(slot, -1);
+        size--;
+        lastIndex = -1;
+        if (used - size >= MIN_PACK && used - size > size) {
+            rebuild(items());
+        }
+        return old;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        if (c.isEmpty()) {
+            return false;
+        }
+        beginChange();
+        int from = size;
+        for (T item : c) {
+            append(item);
+        }
+        nextAdd(from, size);
+        endChange();
+        return true;
+    }
+
+    @Override
+    public boolean setAll(Collection<? extends T> col) {
+        beginChange();
+        if (size > 0) {
+            nextRemove(0, items());
+        }
+        rebuild(new ArrayList<>(col));
+        if (size > 0) {
+            nextAdd(0, size);
+        }
+        endChange();
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex == toIndex) {
+            return;
+        }
+        beginChange();
+        List<T> items = items();
+        List<T> range = items.subList(fromIndex, toIndex);
+        nextRemove(fromIndex, new ArrayList<>(range));
+        range.clear();
+        rebuild(items);
+        endChange();
+    }
+
+    /**
+     * Method to apply many changes at once. The list is walked once: removed items are
+     * dropped, replaced items are swapped in place and new items are added at the end.
+     * Listeners get one change holding every part of the batch.
+     * @param removed items to remove, found by identity
+     * @param replaced items to swap, from the item in the list to the item that takes its place
+     * @param added items to add at the end
+     */
+    void applyBatch(Set<T> removed, Map<T, T> replaced, List<T> added) {
+        applyBatch(removed, replaced, List.of(), added);
+    }
+
+    /**
+     * Method to apply many changes at once, putting some new items in at a place. The
+     * places are counted after the removals, with the items at lower places already in,
+     * and a place past the end puts the item at the end.
+     * @param removed items to remove, found by identity
+     * @param replaced items to swap, from the item in the list to the item that takes its place
+     * @param placed items to put in, with their places, lowest place first
+     * @param added items to add at the end
+     */
+    void applyBatch(Set<T> removed, Map<T, T> replaced, List<Map.Entry<Integer, T>> placed, List<T> added) {
+        if (removed.isEmpty() && replaced.isEmpty() && placed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+        beginChange();
+        if (!removed.isEmpty() || !replaced.isEmpty() || !placed.isEmpty()) {
+            // kept.size() is the index of the next kept item, which is also its index once
+            // every earlier removal has been reported
+            List<T> kept = new ArrayList<>(size);
+            List<T> run = new ArrayList<>();
+            for (T item : items()) {
+                if (removed.contains(item)) {
+                    run.add(item);
+                    continue;
+                }
+                if (!run.isEmpty()) {
+                    nextRemove(kept.size(), run);
+                    run = new ArrayList<>();
+                }
+                T replacement = replaced.get(item);
+                if (replacement != null) {
+                    nextSet(kept.size(), item);
+                    kept.add(replacement);
+                } else {
+                    kept.add(item);
+                }
+            }
+            if (!run.isEmpty()) {
+                nextRemove(kept.size(), run);
+            }
+            rebuild(placed.isEmpty() ? kept : insert(kept, placed));
+        }
+        if (!added.isEmpty()) {
+            int from = size;
+            for (T item : added) {
+                append(item);
+            }
+            nextAdd(from, size);
+        }
+        endChange();
+    }
+
+    // merges the placed items into the kept ones, reporting each add lowest place first
+    private List<T> insert(List<T> kept, List<Map.Entry<Integer, T>> placed) {
+        List<T> merged = new ArrayList<>(kept.size() + placed.size());
+        int next = 0;
+        for (Map.Entry<Integer, T> entry : placed) {
+            while (merged.size() < entry.getKey() && next < kept.size()) {
+                merged.add(kept.get(next++));
+            }
+            nextAdd(merged.size(), merged.size() + 1);
+            merged.add(entry.getValue());
+        }
+        merged.addAll(kept.subList(next, kept.size()));
+        return merged;
+    }
+
+    // the items in order
+    @SuppressWarnings("unchecked")
+    private List<T> items() {
+        List<T> items = new ArrayList<>(size);
+        for (int slot = 0; slot < used; slot++) {
+            if (slots[slot] != null) {
+                items.add((T) slots[slot]);
+            }
+        }
+        return items;
+    }
+
+    private void append(T item) {
+        if (used == slots.length) {
+            if (used - size >= MIN_PACK) {
+                rebuild(items());
+            }
+            if (used == slots.length) {
+                grow(slots.length * 2);
+            }
+        }
+        int slot = used++;
+        slots[slot] = item;
+        add(slot, 1);
+        size++;
+        remember(item, slot);
+    }
+
+    // puts the items in the first slots, with no empty slots between them
+    private void rebuild(List<T> items) {
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, items.size())) * 2);
+        slots = new Object[capacity];
+        tree = new int[capacity + 1];
+        slotOf.clear();
+        shared = false;
+        used = 0;
+        size = 0;
+        for (T item : items) {
+            slots[used] = item;
+            remember(item, used);
+            used++;
+        }
+        size = used;
+        build();
+        lastIndex = -1;
+    }
+
+    private void grow(int capacity) {
+        slots = Arrays.copyOf(slots, capacity);
+        tree = new int[capacity + 1];
+        build();
+    }
+
+    // builds the Fenwick tree from the slots in one pass
+    private void build() {
+        Arrays.fill(tree, 0);
+        for (int i = 1; i < tree.length; i++) {
+            if (i - 1 < used && slots[i - 1] != null) {
+                tree[i]++;
+            }
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void remember(T item, int slot) {
+        if (slotOf.put(item, slot) != null) {
+            shared = true;
+        }
+    }
+
+    private void forget(T item, int slot) {
+        Integer at = slotOf.get(item);
+        if (at != null && at == slot) {
+            slotOf.remove(item);
+        }
+    }
+
+    private void add(int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // the place in the list of a filled slot, the number of filled slots before it
+    private int rank(int slot) {
+        int count = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    // the slot holding the item at a place in the list
+    private int slotAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        if (index == lastIndex) {
+            return lastSlot;
+        }
+        int slot;
+        if (index == lastIndex + 1 && lastIndex >= 0) {
+            // the next filled slot after the last one, usually the one right after it
+            slot = lastSlot + 1;
+            while (slots[slot] == null) {
+                slot++;
+            }
+        } else {
+            // walks down the tree to the slot with index filled slots before it
+            slot = 0;
+            int left = index;
+            for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+                int next = slot + step;
+                if (next < tree.length && tree[next] <= left) {
+                    slot = next;
+                    left -= tree[next];
+                }
+            }
+        }
+        lastIndex = index;
+        lastSlot = slot;
+        return slot;
+    }
+}
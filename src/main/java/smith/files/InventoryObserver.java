@@ -0,0 +1,69 @@
+package smith.files;
+
+/**
+ * The InventoryObserver interface is told about every change made to the parts and
+ * products in the Inventory. This covers parts and products being added or removed from
+ * the inventory lists, as well as a setter being called on a part or product that is in
+ * the inventory. Each method does nothing by default so an observer only needs to
+ * override the changes it cares about.
+ */
+public interface InventoryObserver {
+
+    /**
+     * Called after a part is added to the inventory.
+     * @param part the part that was added
+     */
+    default void partAdded(Part part) {}
+
+    /**
+     * Called after a part is removed from the inventory.
+     * @param part the part that was removed
+     */
+    default void partRemoved(Part part) {}
+
+    /**
+     * Called after a part in the inventory is swapped for another part with the same ID,
+     * such as by Inventory.UpdatePart.
+     * @param oldPart the part that was replaced
+     * @param newPart the part that took its place
+     */
+    default void partReplaced(Part oldPart, Part newPart) {
+        partRemoved(oldPart);
+        partAdded(newPart);
+    }
+
+    /**
+     * Called after a field of a part in the inventory is changed.
+     * @param part the part that was changed
+     */
+    default void partUpdated(Part part) {}
+
+    /**
+     * Called after a product is added to the inventory.
+     * @param product the product that was added
+     */
+    default void productAdded(Product product) {}
+
+    /**
+     * Called after a product is removed from the inventory.
+     * @param product the product that was removed
+     */
+    default void productRemoved(Product product) {}
+
+    /**
+     * Called after a product in the inventory is swapped for another product with the
+     * same ID, such as by Inventory.UpdateProduct.
+     * @param oldProduct the product that was replaced
+     * @param newProduct the product that took its place
+     */
+    default void productReplaced(Product oldProduct, Product newProduct) {
+        productRemoved(oldProduct);
+        productAdded(newProduct);
+    }
+
+    /**
+     * Called after a field or the associated parts of a product in the inventory is changed.
+     * @param product the product that was changed
+     */
+    default void productUpdated(Product product) {}
+}
@@ -0,0 +1,955 @@
+package smith.files;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import smith.files.InventoryHistory.PartState;
+import smith.files.InventoryHistory.ProductState;
+
+/**
+ * The InventoryServer class lets scanners and other programs on the same computer read
+ * and change the inventory over HTTP with JSON, while the screens keep running. Parts and
+ * products can be listed, found by ID or name, added, replaced and deleted, and parts can
+ * be added to and removed from products.
+ *
+ * Each request runs on its own virtual thread when the Java running the program has them,
+ * otherwise on a fixed pool of threads. At most a set number of requests are admitted at
+ * once, counting the ones still waiting for a thread. A request over the limit is answered
+ * straight away with 503 instead of waiting, so a flood of requests cannot pile up.
+ *
+ * No request waits for the FX thread. Every read and write goes through a
+ * ConcurrentInventory: reads, name searches and the products using a part are answered
+ * from its copies without a lock, and changes, including the parts of a product, are made
+ * there and copied to the inventory lists on the FX thread later.
+ *
+ * The server is off unless the "inventory.http.port" property is set, and then only
+ * listens on this computer. Requests must name this computer in their Host header, so a
+ * web page cannot reach the server through a name it has pointed at it, and request
+ * bodies must be sent as application/json, which a page cannot post without asking.
+ *
+ * Orders take stock through StockReservations, so two orders can never sell the same
+ * units: POST /reservations holds part stock, or the parts of some units of a product,
+ * and the hold is then committed to take the stock or deleted to give it back.
+ *
+ * A part or product can be looked at as it was at a time by adding ?at= with an
+ * ISO-8601 time to its GET, and GET /history?at= gives the whole inventory then. These
+ * are read from the InventoryHistory, so they need it to be open.
+ *
+ * Routes, under /api:
+ * GET /parts?name=&amp;offset=&amp;limit=, POST /parts, GET, PUT and DELETE /parts/{id},
+ * GET /parts/{id}/products, the same for /products, GET /products/{id}/parts, POST
+ * and DELETE /products/{id}/parts/{partID}, POST /reservations with a partId and quantity
+ * or a productId and units, GET and DELETE /reservations/{id} and POST
+ * /reservations/{id}/commit, and GET /history?at=.
+ */
+public class InventoryServer implements AutoCloseable {
+
+    // most requests admitted at once, running or waiting for a thread
+    private static final int MAX_ADMITTED = 1024;
+    // threads used when virtual threads are not there
+    private static final int POOL_THREADS = 64;
+    // connections the operating system may hold before they are accepted
+    private static final int BACKLOG = 1024;
+    // most items returned by one list request
+    private static final int MAX_LIMIT = 10_000;
+    private static final int DEFAULT_LIMIT = 100;
+    // largest request body read
+    private static final int MAX_BODY = 64 * 1024;
+    // how long a reservation holds stock when the request does not say, and the longest
+    private static final int DEFAULT_HOLD_SECONDS = 60;
+    private static final int MAX_HOLD_SECONDS = 3600;
+
+    // set while a request over the limit is answered on the thread that accepted it
+    private static final ThreadLocal<Boolean> OVERLOADED = new ThreadLocal<>();
+
+    /**
+     * An answer to a request.
+     * @param status the HTTP status
+     * @param json the body
+     */
+    private record Reply(int status, String json) {
+    }
+
+    private final ConcurrentInventory inventory;
+    private final StockReservations reservations;
+    private final InventoryHistory history;
+    private final boolean ownsInventory;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final Semaphore admitted = new Semaphore(MAX_ADMITTED);
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Method to start the server on this computer only, on the port set with the
+     * "inventory.http.port" property. Must be called on the FX thread.
+     * @param reservations the reservations orders take stock through
+     * @param history the history times are looked up in, or null if it is not kept
+     * @return the server, or null if the property is not set
+     * @throws IOException if the port could not be opened
+     */
+    public static InventoryServer start(StockReservations reservations, InventoryHistory history) throws IOException {
+        Integer port = Integer.getInteger("inventory.http.port");
+        if (port == null) {
+            return null;
+        }
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        return new InventoryServer(ConcurrentInventory.open(), reservations, history, true, address);
+    }
+
+    /**
+     * InventoryServer constructor. The server is started before it returns.
+     * @param inventory the concurrent inventory requests read and change
+     * @param reservations the reservations orders take stock through
+     * @param history the history times are looked up in, or null if it is not kept
+     * @param address where to listen, port 0 picks a free port
+     * @throws IOException if the address could not be opened
+     */
+    public InventoryServer(ConcurrentInventory inventory, StockReservations reservations, InventoryHistory history,
+                           InetSocketAddress address) throws IOException {
+        this(inventory, reservations, history, false, address);
+    }
+
+    private InventoryServer(ConcurrentInventory inventory, StockReservations reservations, InventoryHistory history,
+                            boolean ownsInventory, InetSocketAddress address) throws IOException {
+        this.inventory = inventory;
+        this.reservations = reservations;
+        this.history = history;
+        this.ownsInventory = ownsInventory;
+        this.workers = newWorkers();
+        this.server = HttpServer.create(address, BACKLOG);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(this::admit);
+        server.start();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the number of requests turned away because too many were admitted
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Method to stop the server. Requests already running are given a second to finish.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        workers.shutdown();
+        if (ownsInventory) {
+            inventory.close();
+        }
+    }
+
+    // a virtual thread per request on Java 21 and later, found by name since the program
+    // is built for 17. Before that, a fixed pool of daemon threads.
+    private static ExecutorService newWorkers() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(POOL_THREADS, task -> {
+                Thread thread = new Thread(task, "inventory-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // hands an accepted request to a worker if there is room, otherwise answers it with
+    // 503 on the accepting thread, which is quick since nothing is looked up
+    private void admit(Runnable exchange) {
+        if (admitted.tryAcquire()) {
+            try {
+                workers.execute(() -> {
+                    try {
+                        exchange.run();
+                    } finally {
+                        admitted.release();
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                admitted.release();
+            }
+        }
+        rejected.incrementAndGet();
+        OVERLOADED.set(Boolean.TRUE);
+        try {
+            exchange.run();
+        } finally {
+            OVERLOADED.remove();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Reply reply;
+            if (OVERLOADED.get() != null) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                reply = error(503, "Too many requests, try again shortly.");
+            } else if (!isLoopback(exchange.getRequestHeaders().getFirst("Host"))) {
+                reply = error(403, "Only requests to localhost are answered.");
+            } else {
+                try {
+                    reply = route(exchange);
+                } catch (BadRequest e) {
+                    reply = error(e.status, e.getMessage());
+                } catch (RuntimeException e) {
+                    reply = error(500, String.valueOf(e.getMessage()));
+                }
+            }
+            send(exchange, reply);
+        }
+    }
+
+    // true for a Host header naming this computer, with or without a port
+    private static boolean isLoopback(String host) {
+        if (host == null) {
+            return false;
+        }
+        String name;
+        if (host.startsWith("[")) {
+            int end = host.indexOf(']');
+            name = end < 0 ? host : host.substring(1, end);
+        } else {
+            int colon = host.lastIndexOf(':');
+            name = colon < 0 ? host : host.substring(0, colon);
+        }
+        name = name.toLowerCase(Locale.ROOT);
+        return name.equals("localhost") || name.equals("127.0.0.1") || name.equals("::1");
+    }
+
+    // picks the handler from the method and the path after /api
+    private Reply route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        if (path[0].equals("reservations")) {
+            return reservation(method, path, exchange);
+        }
+        if (path[0].equals("history") && path.length == 1) {
+            return method.equals("GET") ? stateAt(query) : error(405, "Use GET.");
+        }
+        boolean parts = path[0].equals("parts");
+        if (!parts && !path[0].equals("products")) {
+            return error(404, "Unknown path.");
+        }
+        if (path.length == 1) {
+            switch (method) {
+                case "GET":
+                    return parts ? listParts(query) : listProducts(query);
+                case "POST":
+                    return parts ? addPart(body(exchange)) : addProduct(body(exchange));
+                default:
+                    return error(405, "Use GET or POST.");
+            }
+        }
+        int id = number(path[1], "ID");
+        if (path.length == 2) {
+            switch (method) {
+                case "GET":
+                    if (query.containsKey("at")) {
+                        return parts ? partAt(id, query) : productAt(id, query);
+                    }
+                    return parts ? getPart(id) : getProduct(id);
+                case "PUT":
+                    return parts ? replacePart(id, body(exchange)) : replaceProduct(id, body(exchange));
+                case "DELETE":
+                    return parts ? deletePart(id) : deleteProduct(id);
+                default:
+                    return error(405, "Use GET, PUT or DELETE.");
+            }
+        }
+        if (parts && path.length == 3 && path[2].equals("products") && method.equals("GET")) {
+            return productsUsing(id);
+        }
+        if (!parts && path[2].equals("parts")) {
+            if (path.length == 3 && method.equals("GET")) {
+                return associatedParts(id);
+            }
+            if (path.length == 4 && method.equals("POST")) {
+                return associate(id, number(path[3], "part ID"));
+            }
+            if (path.length == 4 && method.equals("DELETE")) {
+                return dissociate(id, number(path[3], "part ID"));
+            }
+        }
+        return error(404, "Unknown path.");
+    }
+
+    private Reply listParts(Map<String, String> query) {
+        String name = query.get("name");
+        if (name == null) {
+            return page(inventory.partSnapshot().items(), query, InventoryServer::partJson);
+        }
+        return page(inventory.searchParts(name), query, InventoryServer::partJson);
+    }
+
+    private Reply listProducts(Map<String, String> query) {
+        String name = query.get("name");
+        if (name == null) {
+            return page(inventory.productSnapshot().items(), query, InventoryServer::productJson);
+        }
+        return page(inventory.searchProducts(name), query, InventoryServer::productJson);
+    }
+
+    private Reply getPart(int id) {
+        return inventory.findPart(id).map(p -> new Reply(200, partJson(p))).orElseGet(() -> error(404, "Part not found"));
+    }
+
+    private Reply getProduct(int id) {
+        return inventory.findProduct(id).map(p -> new Reply(200, productJson(p))).orElseGet(() -> error(404, "Product not found"));
+    }
+
+    private Reply partAt(int id, Map<String, String> query) throws IOException {
+        if (history == null) {
+            return error(404, "The history is not kept.");
+        }
+        return history.partAt(id, time(query)).map(p -> new Reply(200, partJson(p)))
+                .orElseGet(() -> error(404, "Part not found at that time"));
+    }
+
+    private Reply productAt(int id, Map<String, String> query) throws IOException {
+        if (history == null) {
+            return error(404, "The history is not kept.");
+        }
+        return history.productAt(id, time(query)).map(p -> new Reply(200, productJson(p)))
+                .orElseGet(() -> error(404, "Product not found at that time"));
+    }
+
+    private Reply stateAt(Map<String, String> query) throws IOException {
+        if (history == null) {
+            return error(404, "The history is not kept.");
+        }
+        Optional<InventoryHistory.State> state = history.stateAt(time(query));
+        if (state.isEmpty()) {
+            return error(404, "The history does not go back to that time.");
+        }
+        return new Reply(200, "{\"parts\":" + array(state.get().parts(), InventoryServer::partJson)
+                + ",\"products\":" + array(state.get().products(), InventoryServer::productJson) + "}");
+    }
+
+    // the fields are checked before a new ID is taken, so a bad request does not use one up
+    private Reply addPart(Map<String, Object> fields) {
+        PartState part = newPart(0, fields);
+        checkFields(part.stock(), part.min(), part.max());
+        int id = fields.containsKey("id") ? integer(fields, "id") : InventoryEngine.nextPartID();
+        part = new PartState(id, part.name(), part.price(), part.stock(), part.min(), part.max(),
+                part.inHouse(), part.machineID(), part.companyName());
+        InventoryEngine.Result<PartState> result = inventory.addPart(part);
+        if (!result.isOk()) {
+            return error(inventory.findPart(id).isPresent() ? 409 : 400, result.error());
+        }
+        return new Reply(201, partJson(part));
+    }
+
+    private Reply replacePart(int id, Map<String, Object> fields) {
+        checkSameID(id, fields);
+        InventoryEngine.Result<PartState> result = inventory.updatePart(newPart(id, fields));
+        if (!result.isOk()) {
+            return error(inventory.findPart(id).isPresent() ? 400 : 404, result.error());
+        }
+        return new Reply(200, partJson(result.value()));
+    }
+
+    // a part used by a product cannot be deleted, the same as on the main screen
+    private Reply deletePart(int id) {
+        InventoryEngine.Result<PartState> result = inventory.deleteUnusedPart(id);
+        if (!result.isOk()) {
+            return error(inventory.findPart(id).isPresent() ? 409 : 404, result.error());
+        }
+        return new Reply(200, partJson(result.value()));
+    }
+
+    private Reply productsUsing(int id) {
+        if (inventory.findPart(id).isEmpty()) {
+            return error(404, "Part not found");
+        }
+        return new Reply(200, array(inventory.productsUsing(id), InventoryServer::productJson));
+    }
+
+    private Reply addProduct(Map<String, Object> fields) {
+        ProductState product = newProduct(0, fields);
+        checkFields(product.stock(), product.min(), product.max());
+        int id = fields.containsKey("id") ? integer(fields, "id") : InventoryEngine.nextProductID();
+        InventoryEngine.Result<ProductState> result = inventory.addProduct(newProduct(id, fields));
+        if (!result.isOk()) {
+            return error(inventory.findProduct(id).isPresent() ? 409 : 400, result.error());
+        }
+        return new Reply(201, productJson(result.value()));
+    }
+
+    // the new product keeps the associated parts of the old one
+    private Reply replaceProduct(int id, Map<String, Object> fields) {
+        checkSameID(id, fields);
+        ProductState fromRequest = newProduct(id, fields);
+        InventoryEngine.Result<ProductState> result = inventory.updateProduct(id, old -> new ProductState(id,
+                fromRequest.name(), fromRequest.price(), fromRequest.stock(), fromRequest.min(), fromRequest.max(),
+                old.partIDs()));
+        if (!result.isOk()) {
+            return error(inventory.findProduct(id).isPresent() ? 400 : 404, result.error());
+        }
+        return new Reply(200, productJson(result.value()));
+    }
+
+    // a product with associated parts cannot be deleted, the same as on the main screen
+    private Reply deleteProduct(int id) {
+        InventoryEngine.Result<ProductState> result = inventory.deleteProductWithoutParts(id);
+        if (!result.isOk()) {
+            return error(inventory.findProduct(id).isPresent() ? 409 : 404, result.error());
+        }
+        return new Reply(200, productJson(result.value()));
+    }
+
+    private Reply associatedParts(int id) {
+        return inventory.findProduct(id)
+                .map(p -> new Reply(200, array(partsOf(p), InventoryServer::partJson)))
+                .orElseGet(() -> error(404, "Product not found"));
+    }
+
+    private Reply associate(int productID, int partID) {
+        return parts(inventory.associate(productID, partID));
+    }
+
+    // removes one use of the part from the product
+    private Reply dissociate(int productID, int partID) {
+        return parts(inventory.dissociate(productID, partID));
+    }
+
+    // the associated parts of a changed product, or why it was not changed
+    private Reply parts(InventoryEngine.Result<ProductState> result) {
+        if (!result.isOk()) {
+            return error(404, result.error());
+        }
+        return new Reply(200, array(partsOf(result.value()), InventoryServer::partJson));
+    }
+
+    // the parts a product lists, leaving out any deleted since
+    private List<PartState> partsOf(ProductState product) {
+        List<PartState> parts = new ArrayList<>(product.partIDs().length);
+        for (int partID : product.partIDs()) {
+            inventory.findPart(partID).ifPresent(parts::add);
+        }
+        return parts;
+    }
+
+    private Reply reservation(String method, String[] path, HttpExchange exchange) throws IOException {
+        if (path.length == 1) {
+            return method.equals("POST") ? reserve(body(exchange)) : error(405, "Use POST.");
+        }
+        long id;
+        try {
+            id = Long.parseLong(path[1]);
+        } catch (NumberFormatException e) {
+            throw new BadRequest("reservation ID must be a whole number.");
+        }
+        Optional<StockReservations.Reservation> held = reservations.find(id);
+        if (held.isEmpty()) {
+            return error(404, "Reservation not found, it may have been committed, released or expired.");
+        }
+        StockReservations.Reservation reservation = held.get();
+        if (path.length == 2 && method.equals("GET")) {
+            return new Reply(200, reservationJson(reservation));
+        }
+        if (path.length == 2 && method.equals("DELETE")) {
+            return reservation.release() ? new Reply(200, reservationJson(reservation))
+                    : error(409, "The reservation was committed, released or expired.");
+        }
+        if (path.length == 3 && path[2].equals("commit") && method.equals("POST")) {
+            return reservation.commit() ? new Reply(200, reservationJson(reservation))
+                    : error(409, "The reservation was committed, released or expired.");
+        }
+        return error(404, "Unknown path.");
+    }
+
+    // holds the stock of one part, or of every part a product needs for some units
+    private Reply reserve(Map<String, Object> fields) {
+        int seconds = fields.containsKey("seconds") ? integer(fields, "seconds") : DEFAULT_HOLD_SECONDS;
+        if (seconds < 1 || seconds > MAX_HOLD_SECONDS) {
+            throw new BadRequest("seconds must be between 1 and " + MAX_HOLD_SECONDS + ".");
+        }
+        Duration timeToLive = Duration.ofSeconds(seconds);
+        Optional<StockReservations.Reservation> held;
+        if (fields.containsKey("productId")) {
+            int units = positive(fields, "units");
+            Optional<ProductState> product = inventory.findProduct(integer(fields, "productId"));
+            if (product.isEmpty()) {
+                return error(404, "Product not found");
+            }
+            held = reservations.reserveProduct(product.get().partIDs(), units, timeToLive);
+        } else {
+            int partID = integer(fields, "partId");
+            int quantity = positive(fields, "quantity");
+            if (inventory.findPart(partID).isEmpty()) {
+                return error(404, "Part not found");
+            }
+            held = reservations.reservePart(partID, quantity, timeToLive);
+        }
+        return held.map(r -> new Reply(201, reservationJson(r)))
+                .orElseGet(() -> error(409, "Not enough stock above the minimum."));
+    }
+
+    // builds a part from the fields of a request
+    private static PartState newPart(int id, Map<String, Object> fields) {
+        String name = name(fields);
+        double price = price(fields);
+        int stock = integer(fields, "stock");
+        int min = integer(fields, "min");
+        int max = integer(fields, "max");
+        Object type = fields.get("type");
+        if ("inhouse".equals(type)) {
+            return new PartState(id, name, price, stock, min, max, true, integer(fields, "machineId"), null);
+        }
+        if ("outsourced".equals(type)) {
+            Object company = fields.get("companyName");
+            if (!(company instanceof String companyName) || companyName.isBlank()) {
+                throw new BadRequest("companyName is required for an outsourced part.");
+            }
+            return new PartState(id, name, price, stock, min, max, false, 0, companyName);
+        }
+        throw new BadRequest("type must be \"inhouse\" or \"outsourced\".");
+    }
+
+    private static ProductState newProduct(int id, Map<String, Object> fields) {
+        return new ProductState(id, name(fields), price(fields), integer(fields, "stock"),
+                integer(fields, "min"), integer(fields, "max"), new int[0]);
+    }
+
+    private static void checkFields(int stock, int min, int max) {
+        InventoryEngine.checkFields(stock, min, max).ifPresent(problem -> {
+            throw new BadRequest(problem);
+        });
+    }
+
+    private static void checkSameID(int id, Map<String, Object> fields) {
+        if (fields.containsKey("id") && integer(fields, "id") != id) {
+            throw new BadRequest("The ID of an item cannot be changed.");
+        }
+    }
+
+    private static String name(Map<String, Object> fields) {
+        if (!(fields.get("name") instanceof String name) || name.isBlank()) {
+            throw new BadRequest("name is required.");
+        }
+        return name;
+    }
+
+    private static double price(Map<String, Object> fields) {
+        if (!(fields.get("price") instanceof Double price) || price < 0) {
+            throw new BadRequest("price must be a number of at least 0.");
+        }
+        return price;
+    }
+
+    private static int integer(Map<String, Object> fields, String key) {
+        if (!(fields.get(key) instanceof Double value) || value != Math.rint(value)
+                || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new BadRequest(key + " must be a whole number.");
+        }
+        return (int) (double) value;
+    }
+
+    private static int positive(Map<String, Object> fields, String key) {
+        int value = integer(fields, key);
+        if (value < 1) {
+            throw new BadRequest(key + " must be at least 1.");
+        }
+        return value;
+    }
+
+    private static Instant time(Map<String, String> query) {
+        String at = query.get("at");
+        if (at == null) {
+            throw new BadRequest("at is missing.");
+        }
+        try {
+            return Instant.parse(at);
+        } catch (DateTimeParseException e) {
+            throw new BadRequest("at must be a time such as 2024-05-01T12:00:00Z.");
+        }
+    }
+
+    private static int number(String text, String what) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new BadRequest(what + " must be a whole number.");
+        }
+    }
+
+    // one page of a list, with the number of items in the whole list
+    private static <T> Reply page(List<T> items, Map<String, String> query, JsonWriter<T> write) {
+        int offset = query.containsKey("offset") ? number(query.get("offset"), "offset") : 0;
+        int limit = query.containsKey("limit") ? number(query.get("limit"), "limit") : DEFAULT_LIMIT;
+        if (offset < 0 || limit < 0 || limit > MAX_LIMIT) {
+            throw new BadRequest("offset must be at least 0 and limit between 0 and " + MAX_LIMIT + ".");
+        }
+        int from = Math.min(offset, items.size());
+        int to = (int) Math.min((long) from + limit, items.size());
+        return new Reply(200, "{\"total\":" + items.size() + ",\"items\":" + array(items.subList(from, to), write) + "}");
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static Map<String, Object> body(HttpExchange exchange) throws IOException {
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (type == null || !type.toLowerCase(Locale.ROOT).matches("application/json\\s*(;.*)?")) {
+            throw new BadRequest(415, "The request body must be sent as application/json.");
+        }
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY + 1);
+        }
+        if (bytes.length > MAX_BODY) {
+            throw new BadRequest("The request body is too large.");
+        }
+        return new JsonReader(new String(bytes, StandardCharsets.UTF_8)).object();
+    }
+
+    private static void send(HttpExchange exchange, Reply reply) throws IOException {
+        byte[] body = reply.json().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(reply.status(), body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Reply error(int status, String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        string(json, message);
+        return new Reply(status, json.append('}').toString());
+    }
+
+    /**
+     * Writes one item as JSON.
+     * @param <T> the type of item
+     */
+    private interface JsonWriter<T> {
+        void write(StringBuilder json, T item);
+    }
+
+    private static <T> String array(List<T> items, JsonWriter<T> write) {
+        StringBuilder json = new StringBuilder(items.size() * 96 + 2).append('[');
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            write.write(json, items.get(i));
+        }
+        return json.append(']').toString();
+    }
+
+    private static String partJson(PartState part) {
+        StringBuilder json = new StringBuilder(128);
+        partJson(json, part);
+        return json.toString();
+    }
+
+    private static void partJson(StringBuilder json, PartState part) {
+        fields(json, part.id(), part.name(), part.price(), part.stock(), part.min(), part.max());
+        if (part.inHouse()) {
+            json.append(",\"type\":\"inhouse\",\"machineId\":").append(part.machineID());
+        } else {
+            json.append(",\"type\":\"outsourced\",\"companyName\":");
+            string(json, part.companyName());
+        }
+        json.append('}');
+    }
+
+    private static String productJson(ProductState product) {
+        StringBuilder json = new StringBuilder(128);
+        productJson(json, product);
+        return json.toString();
+    }
+
+    private static void productJson(StringBuilder json, ProductState product) {
+        fields(json, product.id(), product.name(), product.price(), product.stock(), product.min(), product.max());
+        json.append('}');
+    }
+
+    private static String reservationJson(StockReservations.Reservation reservation) {
+        StringBuilder json = new StringBuilder(64).append("{\"id\":").append(reservation.getId())
+                .append(",\"active\":").append(reservation.isActive()).append(",\"parts\":[");
+        int[] partIDs = reservation.getPartIDs();
+        for (int i = 0; i < partIDs.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"partId\":").append(partIDs[i])
+                    .append(",\"quantity\":").append(reservation.getQuantity(partIDs[i])).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    // the fields parts and products share, leaving the object open for more
+    private static void fields(StringBuilder json, int id, String name, double price, int stock, int min, int max) {
+        json.append("{\"id\":").append(id).append(",\"name\":");
+        string(json, name);
+        json.append(",\"price\":");
+        if (Double.isFinite(price)) {
+            json.append(price);
+        } else {
+            json.append("null");
+        }
+        json.append(",\"stock\":").append(stock)
+                .append(",\"min\":").append(min)
+                .append(",\"max\":").append(max);
+    }
+
+    private static void string(StringBuilder json, String text) {
+        if (text == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * A request that cannot be carried out as sent, answered with 400 unless another
+     * status is given.
+     */
+    private static final class BadRequest extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        BadRequest(String message) {
+            this(400, message);
+        }
+
+        BadRequest(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Reads the JSON body of a request. Objects become maps, arrays lists, and every
+     * number a Double.
+     */
+    private static final class JsonReader {
+        private final String text;
+        private int at;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> object() {
+            skipSpace();
+            if (!(value() instanceof Map<?, ?> map)) {
+                throw new BadRequest("The request body must be a JSON object.");
+            }
+            skipSpace();
+            if (at != text.length()) {
+                throw fail();
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> fields = (Map<String, Object>) map;
+            return fields;
+        }
+
+        private Object value() {
+            skipSpace();
+            if (at == text.length()) {
+                throw fail();
+            }
+            char c = text.charAt(at);
+            switch (c) {
+                case '{':
+                    return map();
+                case '[':
+                    return list();
+                case '"':
+                    return string();
+                case 't':
+                    return word("true", Boolean.TRUE);
+                case 'f':
+                    return word("false", Boolean.FALSE);
+                case 'n':
+                    return word("null", null);
+                default:
+                    return number();
+            }
+        }
+
+        private Map<String, Object> map() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            at++;
+            skipSpace();
+            if (next('}')) {
+                return map;
+            }
+            do {
+                skipSpace();
+                if (at == text.length() || text.charAt(at) != '"') {
+                    throw fail();
+                }
+                String key = string();
+                skipSpace();
+                expect(':');
+                map.put(key, value());
+                skipSpace();
+            } while (next(','));
+            expect('}');
+            return map;
+        }
+
+        private List<Object> list() {
+            List<Object> list = new ArrayList<>();
+            at++;
+            skipSpace();
+            if (next(']')) {
+                return list;
+            }
+            do {
+                list.add(value());
+                skipSpace();
+            } while (next(','));
+            expect(']');
+            return list;
+        }
+
+        private String string() {
+            StringBuilder out = new StringBuilder();
+            at++;
+            while (at < text.length()) {
+                char c = text.charAt(at++);
+                if (c == '"') {
+                    return out.toString();
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (at == text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(at++);
+                switch (escaped) {
+                    case 'b' -> out.append('\b');
+                    case 'f' -> out.append('\f');
+                    case 'n' -> out.append('\n');
+                    case 'r' -> out.append('\r');
+                    case 't' -> out.append('\t');
+                    case 'u' -> {
+                        if (at + 4 > text.length()) {
+                            throw fail();
+                        }
+                        try {
+                            out.append((char) Integer.parseInt(text.substring(at, at + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw fail();
+                        }
+                        at += 4;
+                    }
+                    default -> out.append(escaped);
+                }
+            }
+            throw fail();
+        }
+
+        private Double number() {
+            int start = at;
+            while (at < text.length() && "+-0123456789.eE".indexOf(text.charAt(at)) >= 0) {
+                at++;
+            }
+            try {
+                return Double.valueOf(text.substring(start, at));
+            } catch (NumberFormatException e) {
+                throw fail();
+            }
+        }
+
+        private Object word(String word, Object value) {
+            if (!text.startsWith(word, at)) {
+                throw fail();
+            }
+            at += word.length();
+            return value;
+        }
+
+        private boolean next(char c) {
+            if (at < text.length() && text.charAt(at) == c) {
+                at++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!next(c)) {
+                throw fail();
+            }
+        }
+
+        private void skipSpace() {
+            while (at < text.length() && Character.isWhitespace(text.charAt(at))) {
+                at++;
+            }
+        }
+
+        private BadRequest fail() {
+            return new BadRequest("The request body is not valid JSON, at character " + at + ".");
+        }
+    }
+}
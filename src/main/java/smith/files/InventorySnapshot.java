@@ -0,0 +1,583 @@
+package smith.files;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import smith.files.InventoryHistory.PartState;
+import smith.files.InventoryHistory.ProductState;
+
+/**
+ * The InventorySnapshot class reads and writes a binary copy of every part and product.
+ * Each part and product is a fixed size row, so row i is found by multiplying instead of
+ * parsing everything before it. Names, and the company names of outsourced parts, are
+ * kept once each in a string table and rows hold their number in the table. The parts a
+ * product uses are kept as an array of part IDs.
+ *
+ * A snapshot is opened with FileChannel.map. Opening it only reads the header, checks
+ * that every section lies inside the file, and checks a CRC32 of the header and of the
+ * page checksums. The rest of the file is split into pages of 64KB, each with its own
+ * CRC32, and a page is checked the first time anything in it is read, so opening takes
+ * the same time for any size of snapshot and a damaged page is still never believed. A
+ * Part or Product object is only built the first time a row is asked for, and the ID and
+ * name of a row can be read without building it. A row read from a damaged page throws
+ * an UncheckedIOException. A snapshot is read by one thread at a time.
+ *
+ * Layout: a header, the part rows, the product rows, the associated part IDs, a part
+ * ID index sorted by ID, the string offsets, the string bytes, then the page checksums.
+ */
+public class InventorySnapshot {
+
+    // "INVS" and the version of the layout
+    private static final int MAGIC = 0x494E5653;
+    private static final int VERSION = 3;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int PART_ROW = 40;
+    private static final int PRODUCT_ROW = 40;
+    // bytes covered by one page checksum
+    private static final int PAGE = 64 * 1024;
+    // where the page checksums start
+    private static final int PAGES_AT = 48;
+    // where the CRC of the header is kept. It covers the header before it and the page
+    // checksums.
+    private static final int CRC_AT = 52;
+
+    // part row fields
+    private static final int P_ID = 0;
+    private static final int P_KIND = 4;
+    private static final int P_PRICE = 8;
+    private static final int P_STOCK = 16;
+    private static final int P_MIN = 20;
+    private static final int P_MAX = 24;
+    private static final int P_NAME = 28;
+    private static final int P_EXTRA = 32;
+
+    // product row fields
+    private static final int R_ID = 0;
+    private static final int R_PRICE = 8;
+    private static final int R_STOCK = 16;
+    private static final int R_MIN = 20;
+    private static final int R_MAX = 24;
+    private static final int R_NAME = 28;
+    private static final int R_PARTS_START = 32;
+    private static final int R_PARTS_COUNT = 36;
+
+    // string number used for a null string
+    private static final int NO_STRING = -1;
+
+    private final ByteBuffer buffer;
+    private final int partCount;
+    private final int productCount;
+    private final int associationCount;
+    private final int stringCount;
+    private final int partsAt;
+    private final int productsAt;
+    private final int associationsAt;
+    private final int idIndexAt;
+    private final int stringIndexAt;
+    private final int stringDataAt;
+    private final int pagesAt;
+
+    // pages whose checksum has been checked
+    private final boolean[] checked;
+    private final CRC32 crc = new CRC32();
+
+    // objects built so far, by row
+    private final Part[] parts;
+    private final Product[] products;
+
+    private InventorySnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an inventory snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        partCount = buffer.getInt(8);
+        productCount = buffer.getInt(12);
+        associationCount = buffer.getInt(16);
+        stringCount = buffer.getInt(20);
+        partsAt = buffer.getInt(24);
+        productsAt = buffer.getInt(28);
+        associationsAt = buffer.getInt(32);
+        idIndexAt = buffer.getInt(36);
+        stringIndexAt = buffer.getInt(40);
+        stringDataAt = buffer.getInt(44);
+        pagesAt = buffer.getInt(PAGES_AT);
+
+        // the page checksums come last and fill the rest of the file
+        if (pagesAt < HEADER_SIZE || pagesAt > buffer.capacity()) {
+            throw new IOException("Inventory snapshot is truncated");
+        }
+        int pageCount = pageCount(pagesAt);
+        if ((long) pagesAt + 4L * pageCount != buffer.capacity()) {
+            throw new IOException("Inventory snapshot is truncated");
+        }
+        ByteBuffer pageSums = buffer.duplicate().position(pagesAt);
+        if (buffer.getInt(CRC_AT) != headerChecksum(buffer, pageSums)) {
+            throw new IOException("Inventory snapshot is corrupt, its checksum does not match");
+        }
+
+        // every section in order, after the header and inside the pages
+        long end = section(HEADER_SIZE, partsAt, (long) partCount * PART_ROW);
+        end = section(end, productsAt, (long) productCount * PRODUCT_ROW);
+        end = section(end, associationsAt, 4L * associationCount);
+        end = section(end, idIndexAt, 8L * partCount);
+        end = section(end, stringIndexAt, 4L * ((long) stringCount + 1));
+        end = section(end, stringDataAt, 0);
+        if (end > pagesAt) {
+            throw new IOException("Inventory snapshot is corrupt, a section lies outside the file");
+        }
+        checked = new boolean[pageCount];
+        parts = new Part[partCount];
+        products = new Product[productCount];
+    }
+
+    // checks a section starts after the one before it, returns where it ends
+    private static long section(long previousEnd, int at, long length) throws IOException {
+        if (length < 0 || at < previousEnd) {
+            throw new IOException("Inventory snapshot is corrupt, a section lies outside the file");
+        }
+        return at + length;
+    }
+
+    /**
+     * Method to open a snapshot file by mapping it into memory.
+     * @param file the snapshot file
+     * @return the opened snapshot
+     * @throws IOException if the file cannot be read, is not a snapshot or its header is damaged
+     */
+    public static InventorySnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new InventorySnapshot(mapped);
+        }
+    }
+
+    /**
+     * @return the number of parts in the snapshot
+     */
+    public int partCount() {
+        return partCount;
+    }
+
+    /**
+     * @return the number of products in the snapshot
+     */
+    public int productCount() {
+        return productCount;
+    }
+
+    /**
+     * @param row the part row
+     * @return the id of the part in the row
+     */
+    public int partID(int row) {
+        return buffer.getInt(partRow(row) + P_ID);
+    }
+
+    /**
+     * @param row the product row
+     * @return the id of the product in the row
+     */
+    public int productID(int row) {
+        return buffer.getInt(productRow(row) + R_ID);
+    }
+
+    /**
+     * @param row the part row
+     * @return the name of the part in the row
+     */
+    public String partName(int row) {
+        return string(buffer.getInt(partRow(row) + P_NAME));
+    }
+
+    /**
+     * @param row the part row
+     * @return the price of the part in the row
+     */
+    public double partPrice(int row) {
+        return buffer.getDouble(partRow(row) + P_PRICE);
+    }
+
+    /**
+     * @param row the part row
+     * @return the stock of the part in the row
+     */
+    public int partStock(int row) {
+        return buffer.getInt(partRow(row) + P_STOCK);
+    }
+
+    /**
+     * Method to find the row of a part by ID. Uses the sorted ID index, so it takes
+     * O(log n) and builds no objects.
+     * @param partID the ID to find
+     * @return the row of the part, or -1 if it is not in the snapshot
+     */
+    public int findPartRow(int partID) {
+        int low = 0;
+        int high = partCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = check(idIndexAt + mid * 8, 8);
+            int id = buffer.getInt(entry);
+            if (id < partID) {
+                low = mid + 1;
+            } else if (id > partID) {
+                high = mid - 1;
+            } else {
+                int row = buffer.getInt(entry + 4);
+                if (row < 0 || row >= partCount) {
+                    throw corrupt("the ID index points past the part rows");
+                }
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method to get the part in a row. The part is built the first time it is asked for.
+     * @param row the part row
+     * @return the part
+     */
+    public Part part(int row) {
+        Part part = parts[row];
+        if (part == null) {
+            part = readPart(row);
+            parts[row] = part;
+        }
+        return part;
+    }
+
+    /**
+     * Method to build the part in a row without keeping it. Used when every row is read
+     * once, such as when the journal is read back on top of the snapshot.
+     * @param row the part row
+     * @return a new part
+     */
+    Part readPart(int row) {
+        int at = partRow(row);
+        int id = buffer.getInt(at + P_ID);
+        String name = string(buffer.getInt(at + P_NAME));
+        double price = buffer.getDouble(at + P_PRICE);
+        int stock = buffer.getInt(at + P_STOCK);
+        int min = buffer.getInt(at + P_MIN);
+        int max = buffer.getInt(at + P_MAX);
+        int extra = buffer.getInt(at + P_EXTRA);
+        if (buffer.get(at + P_KIND) == InventoryJournal.IN_HOUSE) {
+            return new InHousePart(id, name, price, stock, min, max, extra);
+        }
+        return new OutsourcedPart(id, name, price, stock, min, max, string(extra));
+    }
+
+    /**
+     * Method to get the product in a row, with its associated parts. The product is
+     * built the first time it is asked for.
+     * @param row the product row
+     * @return the product
+     */
+    public Product product(int row) {
+        Product product = products[row];
+        if (product == null) {
+            product = readProduct(row);
+            for (int partID : associatedPartIDs(row)) {
+                int partRow = findPartRow(partID);
+                if (partRow >= 0) {
+                    product.getAssociatedParts().add(part(partRow));
+                }
+            }
+            products[row] = product;
+        }
+        return product;
+    }
+
+    /**
+     * Method to build the product in a row without its associated parts. Used when the
+     * parts are linked later, such as when the journal is read back on top of the snapshot.
+     * @param row the product row
+     * @return a new product
+     */
+    Product readProduct(int row) {
+        int at = productRow(row);
+        return new Product(buffer.getInt(at + R_ID), string(buffer.getInt(at + R_NAME)),
+                buffer.getDouble(at + R_PRICE), buffer.getInt(at + R_STOCK),
+                buffer.getInt(at + R_MIN), buffer.getInt(at + R_MAX));
+    }
+
+    /**
+     * @param row the product row
+     * @return the IDs of the parts associated with the product in the row
+     */
+    public int[] associatedPartIDs(int row) {
+        int at = productRow(row);
+        int start = buffer.getInt(at + R_PARTS_START);
+        int count = buffer.getInt(at + R_PARTS_COUNT);
+        if (start < 0 || count < 0 || (long) start + count > associationCount) {
+            throw corrupt("a product points past the associated part IDs");
+        }
+        int from = check(associationsAt + start * 4, count * 4);
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = buffer.getInt(from + i * 4);
+        }
+        return ids;
+    }
+
+    /**
+     * Method to write a snapshot of the given parts and products.
+     * @param file the file to write, replaced if it exists
+     * @param parts the parts to save
+     * @param products the products to save
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, List<Part> parts, List<Product> products) throws IOException {
+        List<PartState> partStates = new ArrayList<>(parts.size());
+        for (Part part : parts) {
+            partStates.add(InventoryHistory.stateOf(part));
+        }
+        List<ProductState> productStates = new ArrayList<>(products.size());
+        for (Product product : products) {
+            productStates.add(InventoryHistory.stateOf(product));
+        }
+        writeStates(file, partStates, productStates);
+    }
+
+    /**
+     * Method to write a snapshot of parts and products copied earlier. The journal reads
+     * them back from its own files on its writer thread, so the screens can keep editing
+     * while the snapshot is written.
+     * @param file the file to write, replaced if it exists
+     * @param parts the parts to save
+     * @param products the products to save
+     * @throws IOException if the file cannot be written
+     */
+    static void writeStates(Path file, List<PartState> parts, List<ProductState> products) throws IOException {
+        // string table, each distinct string is stored once
+        Map<String, Integer> stringNumbers = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        long stringBytes = 0;
+
+        int associationCount = 0;
+        for (ProductState product : products) {
+            associationCount += product.partIDs().length;
+        }
+
+        long partsAt = HEADER_SIZE;
+        long productsAt = partsAt + (long) parts.size() * PART_ROW;
+        long associationsAt = productsAt + (long) products.size() * PRODUCT_ROW;
+        long idIndexAt = associationsAt + 4L * associationCount;
+        long end = idIndexAt + 8L * parts.size();
+        if (end > Integer.MAX_VALUE) {
+            throw new IOException("Inventory is too large for a snapshot");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) end);
+
+        // part rows, plus the ID and row of each part for the ID index
+        long[] idIndex = new long[parts.size()];
+        for (int row = 0; row < parts.size(); row++) {
+            PartState part = parts.get(row);
+            int at = (int) partsAt + row * PART_ROW;
+            out.putInt(at + P_ID, part.id());
+            out.putDouble(at + P_PRICE, part.price());
+            out.putInt(at + P_STOCK, part.stock());
+            out.putInt(at + P_MIN, part.min());
+            out.putInt(at + P_MAX, part.max());
+            out.putInt(at + P_NAME, stringNumber(part.name(), stringNumbers, strings));
+            if (part.inHouse()) {
+                out.put(at + P_KIND, InventoryJournal.IN_HOUSE);
+                out.putInt(at + P_EXTRA, part.machineID());
+            } else {
+                out.put(at + P_KIND, InventoryJournal.OUTSOURCED);
+                out.putInt(at + P_EXTRA, stringNumber(part.companyName(), stringNumbers, strings));
+            }
+            idIndex[row] = ((long) part.id() << 32) | row;
+        }
+
+        // product rows and their associated part IDs
+        int association = 0;
+        for (int row = 0; row < products.size(); row++) {
+            ProductState product = products.get(row);
+            int at = (int) productsAt + row * PRODUCT_ROW;
+            out.putInt(at + R_ID, product.id());
+            out.putDouble(at + R_PRICE, product.price());
+            out.putInt(at + R_STOCK, product.stock());
+            out.putInt(at + R_MIN, product.min());
+            out.putInt(at + R_MAX, product.max());
+            out.putInt(at + R_NAME, stringNumber(product.name(), stringNumbers, strings));
+            out.putInt(at + R_PARTS_START, association);
+            for (int partID : product.partIDs()) {
+                out.putInt((int) associationsAt + association * 4, partID);
+                association++;
+            }
+            out.putInt(at + R_PARTS_COUNT, product.partIDs().length);
+        }
+
+        // ID index, sorted by ID so a part can be found with a binary search
+        Arrays.sort(idIndex);
+        for (int i = 0; i < idIndex.length; i++) {
+            out.putInt((int) idIndexAt + i * 8, (int) (idIndex[i] >> 32));
+            out.putInt((int) idIndexAt + i * 8 + 4, (int) idIndex[i]);
+        }
+
+        // string offsets, then string bytes
+        for (byte[] s : strings) {
+            stringBytes += s.length;
+        }
+        long stringIndexAt = end;
+        long stringDataAt = stringIndexAt + 4L * (strings.size() + 1);
+        long stringEnd = stringDataAt + stringBytes;
+        if (stringEnd + 4 * (stringEnd / PAGE + 1) > Integer.MAX_VALUE) {
+            throw new IOException("Inventory is too large for a snapshot");
+        }
+        ByteBuffer table = ByteBuffer.allocate((int) (stringDataAt - stringIndexAt + stringBytes));
+        int offset = 0;
+        for (byte[] s : strings) {
+            table.putInt(offset);
+            offset += s.length;
+        }
+        table.putInt(offset);
+        for (byte[] s : strings) {
+            table.put(s);
+        }
+        table.flip();
+
+        // a checksum for every page after the header
+        int pagesAt = (int) stringEnd;
+        ByteBuffer pageSums = ByteBuffer.allocate(4 * pageCount(pagesAt));
+        CRC32 crc = new CRC32();
+        for (int start = HEADER_SIZE; start < pagesAt; start += PAGE) {
+            int stop = Math.min(start + PAGE, pagesAt);
+            crc.reset();
+            if (start < end) {
+                crc.update(out.duplicate().position(start).limit((int) Math.min(stop, end)));
+            }
+            if (stop > end) {
+                crc.update(table.duplicate().position((int) (Math.max(start, end) - end)).limit((int) (stop - end)));
+            }
+            pageSums.putInt((int) crc.getValue());
+        }
+        pageSums.flip();
+
+        // header
+        out.putInt(0, MAGIC);
+        out.putInt(4, VERSION);
+        out.putInt(8, parts.size());
+        out.putInt(12, products.size());
+        out.putInt(16, associationCount);
+        out.putInt(20, strings.size());
+        out.putInt(24, (int) partsAt);
+        out.putInt(28, (int) productsAt);
+        out.putInt(32, (int) associationsAt);
+        out.putInt(36, (int) idIndexAt);
+        out.putInt(40, (int) stringIndexAt);
+        out.putInt(44, (int) stringDataAt);
+        out.putInt(PAGES_AT, pagesAt);
+        out.putInt(CRC_AT, headerChecksum(out, pageSums));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] sections = {out, table, pageSums};
+            long remaining = out.remaining() + table.remaining() + pageSums.remaining();
+            while (remaining > 0) {
+                remaining -= channel.write(sections);
+            }
+            channel.force(true);
+        }
+    }
+
+    // the CRC of the header before the CRC, then of the page checksums
+    private static int headerChecksum(ByteBuffer header, ByteBuffer pageSums) {
+        CRC32 crc = new CRC32();
+        crc.update(header.duplicate().position(0).limit(CRC_AT));
+        crc.update(pageSums.duplicate());
+        return (int) crc.getValue();
+    }
+
+    // gives a string its number in the string table, adding it if it is new
+    private static int stringNumber(String s, Map<String, Integer> numbers, List<byte[]> strings) {
+        if (s == null) {
+            return NO_STRING;
+        }
+        Integer number = numbers.get(s);
+        if (number == null) {
+            number = strings.size();
+            numbers.put(s, number);
+            strings.add(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return number;
+    }
+
+    // reads a string from the string table
+    private String string(int number) {
+        if (number == NO_STRING) {
+            return null;
+        }
+        if (number < 0 || number >= stringCount) {
+            throw corrupt("a row points past the string table");
+        }
+        int entry = check(stringIndexAt + number * 4, 8);
+        int start = buffer.getInt(entry);
+        int end = buffer.getInt(entry + 4);
+        if (start < 0 || end < start || end > pagesAt - stringDataAt) {
+            throw corrupt("a string lies outside the file");
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(check(stringDataAt + start, end - start), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int partRow(int row) {
+        Objects.checkIndex(row, partCount);
+        return check(partsAt + row * PART_ROW, PART_ROW);
+    }
+
+    private int productRow(int row) {
+        Objects.checkIndex(row, productCount);
+        return check(productsAt + row * PRODUCT_ROW, PRODUCT_ROW);
+    }
+
+    // checks the pages holding a range of bytes the first time they are read, returns
+    // the start of the range
+    private int check(int at, int length) {
+        if (length == 0) {
+            return at;
+        }
+        int first = (at - HEADER_SIZE) / PAGE;
+        int last = (at + length - 1 - HEADER_SIZE) / PAGE;
+        for (int page = first; page <= last; page++) {
+            if (!checked[page]) {
+                int start = HEADER_SIZE + page * PAGE;
+                crc.reset();
+                crc.update(buffer.duplicate().position(start).limit(Math.min(start + PAGE, pagesAt)));
+                if ((int) crc.getValue() != buffer.getInt(pagesAt + page * 4)) {
+                    throw corrupt("the checksum of page " + page + " does not match");
+                }
+                checked[page] = true;
+            }
+        }
+        return at;
+    }
+
+    private static UncheckedIOException corrupt(String why) {
+        return new UncheckedIOException(new IOException("Inventory snapshot is corrupt, " + why));
+    }
+
+    private static int pageCount(int pagesAt) {
+        return (pagesAt - HEADER_SIZE + PAGE - 1) / PAGE;
+    }
+}
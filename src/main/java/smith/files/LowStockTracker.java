@@ -0,0 +1,343 @@
+package smith.files;
+
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The LowStockTracker class keeps every part and product whose stock is below its min or
+ * above its max, ordered with the worst first. It listens to the inventory and looks at
+ * an item only when the item changes, so finding what to reorder never needs a scan.
+ *
+ * The items are kept in one tree ordered by how far they are out of range, where each
+ * node also counts the nodes under it. The tree is the observable list the reorder panel
+ * on the main screen shows: the item at a row and the row of an item are both found
+ * down one path, so each change costs O(log N) and is told to the panel as one row added
+ * or removed. Subscribers are told when an item goes out of range or comes back.
+ */
+public class LowStockTracker implements InventoryObserver {
+
+    /**
+     * Whether an item is a part or a product.
+     */
+    public enum Kind {PART, PRODUCT}
+
+    /**
+     * Where the stock of an item is compared to its min and max.
+     */
+    public enum Status {LOW, HIGH, OK}
+
+    /**
+     * An item that is out of range, as it was when it last changed.
+     * @param kind part or product
+     * @param id id
+     * @param name name
+     * @param stock stock
+     * @param min min
+     * @param max max
+     */
+    public record Entry(Kind kind, int id, String name, int stock, int min, int max) {
+
+        /**
+         * @return LOW if the stock is below min, HIGH if it is above max, otherwise OK
+         */
+        public Status status() {
+            return statusOf(stock, min, max);
+        }
+
+        /**
+         * @return how far the stock is below min, or above max
+         */
+        public int shortfall() {
+            return stock < min ? min - stock : Math.max(0, stock - max);
+        }
+
+        @Override
+        public String toString() {
+            String what = kind == Kind.PART ? "Part " : "Product ";
+            return what + id + " " + name + (stock < min
+                    ? ": " + shortfall() + " below min"
+                    : ": " + shortfall() + " above max");
+        }
+    }
+
+    /**
+     * A change of status of an item, sent to subscribers.
+     * @param entry the item, as it is now
+     * @param before the status it had
+     * @param after the status it has now
+     */
+    public record Event(Entry entry, Status before, Status after) {
+    }
+
+    // low before high, then the biggest shortfall first
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparing(Entry::status)
+            .thenComparing(Comparator.comparingInt(Entry::shortfall).reversed())
+            .thenComparing(Entry::kind)
+            .thenComparingInt(Entry::id);
+
+    private final RankedList outOfRange = new RankedList();
+    private final IntObjectMap<Entry> parts = new IntObjectMap<>();
+    private final IntObjectMap<Entry> products = new IntObjectMap<>();
+    private final List<Consumer<Event>> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return the items out of range, worst first. The list follows every change and
+     * cannot be changed by the caller.
+     */
+    public ObservableList<Entry> items() {
+        return outOfRange;
+    }
+
+    /**
+     * @return the number of items out of range
+     */
+    public int size() {
+        return outOfRange.size();
+    }
+
+    /**
+     * @return the item furthest out of range, or null if every item is in range
+     */
+    public Entry worst() {
+        return outOfRange.isEmpty() ? null : outOfRange.get(0);
+    }
+
+    /**
+     * Method to be told when an item goes out of range or comes back in range.
+     * @param subscriber called with each change of status
+     * @return call to stop the subscription
+     */
+    public Runnable subscribe(Consumer<Event> subscriber) {
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    /**
+     * Method to forget every item, without telling subscribers.
+     */
+    public void clear() {
+        outOfRange.deleteAll();
+        parts.clear();
+        products.clear();
+    }
+
+    private static Status statusOf(int stock, int min, int max) {
+        if (stock < min) {
+            return Status.LOW;
+        }
+        return stock > max ? Status.HIGH : Status.OK;
+    }
+
+    // looks at one item again after it changed. An item that is gone counts as in range.
+    private void check(IntObjectMap<Entry> entries, Kind kind, int id, String name, int stock, int min, int max, boolean gone) {
+        Entry old = entries.get(id);
+        Status before = old == null ? Status.OK : old.status();
+        Status after = gone ? Status.OK : statusOf(stock, min, max);
+        if (old != null) {
+            outOfRange.delete(old);
+            entries.remove(id);
+        }
+        Entry entry = gone ? old : new Entry(kind, id, name, stock, min, max);
+        if (after != Status.OK) {
+            outOfRange.insert(entry);
+            entries.put(id, entry);
+        }
+        if (before != after) {
+            Event event = new Event(entry, before, after);
+            for (Consumer<Event> subscriber : subscribers) {
+                subscriber.accept(event);
+            }
+        }
+    }
+
+    private void check(Part part, boolean gone) {
+        check(parts, Kind.PART, part.getId(), part.getName(), part.getStock(), part.getMin(), part.getMax(), gone);
+    }
+
+    private void check(Product product, boolean gone) {
+        check(products, Kind.PRODUCT, product.getId(), product.getName(), product.getStock(), product.getMin(), product.getMax(), gone);
+    }
+
+    @Override
+    public void partAdded(Part part) {
+        check(part, false);
+    }
+
+    @Override
+    public void partRemoved(Part part) {
+        check(part, true);
+    }
+
+    @Override
+    public void partReplaced(Part oldPart, Part newPart) {
+        check(newPart, false);
+    }
+
+    @Override
+    public void partUpdated(Part part) {
+        check(part, false);
+    }
+
+    @Override
+    public void productAdded(Product product) {
+        check(product, false);
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        check(product, true);
+    }
+
+    @Override
+    public void productReplaced(Product oldProduct, Product newProduct) {
+        check(newProduct, false);
+    }
+
+    @Override
+    public void productUpdated(Product product) {
+        check(product, false);
+    }
+
+    /**
+     * The items out of range as a list in ORDER, held in a treap: a search tree by ORDER
+     * that is kept balanced by giving each node a random priority, with the higher
+     * priority above. Each node counts the nodes under it, so a row is found from the
+     * counts down one path.
+     */
+    private static final class RankedList extends ObservableListBase<Entry> {
+
+        /**
+         * One item of the tree.
+         */
+        private static final class Node {
+            final Entry entry;
+            final int priority;
+            int count = 1;
+            Node left;
+            Node right;
+
+            Node(Entry entry, int priority) {
+                this.entry = entry;
+                this.priority = priority;
+            }
+        }
+
+        private final SplittableRandom random = new SplittableRandom(0x10ca1L);
+        private Node root;
+
+        @Override
+        public Entry get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            Node node = root;
+            while (true) {
+                int before = count(node.left);
+                if (index < before) {
+                    node = node.left;
+                } else if (index == before) {
+                    return node.entry;
+                } else {
+                    index -= before + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return count(root);
+        }
+
+        // puts the entry in its place and tells the listeners the row it went to
+        void insert(Entry entry) {
+            Node[] split = split(root, entry);
+            int row = count(split[0]);
+            root = join(join(split[0], new Node(entry, random.nextInt())), split[1]);
+            beginChange();
+            nextAdd(row, row + 1);
+            endChange();
+        }
+
+        // takes the entry out and tells the listeners the row it was at
+        void delete(Entry entry) {
+            Node[] split = split(root, entry);
+            Node[] rest = splitFirst(split[1]);
+            int row = count(split[0]);
+            root = join(split[0], rest[1]);
+            beginChange();
+            nextRemove(row, entry);
+            endChange();
+        }
+
+        // takes every entry out, told as one change
+        void deleteAll() {
+            if (root == null) {
+                return;
+            }
+            List<Entry> removed = List.copyOf(this);
+            root = null;
+            beginChange();
+            nextRemove(0, removed);
+            endChange();
+        }
+
+        private static int count(Node node) {
+            return node == null ? 0 : node.count;
+        }
+
+        private static Node counted(Node node) {
+            node.count = 1 + count(node.left) + count(node.right);
+            return node;
+        }
+
+        // the nodes before the entry in ORDER, and the nodes from it on
+        private static Node[] split(Node node, Entry entry) {
+            if (node == null) {
+                return new Node[] {null, null};
+            }
+            if (ORDER.compare(node.entry, entry) < 0) {
+                Node[] right = split(node.right, entry);
+                node.right = right[0];
+                return new Node[] {counted(node), right[1]};
+            }
+            Node[] left = split(node.left, entry);
+            node.left = left[1];
+            return new Node[] {left[0], counted(node)};
+        }
+
+        // the first node on its own, and the rest
+        private static Node[] splitFirst(Node node) {
+            if (node.left == null) {
+                Node rest = node.right;
+                node.right = null;
+                return new Node[] {counted(node), rest};
+            }
+            Node[] left = splitFirst(node.left);
+            node.left = left[1];
+            return new Node[] {left[0], counted(node)};
+        }
+
+        // joins two trees where every node of the first comes before the second
+        private static Node join(Node first, Node second) {
+            if (first == null) {
+                return second;
+            }
+            if (second == null) {
+                return first;
+            }
+            if (first.priority > second.priority) {
+                first.right = join(first.right, second);
+                return counted(first);
+            }
+            second.left = join(first, second.left);
+            return counted(second);
+        }
+    }
+}
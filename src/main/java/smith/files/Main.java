@@ -1,10 +1,11 @@
 package smith.files;
 
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Scene;
+import javafx.application.Platform;
+import javafx.scene.control.Alert;
 import javafx.stage.Stage;
 import java.io.IOException;
+import java.nio.file.Path;
 import static smith.files.Inventory.partInventory;
 import static smith.files.Inventory.productInventory;
 
@@ -13,34 +14,123 @@ import static smith.files.Inventory.productInventory;
  * Class that initiates the main screen and opens it for the user.
  */
 public class Main extends Application {
+
+    /**
+     * journal that saves every change to the inventory
+     */
+    private static InventoryJournal journal;
+
+    /**
+     * history of every change to the inventory, for looking at it as it was at a time
+     */
+    private static InventoryHistory history;
+
+    /**
+     * holds of part stock for orders, so two orders cannot sell the same units
+     */
+    private static StockReservations reservations;
+
+    /**
+     * HTTP server that lets other programs on this computer read and change the inventory
+     */
+    private static InventoryServer server;
+
     @Override
     /**
      * loads the main screen
      * @param stage loads the main screen
      */
     public void start(Stage stage) throws IOException {
-        FXMLLoader fxmlLoader = new FXMLLoader(Main.class.getResource("main-view.fxml"));
-        Scene scene = new Scene(fxmlLoader.load(), 600, 400);
+        // loads every screen now, so moving between them later only swaps the scene
+        Screens.warmUp();
         stage.setTitle("Inventory Management");
-        stage.setScene(scene);
+        stage.setScene(Screens.scene(Screens.MAIN));
         stage.show();
+        // tells the user when changes stop being saved, the writers fail on their own threads
+        if (journal != null) {
+            journal.setOnFailure(e -> Platform.runLater(() -> showSaveError(
+                    "Changes can no longer be saved to disk and will be lost when the program closes: " + e.getMessage())));
+        }
+        if (history != null) {
+            history.setOnFailure(e -> Platform.runLater(() -> showSaveError(
+                    "The history of changes can no longer be written: " + e.getMessage())));
+        }
+        // started once the FX thread is running, since their changes are made on it
+        reservations = StockReservations.open();
+        try {
+            server = InventoryServer.start(reservations, history);
+        } catch (IOException e) {
+            System.err.println("Inventory HTTP server could not be started: " + e.getMessage());
+        }
+    }
+
+    /**
+     * shows an error about saving the inventory
+     * @param message what went wrong
+     */
+    private static void showSaveError(String message) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Save Error");
+        alert.setContentText(message);
+        alert.show();
+    }
+
+    /**
+     * stops the HTTP server and saves anything still waiting in the journal and the
+     * history when the program closes
+     * @throws IOException if the journal or the history could not be written
+     */
+    @Override
+    public void stop() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        if (reservations != null) {
+            reservations.close();
+        }
+        if (history != null) {
+            history.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
     }
 
     /**
-     * This is the main method of the program. Test data is already put in.
+     * This is the main method of the program. The saved inventory is read back from the
+     * journal directory, set with the "inventory.dir" property. The first time the program
+     * runs the inventory is empty, so test data is put in. The HTTP server is off unless
+     * the "inventory.http.port" property is set, and then listens on that port on this
+     * computer only.
      * @param args meant for compiling and running.
      */
     public static void main(String[] args)
     {
+        // reads the saved inventory and starts recording changes.
+        Path directory = Path.of(System.getProperty("inventory.dir", "inventory-data"));
+        try {
+            journal = InventoryJournal.open(directory);
+        } catch (IOException e) {
+            System.err.println("Inventory journal could not be opened, changes will not be saved: " + e.getMessage());
+        }
+        try {
+            history = InventoryHistory.open(directory.resolve("history"));
+        } catch (IOException e) {
+            System.err.println("Inventory history could not be opened, changes will not be kept: " + e.getMessage());
+        }
+        if (!partInventory.isEmpty() || !productInventory.isEmpty()) {
+            launch();
+            return;
+        }
         // test data created and placed in their respective inventories.
         OutsourcedPart screw = new OutsourcedPart(1, "screw", 0.99, 15, 0, 100, "Home Depot" );
         InHousePart bolt = new InHousePart(2, "bolt", 0.99, 15, 0, 100, 1 );
-        partInventory.add(screw);
-        partInventory.add(bolt);
+        InventoryEngine.addPart(screw);
+        InventoryEngine.addPart(bolt);
         Product bike = new Product(1, "bike", 50.00, 5, 1, 20);
         Product scooter = new Product(2, "scooter", 50.00, 5, 1, 20);
-        productInventory.add(bike);
-        productInventory.add(scooter);
+        InventoryEngine.addProduct(bike);
+        InventoryEngine.addProduct(scooter);
         launch();
     }
 }
\ No newline at end of file
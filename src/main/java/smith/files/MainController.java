@@ -2,20 +2,21 @@ package smith.files;
 
 // imported items
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.stage.Stage;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.FileChooser;
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
 import static smith.files.Inventory.*;
@@ -23,9 +24,11 @@ import static smith.files.Inventory.*;
 /**
  * class that contains methods for the main screen
  */
-public class MainController implements Initializable {
+public class MainController implements Initializable, Screens.Resettable {
 
     // table columns and searches
+    @FXML private BorderPane mainPane;
+    @FXML private Button mainImport;
     @FXML private TableView<Part> mainViewPartsTable;
     @FXML private TableColumn<Part,Integer> partIDColumn;
     @FXML private TableColumn<Part,String> partNameColumn;
@@ -36,13 +39,31 @@ public class MainController implements Initializable {
     @FXML private TableColumn<Product,String> productNameColumn;
     @FXML private TableColumn<Product,Integer> productInventoryColumn;
     @FXML private TableColumn<Product,Double> productPriceColumn;
+    @FXML private TableColumn<Product,Double> productCostColumn;
+    @FXML private TableColumn<Product,Integer> productBuildableColumn;
     @FXML private TextField mainPartsSearch;
     @FXML private TextField mainProductsSearch;
+    @FXML private TextField mainPartsRange;
+    @FXML private TextField mainProductsRange;
+    @FXML private ListView<LowStockTracker.Entry> reorderList;
+
+    // every part and product, fetched a page at a time as the tables scroll
+    private final PagedList<Part> partRows = PagedList.parts();
+    private final PagedList<Product> productRows = PagedList.products();
+
+    // most rejected lines listed after an import
+    private static final int REJECTED_SHOWN = 10;
+
+    // keyboard shortcuts for undo and redo
+    private static final KeyCombination UNDO = KeyCombination.valueOf("Shortcut+Z");
+    private static final KeyCombination REDO = KeyCombination.valueOf("Shortcut+Y");
+    private static final KeyCombination REDO_SHIFT = KeyCombination.valueOf("Shortcut+Shift+Z");
 
     /**
      * Searches the Product Inventory. The search is either based on the name or the ID.
      * If the ID is used, only one product is returned. If the name is used, all names
-     * that match the text from the search bar are displayed.  If nothing matches, then an
+     * that match the text from the search bar are displayed.  If the text is not an ID,
+     * names a few typos away are displayed, closest first.  If nothing matches, then an
      * error message is displayed. If the text box is empty, all products are displayed.
      */
     @FXML
@@ -63,10 +84,14 @@ public class MainController implements Initializable {
             }
             // displays error if no matches are found.
             catch(NumberFormatException e) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setContentText("Product not found");
-                alert.showAndWait();
+                // not an ID either, so names a few typos away are shown, closest first
+                searchedProducts.addAll(searchBySimilarProductName(searchString));
+                if (searchedProducts.isEmpty()) {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.setTitle("Error");
+                    alert.setContentText("Product not found");
+                    alert.showAndWait();
+                }
             }
         }
         //displays matching products.
@@ -76,7 +101,8 @@ public class MainController implements Initializable {
     /**
      * Searches the part Inventory. The search is either based on the name or the ID.
      * If the ID is used, only one part is returned. If the name is used, all names
-     * that match the text from the search bar are displayed.  If nothing matches, then an
+     * that match the text from the search bar are displayed.  If the text is not an ID,
+     * names a few typos away are displayed, closest first.  If nothing matches, then an
      * error message is displayed. If the text box is empty, all parts are displayed.
      */
     @FXML
@@ -97,10 +123,14 @@ public class MainController implements Initializable {
             }
             // displays error message if search returns nothing
             catch(NumberFormatException e) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setContentText("Part not found");
-                alert.showAndWait();
+                // not an ID either, so names a few typos away are shown, closest first
+                searchedParts.addAll(searchBySimilarPartName(searchString));
+                if (searchedParts.isEmpty()) {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.setTitle("Error");
+                    alert.setContentText("Part not found");
+                    alert.showAndWait();
+                }
             }
         }
         // displays search results in table
@@ -108,6 +138,110 @@ public class MainController implements Initializable {
 
     }
 
+    /**
+     * A range typed in a range filter box.
+     * @param stock true to filter by inventory level, false to filter by price
+     * @param low lowest value, included
+     * @param high highest value, included
+     */
+    private record Range(boolean stock, double low, double high) {
+    }
+
+    /**
+     * Reads a range filter such as "price 5-20", "stock <10", "stock >= 3" or "$5-$20".
+     * Price is used when no field is given.
+     * @param text the text of the range box
+     * @return the range, or an empty Optional if the text is not a range
+     */
+    private static Optional<Range> parseRange(String text) {
+        String s = text.trim().toLowerCase().replace("$", "").replace(" ", "");
+        boolean stock = s.startsWith("stock") || s.startsWith("inv");
+        s = s.replaceFirst("^(price|stock|inventory|inv)", "");
+        try {
+            double low = Double.NEGATIVE_INFINITY;
+            double high = Double.POSITIVE_INFINITY;
+            if (s.startsWith("<=")) {
+                high = Double.parseDouble(s.substring(2));
+            } else if (s.startsWith("<")) {
+                high = Math.nextDown(Double.parseDouble(s.substring(1)));
+            } else if (s.startsWith(">=")) {
+                low = Double.parseDouble(s.substring(2));
+            } else if (s.startsWith(">")) {
+                low = Math.nextUp(Double.parseDouble(s.substring(1)));
+            } else if (s.indexOf('-', 1) > 0) {
+                int dash = s.indexOf('-', 1);
+                low = Double.parseDouble(s.substring(0, dash));
+                high = Double.parseDouble(s.substring(dash + 1));
+            } else {
+                low = high = Double.parseDouble(s);
+            }
+            return Optional.of(new Range(stock, low, high));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    // stock is a whole number, so a range of stock is rounded in to whole numbers
+    private static int stockLow(Range range) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.ceil(range.low()));
+    }
+
+    private static int stockHigh(Range range) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.floor(range.high()));
+    }
+
+    private static void showRangeError() {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error");
+        alert.setContentText("Range must look like \"price 5-20\" or \"stock <10\"");
+        alert.showAndWait();
+    }
+
+    /**
+     * Filters the parts table to parts with a price or inventory level in the range typed
+     * in the range box, when Enter is pressed. Uses the range indexes of the inventory, so
+     * only the parts found are looked at. An empty box shows every part again.
+     */
+    @FXML
+    void enterPartRange() {
+        String text = mainPartsRange.getText();
+        if (text.isBlank()) {
+            mainViewPartsTable.setItems(partRows);
+            return;
+        }
+        Optional<Range> range = parseRange(text);
+        if (range.isEmpty()) {
+            showRangeError();
+            return;
+        }
+        Range r = range.get();
+        mainViewPartsTable.setItems(r.stock()
+                ? searchByPartStock(stockLow(r), stockHigh(r))
+                : searchByPartPrice(r.low(), r.high()));
+    }
+
+    /**
+     * Filters the products table to products with a price or inventory level in the range
+     * typed in the range box, when Enter is pressed. An empty box shows every product again.
+     */
+    @FXML
+    void enterProductRange() {
+        String text = mainProductsRange.getText();
+        if (text.isBlank()) {
+            mainViewProductsTable.setItems(productRows);
+            return;
+        }
+        Optional<Range> range = parseRange(text);
+        if (range.isEmpty()) {
+            showRangeError();
+            return;
+        }
+        Range r = range.get();
+        mainViewProductsTable.setItems(r.stock()
+                ? searchByProductStock(stockLow(r), stockHigh(r))
+                : searchByProductPrice(r.low(), r.high()));
+    }
+
     /**
      * Exits the application. A confirmation appears for the user to decide
      * if they really want to exit the application
@@ -131,11 +265,7 @@ public class MainController implements Initializable {
      */
     @FXML
     void onMainPartsAddButtonClick(ActionEvent event) throws IOException {
-        Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("add-part.fxml")));
-        Scene mainScreenScene = new Scene(mainScreenParent);
-        Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-        mainStage.setScene(mainScreenScene);
-        mainStage.show();
+        Screens.open(event, Screens.ADD_PART);
     }
 
     /**
@@ -147,19 +277,14 @@ public class MainController implements Initializable {
     @FXML
     void onMainPartsModifyButtonClick(ActionEvent event){
         try {
-            //loads modify parts but does not open it.
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("modify-part.fxml"));
-            Parent root = loader.load();
+            //clears modify parts but does not open it.
+            ModifyPartController mpController = Screens.reset(Screens.MODIFY_PART);
 
             // moves the selected part from this controller to the new controller
-            ModifyPartController mpController = loader.getController();
             Part selectedPart = mainViewPartsTable.getSelectionModel().getSelectedItem();
             mpController.PassPart(selectedPart);
 
-            Scene mainScreenScene = new Scene(root);
-            Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-            mainStage.setScene(mainScreenScene);
-            mainStage.show();
+            Screens.show(event, Screens.MODIFY_PART);
         // if nothing is selected, displays error message.
         } catch (Exception e) {
             Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -178,19 +303,14 @@ public class MainController implements Initializable {
     @FXML
     void onMainProductsModifyButtonClick(ActionEvent event) {
         try {
-            // loads modify product window, but does not open it.
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("modify-product.fxml"));
-            Parent root = loader.load();
+            // clears modify product window, but does not open it.
+            ModifyProductController mpController = Screens.reset(Screens.MODIFY_PRODUCT);
 
             // transfers selected product from one controller to the next.
-            ModifyProductController mpController = loader.getController();
             Product selectedProduct = mainViewProductsTable.getSelectionModel().getSelectedItem();
             mpController.PassProduct(selectedProduct);
 
-            Scene mainScreenScene = new Scene(root);
-            Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-            mainStage.setScene(mainScreenScene);
-            mainStage.show();
+            Screens.show(event, Screens.MODIFY_PRODUCT);
         // displays error if no product is selected.
         } catch (Exception e) {
             Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -207,11 +327,7 @@ public class MainController implements Initializable {
      */
     @FXML
     void onMainProductsAddButtonClick(ActionEvent event) throws IOException{
-        Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("add-product.fxml")));
-        Scene mainScreenScene = new Scene(mainScreenParent);
-        Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-        mainStage.setScene(mainScreenScene);
-        mainStage.show();
+        Screens.open(event, Screens.ADD_PRODUCT);
     }
 
     /**
@@ -222,7 +338,8 @@ public class MainController implements Initializable {
      *
      *
      * Method to delete Part that is selected.  If no part is selected an error message
-     * is displayed.  Once a part is deleted, the page is refreshed.
+     * is displayed.  Part cannot be deleted if a product uses it.  Once a part is
+     * deleted, the page is refreshed.
      * @param event clicking button
      * @throws IOException IO Exception
      */
@@ -238,6 +355,15 @@ public class MainController implements Initializable {
             alert.showAndWait();
             return;
         }
+        // a part used by a product cannot be deleted
+        int usedBy = InventoryEngine.productsUsing(selectedPart.getId());
+        if (usedBy > 0){
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Delete Error");
+            alert.setContentText("This part is used by " + usedBy + " product(s) and cannot be deleted.");
+            alert.showAndWait();
+            return;
+        }
        // confirmation that the user wants to delete the part
        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
        alert.setTitle("Confirmation");
@@ -245,14 +371,10 @@ public class MainController implements Initializable {
        alert.setContentText("Do you want to delete this part?");
        Optional<ButtonType> result = alert.showAndWait();
        if (result.isPresent() && result.get() == ButtonType.OK) {
-           partInventory.remove(selectedPart);
-
-           // reloads the page
-           Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("main-view.fxml")));
-           Scene mainScreenScene = new Scene(mainScreenParent);
-           Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-           mainStage.setScene(mainScreenScene);
-           mainStage.show();
+           undoStack().deletePart(selectedPart.getId());
+
+           // refreshes the tables in place
+           reset();
        }
     }
 
@@ -290,15 +412,112 @@ public class MainController implements Initializable {
         alert.setContentText("Do you want to delete this part?");
         Optional<ButtonType> result = alert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            productInventory.remove(selectedProduct);
-
-            // refresh page
-            Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("main-view.fxml")));
-            Scene mainScreenScene = new Scene(mainScreenParent);
-            Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-            mainStage.setScene(mainScreenScene);
-            mainStage.show();
+            undoStack().deleteProduct(selectedProduct.getId());
+
+            // refresh tables in place
+            reset();
+        }
+    }
+
+    /**
+     * Imports parts and products from a CSV file chosen by the user. The file is read and
+     * parsed on a background thread and each chunk is added to the inventory on the FX
+     * thread, so the screen keeps responding during a large import. A report of what was
+     * imported and which lines were not is shown at the end.
+     */
+    @FXML
+    void onMainImportButtonClick() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import Parts and Products");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+        File file = chooser.showOpenDialog(mainPane.getScene().getWindow());
+        if (file == null) {
+            return;
         }
+        mainImport.setDisable(true);
+        CsvImporter importer = new CsvImporter(10_000, Runtime.getRuntime().availableProcessors(),
+                REJECTED_SHOWN, Platform::runLater);
+        Thread reader = new Thread(() -> {
+            try {
+                CsvImporter.Report report = importer.importFile(file.toPath());
+                Platform.runLater(() -> showImportReport(report));
+            } catch (IOException e) {
+                Platform.runLater(() -> {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.setTitle("Import Error");
+                    alert.setContentText("The file could not be imported: " + e.getMessage());
+                    alert.showAndWait();
+                });
+            } finally {
+                Platform.runLater(() -> mainImport.setDisable(false));
+            }
+        }, "csv-import-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Shows what an import added and the first lines it could not import.
+     * @param report the result of the import
+     */
+    private static void showImportReport(CsvImporter.Report report) {
+        StringBuilder text = new StringBuilder();
+        text.append("Imported ").append(report.partsImported()).append(" parts and ")
+                .append(report.productsImported()).append(" products.");
+        if (report.rejectedCount() > 0) {
+            text.append("\n").append(report.rejectedCount()).append(" lines were not imported:");
+            for (CsvImporter.Rejected r : report.rejected()) {
+                text.append("\nLine ").append(r.line()).append(": ").append(r.reason());
+            }
+            if (report.rejectedCount() > report.rejected().size()) {
+                text.append("\n...");
+            }
+        }
+        Alert alert = new Alert(report.rejectedCount() > 0 ? Alert.AlertType.WARNING : Alert.AlertType.INFORMATION);
+        alert.setTitle("Import");
+        alert.setContentText(text.toString());
+        alert.showAndWait();
+    }
+
+    /**
+     * Undoes or redoes the last change when Ctrl+Z, Ctrl+Y or Ctrl+Shift+Z is pressed
+     * (Cmd on a Mac). A text box that has the focus uses the keys for its own text first.
+     * @param event key pressed
+     */
+    private void onShortcut(KeyEvent event) {
+        boolean changed;
+        if (UNDO.match(event)) {
+            changed = undoStack().undo();
+        } else if (REDO.match(event) || REDO_SHIFT.match(event)) {
+            changed = undoStack().redo();
+        } else {
+            return;
+        }
+        event.consume();
+        if (changed) {
+            // search results are not paged lists, so they are redrawn here
+            mainViewPartsTable.refresh();
+            mainViewProductsTable.refresh();
+        }
+    }
+
+    /**
+     * Puts the main screen back to how it first opens. The searches are cleared, every
+     * part and product is shown again and the tables are redrawn so changed values and
+     * costs show, without loading the screen again.
+     */
+    @Override
+    public void reset() {
+        mainPartsSearch.clear();
+        mainProductsSearch.clear();
+        mainPartsRange.clear();
+        mainProductsRange.clear();
+        mainViewPartsTable.setItems(partRows);
+        mainViewProductsTable.setItems(productRows);
+        mainViewPartsTable.getSelectionModel().clearSelection();
+        mainViewProductsTable.getSelectionModel().clearSelection();
+        mainViewPartsTable.refresh();
+        mainViewProductsTable.refresh();
     }
 
     /**
@@ -309,8 +528,12 @@ public class MainController implements Initializable {
      */
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
-        // loads table with parts
-        mainViewPartsTable.setItems(partInventory);
+        // loads table with parts, sorted by the inventory when a column is clicked
+        partRows.bind(mainViewPartsTable, Map.of(
+                partIDColumn, ColumnStore.Field.ID,
+                partNameColumn, ColumnStore.Field.NAME,
+                partInventoryColumn, ColumnStore.Field.STOCK,
+                partPriceColumn, ColumnStore.Field.PRICE));
 
         // sets table columns
         partIDColumn.setCellValueFactory(new PropertyValueFactory<>("id"));
@@ -318,13 +541,37 @@ public class MainController implements Initializable {
         partInventoryColumn.setCellValueFactory(new PropertyValueFactory<>("stock"));
         partPriceColumn.setCellValueFactory(new PropertyValueFactory<>("price"));
 
-        // loads table with products
-        mainViewProductsTable.setItems(productInventory);
+        // loads table with products. Cost is not kept in the columns, so it cannot be sorted.
+        productRows.bind(mainViewProductsTable, Map.of(
+                productIDColumn, ColumnStore.Field.ID,
+                productNameColumn, ColumnStore.Field.NAME,
+                productInventoryColumn, ColumnStore.Field.STOCK,
+                productPriceColumn, ColumnStore.Field.PRICE));
 
         // sets table columns
         productIDColumn.setCellValueFactory(new PropertyValueFactory<>("id"));
         productNameColumn.setCellValueFactory(new PropertyValueFactory<>("Name"));
         productInventoryColumn.setCellValueFactory(new PropertyValueFactory<>("stock"));
         productPriceColumn.setCellValueFactory(new PropertyValueFactory<>("price"));
+        // material cost comes from the cost rollup instead of adding up the parts each time
+        productCostColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(Inventory.materialCost(cell.getValue().getId())));
+        // units that can be built from the parts in stock, kept up to date by the calculator
+        productBuildableColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(Inventory.buildable(cell.getValue().getId())));
+        // both come from the parts, so the product rows are drawn again when parts change
+        Inventory.addDiffListener(diff -> {
+            if (!diff.parts().isEmpty()) {
+                mainViewProductsTable.refresh();
+            }
+        });
+
+        // loads reorder panel with parts and products out of range, worst first
+        reorderList.setItems(lowStock().items());
+
+        // suggests names as a search is typed
+        SearchSuggestions.attach(mainPartsSearch, InventoryEngine::suggestPartNames, this::enterPartSearch);
+        SearchSuggestions.attach(mainProductsSearch, InventoryEngine::suggestProductNames, this::enterProductSearch);
+
+        // undo and redo from anywhere on the main screen
+        mainPane.addEventHandler(KeyEvent.KEY_PRESSED, this::onShortcut);
     }
 }
@@ -3,23 +3,16 @@ package smith.files;
 // items imported
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.stage.Stage;
 import java.io.IOException;
-import java.util.Objects;
 import java.util.Optional;
-import static smith.files.Inventory.partInventory;
 
 /** This class contains functions for the modify-part screen.  This screen
  * can be found after clicking the "modify part" button on the main window.  Here,
  * a user can modify a part from the part inventory.  The radio buttons at the top determine
  * whether it is an in-house part or an outsourced part.  Both are objects that inherit
  * the "Part" class.*/
-public class ModifyPartController {
+public class ModifyPartController implements Screens.Resettable {
 
     // initializes labels, radio buttons and text fields
     @FXML private Label modifyPartMachineIDLabel;
@@ -55,16 +48,12 @@ public class ModifyPartController {
 
         // if user says yes, load the main page.
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("main-view.fxml")));
-            Scene mainScreenScene = new Scene(mainScreenParent);
-            Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-            mainStage.setScene(mainScreenScene);
-            mainStage.show();
+            Screens.open(event, Screens.MAIN);
         }
     }
     /**
-     * This saves the part that was modified. The part is updated in the partInventory
-     * found in the inventory class.  If the Inventory is not in between the min and
+     * This saves the part that was modified. The changed fields are saved onto the part in
+     * the partInventory found in the inventory class, and can be undone from the main screen.  If the Inventory is not in between the min and
      * max, an error message is generated. If a user inputs something other than what
      * the program calls for, an error message is generated and the part is not saved.
      * Finally, the main screen loads and is put on the screen
@@ -81,15 +70,10 @@ public class ModifyPartController {
             int min = Integer.parseInt(modifyPartMinText.getText());
             double price = Double.parseDouble(modifyPartPriceText.getText());
 
-            // max cannot be less than min, or else an error shows.
-            if (max < min){
-                Alert alert = new Alert(Alert.AlertType.ERROR, "Max cannot be less than Min.");
-                alert.showAndWait();
-                return;
-            }
-            // inv has to be in between  min and max.
-            if (inv < min || inv > max){
-                Alert alert = new Alert(Alert.AlertType.ERROR, "Inv must be in between Min and Max.");
+            // max cannot be less than min, and inv has to be in between min and max.
+            Optional<String> problem = InventoryEngine.checkFields(inv, min, max);
+            if (problem.isPresent()) {
+                Alert alert = new Alert(Alert.AlertType.ERROR, problem.get());
                 alert.showAndWait();
                 return;
             }
@@ -105,23 +89,17 @@ public class ModifyPartController {
                     // If the InHouseButton is selected, save it as an InHousePart
                     int machineID = Integer.parseInt(modifyPartMachineIDText.getText());
                     InHousePart savePart = new InHousePart(partID, partName, price, inv, min, max, machineID);
-                    partInventory.remove(this.part);
-                    partInventory.add(savePart);
+                    InventoryEngine.undoStack().updatePart(savePart);
                 } else if (modifyPartOutsourcedButton.isSelected()) {
                     // If the OutsourcedButton is selected, save it as an OutsourcedPart.
                     String company = modifyPartMachineIDText.getText();
                     OutsourcedPart savePart = new OutsourcedPart(partID, partName, price, inv, min, max, company);
-                    partInventory.remove(this.part);
-                    partInventory.add(savePart);
+                    InventoryEngine.undoStack().updatePart(savePart);
 
                 }
 
                 // loads main page
-                Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("main-view.fxml")));
-                Scene mainScreenScene = new Scene(mainScreenParent);
-                Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-                mainStage.setScene(mainScreenScene);
-                mainStage.show();
+                Screens.open(event, Screens.MAIN);
             }
 
         // If one of the fields has the wrong data type in it, display an error.
@@ -195,6 +173,24 @@ public class ModifyPartController {
          }
      }
 
+    /**
+     * Clears the text boxes and moves the radio dial back to "In-House" before the next
+     * part is passed in.
+     */
+    @Override
+    public void reset() {
+        part = null;
+        modifyPartIDText.clear();
+        modifyPartNameText.clear();
+        modifyPartInvText.clear();
+        modifyPartPriceText.clear();
+        modifyPartMaxText.clear();
+        modifyPartMinText.clear();
+        modifyPartMachineIDText.clear();
+        modifyPartInHouseButton.setSelected(true);
+        modifyPartMachineIDLabel.setText("Machine ID");
+    }
+
     /**
      * This initializes the Toggle Group.  When the page is loaded, the radio dials are
      * placed into a toggle group so that when one is pressed, the other is removed.
@@ -5,15 +5,10 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.stage.Stage;
 import java.io.IOException;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
 import static smith.files.Inventory.*;
 
@@ -22,7 +17,7 @@ import static smith.files.Inventory.*;
  * a user can modify a product from the product inventory. The user can add or remove
  * associated parts before saving.
  */
-public class ModifyProductController {
+public class ModifyProductController implements Screens.Resettable {
 
     // initializing text fields and tables
     @FXML private TableColumn<Part,Integer> allPartsID;
@@ -47,6 +42,9 @@ public class ModifyProductController {
     // temporary list of parts that will be stored to the product when saved.
     ObservableList<Part> tempPartList = FXCollections.observableArrayList();
 
+    // every part, fetched a page at a time as the table scrolls
+    private final PagedList<Part> partRows = PagedList.parts();
+
     /** This method cancels the "modify product" function. When pressed, an alert will pop up
      * asking if the user is sure they want to cancel. If the user says yes, they will
      * return to the main screen.  If they select no, the user will return to the
@@ -64,11 +62,7 @@ public class ModifyProductController {
         if (result.isPresent() && result.get() == ButtonType.OK) {
             tempPartList.clear();
 
-            Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("main-view.fxml")));
-            Scene mainScreenScene = new Scene(mainScreenParent);
-            Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-            mainStage.setScene(mainScreenScene);
-            mainStage.show();
+            Screens.open(event, Screens.MAIN);
         }
     }
 
@@ -108,7 +102,8 @@ public class ModifyProductController {
     /** This method searches the parts table. The search first looks for a common string
      * anywhere in the part name.  If found, it will display all parts matching the
      * string in the parts table.  If no string can be matched, it then searches by ID
-     * number.  This will only display 1 item if the ID matches exactly.  If nothing
+     * number.  This will only display 1 item if the ID matches exactly.  If the text is not
+     * an ID, parts with names a few typos away are displayed, closest first.  If nothing
      * matches, an error message will appear saying that no match can be found. If
      * the nothing is in the text box, all parts will be displayed.*/
     public void onSearchEnter() {
@@ -126,10 +121,14 @@ public class ModifyProductController {
                 }
                 // if search contains no match, display error method
             } catch (NumberFormatException e) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setContentText("Part not found");
-                alert.showAndWait();
+                // not an ID either, so names a few typos away are shown, closest first
+                searchedParts.addAll(searchBySimilarPartName(searchString));
+                if (searchedParts.isEmpty()) {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.setTitle("Error");
+                    alert.setContentText("Part not found");
+                    alert.showAndWait();
+                }
             }
         }
         // display all parts found from teh search
@@ -182,8 +181,9 @@ public class ModifyProductController {
         }
     }
 
-    /** This saves the Product that was modified. The product is saved into the
-     * productInventory found in the inventory class.  If the Inventory is not in between
+    /** This saves the Product that was modified. The changed fields and parts are saved onto
+     * the product in the productInventory found in the inventory class, and can be undone
+     * from the main screen.  If the Inventory is not in between
      * the min and max, an error message is generated. If a user inputs something other than what
      * the program calls for, an error message is generated and the Product is not saved.
      * Finally, the main screen loads and is put on the screen
@@ -208,15 +208,10 @@ public class ModifyProductController {
             saveProduct.setMax(productMax);
             saveProduct.setMin(productMin);
 
-            //max can't be less than min
-            if (productMax < productMin){
-                Alert alert = new Alert(Alert.AlertType.ERROR, "Max cannot be less than Min.");
-                alert.showAndWait();
-                return;
-            }
-            // Inventory must be in between min and max
-            if (productStock < productMin || productStock > productMax){
-                Alert alert = new Alert(Alert.AlertType.ERROR, "Inv must be in between Min and Max.");
+            // max cannot be less than min, and inv has to be in between min and max.
+            Optional<String> problem = InventoryEngine.checkFields(productStock, productMin, productMax);
+            if (problem.isPresent()) {
+                Alert alert = new Alert(Alert.AlertType.ERROR, problem.get());
                 alert.showAndWait();
                 return;
             }
@@ -230,17 +225,12 @@ public class ModifyProductController {
             alert.setContentText("Are you sure you want to Save?");
             Optional<ButtonType> result = alert.showAndWait();
             if (result.isPresent() && result.get() == ButtonType.OK) {
-                // saving the product to the product inventory
-                productInventory.remove(this.product);
-                productInventory.add(saveProduct);
+                // saving the changed fields onto the product in the product inventory
+                undoStack().updateProduct(saveProduct);
                 tempPartList.clear();
 
                 // loading the main screen
-                Parent mainScreenParent = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("main-view.fxml")));
-                Scene mainScreenScene = new Scene(mainScreenParent);
-                Stage mainStage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-                mainStage.setScene(mainScreenScene);
-                mainStage.show();
+                Screens.open(event, Screens.MAIN);
             }
         }
         // display error if values aren't the appropriate data type
@@ -252,13 +242,29 @@ public class ModifyProductController {
         }
     }
 
+    /**
+     * Clears the search and the associated parts before the next product is passed in.
+     */
+    @Override
+    public void reset() {
+        product = null;
+        modifyProductSearchText.clear();
+        tempPartList.clear();
+        allPartsTable.setItems(partRows);
+        allPartsTable.getSelectionModel().clearSelection();
+    }
+
     /**
      * Initialize the tables and puts the parts in the tables
      */
     @FXML
     private void initialize() {
         // puts parts in the all parts table
-        allPartsTable.setItems(partInventory);
+        partRows.bind(allPartsTable, Map.of(
+                allPartsID, ColumnStore.Field.ID,
+                allPartsName, ColumnStore.Field.NAME,
+                allPartsInv, ColumnStore.Field.STOCK,
+                allPartsCost, ColumnStore.Field.PRICE));
 
         //sets the columns for the all parts table
         allPartsID.setCellValueFactory(new PropertyValueFactory<>("id"));
@@ -274,6 +280,9 @@ public class ModifyProductController {
         aPartName.setCellValueFactory(new PropertyValueFactory<>("Name"));
         aPartInv.setCellValueFactory(new PropertyValueFactory<>("stock"));
         aPartPrice.setCellValueFactory(new PropertyValueFactory<>("price"));
+
+        // suggests part names as a search is typed
+        SearchSuggestions.attach(modifyProductSearchText, InventoryEngine::suggestPartNames, this::onSearchEnter);
     }
 }
 
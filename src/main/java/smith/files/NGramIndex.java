@@ -0,0 +1,339 @@
+package smith.files;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * The NGramIndex class is a substring index over names. Every name is broken into its
+ * trigrams (each run of 3 characters) and the item is added to a posting list for each
+ * trigram. A substring search only has to look at the items found in the posting lists
+ * of the search text instead of every item in the inventory.
+ *
+ * Each item gets a slot number when it is added, and slot numbers only go up, so every
+ * posting list is a sorted array of ints. Removing an item only clears its slot. The
+ * posting lists skip cleared slots, and are rebuilt once more than half of the slots
+ * are cleared. The slot of each item is kept by the item's ID in an IntIntMap, so finding
+ * it boxes nothing, and the item in the slot is checked to be the same object.
+ * @param <T> the type of item being indexed
+ */
+public class NGramIndex<T> {
+
+    // length of each gram
+    private static final int N = 3;
+    // fewest cleared slots before the lists are rebuilt
+    private static final int MIN_REBUILD = 1024;
+
+    private final ToIntFunction<T> idOf;
+    private final Function<T, String> nameOf;
+
+    // item in each slot, null once the item is removed
+    private Object[] items = new Object[64];
+    private int nextSlot;
+    private int removed;
+    // slot of each item by ID
+    private final IntIntMap slotOf = new IntIntMap();
+
+    // trigram keys, with the number of the posting list of each one
+    private long[] gramKeys = new long[64];
+    private int[] gramLists = new int[64];
+    private boolean[] gramUsed = new boolean[64];
+    private int gramCount;
+
+    // posting lists, each a sorted array of slots
+    private int[][] lists = new int[64][];
+    private int[] listSizes = new int[64];
+
+    /**
+     * NGramIndex constructor
+     * @param idOf reads the ID of an item, which is not changed while it is indexed
+     * @param nameOf reads the current name of an item
+     */
+    public NGramIndex(ToIntFunction<T> idOf, Function<T, String> nameOf) {
+        this.idOf = idOf;
+        this.nameOf = nameOf;
+    }
+
+    /**
+     * Method to add an item to the index. An item already indexed under the same ID is
+     * taken out, the same as in the ID index.
+     * @param item the item to add
+     * @param name the name it is indexed under
+     */
+    public void add(T item, String name) {
+        int id = idOf.applyAsInt(item);
+        int old = slotOf.get(id);
+        if (old >= 0) {
+            if (items[old] == item) {
+                return;
+            }
+            clearSlot(old);
+        }
+        if (nextSlot == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
+        }
+        int slot = nextSlot++;
+        items[slot] = item;
+        slotOf.put(id, slot);
+        index(slot, name);
+    }
+
+    /**
+     * Method to remove an item from the index.
+     * @param item the item to remove
+     * @param name the name it was indexed under
+     */
+    public void remove(T item, String name) {
+        int id = idOf.applyAsInt(item);
+        int slot = slotOf.get(id);
+        if (slot < 0 || items[slot] != item) {
+            return;
+        }
+        slotOf.remove(id);
+        clearSlot(slot);
+        if (removed >= MIN_REBUILD && removed > slotOf.size()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * @return the number of items in the index
+     */
+    public int size() {
+        return slotOf.size();
+    }
+
+    private void clearSlot(int slot) {
+        items[slot] = null;
+        removed++;
+    }
+
+    /**
+     * Method to move an item from its old name to its new name.
+     * @param item the item that was renamed
+     * @param oldName the name it was indexed under
+     * @param newName the name to index it under now
+     */
+    public void rename(T item, String oldName, String newName) {
+        remove(item, oldName);
+        add(item, newName);
+    }
+
+    /**
+     * Method to remove every item from the index.
+     */
+    public void clear() {
+        Arrays.fill(items, null);
+        nextSlot = 0;
+        removed = 0;
+        slotOf.clear();
+        Arrays.fill(gramUsed, false);
+        gramCount = 0;
+        Arrays.fill(lists, null);
+        Arrays.fill(listSizes, 0);
+    }
+
+    /**
+     * Method to find every item whose name contains the given text. The posting lists of
+     * each trigram in the text are intersected, starting from the shortest one, and the
+     * remaining candidates are checked with contains.
+     * @param partialName text to look for
+     * @param results collection the matching items are added to
+     */
+    @SuppressWarnings("unchecked")
+    public void search(String partialName, Collection<? super T> results) {
+        // too short to have a trigram, so every item is a candidate
+        if (partialName.length() < N) {
+            for (int slot = 0; slot < nextSlot; slot++) {
+                T item = (T) items[slot];
+                if (item != null && matches(item, partialName)) {
+                    results.add(item);
+                }
+            }
+            return;
+        }
+
+        // finds the posting list for each trigram. If any is missing, nothing can match.
+        int count = partialName.length() - N + 1;
+        int[] found = new int[count];
+        for (int i = 0; i < count; i++) {
+            int list = listOf(gram(partialName, i));
+            if (list < 0) {
+                return;
+            }
+            found[i] = list;
+        }
+        // shortest list first, since every candidate comes from it
+        int shortest = 0;
+        for (int i = 1; i < count; i++) {
+            if (listSizes[found[i]] < listSizes[found[shortest]]) {
+                shortest = i;
+            }
+        }
+        int[] first = lists[found[shortest]];
+        int firstSize = listSizes[found[shortest]];
+        int[] cursors = new int[count];
+
+        // walks the shortest list and keeps slots found in all the other lists
+        for (int c = 0; c < firstSize; c++) {
+            int slot = first[c];
+            T item = (T) items[slot];
+            if (item == null) {
+                continue;
+            }
+            boolean inAll = true;
+            for (int i = 0; i < count && inAll; i++) {
+                if (i != shortest) {
+                    cursors[i] = seek(lists[found[i]], listSizes[found[i]], cursors[i], slot);
+                    inAll = cursors[i] < listSizes[found[i]] && lists[found[i]][cursors[i]] == slot;
+                }
+            }
+            if (inAll && matches(item, partialName)) {
+                results.add(item);
+            }
+        }
+    }
+
+    // trigrams only prove the characters are there, so the final check is still contains.
+    private boolean matches(T item, String partialName) {
+        String name = nameOf.apply(item);
+        return name != null && name.contains(partialName);
+    }
+
+    // adds a slot to the posting list of each distinct trigram of the name
+    private void index(int slot, String name) {
+        if (name == null || name.length() < N) {
+            return;
+        }
+        long[] grams = new long[name.length() - N + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = gram(name, i);
+        }
+        Arrays.sort(grams);
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                append(listFor(grams[i]), slot);
+            }
+        }
+    }
+
+    private void append(int list, int slot) {
+        int[] slots = lists[list];
+        if (slots == null) {
+            slots = new int[4];
+            lists[list] = slots;
+        } else if (listSizes[list] == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+            lists[list] = slots;
+        }
+        slots[listSizes[list]++] = slot;
+    }
+
+    // finds the first position at or after from holding a slot of at least target.
+    // Gallops ahead, then binary searches, so skipping a long run is cheap.
+    private static int seek(int[] slots, int size, int from, int target) {
+        int step = 1;
+        int high = from;
+        while (high < size && slots[high] < target) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, size);
+        while (from < high) {
+            int mid = (from + high) >>> 1;
+            if (slots[mid] < target) {
+                from = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return from;
+    }
+
+    // drops cleared slots by indexing every item again under new slot numbers
+    @SuppressWarnings("unchecked")
+    private void rebuild() {
+        Object[] old = items;
+        int oldCount = nextSlot;
+        // a new array first, since clear empties the one the items are read back from
+        items = new Object[Math.max(64, old.length)];
+        clear();
+        for (int slot = 0; slot < oldCount; slot++) {
+            if (old[slot] != null) {
+                T item = (T) old[slot];
+                add(item, nameOf.apply(item));
+            }
+        }
+    }
+
+    // posting list of a trigram, or -1 if no name has it
+    private int listOf(long gram) {
+        int mask = gramKeys.length - 1;
+        int at = hash(gram) & mask;
+        while (gramUsed[at]) {
+            if (gramKeys[at] == gram) {
+                return gramLists[at];
+            }
+            at = (at + 1) & mask;
+        }
+        return -1;
+    }
+
+    // posting list of a trigram, made if it does not exist yet
+    private int listFor(long gram) {
+        int list = listOf(gram);
+        if (list >= 0) {
+            return list;
+        }
+        if ((gramCount + 1) * 4 > gramKeys.length * 3) {
+            growGrams();
+        }
+        list = gramCount++;
+        if (list == lists.length) {
+            lists = Arrays.copyOf(lists, lists.length * 2);
+            listSizes = Arrays.copyOf(listSizes, listSizes.length * 2);
+        }
+        int mask = gramKeys.length - 1;
+        int at = hash(gram) & mask;
+        while (gramUsed[at]) {
+            at = (at + 1) & mask;
+        }
+        gramUsed[at] = true;
+        gramKeys[at] = gram;
+        gramLists[at] = list;
+        return list;
+    }
+
+    private void growGrams() {
+        long[] oldKeys = gramKeys;
+        int[] oldLists = gramLists;
+        boolean[] oldUsed = gramUsed;
+        gramKeys = new long[oldKeys.length * 2];
+        gramLists = new int[oldKeys.length * 2];
+        gramUsed = new boolean[oldKeys.length * 2];
+        int mask = gramKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int at = hash(oldKeys[i]) & mask;
+                while (gramUsed[at]) {
+                    at = (at + 1) & mask;
+                }
+                gramUsed[at] = true;
+                gramKeys[at] = oldKeys[i];
+                gramLists[at] = oldLists[i];
+            }
+        }
+    }
+
+    private static int hash(long gram) {
+        long h = gram * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 29));
+    }
+
+    // packs the three characters starting at i into one key
+    private static long gram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
@@ -28,6 +28,7 @@ public class OutsourcedPart extends Part {
      */
     public void setCompanyName(String companyName){
         this.companyName = companyName;
+        InventoryEngine.partUpdated(this);
     }
 
     /**
@@ -0,0 +1,609 @@
+package smith.files;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * The PagedList class is a read only list for a TableView that holds only the pages of
+ * rows the table has looked at, instead of every part or product. A TableView only asks
+ * for the rows it draws, so scrolling asks for a few pages at a time. Pages are fetched
+ * from a PageSource, the most recently used ones are kept, and when the table nears the
+ * end of a page the page after it is fetched before it is needed.
+ *
+ * Sorting is done by the source, not the table: clicking a column header sorts the rows
+ * in the source and the pages are fetched again in the new order. A change to the
+ * inventory is told to the table as the rows it added, removed or changed, with the
+ * items that were removed, so the rows around it and the selection stay where they are.
+ * Only the pages from the first row added or removed on are thrown away.
+ * @param <T> Part or Product
+ */
+public class PagedList<T> extends ObservableListBase<T> implements AutoCloseable {
+
+    /**
+     * Where the pages come from.
+     * @param <T> Part or Product
+     */
+    public interface PageSource<T> {
+
+        /**
+         * @return the number of rows
+         */
+        int size();
+
+        /**
+         * Method to get a run of rows in the current order.
+         * @param from first row
+         * @param count number of rows, fewer are returned at the end
+         * @return the rows
+         */
+        List<T> fetch(int from, int count);
+
+        /**
+         * Method to change the order of the rows.
+         * @param field field to sort by, null for the order of the inventory list
+         * @param ascending true for the lowest value first
+         */
+        void sort(ColumnStore.Field field, boolean ascending);
+
+        /**
+         * Method to note the rows have changed, so any order worked out must be worked
+         * out again.
+         */
+        void invalidate();
+
+        /**
+         * Method to follow a change to the inventory, telling rows about each row removed,
+         * added or changed, one at a time with each row number counted after the ones
+         * before it were applied. Nothing is told if false is returned.
+         * @param section what changed in the list of the source
+         * @param rows told about each change
+         * @return false if the change could not be followed and every row must be fetched again
+         */
+        boolean follow(InventoryDiff.Section section, RowChanges<T> rows);
+    }
+
+    /**
+     * Told by a PageSource where the rows of a change are.
+     * @param <T> Part or Product
+     */
+    public interface RowChanges<T> {
+
+        /**
+         * Method to note rows were removed.
+         * @param from first row removed
+         * @param items the items removed
+         */
+        void removed(int from, List<? extends T> items);
+
+        /**
+         * Method to note rows were added.
+         * @param from first row added
+         * @param count number of rows added
+         */
+        void added(int from, int count);
+
+        /**
+         * Method to note a row was changed, or swapped for a new version of its item.
+         * @param index the row
+         * @param item the item in the row now
+         */
+        void updated(int index, T item);
+    }
+
+    private static final int PAGE_SIZE = 256;
+    private static final int MAX_PAGES = 32;
+
+    private final PageSource<T> source;
+    private final int pageSize;
+    private final Executor prefetchExecutor;
+    private final RowChanges<T> rowChanges = new RowChanges<>() {
+        @Override
+        public void removed(int from, List<? extends T> items) {
+            rowsRemoved(from, items);
+        }
+
+        @Override
+        public void added(int from, int count) {
+            rowsAdded(from, count);
+        }
+
+        @Override
+        public void updated(int index, T item) {
+            rowUpdated(index, item);
+        }
+    };
+    private Consumer<InventoryDiff> diffListener;
+    private final Set<Integer> prefetching = new HashSet<>();
+    private int size;
+
+    // pages in order of use, the least recently used is dropped first
+    private final LinkedHashMap<Integer, List<T>> pages;
+
+    /**
+     * PagedList constructor
+     * @param source where the pages come from
+     * @param pageSize rows in each page
+     * @param maxPages most pages kept at once
+     * @param prefetchExecutor runs the fetching of the next page, on the thread that owns
+     *                         the inventory lists
+     */
+    public PagedList(PageSource<T> source, int pageSize, int maxPages, Executor prefetchExecutor) {
+        this.source = source;
+        this.pageSize = pageSize;
+        this.prefetchExecutor = prefetchExecutor;
+        this.size = source.size();
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /**
+     * Method to make a paged list of every part, kept up to date with the inventory.
+     * @return the list, which should be closed when it is no longer needed
+     */
+    public static PagedList<Part> parts() {
+        return parts(Platform::runLater);
+    }
+
+    static PagedList<Part> parts(Executor prefetchExecutor) {
+        return open(new InventorySource<>(InventoryEngine.partInventory, InventoryEngine.partColumns(), Part::getId),
+                InventoryDiff::parts, prefetchExecutor);
+    }
+
+    /**
+     * Method to make a paged list of every product, kept up to date with the inventory.
+     * @return the list, which should be closed when it is no longer needed
+     */
+    public static PagedList<Product> products() {
+        return products(Platform::runLater);
+    }
+
+    static PagedList<Product> products(Executor prefetchExecutor) {
+        return open(new InventorySource<>(InventoryEngine.productInventory, InventoryEngine.productColumns(), Product::getId),
+                InventoryDiff::products, prefetchExecutor);
+    }
+
+    private static <T> PagedList<T> open(PageSource<T> source, Function<InventoryDiff, InventoryDiff.Section> section,
+                                         Executor prefetchExecutor) {
+        PagedList<T> list = new PagedList<>(source, PAGE_SIZE, MAX_PAGES, prefetchExecutor);
+        list.diffListener = diff -> list.apply(section.apply(diff));
+        InventoryEngine.addDiffListener(list.diffListener);
+        return list;
+    }
+
+    /**
+     * Method to stop following the inventory.
+     */
+    @Override
+    public void close() {
+        if (diffListener != null) {
+            InventoryEngine.removeDiffListener(diffListener);
+        }
+    }
+
+    /**
+     * Method to show the list in a table. Clicking a column header sorts the source by
+     * the field of the column. Columns with no field cannot be sorted.
+     * @param table the table
+     * @param fields the field of each column that can be sorted
+     */
+    public void bind(TableView<T> table, Map<TableColumn<T, ?>, ColumnStore.Field> fields) {
+        for (TableColumn<T, ?> column : table.getColumns()) {
+            column.setSortable(fields.containsKey(column));
+        }
+        table.setSortPolicy(t -> {
+            // other lists, such as search results, are small enough to sort in the table
+            if (t.getItems() != this) {
+                return TableView.DEFAULT_SORT_POLICY.call(t);
+            }
+            if (t.getSortOrder().isEmpty()) {
+                sort(null, true);
+            } else {
+                TableColumn<T, ?> column = t.getSortOrder().get(0);
+                sort(fields.get(column), column.getSortType() == TableColumn.SortType.ASCENDING);
+            }
+            return true;
+        });
+        table.setItems(this);
+    }
+
+    /**
+     * Method to change the order of the rows. The pages are fetched again in the new order.
+     * @param field field to sort by, null for the order of the inventory list
+     * @param ascending true for the lowest value first
+     */
+    public void sort(ColumnStore.Field field, boolean ascending) {
+        source.sort(field, ascending);
+        reload();
+    }
+
+    /**
+     * Method to throw away every page, so rows are fetched again the next time they are
+     * shown.
+     */
+    public void refresh() {
+        source.invalidate();
+        reload();
+    }
+
+    /**
+     * Method to tell the table about a change to the rows of the source. Rows that were
+     * added or removed are told as such, with the items that were removed, and rows that
+     * changed are told as set or updated. If the change cannot be followed the rows are
+     * fetched again as with refresh.
+     * @param section what changed in the list of the source
+     */
+    public void apply(InventoryDiff.Section section) {
+        if (section.isEmpty()) {
+            return;
+        }
+        int expected = size;
+        for (InventoryDiff.Range range : section.ranges()) {
+            expected += range.added() ? range.count() : -range.count();
+        }
+        int newSize = source.size();
+        if (expected != newSize) {
+            refresh();
+            return;
+        }
+        beginChange();
+        boolean followed = source.follow(section, rowChanges);
+        if (followed) {
+            size = newSize;
+        }
+        endChange();
+        if (!followed) {
+            refresh();
+        }
+    }
+
+    // the table is given the items it was shown where they are still held
+    private void rowsRemoved(int from, List<? extends T> items) {
+        List<T> removed = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            T shown = cached(from + i);
+            removed.add(shown != null ? shown : items.get(i));
+        }
+        dropPagesFrom(from);
+        nextRemove(from, removed);
+    }
+
+    private void rowsAdded(int from, int count) {
+        dropPagesFrom(from);
+        nextAdd(from, from + count);
+    }
+
+    // a row held in a page is swapped in place, so the page stays
+    private void rowUpdated(int index, T item) {
+        int page = index / pageSize;
+        List<T> rows = pages.get(page);
+        int offset = index - page * pageSize;
+        if (rows != null && offset < rows.size()) {
+            T old = rows.set(offset, item);
+            if (old != item) {
+                nextSet(index, old);
+                return;
+            }
+        }
+        nextUpdate(index);
+    }
+
+    // the row held in a page, or null, without changing which page was used last
+    private T cached(int index) {
+        int page = index / pageSize;
+        int offset = index - page * pageSize;
+        for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+            if (entry.getKey() == page) {
+                return offset < entry.getValue().size() ? entry.getValue().get(offset) : null;
+            }
+        }
+        return null;
+    }
+
+    // rows at and after from have moved, so the pages holding them are fetched again
+    private void dropPagesFrom(int from) {
+        int first = from / pageSize;
+        pages.keySet().removeIf(page -> page >= first);
+    }
+
+    // throws the pages away and tells the table every row may have changed
+    private void reload() {
+        pages.clear();
+        prefetching.clear();
+        int oldSize = size;
+        size = source.size();
+        beginChange();
+        nextReplace(0, size, Collections.nCopies(oldSize, null));
+        endChange();
+    }
+
+    /**
+     * @return the number of pages held now
+     */
+    public int cachedPages() {
+        return pages.size();
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int page = index / pageSize;
+        List<T> rows = page(page);
+        int offset = index - page * pageSize;
+        // fetches the page the table is moving towards before it gets there
+        if (offset >= pageSize * 3 / 4) {
+            prefetch(page + 1);
+        } else if (offset < pageSize / 4) {
+            prefetch(page - 1);
+        }
+        return offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private List<T> page(int page) {
+        List<T> rows = pages.get(page);
+        if (rows == null) {
+            rows = source.fetch(page * pageSize, pageSize);
+            pages.put(page, rows);
+        }
+        return rows;
+    }
+
+    private void prefetch(int page) {
+        if (page < 0 || page * pageSize >= size || pages.containsKey(page) || !prefetching.add(page)) {
+            return;
+        }
+        prefetchExecutor.execute(() -> {
+            // skipped if the pages were thrown away since it was asked for
+            if (prefetching.remove(page) && page * pageSize < size) {
+                page(page);
+            }
+        });
+    }
+
+    /**
+     * Fetches rows from an inventory list, in the order of the list or sorted by a
+     * field of its column store. The sorted order is a list of IDs kept up to date as
+     * rows change, so it is only sorted in full when the field changes.
+     * @param <T> Part or Product
+     */
+    private static final class InventorySource<T> implements PageSource<T> {
+
+        private final List<T> list;
+        private final ColumnStore columns;
+        private final ToIntFunction<T> idOf;
+        private ColumnStore.Field field;
+        private boolean ascending = true;
+        // IDs in sorted order, lowest first, null until needed
+        private int[] order;
+
+        InventorySource(List<T> list, ColumnStore columns, ToIntFunction<T> idOf) {
+            this.list = list;
+            this.columns = columns;
+            this.idOf = idOf;
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+
+        @Override
+        public List<T> fetch(int from, int count) {
+            int to = Math.min(from + count, list.size());
+            if (from >= to) {
+                return List.of();
+            }
+            if (field == null) {
+                return new ArrayList<>(list.subList(from, to));
+            }
+            if (order == null) {
+                order = columns.idsSortedBy(field);
+            }
+            List<T> rows = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                rows.add(item(order[ascending ? i : order.length - 1 - i]));
+            }
+            return rows;
+        }
+
+        @Override
+        public void sort(ColumnStore.Field field, boolean ascending) {
+            if (field != this.field) {
+                order = null;
+            }
+            this.field = field;
+            this.ascending = ascending;
+        }
+
+        @Override
+        public void invalidate() {
+            order = null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean follow(InventoryDiff.Section section, RowChanges<T> rows) {
+            if (field != null) {
+                return followSorted(section, rows);
+            }
+            for (InventoryDiff.Range range : section.ranges()) {
+                if (range.added()) {
+                    rows.added(range.from(), range.count());
+                } else {
+                    rows.removed(range.from(), (List<T>) range.items());
+                }
+            }
+            for (int id : section.updatedIDs()) {
+                T item = item(id);
+                int index = item == null ? -1 : list.indexOf(item);
+                if (index >= 0) {
+                    rows.updated(index, item);
+                }
+            }
+            return true;
+        }
+
+        /*
+         * Every changed ID is found in one pass over the order. One that still sorts
+         * between the rows kept on either side of it stays where it is, the others are
+         * taken out, and the ones left in the inventory are sorted and put back where a
+         * binary search puts them. The table is told of the rows taken out from the last
+         * up, the rows put back from the first down, then the rows that stayed.
+         */
+        @SuppressWarnings("unchecked")
+        private boolean followSorted(InventoryDiff.Section section, RowChanges<T> rows) {
+            if (order == null) {
+                // nothing was fetched in this order yet
+                return false;
+            }
+            IntIntMap changed = new IntIntMap();
+            IntObjectMap<T> removedItems = new IntObjectMap<>();
+            for (InventoryDiff.Range range : section.ranges()) {
+                for (Object o : range.items()) {
+                    T item = (T) o;
+                    int id = idOf.applyAsInt(item);
+                    changed.put(id, 0);
+                    if (!range.added()) {
+                        removedItems.put(id, item);
+                    }
+                }
+            }
+            for (int id : section.updatedIDs()) {
+                changed.put(id, 0);
+            }
+
+            int n = order.length;
+            int[] kept = new int[n];
+            int keptCount = 0;
+            int[] removedAt = new int[Math.min(n, changed.size())];
+            List<T> removedRows = new ArrayList<>();
+            int[] stayedAt = new int[removedAt.length];
+            int stayed = 0;
+            IntIntMap placed = new IntIntMap();
+            int next = 0;
+            for (int i = 0; i < n; i++) {
+                int id = order[i];
+                if (!changed.containsKey(id)) {
+                    kept[keptCount++] = id;
+                    continue;
+                }
+                int row = columns.rowOf(id);
+                if (row >= 0) {
+                    if (next <= i) {
+                        next = i + 1;
+                        while (next < n && changed.containsKey(order[next])) {
+                            next++;
+                        }
+                    }
+                    boolean afterPrevious = keptCount == 0
+                            || columns.compare(field, columns.rowOf(kept[keptCount - 1]), row) < 0;
+                    boolean beforeNext = next >= n
+                            || columns.compare(field, row, columns.rowOf(order[next])) < 0;
+                    if (afterPrevious && beforeNext) {
+                        placed.put(id, 0);
+                        stayedAt[stayed++] = keptCount;
+                        kept[keptCount++] = id;
+                        continue;
+                    }
+                }
+                removedAt[removedRows.size()] = i;
+                T gone = removedItems.get(id);
+                removedRows.add(gone != null || row < 0 ? gone : item(id));
+            }
+
+            // rows of the IDs to put back, sorted
+            List<Integer> back = new ArrayList<>();
+            changed.forEach((id, unused) -> {
+                int row = columns.rowOf(id);
+                if (row >= 0 && !placed.containsKey(id)) {
+                    back.add(row);
+                }
+            });
+            back.sort((a, b) -> columns.compare(field, a, b));
+            if (keptCount + back.size() != list.size()) {
+                order = null;
+                return false;
+            }
+
+            // where each goes among the kept IDs, searching on from the one before
+            int[] before = new int[back.size()];
+            int low = 0;
+            for (int b = 0; b < back.size(); b++) {
+                int row = back.get(b);
+                int high = keptCount;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (columns.compare(field, columns.rowOf(kept[mid]), row) < 0) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                before[b] = low;
+            }
+            int m = keptCount + back.size();
+            int[] merged = new int[m];
+            int[] addedAt = new int[back.size()];
+            int copied = 0;
+            for (int b = 0; b < back.size(); b++) {
+                int at = before[b] + b;
+                System.arraycopy(kept, copied, merged, copied + b, before[b] - copied);
+                copied = before[b];
+                merged[at] = columns.id(back.get(b));
+                addedAt[b] = at;
+            }
+            System.arraycopy(kept, copied, merged, copied + back.size(), keptCount - copied);
+
+            int removed = removedRows.size();
+            for (int r = 0; r < removed; r++) {
+                int k = ascending ? removed - 1 - r : r;
+                int i = removedAt[k];
+                rows.removed(ascending ? i : n - 1 - i, Collections.singletonList(removedRows.get(k)));
+            }
+            for (int a = 0; a < addedAt.length; a++) {
+                int j = addedAt[ascending ? a : addedAt.length - 1 - a];
+                rows.added(ascending ? j : m - 1 - j, 1);
+            }
+            int b = 0;
+            for (int s = 0; s < stayed; s++) {
+                int k = stayedAt[s];
+                while (b < before.length && before[b] <= k) {
+                    b++;
+                }
+                int j = k + b;
+                rows.updated(ascending ? j : m - 1 - j, item(merged[j]));
+            }
+            order = merged;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T item(int id) {
+            int row = columns.rowOf(id);
+            return row < 0 ? null : (T) columns.item(row);
+        }
+    }
+}
@@ -11,6 +11,8 @@ package smith.files;
 public abstract class Part {
     private int id;
     private String name;
+    // the name folded for searching, see SearchKeys
+    private String searchKey;
     private double price;
     private int stock;
     private int min;
@@ -28,6 +30,7 @@ public abstract class Part {
     public Part(int id, String name, double price, int stock, int min, int max) {
         this.id = id;
         this.name = name;
+        this.searchKey = SearchKeys.fold(name);
         this.price = price;
         this.stock = stock;
         this.min = min;
@@ -43,8 +46,12 @@ public abstract class Part {
 
     /**
      * @param id the id to set
+     * @throws IllegalStateException if the part is in the inventory, replace it instead
      */
     public void setId(int id) {
+        if (id != this.id) {
+            InventoryEngine.partIDChanging(this);
+        }
         this.id = id;
     }
 
@@ -59,7 +66,17 @@ public abstract class Part {
      * @param name the name to set
      */
     public void setName(String name) {
+        String oldKey = searchKey;
         this.name = name;
+        this.searchKey = SearchKeys.fold(name);
+        InventoryEngine.partRenamed(this, oldKey);
+    }
+
+    /**
+     * @return the name folded for searching, without case or accents
+     */
+    public String getSearchKey() {
+        return searchKey;
     }
 
     /**
@@ -74,6 +91,7 @@ public abstract class Part {
      */
     public void setPrice(double price) {
         this.price = price;
+        InventoryEngine.partUpdated(this);
     }
     
     /**
@@ -88,6 +106,7 @@ public abstract class Part {
      */
     public void setStock(int stock) {
         this.stock = stock;
+        InventoryEngine.partUpdated(this);
     }
 
     /**
@@ -102,6 +121,7 @@ public abstract class Part {
      */
     public void setMin(int min) {
         this.min = min;
+        InventoryEngine.partUpdated(this);
     }
 
     /**
@@ -116,6 +136,7 @@ public abstract class Part {
      */
     public void setMax(int max) {
         this.max = max;
+        InventoryEngine.partUpdated(this);
     }
     
 }
\ No newline at end of file
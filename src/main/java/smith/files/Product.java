@@ -1,6 +1,7 @@
 package smith.files;
 
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 
 /**
@@ -17,8 +18,16 @@ public class Product {
      * list of associated parts for the product
      */
     public ObservableList<Part> associatedParts = FXCollections.observableArrayList();
+
+    // tells the inventory about every change to the associated parts, so the where used
+    // index and the observers hear about it even when the list is changed directly
+    {
+        associatedParts.addListener((ListChangeListener<Part>) change -> InventoryEngine.associationsChanged(this, change));
+    }
     private int id;
     private String name;
+    // the name folded for searching, see SearchKeys
+    private String searchKey;
     private double price;
     private int stock;
     private int min;
@@ -36,6 +45,7 @@ public class Product {
     public Product(int id, String name, double price, int stock, int min, int max) {
         this.id = id;
         this.name = name;
+        this.searchKey = SearchKeys.fold(name);
         this.price = price;
         this.stock = stock;
         this.min = min;
@@ -53,8 +63,12 @@ public class Product {
     /**
      * ID setter
      * @param id value to set
+     * @throws IllegalStateException if the product is in the inventory, replace it instead
      */
     public void setId(int id) {
+        if (id != this.id) {
+            InventoryEngine.productIDChanging(this);
+        }
         this.id = id;
     }
 
@@ -71,7 +85,18 @@ public class Product {
      * @param name value to set
      */
     public void setName(String name) {
+        String oldKey = searchKey;
         this.name = name;
+        this.searchKey = SearchKeys.fold(name);
+        InventoryEngine.productRenamed(this, oldKey);
+    }
+
+    /**
+     * Search key Getter
+     * @return name folded for searching, without case or accents
+     */
+    public String getSearchKey() {
+        return searchKey;
     }
 
     /**
@@ -88,6 +113,7 @@ public class Product {
      */
     public void setPrice(double price) {
         this.price = price;
+        InventoryEngine.productUpdated(this);
     }
 
 
@@ -101,7 +127,10 @@ public class Product {
      * stock setter
      * @param stock value to set
      */
-    public void setStock(int stock) {this.stock = stock;}
+    public void setStock(int stock) {
+        this.stock = stock;
+        InventoryEngine.productUpdated(this);
+    }
 
     /**
      * min getter
@@ -113,7 +142,10 @@ public class Product {
      * min setter
      * @param min value to set
      */
-    public void setMin(int min) {this.min = min;}
+    public void setMin(int min) {
+        this.min = min;
+        InventoryEngine.productUpdated(this);
+    }
 
     /**
      * max getter
@@ -125,7 +157,10 @@ public class Product {
      * max setter
      * @param max value to set
      */
-    public void setMax(int max) {this.max = max;}
+    public void setMax(int max) {
+        this.max = max;
+        InventoryEngine.productUpdated(this);
+    }
 
     /**
      * associated parts getter
@@ -137,7 +172,9 @@ public class Product {
      * add associated parts
      * @param part part to add
      */
-    public void AddAssociatedParts(Part part) {associatedParts.add(part);}
+    public void AddAssociatedParts(Part part) {
+        associatedParts.add(part);
+    }
 
     /**
      * delete part from list
@@ -0,0 +1,500 @@
+package smith.files;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * The RadixTree class is a compressed prefix tree over names, used to suggest names as a
+ * search is typed. Each edge holds a run of characters instead of one, so a chain of
+ * nodes with a single child is stored as one node, and the tree has at most two nodes for
+ * each distinct name. The children of a node are kept sorted by their first character.
+ *
+ * The inventory adds its items under their search keys, so suggesting ignores case and
+ * accents, and each suggestion is shown as the name of the first item under the key.
+ * The items using a name are kept at the node where the name ends, so the items with a
+ * name are found by walking down the name, and a name is dropped when the last item
+ * using it is removed or renamed. Once a name has more than a few items, such as "bolt",
+ * the node also keeps the place of each item by its ID, so removing one does not look
+ * through the others. Suggesting walks down to the node for the prefix, then visits
+ * the names below it in order and stops as soon as it has enough, so the cost depends on
+ * the length of the prefix and the number of suggestions, not on how many names there
+ * are. The suggestions are written into an array the caller keeps, so typing does not
+ * build a list of results for each key.
+ *
+ * The tree also finds names within a few typos of a search. It walks down the tree
+ * working out the edit distance to the search one row at a time, the same as a
+ * Levenshtein automaton would, and names that share a prefix share the rows of it. A
+ * branch is left as soon as every cell of its row is over the limit, so only the part of
+ * the tree close to the search is visited. Swapping two letters next to each other counts
+ * as one typo, so "blot" is one away from "bolt".
+ * @param <T> the type of item being indexed
+ */
+public class RadixTree<T> {
+
+    /**
+     * A node of the tree, reached from its parent by the characters of its label.
+     */
+    private static final class Node {
+        String label;
+        Node[] children = NO_CHILDREN;
+        // first character of the label of each child, so children are found without
+        // reading every child node
+        char[] firsts = NO_FIRSTS;
+        int childCount;
+        // the name ending at this node and the items using it, null and 0 if none
+        String name;
+        Object[] items = NO_ITEMS;
+        int count;
+        // place of each item in items by ID, only made once the name has many items
+        IntIntMap places;
+
+        Node(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final char[] NO_FIRSTS = new char[0];
+    private static final Object[] NO_ITEMS = new Object[0];
+    // most items of a name found by looking through them, more get a map of places
+    private static final int FEW = 8;
+
+    /**
+     * Receives the names found by a typo tolerant search.
+     */
+    public interface Match {
+
+        /**
+         * @param name a name within the limit
+         * @param distance number of typos between the name and the search
+         */
+        void accept(String name, int distance);
+    }
+
+    private final Function<T, String> nameOf;
+    private final ToIntFunction<T> idOf;
+    private final Node root = new Node("");
+    private int names;
+
+    /**
+     * RadixTree constructor
+     * @param nameOf reads the name shown for an item when its key is suggested
+     * @param idOf reads the ID of an item, which is not changed while it is in the tree
+     */
+    public RadixTree(Function<T, String> nameOf, ToIntFunction<T> idOf) {
+        this.nameOf = nameOf;
+        this.idOf = idOf;
+    }
+
+    /**
+     * @return the number of distinct names
+     */
+    public int size() {
+        return names;
+    }
+
+    /**
+     * Method to remove every name.
+     */
+    public void clear() {
+        root.children = NO_CHILDREN;
+        root.firsts = NO_FIRSTS;
+        root.childCount = 0;
+        root.name = null;
+        root.items = NO_ITEMS;
+        root.count = 0;
+        root.places = null;
+        names = 0;
+    }
+
+    /**
+     * Method to add an item under its name.
+     * @param item the item
+     * @param name its name, null is skipped
+     */
+    public void add(T item, String name) {
+        if (name == null) {
+            return;
+        }
+        Node node = root;
+        int i = 0;
+        while (i < name.length()) {
+            int at = childIndex(node, name.charAt(i));
+            if (at < 0) {
+                Node leaf = new Node(name.substring(i));
+                insertChild(node, -at - 1, leaf);
+                node = leaf;
+                break;
+            }
+            Node child = node.children[at];
+            int common = commonLength(child.label, name, i);
+            if (common < child.label.length()) {
+                // the name leaves the label part way, so the label is split where it does
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.children = new Node[] {child};
+                middle.firsts = new char[] {child.label.charAt(0)};
+                middle.childCount = 1;
+                node.children[at] = middle;
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+        if (node.count == 0) {
+            node.name = name;
+            names++;
+        }
+        if (node.count == node.items.length) {
+            node.items = Arrays.copyOf(node.items, Math.max(2, node.count * 2));
+        }
+        node.items[node.count++] = item;
+        if (node.places != null) {
+            node.places.put(idOf.applyAsInt(item), node.count - 1);
+        } else if (node.count > FEW) {
+            node.places = new IntIntMap(node.count * 2);
+            for (int at = 0; at < node.count; at++) {
+                @SuppressWarnings("unchecked")
+                T each = (T) node.items[at];
+                node.places.put(idOf.applyAsInt(each), at);
+            }
+        }
+    }
+
+    /**
+     * Method to remove an item from under its name.
+     * @param item the item
+     * @param name the name it was added with, null is skipped
+     * @return true if the item was in the tree
+     */
+    public boolean remove(T item, String name) {
+        if (name == null) {
+            return false;
+        }
+        Node grandparent = null;
+        int parentAt = -1;
+        Node parent = null;
+        int nodeAt = -1;
+        Node node = root;
+        int i = 0;
+        while (i < name.length()) {
+            int at = childIndex(node, name.charAt(i));
+            if (at < 0) {
+                return false;
+            }
+            Node child = node.children[at];
+            if (!name.startsWith(child.label, i)) {
+                return false;
+            }
+            grandparent = parent;
+            parentAt = nodeAt;
+            parent = node;
+            nodeAt = at;
+            node = child;
+            i += child.label.length();
+        }
+        int at = indexOf(node, item);
+        if (at < 0) {
+            return false;
+        }
+        // the last item takes the place of the removed one
+        node.items[at] = node.items[--node.count];
+        node.items[node.count] = null;
+        if (node.places != null) {
+            int id = idOf.applyAsInt(item);
+            if (node.places.get(id) == at) {
+                node.places.remove(id);
+            }
+            if (at < node.count) {
+                @SuppressWarnings("unchecked")
+                T moved = (T) node.items[at];
+                node.places.put(idOf.applyAsInt(moved), at);
+            }
+        }
+        if (node.count > 0) {
+            return true;
+        }
+        node.name = null;
+        node.items = NO_ITEMS;
+        node.places = null;
+        names--;
+        if (node == root) {
+            return true;
+        }
+        // an empty leaf is dropped, and a node left with no name and one child is merged
+        // into the child
+        if (node.childCount == 0) {
+            removeChild(parent, nodeAt);
+            if (parent != root && parent.name == null && parent.childCount == 1) {
+                mergeWithChild(grandparent, parentAt);
+            }
+        } else if (node.childCount == 1) {
+            mergeWithChild(parent, nodeAt);
+        }
+        return true;
+    }
+
+    /**
+     * Method to move an item from one name to another.
+     * @param item the item
+     * @param oldName the name it had
+     * @param newName the name it has now
+     */
+    public void rename(T item, String oldName, String newName) {
+        remove(item, oldName);
+        add(item, newName);
+    }
+
+    /**
+     * Method to find the items with exactly the given name.
+     * @param name the name
+     * @param results the items are added to this
+     */
+    @SuppressWarnings("unchecked")
+    public void named(String name, Collection<? super T> results) {
+        Node node = find(name);
+        if (node == null || node.name == null || node.name.length() != name.length()) {
+            return;
+        }
+        for (int i = 0; i < node.count; i++) {
+            results.add((T) node.items[i]);
+        }
+    }
+
+    /**
+     * Method to suggest names starting with a prefix, in order of their characters, so
+     * shorter names come before longer ones that start with them.
+     * @param prefix the text typed so far
+     * @param into filled with the names, as many as it can hold
+     * @return the number of names written into the array
+     */
+    public int suggest(String prefix, String[] into) {
+        Node node = find(prefix);
+        if (node == null || into.length == 0) {
+            return 0;
+        }
+        return collect(node, into, 0);
+    }
+
+    /**
+     * Method to find every name within a number of typos of a search. A typo is a letter
+     * added, dropped, changed, or swapped with the one next to it.
+     * @param query the search
+     * @param maxDistance most typos allowed
+     * @param match called with each name found and its number of typos, in tree order
+     */
+    public void similar(String query, int maxDistance, Match match) {
+        new Similar(query, maxDistance, match).search(root);
+    }
+
+    /**
+     * One typo tolerant search. Row d holds the distance from the first d characters of
+     * the path to every prefix of the query, and is reused by every path of that length.
+     */
+    private static final class Similar {
+        private final String query;
+        private final int limit;
+        private final Match match;
+        private int[][] rows;
+        private char[] path;
+
+        Similar(String query, int limit, Match match) {
+            this.query = query;
+            this.limit = limit;
+            this.match = match;
+            rows = new int[query.length() + limit + 2][];
+            path = new char[rows.length];
+            rows[0] = new int[query.length() + 1];
+            for (int j = 0; j <= query.length(); j++) {
+                rows[0][j] = Math.min(j, limit + 1);
+            }
+        }
+
+        void search(Node root) {
+            if (root.name != null && query.length() <= limit) {
+                match.accept(root.name, query.length());
+            }
+            visit(root, 0);
+        }
+
+        private void visit(Node node, int depth) {
+            for (int c = 0; c < node.childCount; c++) {
+                // the first character is checked before the child itself is read
+                if (!step(depth + 1, node.firsts[c])) {
+                    continue;
+                }
+                Node child = node.children[c];
+                String label = child.label;
+                int d = depth + 1;
+                boolean close = true;
+                for (int i = 1; i < label.length() && close; i++) {
+                    close = step(++d, label.charAt(i));
+                }
+                if (!close) {
+                    continue;
+                }
+                int distance = distance(d);
+                if (child.name != null && distance <= limit) {
+                    match.accept(child.name, distance);
+                }
+                visit(child, d);
+            }
+        }
+
+        // works out row d for the path with c as its last character. Only the cells within
+        // the limit of the diagonal can be close enough, so only those are worked out and the
+        // cells just outside them are set over the limit. Returns false when every cell is
+        // over the limit, since the rows below can only be further away.
+        private boolean step(int d, char c) {
+            if (d == rows.length) {
+                rows = Arrays.copyOf(rows, d * 2);
+                path = Arrays.copyOf(path, d * 2);
+            }
+            int m = query.length();
+            if (rows[d] == null) {
+                rows[d] = new int[m + 1];
+            }
+            path[d - 1] = c;
+            int[] row = rows[d];
+            int[] above = rows[d - 1];
+            int over = limit + 1;
+            int low = Math.max(1, d - limit);
+            int high = Math.min(m, d + limit);
+            row[0] = Math.min(d, over);
+            if (low > 1) {
+                row[low - 1] = over;
+            }
+            if (high < m) {
+                row[high + 1] = over;
+            }
+            int best = row[0];
+            for (int j = low; j <= high; j++) {
+                char q = query.charAt(j - 1);
+                int v = Math.min(above[j] + 1, row[j - 1] + 1);
+                v = Math.min(v, above[j - 1] + (q == c ? 0 : 1));
+                if (d > 1 && j > 1 && q == path[d - 2] && query.charAt(j - 2) == c) {
+                    v = Math.min(v, rows[d - 2][j - 2] + 1);
+                }
+                row[j] = Math.min(v, over);
+                best = Math.min(best, row[j]);
+            }
+            return best <= limit;
+        }
+
+        // the distance from the first d characters of the path to the whole query
+        private int distance(int d) {
+            int m = query.length();
+            return Math.abs(d - m) <= limit ? rows[d][m] : limit + 1;
+        }
+    }
+
+    // finds the node whose path from the root starts with the text, or null
+    private Node find(String text) {
+        Node node = root;
+        int i = 0;
+        while (i < text.length()) {
+            int at = childIndex(node, text.charAt(i));
+            if (at < 0) {
+                return null;
+            }
+            Node child = node.children[at];
+            int matched = Math.min(child.label.length(), text.length() - i);
+            if (!text.regionMatches(i, child.label, 0, matched)) {
+                return null;
+            }
+            node = child;
+            i += matched;
+        }
+        return node;
+    }
+
+    // the place of the item kept by its ID, checked to be the same item since two
+    // versions with one ID can be in the tree for a moment, or else a look through them
+    private int indexOf(Node node, T item) {
+        if (node.places != null) {
+            int at = node.places.get(idOf.applyAsInt(item));
+            if (at >= 0 && at < node.count && node.items[at] == item) {
+                return at;
+            }
+        }
+        for (int i = 0; i < node.count; i++) {
+            if (node.items[i] == item) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // adds the names at and below a node to the array in order, until it is full
+    @SuppressWarnings("unchecked")
+    private int collect(Node node, String[] into, int n) {
+        if (node.name != null) {
+            into[n++] = nameOf.apply((T) node.items[0]);
+        }
+        for (int c = 0; c < node.childCount && n < into.length; c++) {
+            n = collect(node.children[c], into, n);
+        }
+        return n;
+    }
+
+    // binary search of the children by first character, the same return as Arrays.binarySearch
+    private static int childIndex(Node node, char first) {
+        int low = 0;
+        int high = node.childCount - 1;
+        char[] firsts = node.firsts;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char c = firsts[mid];
+            if (c < first) {
+                low = mid + 1;
+            } else if (c > first) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int commonLength(String label, String name, int from) {
+        int max = Math.min(label.length(), name.length() - from);
+        int n = 0;
+        while (n < max && label.charAt(n) == name.charAt(from + n)) {
+            n++;
+        }
+        return n;
+    }
+
+    private static void insertChild(Node node, int at, Node child) {
+        if (node.childCount == node.children.length) {
+            int capacity = Math.max(2, node.childCount * 2);
+            node.children = Arrays.copyOf(node.children, capacity);
+            node.firsts = Arrays.copyOf(node.firsts, capacity);
+        }
+        System.arraycopy(node.children, at, node.children, at + 1, node.childCount - at);
+        System.arraycopy(node.firsts, at, node.firsts, at + 1, node.childCount - at);
+        node.children[at] = child;
+        node.firsts[at] = child.label.charAt(0);
+        node.childCount++;
+    }
+
+    private static void removeChild(Node node, int at) {
+        System.arraycopy(node.children, at + 1, node.children, at, node.childCount - at - 1);
+        System.arraycopy(node.firsts, at + 1, node.firsts, at, node.childCount - at - 1);
+        node.children[--node.childCount] = null;
+        if (node.childCount == 0) {
+            node.children = NO_CHILDREN;
+            node.firsts = NO_FIRSTS;
+        }
+    }
+
+    // puts the only child of a node in its place, with the two labels joined
+    private static void mergeWithChild(Node parent, int at) {
+        Node node = parent.children[at];
+        Node child = node.children[0];
+        child.label = node.label + child.label;
+        parent.children[at] = child;
+    }
+}
@@ -0,0 +1,235 @@
+package smith.files;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * The RangeIndex class keeps the IDs of items sorted by a number, such as price or stock,
+ * so every item with a number between two values can be found without looking at the
+ * rest. Entries are (key, ID) pairs sorted by key, then ID, so items with the same key
+ * are still each found in one place.
+ *
+ * The pairs are held in blocks of sorted arrays, each block at most a few hundred pairs,
+ * with the blocks in order. Finding a key is a binary search over the blocks and then one
+ * inside a block, so a range query costs O(log N + k) for k items found. Adding or
+ * removing a pair only shifts the rest of its block, and a full block is split in two.
+ */
+public class RangeIndex {
+
+    // pairs in a block once it is split, a block is split when it reaches twice this
+    private static final int BLOCK = 256;
+
+    // keys and IDs of each block, both in the same sorted order
+    private long[][] keys = new long[8][];
+    private int[][] ids = new int[8][];
+    private int[] sizes = new int[8];
+    private int blocks;
+    private int size;
+
+    /**
+     * RangeIndex constructor
+     */
+    public RangeIndex() {
+        clear();
+    }
+
+    /**
+     * Method to turn a price into a key that sorts the same way as the price.
+     * @param price the price
+     * @return the key
+     */
+    public static long priceKey(double price) {
+        // -0.0 sorts with 0.0
+        long bits = Double.doubleToLongBits(price + 0.0);
+        // negative doubles sort backwards as longs, so their bits other than the sign are flipped
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * @return the number of pairs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to remove every pair.
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(ids, null);
+        keys[0] = new long[BLOCK * 2];
+        ids[0] = new int[BLOCK * 2];
+        sizes[0] = 0;
+        blocks = 1;
+        size = 0;
+    }
+
+    /**
+     * Method to add a pair. Adding a pair that is already there does nothing.
+     * @param key the key
+     * @param id the ID of the item
+     */
+    public void add(long key, int id) {
+        int b = blockOf(key, id);
+        int at = search(b, key, id);
+        if (at >= 0) {
+            return;
+        }
+        at = -at - 1;
+        int n = sizes[b];
+        System.arraycopy(keys[b], at, keys[b], at + 1, n - at);
+        System.arraycopy(ids[b], at, ids[b], at + 1, n - at);
+        keys[b][at] = key;
+        ids[b][at] = id;
+        sizes[b] = n + 1;
+        size++;
+        if (sizes[b] == BLOCK * 2) {
+            split(b);
+        }
+    }
+
+    /**
+     * Method to remove a pair.
+     * @param key the key it was added with
+     * @param id the ID of the item
+     * @return true if the pair was there
+     */
+    public boolean remove(long key, int id) {
+        int b = blockOf(key, id);
+        int at = search(b, key, id);
+        if (at < 0) {
+            return false;
+        }
+        int n = sizes[b] - 1;
+        System.arraycopy(keys[b], at + 1, keys[b], at, n - at);
+        System.arraycopy(ids[b], at + 1, ids[b], at, n - at);
+        sizes[b] = n;
+        size--;
+        // an empty block is dropped, unless it is the only one
+        if (n == 0 && blocks > 1) {
+            dropBlock(b);
+        }
+        return true;
+    }
+
+    /**
+     * Method to move an item from one key to another, such as when its price changes.
+     * @param oldKey the key it was added with
+     * @param newKey the key it has now
+     * @param id the ID of the item
+     */
+    public void move(long oldKey, long newKey, int id) {
+        if (oldKey != newKey) {
+            remove(oldKey, id);
+            add(newKey, id);
+        }
+    }
+
+    /**
+     * Method to find every item with a key between low and high, including both, in
+     * order of key.
+     * @param low lowest key
+     * @param high highest key
+     * @param idConsumer called with the ID of each item found
+     */
+    public void between(long low, long high, IntConsumer idConsumer) {
+        if (low > high) {
+            return;
+        }
+        int b = blockOf(low, Integer.MIN_VALUE);
+        int at = search(b, low, Integer.MIN_VALUE);
+        at = at < 0 ? -at - 1 : at;
+        for (; b < blocks; b++, at = 0) {
+            long[] blockKeys = keys[b];
+            int[] blockIDs = ids[b];
+            for (int n = sizes[b]; at < n; at++) {
+                if (blockKeys[at] > high) {
+                    return;
+                }
+                idConsumer.accept(blockIDs[at]);
+            }
+        }
+    }
+
+    /**
+     * Method to count the items with a key between low and high, including both.
+     * @param low lowest key
+     * @param high highest key
+     * @return the number of items
+     */
+    public int count(long low, long high) {
+        int[] count = {0};
+        between(low, high, id -> count[0]++);
+        return count[0];
+    }
+
+    private static int compare(long key, int id, long otherKey, int otherID) {
+        int byKey = Long.compare(key, otherKey);
+        return byKey != 0 ? byKey : Integer.compare(id, otherID);
+    }
+
+    // the first block whose last pair is not below the pair, or the last block
+    private int blockOf(long key, int id) {
+        int low = 0;
+        int high = blocks - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int last = sizes[mid] - 1;
+            if (last >= 0 && compare(keys[mid][last], ids[mid][last], key, id) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // binary search inside a block, the same return as Arrays.binarySearch
+    private int search(int b, long key, int id) {
+        long[] blockKeys = keys[b];
+        int[] blockIDs = ids[b];
+        int low = 0;
+        int high = sizes[b] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compare(blockKeys[mid], blockIDs[mid], key, id);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // moves the top half of a full block into a new block after it
+    private void split(int b) {
+        if (blocks == keys.length) {
+            keys = Arrays.copyOf(keys, blocks * 2);
+            ids = Arrays.copyOf(ids, blocks * 2);
+            sizes = Arrays.copyOf(sizes, blocks * 2);
+        }
+        System.arraycopy(keys, b + 1, keys, b + 2, blocks - b - 1);
+        System.arraycopy(ids, b + 1, ids, b + 2, blocks - b - 1);
+        System.arraycopy(sizes, b + 1, sizes, b + 2, blocks - b - 1);
+        keys[b + 1] = new long[BLOCK * 2];
+        ids[b + 1] = new int[BLOCK * 2];
+        System.arraycopy(keys[b], BLOCK, keys[b + 1], 0, BLOCK);
+        System.arraycopy(ids[b], BLOCK, ids[b + 1], 0, BLOCK);
+        sizes[b] = BLOCK;
+        sizes[b + 1] = BLOCK;
+        blocks++;
+    }
+
+    private void dropBlock(int b) {
+        System.arraycopy(keys, b + 1, keys, b, blocks - b - 1);
+        System.arraycopy(ids, b + 1, ids, b, blocks - b - 1);
+        System.arraycopy(sizes, b + 1, sizes, b, blocks - b - 1);
+        blocks--;
+        keys[blocks] = null;
+        ids[blocks] = null;
+    }
+}
@@ -0,0 +1,147 @@
+package smith.files;
+
+import javafx.event.ActionEvent;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The Screens class loads each screen once and keeps its scene and controller, so going
+ * from one screen to another only swaps the scene on the stage instead of reading the
+ * FXML and building every node again. warmUp loads every screen when the program starts.
+ *
+ * A screen is used again each time it is opened, so a controller that keeps what the user
+ * typed implements Resettable and is put back to a fresh state before it is shown.
+ * Like the rest of the screens, this class is used from the FX thread.
+ */
+public final class Screens {
+
+    /**
+     * the main screen
+     */
+    public static final String MAIN = "main-view.fxml";
+    /**
+     * the add part screen
+     */
+    public static final String ADD_PART = "add-part.fxml";
+    /**
+     * the modify part screen
+     */
+    public static final String MODIFY_PART = "modify-part.fxml";
+    /**
+     * the add product screen
+     */
+    public static final String ADD_PRODUCT = "add-product.fxml";
+    /**
+     * the modify product screen
+     */
+    public static final String MODIFY_PRODUCT = "modify-product.fxml";
+
+    /**
+     * A controller that is put back to a fresh state each time its screen is opened.
+     */
+    public interface Resettable {
+
+        /**
+         * Method to clear what was left on the screen the last time it was used.
+         */
+        void reset();
+    }
+
+    /**
+     * A loaded screen.
+     * @param scene the scene holding the screen
+     * @param controller the controller of the screen
+     */
+    private record Screen(Scene scene, Object controller) {
+    }
+
+    private static final Map<String, Screen> screens = new HashMap<>();
+
+    private Screens() {
+    }
+
+    /**
+     * Method to load every screen, so the first time each one is opened is as quick as
+     * the rest.
+     * @throws IOException if a screen could not be loaded
+     */
+    public static void warmUp() throws IOException {
+        for (String fxml : new String[] {MAIN, ADD_PART, MODIFY_PART, ADD_PRODUCT, MODIFY_PRODUCT}) {
+            screen(fxml);
+        }
+    }
+
+    /**
+     * Method to get the scene of a screen, loading it the first time.
+     * @param fxml the FXML file of the screen
+     * @return the scene
+     * @throws IOException if the screen could not be loaded
+     */
+    public static Scene scene(String fxml) throws IOException {
+        return screen(fxml).scene();
+    }
+
+    /**
+     * Method to put a screen back to a fresh state without showing it. Used when data
+     * has to be handed to the controller before the screen is shown.
+     * @param fxml the FXML file of the screen
+     * @param <T> the type of the controller
+     * @return the controller of the screen
+     * @throws IOException if the screen could not be loaded
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T reset(String fxml) throws IOException {
+        Object controller = screen(fxml).controller();
+        if (controller instanceof Resettable resettable) {
+            resettable.reset();
+        }
+        return (T) controller;
+    }
+
+    /**
+     * Method to show a screen on the window of the button that was clicked, as it is.
+     * @param event the button click
+     * @param fxml the FXML file of the screen
+     * @throws IOException if the screen could not be loaded
+     */
+    public static void show(ActionEvent event, String fxml) throws IOException {
+        Scene scene = screen(fxml).scene();
+        Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
+        if (stage.getScene() != scene) {
+            stage.setScene(scene);
+        }
+        stage.show();
+    }
+
+    /**
+     * Method to put a screen back to a fresh state and show it on the window of the
+     * button that was clicked.
+     * @param event the button click
+     * @param fxml the FXML file of the screen
+     * @param <T> the type of the controller
+     * @return the controller of the screen
+     * @throws IOException if the screen could not be loaded
+     */
+    public static <T> T open(ActionEvent event, String fxml) throws IOException {
+        T controller = reset(fxml);
+        show(event, fxml);
+        return controller;
+    }
+
+    // loads a screen the first time it is asked for
+    private static Screen screen(String fxml) throws IOException {
+        Screen screen = screens.get(fxml);
+        if (screen == null) {
+            FXMLLoader loader = new FXMLLoader(Objects.requireNonNull(Screens.class.getResource(fxml)));
+            screen = new Screen(new Scene(loader.load()), loader.getController());
+            screens.put(fxml, screen);
+        }
+        return screen;
+    }
+}
@@ -0,0 +1,59 @@
+package smith.files;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * The SearchKeys class folds names into the keys they are searched by, so "Screw",
+ * "SCREW" and "scréw" all have the key "screw". Each part and product keeps the key of its
+ * name and works it out again only when it is renamed, and a search folds its text once,
+ * so comparing a name to a search is a plain contains on two keys and builds no strings.
+ */
+public final class SearchKeys {
+
+    private SearchKeys() {
+    }
+
+    /**
+     * Method to fold a name or a search into its key. The case is folded by going to upper
+     * case and back, so "ß" and "SS" match, then the text is broken into base letters and
+     * accents, which are dropped. Compatibility forms such as the "ﬁ" ligature become the
+     * plain letters.
+     * @param text the name or search, may be null
+     * @return the key, or null if the text is null
+     */
+    public static String fold(String text) {
+        if (text == null || isFolded(text)) {
+            return text;
+        }
+        String cased = text.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+        String decomposed = Normalizer.normalize(cased, Normalizer.Form.NFKD);
+        StringBuilder key = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); ) {
+            int c = decomposed.codePointAt(i);
+            if (!isMark(c)) {
+                key.appendCodePoint(c);
+            }
+            i += Character.charCount(c);
+        }
+        return key.toString();
+    }
+
+    // most names are plain ASCII with no capitals, and are their own key
+    private static boolean isFolded(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80 || (c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isMark(int c) {
+        int type = Character.getType(c);
+        return type == Character.NON_SPACING_MARK
+                || type == Character.COMBINING_SPACING_MARK
+                || type == Character.ENCLOSING_MARK;
+    }
+}
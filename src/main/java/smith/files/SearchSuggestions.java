@@ -0,0 +1,103 @@
+package smith.files;
+
+import javafx.geometry.Side;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
+
+/**
+ * The SearchSuggestions class shows a drop down of names under a search box as the user
+ * types, taken from the name prefix trees of the inventory. Picking a name puts it in the
+ * box and runs the search of the screen.
+ *
+ * The menu items and the array the names are written into are made once, so each key
+ * typed only looks up the prefix and changes the text of a few items.
+ */
+public final class SearchSuggestions {
+
+    // most names shown at once
+    private static final int SHOWN = 8;
+
+    /**
+     * Gives the names that start with the text typed so far.
+     */
+    public interface Suggester {
+
+        /**
+         * @param prefix the text typed so far
+         * @param into filled with the names in order, as many as it can hold
+         * @return the number of names written into the array
+         */
+        int suggest(String prefix, String[] into);
+    }
+
+    private final TextField field;
+    private final Suggester suggester;
+    private final Runnable search;
+    private final ContextMenu menu = new ContextMenu();
+    private final String[] names = new String[SHOWN];
+    private final MenuItem[] items = new MenuItem[SHOWN];
+    // set while a picked name is put in the box, so it does not suggest again
+    private boolean picking;
+
+    private SearchSuggestions(TextField field, Suggester suggester, Runnable search) {
+        this.field = field;
+        this.suggester = suggester;
+        this.search = search;
+        for (int i = 0; i < SHOWN; i++) {
+            MenuItem item = new MenuItem();
+            int shown = i;
+            item.setOnAction(e -> pick(names[shown]));
+            items[i] = item;
+        }
+        menu.getItems().setAll(items);
+    }
+
+    /**
+     * Method to show suggestions under a search box.
+     * @param field the search box
+     * @param suggester gives the names, such as InventoryEngine::suggestPartNames
+     * @param search runs the search of the screen after a name is picked
+     */
+    public static void attach(TextField field, Suggester suggester, Runnable search) {
+        SearchSuggestions suggestions = new SearchSuggestions(field, suggester, search);
+        field.textProperty().addListener((observable, oldText, newText) -> suggestions.update(newText));
+        field.focusedProperty().addListener((observable, wasFocused, focused) -> {
+            if (!focused) {
+                suggestions.menu.hide();
+            }
+        });
+    }
+
+    private void update(String text) {
+        if (picking) {
+            return;
+        }
+        int n = text == null || text.isEmpty() ? 0 : suggester.suggest(text, names);
+        if (n == 0 || (n == 1 && names[0].equalsIgnoreCase(text))) {
+            menu.hide();
+            return;
+        }
+        for (int i = 0; i < SHOWN; i++) {
+            items[i].setVisible(i < n);
+            if (i < n) {
+                items[i].setText(names[i]);
+            }
+        }
+        if (!menu.isShowing()) {
+            menu.show(field, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    private void pick(String name) {
+        picking = true;
+        try {
+            field.setText(name);
+            field.positionCaret(name.length());
+        } finally {
+            picking = false;
+        }
+        menu.hide();
+        search.run();
+    }
+}
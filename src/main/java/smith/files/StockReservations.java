@@ -0,0 +1,377 @@
+package smith.files;
+
+import javafx.application.Platform;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The StockReservations class lets order flows on any thread hold part stock before they
+ * take it, so two orders can never sell the same stock. Each part has a counter of the
+ * stock that is free to reserve, which is its stock less its min less what is already
+ * reserved. A reservation takes from the counter with compare and set, so there is no
+ * lock at all, and orders for different parts never touch the same counter.
+ *
+ * A reservation is a handle that is either committed, which takes the stock for good, or
+ * released, which gives it back. A reservation that is neither before it expires is
+ * released by a sweeper thread. Reserving units of a product reserves every associated
+ * part at once: if any part is short, the parts already taken are given back and nothing
+ * is reserved.
+ *
+ * Committed stock is taken off the Part on the FX thread, since the tables show the parts.
+ * Stock and min changes made on the screens are picked up through an InventoryObserver.
+ * Main opens the reservations, and the InventoryServer takes orders through them.
+ */
+public class StockReservations implements InventoryObserver, AutoCloseable {
+
+    // how often the sweeper looks for expired reservations
+    private static final long SWEEP_MILLIS = 250;
+
+    // a reservation is in one of these states, and only leaves ACTIVE once
+    private static final int ACTIVE = 0;
+    private static final int COMMITTED = 1;
+    private static final int RELEASED = 2;
+
+    private final Executor fxExecutor;
+    private final ConcurrentHashMap<Integer, Cell> cells = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Reservation> byExpiry = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<Long, Reservation> active = new ConcurrentHashMap<>();
+    private final AtomicLong nextID = new AtomicLong();
+    private final ScheduledExecutorService sweeper;
+
+    // stock taken by commits, waiting to be taken off the parts on the FX thread
+    private final ConcurrentLinkedQueue<int[]> taken = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean applyScheduled = new AtomicBoolean();
+
+    /**
+     * The stock of one part as the reservations see it.
+     */
+    private static final class Cell {
+        // stock less min less reserved. Can drop below 0 if the stock is lowered on a screen.
+        final AtomicInteger free = new AtomicInteger();
+        // the stock and min last seen on the part. Only changed on the FX thread.
+        final AtomicInteger stock = new AtomicInteger();
+        final AtomicInteger min = new AtomicInteger();
+    }
+
+    /**
+     * A hold on part stock that must be committed or released before it expires.
+     */
+    public final class Reservation implements Comparable<Reservation> {
+
+        private final long id;
+        private final long expiresAt;
+        private final int[] partIDs;
+        private final int[] quantities;
+        private final Cell[] held;
+        private final AtomicInteger state = new AtomicInteger(ACTIVE);
+
+        private Reservation(long id, long expiresAt, int[] partIDs, int[] quantities, Cell[] held) {
+            this.id = id;
+            this.expiresAt = expiresAt;
+            this.partIDs = partIDs;
+            this.quantities = quantities;
+            this.held = held;
+        }
+
+        /**
+         * @return the number of this reservation
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return the IDs of the parts held, in order of ID
+         */
+        public int[] getPartIDs() {
+            return partIDs.clone();
+        }
+
+        /**
+         * @param partID the ID of a part
+         * @return how many of the part are held, 0 if none
+         */
+        public int getQuantity(int partID) {
+            int i = Arrays.binarySearch(partIDs, partID);
+            return i < 0 ? 0 : quantities[i];
+        }
+
+        /**
+         * @return true if the reservation has not been committed, released or expired
+         */
+        public boolean isActive() {
+            return state.get() == ACTIVE;
+        }
+
+        /**
+         * Method to take the held stock for good. The parts lose the stock on the FX thread.
+         * @return true if it was committed, false if it was already committed, released
+         * or expired
+         */
+        public boolean commit() {
+            if (!state.compareAndSet(ACTIVE, COMMITTED)) {
+                return false;
+            }
+            byExpiry.remove(this);
+            active.remove(id);
+            // the held stock stays out of the free count until the FX thread takes it off
+            // the part, which lowers the stock and the reserved amount together
+            for (int i = 0; i < held.length; i++) {
+                taken.add(new int[] {partIDs[i], quantities[i]});
+            }
+            scheduleApply();
+            return true;
+        }
+
+        /**
+         * Method to give the held stock back.
+         * @return true if it was released, false if it was already committed, released
+         * or expired
+         */
+        public boolean release() {
+            if (!state.compareAndSet(ACTIVE, RELEASED)) {
+                return false;
+            }
+            byExpiry.remove(this);
+            active.remove(id);
+            for (int i = 0; i < held.length; i++) {
+                held[i].free.addAndGet(quantities[i]);
+            }
+            return true;
+        }
+
+        @Override
+        public int compareTo(Reservation other) {
+            int byTime = Long.compare(expiresAt, other.expiresAt);
+            return byTime != 0 ? byTime : Long.compare(id, other.id);
+        }
+    }
+
+    /**
+     * Method to start taking reservations against the inventory, with committed stock
+     * taken off the parts on the FX thread. Must be called on the FX thread, or before
+     * the application is launched.
+     * @return the reservations, which should be closed when no longer needed
+     */
+    public static StockReservations open() {
+        return new StockReservations(Platform::runLater);
+    }
+
+    /**
+     * StockReservations constructor. Reads the stock of every part, so it must be called
+     * on the thread that owns the inventory lists.
+     * @param fxExecutor runs the taking of committed stock off the parts on the thread
+     *                   that owns the lists
+     */
+    public StockReservations(Executor fxExecutor) {
+        this.fxExecutor = fxExecutor;
+        for (Part part : InventoryEngine.partInventory) {
+            partAdded(part);
+        }
+        InventoryEngine.addObserver(this);
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stock-reservations");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::expireDue, SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method to stop taking reservations. Active reservations are left as they are.
+     */
+    @Override
+    public void close() {
+        InventoryEngine.removeObserver(this);
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * @param partID the ID of a part
+     * @return how many of the part can still be reserved, never less than 0
+     */
+    public int available(int partID) {
+        Cell cell = cells.get(partID);
+        return cell == null ? 0 : Math.max(0, cell.free.get());
+    }
+
+    /**
+     * Method to find a reservation that has not been committed, released or expired.
+     * @param reservationID the number of the reservation
+     * @return the reservation, or an empty Optional if it is no longer active
+     */
+    public Optional<Reservation> find(long reservationID) {
+        return Optional.ofNullable(active.get(reservationID));
+    }
+
+    /**
+     * Method to reserve stock of one part.
+     * @param partID the ID of the part
+     * @param quantity how many to reserve
+     * @param timeToLive how long the reservation lasts before it is released
+     * @return the reservation, or an empty Optional if there is not enough free stock
+     */
+    public Optional<Reservation> reservePart(int partID, int quantity, Duration timeToLive) {
+        return reserve(new int[] {partID}, new int[] {quantity}, timeToLive);
+    }
+
+    /**
+     * Method to reserve the parts to build units of a product, all or nothing. A part the
+     * product lists twice is reserved twice for each unit.
+     * @param product the product
+     * @param units how many units to build
+     * @param timeToLive how long the reservation lasts before it is released
+     * @return the reservation, or an empty Optional if any part is short
+     */
+    public Optional<Reservation> reserveProduct(Product product, int units, Duration timeToLive) {
+        List<Part> parts = product.getAssociatedParts();
+        int[] ids = new int[parts.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = parts.get(i).getId();
+        }
+        return reserveProduct(ids, units, timeToLive);
+    }
+
+    /**
+     * Method to reserve the parts to build units of a product from the IDs of its parts,
+     * for threads that cannot read the associated parts. All or nothing.
+     * @param associatedIDs the IDs of the associated parts of the product, a part may be
+     *                      listed more than once
+     * @param units how many units to build
+     * @param timeToLive how long the reservation lasts before it is released
+     * @return the reservation, or an empty Optional if any part is short
+     */
+    public Optional<Reservation> reserveProduct(int[] associatedIDs, int units, Duration timeToLive) {
+        int[] ids = associatedIDs.clone();
+        Arrays.sort(ids);
+        // one line for each distinct part, with how many a unit needs
+        int[] partIDs = new int[ids.length];
+        int[] quantities = new int[ids.length];
+        int lines = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (lines > 0 && partIDs[lines - 1] == ids[i]) {
+                quantities[lines - 1] += units;
+            } else {
+                partIDs[lines] = ids[i];
+                quantities[lines] = units;
+                lines++;
+            }
+        }
+        return reserve(Arrays.copyOf(partIDs, lines), Arrays.copyOf(quantities, lines), timeToLive);
+    }
+
+    // takes every line, in order of part ID, or gives back the lines taken so far
+    private Optional<Reservation> reserve(int[] partIDs, int[] quantities, Duration timeToLive) {
+        Cell[] held = new Cell[partIDs.length];
+        for (int i = 0; i < partIDs.length; i++) {
+            Cell cell = quantities[i] > 0 ? cells.get(partIDs[i]) : null;
+            if (cell == null || !take(cell, quantities[i])) {
+                for (int j = 0; j < i; j++) {
+                    held[j].free.addAndGet(quantities[j]);
+                }
+                return Optional.empty();
+            }
+            held[i] = cell;
+        }
+        long expiresAt = System.nanoTime() + timeToLive.toNanos();
+        Reservation reservation = new Reservation(nextID.incrementAndGet(), expiresAt, partIDs, quantities, held);
+        active.put(reservation.getId(), reservation);
+        byExpiry.add(reservation);
+        return Optional.of(reservation);
+    }
+
+    private static boolean take(Cell cell, int quantity) {
+        while (true) {
+            int free = cell.free.get();
+            if (free < quantity) {
+                return false;
+            }
+            if (cell.free.compareAndSet(free, free - quantity)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Method to release every reservation that has expired. Called by the sweeper thread.
+     * @return the number of reservations released
+     */
+    public int expireDue() {
+        long now = System.nanoTime();
+        int expired = 0;
+        // the set is in order of expiry, so the walk stops at the first one still live
+        for (Reservation reservation : byExpiry) {
+            if (reservation.expiresAt - now > 0) {
+                break;
+            }
+            if (reservation.release()) {
+                expired++;
+            } else {
+                byExpiry.remove(reservation);
+            }
+        }
+        return expired;
+    }
+
+    private void scheduleApply() {
+        if (applyScheduled.compareAndSet(false, true)) {
+            fxExecutor.execute(this::applyTaken);
+        }
+    }
+
+    // takes committed stock off the parts. Runs on the FX thread. The stock seen is
+    // lowered first, so when the part tells the observer its stock went down by the same
+    // amount the free count does not move: the units were already out of it as reserved.
+    private void applyTaken() {
+        applyScheduled.set(false);
+        int[] line;
+        while ((line = taken.poll()) != null) {
+            Optional<Part> part = InventoryEngine.findPart(line[0]);
+            Cell cell = cells.get(line[0]);
+            if (part.isPresent() && cell != null) {
+                cell.stock.addAndGet(-line[1]);
+                part.get().setStock(part.get().getStock() - line[1]);
+            }
+        }
+    }
+
+    // brings the free count in line with the stock and min on the part
+    private void sync(Part part) {
+        Cell cell = cells.computeIfAbsent(part.getId(), id -> new Cell());
+        int stockChange = part.getStock() - cell.stock.getAndSet(part.getStock());
+        int minChange = part.getMin() - cell.min.getAndSet(part.getMin());
+        cell.free.addAndGet(stockChange - minChange);
+    }
+
+    @Override
+    public void partAdded(Part part) {
+        sync(part);
+    }
+
+    @Override
+    public void partRemoved(Part part) {
+        cells.remove(part.getId());
+    }
+
+    @Override
+    public void partReplaced(Part oldPart, Part newPart) {
+        sync(newPart);
+    }
+
+    @Override
+    public void partUpdated(Part part) {
+        sync(part);
+    }
+}
@@ -0,0 +1,613 @@
+package smith.files;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The UndoStack class makes changes to the inventory that can be undone and redone. Each
+ * change is made through a command method here, which makes the change and keeps only what
+ * is needed to reverse it: for a modified part that is the fields that changed, with the
+ * value before and after, not a copy of the part. A modified part is changed in place, so
+ * it keeps its place in the tables and nothing else holding it is left with an old copy.
+ *
+ * Every command is one step on the stack, and undo reverses the last step. group makes
+ * many commands one step, such as a bulk import or a price change over many parts, and
+ * the step is undone in one go with a single diff to the tables. The stack holds a limited
+ * number of steps and a limited number of recorded changes, and drops the oldest steps
+ * when either is passed.
+ *
+ * Every change goes through an InventoryBatch, so the lists are changed in one pass at
+ * the end of a command, a group, an undo or a redo. A deleted part or product is put
+ * back where it was in the list, not at the end, and only if its ID is still free.
+ *
+ * Like the screens, this class is used from the FX thread.
+ */
+public class UndoStack {
+
+    // fields of a part or product a change can be to
+    private static final byte NAME = 0;
+    private static final byte PRICE = 1;
+    private static final byte STOCK = 2;
+    private static final byte MIN = 3;
+    private static final byte MAX = 4;
+    private static final byte MACHINE_ID = 5;
+    private static final byte COMPANY = 6;
+
+    /**
+     * One recorded change, which can be reversed and made again.
+     */
+    private interface Edit {
+        void undo(InventoryBatch b);
+
+        void redo(InventoryBatch b);
+    }
+
+    /**
+     * What one undo reverses. The edits are undone last to first.
+     * @param label what the step did, such as "Modify part 5"
+     * @param edits the changes of the step, in the order they were made
+     */
+    private record Step(String label, Edit[] edits) {
+    }
+
+    private final int maxSteps;
+    private final int maxEdits;
+    private final ArrayDeque<Step> undoSteps = new ArrayDeque<>();
+    private final ArrayDeque<Step> redoSteps = new ArrayDeque<>();
+    // edits held by both stacks
+    private int edits;
+    // edits of the group being recorded, null outside of a group
+    private List<Edit> group;
+    // batch of the group being recorded, null outside of a group
+    private InventoryBatch batch;
+
+    /**
+     * UndoStack constructor
+     * @param maxSteps most steps that can be undone
+     * @param maxEdits most changes held over every step. The newest step is kept even if
+     *                 it is larger.
+     */
+    public UndoStack(int maxSteps, int maxEdits) {
+        this.maxSteps = maxSteps;
+        this.maxEdits = maxEdits;
+    }
+
+    /**
+     * @return true if there is a step to undo
+     */
+    public boolean canUndo() {
+        return !undoSteps.isEmpty();
+    }
+
+    /**
+     * @return true if there is a step to redo
+     */
+    public boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    /**
+     * @return what the next undo reverses, or an empty Optional if there is nothing to undo
+     */
+    public Optional<String> undoLabel() {
+        return undoSteps.isEmpty() ? Optional.empty() : Optional.of(undoSteps.peek().label());
+    }
+
+    /**
+     * @return what the next redo makes again, or an empty Optional if there is nothing to redo
+     */
+    public Optional<String> redoLabel() {
+        return redoSteps.isEmpty() ? Optional.empty() : Optional.of(redoSteps.peek().label());
+    }
+
+    /**
+     * Method to forget every step.
+     */
+    public void clear() {
+        undoSteps.clear();
+        redoSteps.clear();
+        edits = 0;
+    }
+
+    /**
+     * Method to reverse the last step. Changes that cannot be reversed any more, such as
+     * a field of a part that has since been deleted, are skipped.
+     * @return true if a step was undone
+     */
+    public boolean undo() {
+        checkNotGrouping();
+        Step step = undoSteps.poll();
+        if (step == null) {
+            return false;
+        }
+        InventoryEngine.batch(b -> {
+            for (int i = step.edits().length - 1; i >= 0; i--) {
+                step.edits()[i].undo(b);
+            }
+        });
+        redoSteps.push(step);
+        return true;
+    }
+
+    /**
+     * Method to make the last undone step again.
+     * @return true if a step was redone
+     */
+    public boolean redo() {
+        checkNotGrouping();
+        Step step = redoSteps.poll();
+        if (step == null) {
+            return false;
+        }
+        InventoryEngine.batch(b -> {
+            for (Edit edit : step.edits()) {
+                edit.redo(b);
+            }
+        });
+        undoSteps.push(step);
+        return true;
+    }
+
+    /**
+     * Method to make many commands one step, so one undo reverses all of them. The
+     * commands go through one batch, so the tables get one diff, and a part or product
+     * added or deleted in the group is only in or out of the lists once the group ends.
+     * Groups can be nested, the inner ones join the outer one.
+     * @param label what the step does
+     * @param changes calls the command methods of this stack
+     */
+    public void group(String label, Runnable changes) {
+        if (group != null) {
+            changes.run();
+            return;
+        }
+        group = new ArrayList<>();
+        try {
+            InventoryEngine.batch(b -> {
+                batch = b;
+                changes.run();
+            });
+        } finally {
+            List<Edit> recorded = group;
+            group = null;
+            batch = null;
+            record(label, recorded);
+        }
+    }
+
+    /**
+     * Method to add a part.
+     * @param part the part to add
+     * @return the result of the add
+     */
+    public InventoryEngine.Result<Part> addPart(Part part) {
+        Optional<String> problem = InventoryEngine.checkFields(part.getStock(), part.getMin(), part.getMax());
+        if (problem.isPresent()) {
+            return InventoryEngine.Result.failed(problem.get());
+        }
+        if (batch != null ? !batch.claimPartID(part) : !InventoryEngine.claimPartID(part)) {
+            return InventoryEngine.Result.failed("Part ID " + part.getId() + " is already in use.");
+        }
+        inBatch(b -> b.addPart(part));
+        record("Add part " + part.getId(), List.of(new Presence(false, part.getId(), true, null, -1)));
+        return InventoryEngine.Result.ok(part);
+    }
+
+    /**
+     * Method to add a product.
+     * @param product the product to add
+     * @return the result of the add
+     */
+    public InventoryEngine.Result<Product> addProduct(Product product) {
+        Optional<String> problem = InventoryEngine.checkFields(product.getStock(), product.getMin(), product.getMax());
+        if (problem.isPresent()) {
+            return InventoryEngine.Result.failed(problem.get());
+        }
+        if (batch != null ? !batch.claimProductID(product) : !InventoryEngine.claimProductID(product)) {
+            return InventoryEngine.Result.failed("Product ID " + product.getId() + " is already in use.");
+        }
+        inBatch(b -> b.addProduct(product));
+        record("Add product " + product.getId(), List.of(new Presence(true, product.getId(), true, null, -1)));
+        return InventoryEngine.Result.ok(product);
+    }
+
+    /**
+     * Method to delete a part. The part is held by the stack until the step is dropped,
+     * so undo puts back the same part, in the same place in the list.
+     * @param partID the ID of the part
+     * @return the part that was deleted, or an empty Optional if there was none
+     */
+    public Optional<Part> deletePart(int partID) {
+        Optional<Part> deleted = findPart(partID);
+        deleted.ifPresent(part -> {
+            int index = InventoryEngine.partInventory.indexOf(part);
+            inBatch(b -> b.deletePart(partID));
+            record("Delete part " + partID, List.of(new Presence(false, partID, false, part, index)));
+        });
+        return deleted;
+    }
+
+    /**
+     * Method to delete a product.
+     * @param productID the ID of the product
+     * @return the product that was deleted, or an empty Optional if there was none
+     */
+    public Optional<Product> deleteProduct(int productID) {
+        Optional<Product> deleted = findProduct(productID);
+        deleted.ifPresent(product -> {
+            int index = InventoryEngine.productInventory.indexOf(product);
+            inBatch(b -> b.deleteProduct(productID));
+            record("Delete product " + productID, List.of(new Presence(true, productID, false, product, index)));
+        });
+        return deleted;
+    }
+
+    /**
+     * Method to save the fields of a new version of a part onto the part in the inventory
+     * with the same ID. Only fields that differ are changed and recorded. A part changed
+     * from in-house to outsourced, or back, is swapped for the new version instead, since
+     * its class changes.
+     * @param edited the new version of the part
+     * @return the result, holding the part in the inventory on success
+     */
+    public InventoryEngine.Result<Part> updatePart(Part edited) {
+        Optional<String> problem = InventoryEngine.checkFields(edited.getStock(), edited.getMin(), edited.getMax());
+        if (problem.isPresent()) {
+            return InventoryEngine.Result.failed(problem.get());
+        }
+        int id = edited.getId();
+        Part current = findPart(id).orElse(null);
+        if (current == null) {
+            return InventoryEngine.Result.failed("Part not found");
+        }
+        String label = "Modify part " + id;
+        if (current.getClass() != edited.getClass()) {
+            inBatch(b -> b.updatePart(edited));
+            record(label, List.of(new Replacement(current, edited)));
+            return InventoryEngine.Result.ok(edited);
+        }
+        List<Edit> changes = new ArrayList<>();
+        inBatch(b -> {
+            setText(b, false, id, NAME, current.getName(), edited.getName(), changes);
+            setNumber(b, false, id, PRICE, bits(current.getPrice()), bits(edited.getPrice()), changes);
+            // min and max are set in the order that keeps min at or below max
+            if (edited.getMin() > current.getMax()) {
+                setNumber(b, false, id, MAX, current.getMax(), edited.getMax(), changes);
+                setNumber(b, false, id, MIN, current.getMin(), edited.getMin(), changes);
+            } else {
+                setNumber(b, false, id, MIN, current.getMin(), edited.getMin(), changes);
+                setNumber(b, false, id, MAX, current.getMax(), edited.getMax(), changes);
+            }
+            setNumber(b, false, id, STOCK, current.getStock(), edited.getStock(), changes);
+            if (current instanceof InHousePart inHousePart) {
+                setNumber(b, false, id, MACHINE_ID, inHousePart.GetMachineID(), ((InHousePart) edited).GetMachineID(), changes);
+            } else {
+                setText(b, false, id, COMPANY, ((OutsourcedPart) current).GetCompanyName(),
+                        ((OutsourcedPart) edited).GetCompanyName(), changes);
+            }
+        });
+        record(label, changes);
+        return InventoryEngine.Result.ok(current);
+    }
+
+    /**
+     * Method to save the fields and associated parts of a new version of a product onto
+     * the product in the inventory with the same ID. Only fields that differ are changed
+     * and recorded.
+     * @param edited the new version of the product
+     * @return the result, holding the product in the inventory on success
+     */
+    public InventoryEngine.Result<Product> updateProduct(Product edited) {
+        Optional<String> problem = InventoryEngine.checkFields(edited.getStock(), edited.getMin(), edited.getMax());
+        if (problem.isPresent()) {
+            return InventoryEngine.Result.failed(problem.get());
+        }
+        int id = edited.getId();
+        Product current = findProduct(id).orElse(null);
+        if (current == null) {
+            return InventoryEngine.Result.failed("Product not found");
+        }
+        List<Edit> changes = new ArrayList<>();
+        inBatch(b -> {
+            setText(b, true, id, NAME, current.getName(), edited.getName(), changes);
+            setNumber(b, true, id, PRICE, bits(current.getPrice()), bits(edited.getPrice()), changes);
+            if (edited.getMin() > current.getMax()) {
+                setNumber(b, true, id, MAX, current.getMax(), edited.getMax(), changes);
+                setNumber(b, true, id, MIN, current.getMin(), edited.getMin(), changes);
+            } else {
+                setNumber(b, true, id, MIN, current.getMin(), edited.getMin(), changes);
+                setNumber(b, true, id, MAX, current.getMax(), edited.getMax(), changes);
+            }
+            setNumber(b, true, id, STOCK, current.getStock(), edited.getStock(), changes);
+            Part[] before = current.getAssociatedParts().toArray(new Part[0]);
+            Part[] after = edited.getAssociatedParts().toArray(new Part[0]);
+            if (!Arrays.equals(before, after)) {
+                Associations edit = new Associations(id, before, after);
+                edit.redo(b);
+                changes.add(edit);
+            }
+        });
+        record("Modify product " + id, changes);
+        return InventoryEngine.Result.ok(current);
+    }
+
+    /**
+     * Method to change the price of many parts as one step.
+     * @param parts the parts to change
+     * @param newPrice gives the new price from the old one
+     */
+    public void changePartPrices(Collection<Part> parts, DoubleUnaryOperator newPrice) {
+        group("Change " + parts.size() + " part prices", () -> {
+            for (Part part : parts) {
+                setNumber(batch, false, part.getId(), PRICE, bits(part.getPrice()),
+                        bits(newPrice.applyAsDouble(part.getPrice())), group);
+            }
+        });
+    }
+
+    // runs changes in the batch of the group being recorded, or in a batch of their own
+    private void inBatch(Consumer<InventoryBatch> changes) {
+        if (batch != null) {
+            changes.accept(batch);
+        } else {
+            InventoryEngine.batch(changes);
+        }
+    }
+
+    // finds a part as the group being recorded will leave it
+    private Optional<Part> findPart(int partID) {
+        return batch != null ? batch.findPart(partID) : InventoryEngine.findPart(partID);
+    }
+
+    private Optional<Product> findProduct(int productID) {
+        return batch != null ? batch.findProduct(productID) : InventoryEngine.findProduct(productID);
+    }
+
+    private void checkNotGrouping() {
+        if (group != null) {
+            throw new IllegalStateException("Cannot undo or redo inside a group");
+        }
+    }
+
+    // adds the edits of a command to the group being recorded, or pushes them as a step
+    private void record(String label, List<Edit> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (group != null) {
+            group.addAll(changes);
+            return;
+        }
+        for (Step step : redoSteps) {
+            edits -= step.edits().length;
+        }
+        redoSteps.clear();
+        undoSteps.push(new Step(label, changes.toArray(new Edit[0])));
+        edits += changes.size();
+        // the oldest steps go first, but the step just made is always kept
+        while (undoSteps.size() > maxSteps || (edits > maxEdits && undoSteps.size() > 1)) {
+            edits -= undoSteps.removeLast().edits().length;
+        }
+    }
+
+    // changes a number field if the value differs, and records it
+    private static void setNumber(InventoryBatch b, boolean product, int id, byte field, long before, long after,
+                                  List<Edit> changes) {
+        if (before != after) {
+            NumberEdit edit = new NumberEdit(product, id, field, before, after);
+            edit.redo(b);
+            changes.add(edit);
+        }
+    }
+
+    // changes a text field if the value differs, and records it
+    private static void setText(InventoryBatch b, boolean product, int id, byte field, String before, String after,
+                                List<Edit> changes) {
+        if (!Objects.equals(before, after)) {
+            TextEdit edit = new TextEdit(product, id, field, before, after);
+            edit.redo(b);
+            changes.add(edit);
+        }
+    }
+
+    // prices are held as the bits of the double, so every number fits in a long
+    private static long bits(double price) {
+        return Double.doubleToLongBits(price);
+    }
+
+    /**
+     * A number field of a part or product, found by ID so it still works after the part
+     * was swapped for another with the same ID.
+     */
+    private record NumberEdit(boolean product, int id, byte field, long before, long after) implements Edit {
+
+        @Override
+        public void undo(InventoryBatch b) {
+            set(b, before);
+        }
+
+        @Override
+        public void redo(InventoryBatch b) {
+            set(b, after);
+        }
+
+        private void set(InventoryBatch b, long value) {
+            if (product) {
+                b.findProduct(id).ifPresent(p -> {
+                    switch (field) {
+                        case PRICE -> p.setPrice(Double.longBitsToDouble(value));
+                        case STOCK -> p.setStock((int) value);
+                        case MIN -> p.setMin((int) value);
+                        case MAX -> p.setMax((int) value);
+                        default -> throw new IllegalStateException("Not a product field " + field);
+                    }
+                });
+            } else {
+                b.findPart(id).ifPresent(p -> {
+                    switch (field) {
+                        case PRICE -> p.setPrice(Double.longBitsToDouble(value));
+                        case STOCK -> p.setStock((int) value);
+                        case MIN -> p.setMin((int) value);
+                        case MAX -> p.setMax((int) value);
+                        case MACHINE_ID -> {
+                            if (p instanceof InHousePart inHousePart) {
+                                inHousePart.setMachineID((int) value);
+                            }
+                        }
+                        default -> throw new IllegalStateException("Not a part field " + field);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * A text field of a part or product.
+     */
+    private record TextEdit(boolean product, int id, byte field, String before, String after) implements Edit {
+
+        @Override
+        public void undo(InventoryBatch b) {
+            set(b, before);
+        }
+
+        @Override
+        public void redo(InventoryBatch b) {
+            set(b, after);
+        }
+
+        private void set(InventoryBatch b, String value) {
+            if (product) {
+                b.findProduct(id).ifPresent(p -> p.setName(value));
+            } else if (field == NAME) {
+                b.findPart(id).ifPresent(p -> p.setName(value));
+            } else {
+                b.findPart(id).ifPresent(p -> {
+                    if (p instanceof OutsourcedPart outsourcedPart) {
+                        outsourcedPart.setCompanyName(value);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * A part or product that was added or deleted. Only the ID is held while the item is
+     * in the inventory, the item itself and its place in the list only while it is out
+     * of it.
+     */
+    private static final class Presence implements Edit {
+
+        private final boolean product;
+        private final int id;
+        private final boolean added;
+        private Object held;
+        // place in the list the item was taken out of, -1 to put it back at the end
+        private int index;
+
+        Presence(boolean product, int id, boolean added, Object held, int index) {
+            this.product = product;
+            this.id = id;
+            this.added = added;
+            this.held = held;
+            this.index = index;
+        }
+
+        @Override
+        public void undo(InventoryBatch b) {
+            if (added) {
+                takeOut(b);
+            } else {
+                putBack(b);
+            }
+        }
+
+        @Override
+        public void redo(InventoryBatch b) {
+            if (added) {
+                putBack(b);
+            } else {
+                takeOut(b);
+            }
+        }
+
+        private void takeOut(InventoryBatch b) {
+            if (product) {
+                held = b.findProduct(id).orElse(null);
+                index = held == null ? -1 : InventoryEngine.productInventory.indexOf(held);
+                b.deleteProduct(id);
+            } else {
+                held = b.findPart(id).orElse(null);
+                index = held == null ? -1 : InventoryEngine.partInventory.indexOf(held);
+                b.deletePart(id);
+            }
+        }
+
+        // an item whose ID has since been taken by another is not put back
+        private void putBack(InventoryBatch b) {
+            if (held instanceof Product p) {
+                if (b.claimProductID(p)) {
+                    if (index < 0) {
+                        b.addProduct(p);
+                    } else {
+                        b.addProduct(p, index);
+                    }
+                }
+            } else if (held instanceof Part p) {
+                if (b.claimPartID(p)) {
+                    if (index < 0) {
+                        b.addPart(p);
+                    } else {
+                        b.addPart(p, index);
+                    }
+                }
+            }
+            held = null;
+        }
+    }
+
+    /**
+     * A part swapped for a part of the other class with the same ID.
+     */
+    private record Replacement(Part before, Part after) implements Edit {
+
+        @Override
+        public void undo(InventoryBatch b) {
+            swapTo(b, before);
+        }
+
+        @Override
+        public void redo(InventoryBatch b) {
+            swapTo(b, after);
+        }
+
+        private static void swapTo(InventoryBatch b, Part part) {
+            if (b.findPart(part.getId()).isPresent()) {
+                b.updatePart(part);
+            }
+        }
+    }
+
+    /**
+     * The associated parts of a product, before and after.
+     */
+    private record Associations(int productID, Part[] before, Part[] after) implements Edit {
+
+        @Override
+        public void undo(InventoryBatch b) {
+            b.findProduct(productID).ifPresent(p -> p.getAssociatedParts().setAll(before));
+        }
+
+        @Override
+        public void redo(InventoryBatch b) {
+            b.findProduct(productID).ifPresent(p -> p.getAssociatedParts().setAll(after));
+        }
+    }
+}
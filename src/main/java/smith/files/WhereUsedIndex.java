@@ -0,0 +1,84 @@
+package smith.files;
+
+/**
+ * The WhereUsedIndex class is the reverse of the associated parts lists. For each part ID
+ * it keeps the IDs of the products that use the part, with how many times each product
+ * lists it. Finding the products that use a part, or checking that no product does, is a
+ * lookup instead of a scan of every product.
+ */
+public class WhereUsedIndex {
+
+    private static final int[] NONE = new int[0];
+
+    // product IDs using each part ID, with how many times the product lists the part
+    private final IntObjectMap<IntIntMap> users = new IntObjectMap<>();
+
+    /**
+     * Method to record that a product lists a part once more.
+     * @param partID the part
+     * @param productID the product using it
+     */
+    public void add(int partID, int productID) {
+        IntIntMap products = users.get(partID);
+        if (products == null) {
+            products = new IntIntMap();
+            users.put(partID, products);
+        }
+        products.add(productID, 1);
+    }
+
+    /**
+     * Method to record that a product lists a part once less.
+     * @param partID the part
+     * @param productID the product that stopped using it
+     */
+    public void remove(int partID, int productID) {
+        IntIntMap products = users.get(partID);
+        if (products == null || !products.containsKey(productID)) {
+            return;
+        }
+        products.add(productID, -1);
+        if (products.size() == 0) {
+            users.remove(partID);
+        }
+    }
+
+    /**
+     * @param partID the part
+     * @return true if any product uses the part
+     */
+    public boolean isUsed(int partID) {
+        return users.containsKey(partID);
+    }
+
+    /**
+     * @param partID the part
+     * @return the number of products using the part
+     */
+    public int productCount(int partID) {
+        IntIntMap products = users.get(partID);
+        return products == null ? 0 : products.size();
+    }
+
+    /**
+     * @param partID the part
+     * @return the IDs of the products using the part, in no set order
+     */
+    public int[] productIDs(int partID) {
+        IntIntMap products = users.get(partID);
+        if (products == null) {
+            return NONE;
+        }
+        int[] ids = new int[products.size()];
+        int[] at = {0};
+        products.forEach((productID, uses) -> ids[at[0]++] = productID);
+        return ids;
+    }
+
+    /**
+     * Method to forget every part and product.
+     */
+    public void clear() {
+        users.clear();
+    }
+}
@@ -0,0 +1,95 @@
+package smith.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BuildableCalculatorTest {
+
+    private BuildableCalculator calculator;
+
+    @AfterEach
+    void clearInventory() {
+        if (calculator != null) {
+            calculator.close();
+        }
+        InventoryEngine.productInventory.clear();
+        InventoryEngine.partInventory.clear();
+    }
+
+    private static Part part(int id, int stock) {
+        Part part = new InHousePart(id, "part " + id, 1.0, stock, 0, 1000, 1);
+        InventoryEngine.addPart(part);
+        return part;
+    }
+
+    private static Product product(int id, Part... parts) {
+        Product product = new Product(id, "product " + id, 10.0, 0, 0, 10);
+        for (Part p : parts) {
+            product.getAssociatedParts().add(p);
+        }
+        InventoryEngine.addProduct(product);
+        return product;
+    }
+
+    @Test
+    void sharedPartsLimitEachProductOnItsOwn() {
+        Part wheel = part(801, 10);
+        Part frame = part(802, 3);
+        product(801, wheel, wheel, frame);
+        product(802, wheel);
+        calculator = BuildableCalculator.open();
+        // two wheels a unit, so five from the wheels, but only three frames
+        assertEquals(3, calculator.buildable(801));
+        assertEquals(802, calculator.bottleneck(801));
+        // the same wheels are counted for each product, not split between them
+        assertEquals(10, calculator.buildable(802));
+        assertEquals(801, calculator.bottleneck(802));
+    }
+
+    @Test
+    void zeroAndNegativeStockBuildNothing() {
+        Part empty = part(811, 0);
+        Part plenty = part(812, 50);
+        product(811, plenty, empty);
+        Part owed = part(813, 5);
+        product(812, owed);
+        calculator = BuildableCalculator.open();
+        assertEquals(0, calculator.buildable(811));
+        assertEquals(811, calculator.bottleneck(811));
+        owed.setStock(-4);
+        assertEquals(0, calculator.buildable(812));
+    }
+
+    @Test
+    void productsWithNoPartsOrUnknownBuildNothing() {
+        product(821);
+        calculator = BuildableCalculator.open();
+        assertEquals(0, calculator.buildable(821));
+        assertEquals(-1, calculator.bottleneck(821));
+        assertEquals(0, calculator.buildable(12345));
+        assertEquals(-1, calculator.bottleneck(12345));
+    }
+
+    @Test
+    void changesAreFollowed() {
+        Part bolt = part(831, 4);
+        Product kit = product(831, bolt);
+        calculator = BuildableCalculator.open();
+        assertEquals(4, calculator.buildable(831));
+        bolt.setStock(9);
+        assertEquals(9, calculator.buildable(831));
+        Part nut = part(832, 2);
+        kit.getAssociatedParts().add(nut);
+        assertEquals(2, calculator.buildable(831));
+        assertEquals(832, calculator.bottleneck(831));
+        InventoryEngine.deletePart(832);
+        assertEquals(0, calculator.buildable(831));
+        InventoryEngine.deleteProduct(831);
+        assertEquals(0, calculator.buildable(831));
+        // new products are worked out when they are added
+        product(833, bolt);
+        assertEquals(9, calculator.buildable(833));
+    }
+}
@@ -0,0 +1,353 @@
+package smith.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import smith.files.InventoryHistory.PartState;
+import smith.files.InventoryHistory.ProductState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The test thread stands in for the FX thread: copy jobs are queued and run by fx().
+ */
+class ConcurrentInventoryTest {
+
+    private final ConcurrentLinkedQueue<Runnable> fxQueue = new ConcurrentLinkedQueue<>();
+    private ConcurrentInventory inventory;
+
+    @BeforeEach
+    void open() {
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+        inventory = new ConcurrentInventory(fxQueue::add);
+    }
+
+    @AfterEach
+    void close() {
+        inventory.close();
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    private void fx() {
+        Runnable task;
+        while ((task = fxQueue.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static PartState part(int id, int stock) {
+        return new PartState(id, "Part " + id, 1.5, stock, 0, 1_000_000, true, 7, null);
+    }
+
+    private static PartState withStock(PartState p, int stock) {
+        return new PartState(p.id(), p.name(), p.price(), stock, p.min(), p.max(), p.inHouse(), p.machineID(), p.companyName());
+    }
+
+    @Test
+    void readsAreCopiesThatScreenChangesDoNotTouch() {
+        Part bolt = new InHousePart(1, "Bolt", 1.0, 10, 0, 100, 3);
+        assertTrue(InventoryEngine.addPart(bolt).isOk());
+        PartState before = inventory.findPart(1).orElseThrow();
+        ConcurrentInventory.Snapshot<PartState> snapshot = inventory.partSnapshot();
+        bolt.setStock(20);
+        assertEquals(10, before.stock());
+        assertEquals(10, snapshot.items().get(0).stock());
+        assertEquals(20, inventory.findPart(1).orElseThrow().stock());
+        assertEquals(20, inventory.partSnapshot().items().get(0).stock());
+    }
+
+    @Test
+    void olderBackgroundWriteDoesNotOverwriteScreenChange() {
+        Part bolt = new InHousePart(1, "Bolt", 1.0, 10, 0, 100, 3);
+        InventoryEngine.addPart(bolt);
+        assertTrue(inventory.updatePart(1, p -> withStock(p, 5)).isOk());
+        bolt.setStock(7);
+        fx();
+        assertSame(bolt, InventoryEngine.findPart(1).orElseThrow());
+        assertEquals(7, bolt.getStock());
+        assertEquals(7, inventory.findPart(1).orElseThrow().stock());
+    }
+
+    @Test
+    void newerBackgroundWriteReplacesScreenChange() {
+        Part bolt = new InHousePart(1, "Bolt", 1.0, 10, 0, 100, 3);
+        InventoryEngine.addPart(bolt);
+        bolt.setStock(7);
+        assertTrue(inventory.updatePart(1, p -> withStock(p, p.stock() - 2)).isOk());
+        fx();
+        assertEquals(5, InventoryEngine.findPart(1).orElseThrow().getStock());
+        assertEquals(5, inventory.findPart(1).orElseThrow().stock());
+    }
+
+    @Test
+    void idWaitingToBeCopiedCannotBeAddedOnScreen() {
+        assertTrue(inventory.addPart(part(50, 3)).isOk());
+        assertFalse(InventoryEngine.addPart(new InHousePart(50, "Clash", 1.0, 1, 0, 10, 1)).isOk());
+        fx();
+        assertEquals("Part 50", InventoryEngine.findPart(50).orElseThrow().getName());
+
+        assertTrue(InventoryEngine.addProduct(new Product(60, "Frame", 9.0, 1, 0, 10)).isOk());
+        ProductState clash = new ProductState(60, "Clash", 1.0, 1, 0, 10, new int[0]);
+        assertFalse(inventory.addProduct(clash).isOk());
+        fx();
+        assertEquals("Frame", InventoryEngine.findProduct(60).orElseThrow().getName());
+    }
+
+    @Test
+    void explicitIDIsSkippedByNewIDs() {
+        int id = InventoryEngine.nextPartID() + 10;
+        assertTrue(inventory.addPart(part(id, 1)).isOk());
+        assertTrue(InventoryEngine.nextPartID() > id);
+    }
+
+    @Test
+    void productIsLinkedToPartsCopiedWithIt() {
+        assertTrue(inventory.addPart(part(1, 5)).isOk());
+        assertTrue(inventory.addPart(part(2, 5)).isOk());
+        int[] partIDs = {1, 2, 2};
+        assertTrue(inventory.addProduct(new ProductState(9, "Cart", 20.0, 1, 0, 5, partIDs)).isOk());
+        partIDs[0] = 99;
+        fx();
+        Product cart = InventoryEngine.findProduct(9).orElseThrow();
+        assertEquals(3, cart.getAssociatedParts().size());
+        assertSame(InventoryEngine.findPart(2).orElseThrow(), cart.getAssociatedParts().get(1));
+        assertArrayEquals(new int[] {1, 2, 2}, inventory.findProduct(9).orElseThrow().partIDs());
+    }
+
+    // the indexes follow renames, deletes and changes made on a screen as well
+    @Test
+    void searchesFollowEveryWrite() {
+        assertTrue(inventory.addPart(new PartState(3, "Écrou", 1.0, 5, 0, 10, true, 1, null)).isOk());
+        assertTrue(inventory.addPart(new PartState(1, "ECROU long", 1.0, 5, 0, 10, true, 1, null)).isOk());
+        assertTrue(inventory.addPart(new PartState(2, "Bolt", 1.0, 5, 0, 10, true, 1, null)).isOk());
+        assertEquals(List.of(1, 3), inventory.searchParts("ecr").stream().map(PartState::id).toList());
+        assertEquals(List.of(2), inventory.searchParts("OL").stream().map(PartState::id).toList());
+        assertTrue(inventory.updatePart(3, p -> new PartState(3, "Washer", p.price(), 9, p.min(), p.max(),
+                p.inHouse(), p.machineID(), p.companyName())).isOk());
+        assertEquals(List.of(1), inventory.searchParts("ecrou").stream().map(PartState::id).toList());
+        assertEquals(9, inventory.searchParts("wash").get(0).stock());
+        fx();
+        InventoryEngine.deletePart(1);
+        assertEquals(List.of(), inventory.searchParts("ecrou"));
+        assertTrue(InventoryEngine.addProduct(new Product(8, "Garden cart", 5.0, 1, 0, 5)).isOk());
+        assertEquals(List.of(8), inventory.searchProducts("CART").stream().map(ProductState::id).toList());
+    }
+
+    @Test
+    void productsUsingFollowsTheAssociatedParts() {
+        assertTrue(inventory.addPart(part(1, 5)).isOk());
+        assertTrue(inventory.addPart(part(2, 5)).isOk());
+        assertTrue(inventory.addProduct(new ProductState(9, "Cart", 20.0, 1, 0, 5, new int[] {1, 2, 2})).isOk());
+        assertTrue(inventory.addProduct(new ProductState(4, "Sled", 20.0, 1, 0, 5, new int[] {2})).isOk());
+        assertEquals(List.of(4, 9), inventory.productsUsing(2).stream().map(ProductState::id).toList());
+        assertTrue(inventory.dissociate(9, 2).isOk());
+        assertEquals(List.of(4, 9), inventory.productsUsing(2).stream().map(ProductState::id).toList());
+        assertTrue(inventory.dissociate(9, 2).isOk());
+        assertTrue(inventory.deleteProduct(4).isPresent());
+        assertEquals(List.of(), inventory.productsUsing(2));
+        assertTrue(inventory.deleteUnusedPart(2).isOk());
+        assertFalse(inventory.deleteUnusedPart(1).isOk());
+        assertTrue(inventory.associate(9, 1).isOk());
+        assertArrayEquals(new int[] {1, 1}, inventory.productsUsing(1).get(0).partIDs());
+    }
+
+    @Test
+    void deleteIsCopiedAndSnapshotIsKeptUntilAChange() {
+        assertTrue(inventory.addPart(part(3, 1)).isOk());
+        fx();
+        ConcurrentInventory.Snapshot<PartState> first = inventory.partSnapshot();
+        assertSame(first, inventory.partSnapshot());
+        assertTrue(inventory.deletePart(3).isPresent());
+        assertTrue(inventory.findPart(3).isEmpty());
+        ConcurrentInventory.Snapshot<PartState> second = inventory.partSnapshot();
+        assertTrue(second.version() > first.version());
+        assertTrue(second.items().isEmpty());
+        fx();
+        assertTrue(InventoryEngine.findPart(3).isEmpty());
+    }
+
+    // a snapshot taken before writes still holds what it held, while a new one has them
+    @Test
+    void oldSnapshotsStayAsTheyWere() {
+        for (int id = 1; id <= 500; id++) {
+            assertTrue(inventory.addPart(part(id, id)).isOk());
+        }
+        ConcurrentInventory.Snapshot<PartState> first = inventory.partSnapshot();
+        for (int id = 1; id <= 500; id += 2) {
+            assertTrue(inventory.deletePart(id).isPresent());
+        }
+        assertTrue(inventory.updatePart(2, p -> withStock(p, 0)).isOk());
+        ConcurrentInventory.Snapshot<PartState> second = inventory.partSnapshot();
+        assertEquals(500, first.items().size());
+        assertEquals(2, first.items().get(1).stock());
+        assertEquals(250, second.items().size());
+        assertEquals(0, second.items().get(0).stock());
+        List<Integer> ids = new ArrayList<>();
+        second.items().forEach(p -> ids.add(p.id()));
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(2 * (i + 1), ids.get(i));
+        }
+    }
+
+    // a part copied from another thread is a new object, and products already in the
+    // lists are copied to point at it
+    @Test
+    void productsInTheListsAreReboundToCopiedParts() {
+        Part bolt = new InHousePart(1, "Bolt", 1.0, 10, 0, 100, 3);
+        assertTrue(InventoryEngine.addPart(bolt).isOk());
+        Product cart = new Product(9, "Cart", 20.0, 1, 0, 5);
+        cart.AddAssociatedParts(bolt);
+        assertTrue(InventoryEngine.addProduct(cart).isOk());
+        assertTrue(inventory.updatePart(1, p -> withStock(p, 5)).isOk());
+        fx();
+        Part copied = InventoryEngine.findPart(1).orElseThrow();
+        assertEquals(5, copied.getStock());
+        assertSame(copied, InventoryEngine.findProduct(9).orElseThrow().getAssociatedParts().get(0));
+    }
+
+    // a screen saves a product with a part another thread deleted since the screen read it
+    @Test
+    void productSavedWithAPartDeletedElsewhereLeavesItOut() {
+        Part bolt = new InHousePart(1, "Bolt", 1.0, 10, 0, 100, 3);
+        Part nut = new InHousePart(2, "Nut", 1.0, 10, 0, 100, 3);
+        assertTrue(InventoryEngine.addPart(bolt).isOk());
+        assertTrue(InventoryEngine.addPart(nut).isOk());
+        assertTrue(inventory.deleteUnusedPart(2).isOk());
+        Product cart = new Product(9, "Cart", 20.0, 1, 0, 5);
+        cart.AddAssociatedParts(bolt);
+        cart.AddAssociatedParts(nut);
+        assertTrue(InventoryEngine.addProduct(cart).isOk());
+        assertArrayEquals(new int[] {1}, inventory.findProduct(9).orElseThrow().partIDs());
+        assertTrue(inventory.productsUsing(2).isEmpty());
+        fx();
+        assertTrue(InventoryEngine.findPart(2).isEmpty());
+        assertEquals(List.of(bolt), List.copyOf(InventoryEngine.findProduct(9).orElseThrow().getAssociatedParts()));
+    }
+
+    // each writer sets part a to n and then part b to n, in ranges locked by different
+    // stripes. A snapshot made at one point in time can never see b ahead of a.
+    @Test
+    void snapshotsAreTakenAtOnePointWhileWritersRun() throws InterruptedException {
+        int writers = 4;
+        int rounds = 5_000;
+        for (int w = 0; w < writers; w++) {
+            assertTrue(inventory.addPart(part(pairA(w), 0)).isOk());
+            assertTrue(inventory.addPart(part(pairB(w), 0)).isOk());
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> problem = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int a = pairA(w);
+            int b = pairB(w);
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int n = 1; n <= rounds; n++) {
+                    int stock = n;
+                    inventory.updatePart(a, p -> withStock(p, stock));
+                    inventory.updatePart(b, p -> withStock(p, stock));
+                }
+            }));
+        }
+        Thread reader = new Thread(() -> {
+            await(start);
+            long lastVersion = -1;
+            while (writing.get()) {
+                ConcurrentInventory.Snapshot<PartState> snapshot = inventory.partSnapshot();
+                if (snapshot.version() < lastVersion) {
+                    problem.set("version went back");
+                }
+                lastVersion = snapshot.version();
+                int[] stock = new int[writers * 2];
+                for (PartState p : snapshot.items()) {
+                    int w = (p.id() % 100_000) / 10;
+                    stock[w * 2 + (p.id() >= 100_000 ? 1 : 0)] = p.stock();
+                }
+                for (int w = 0; w < writers; w++) {
+                    int a = stock[w * 2];
+                    int b = stock[w * 2 + 1];
+                    if (b > a || a > b + 1) {
+                        problem.set("writer " + w + " seen with a at " + a + " and b at " + b);
+                    }
+                }
+            }
+        });
+        threads.forEach(Thread::start);
+        reader.start();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writing.set(false);
+        reader.join();
+        assertNull(problem.get());
+
+        fx();
+        assertEquals(writers * 2, InventoryEngine.partInventory.size());
+        for (PartState p : inventory.partSnapshot().items()) {
+            assertEquals(rounds, p.stock());
+            assertEquals(rounds, InventoryEngine.findPart(p.id()).orElseThrow().getStock());
+        }
+    }
+
+    @Test
+    void concurrentAddsWithTheSameIDOnlyOneWins() throws InterruptedException {
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Integer> won = new ConcurrentLinkedQueue<>();
+        List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int stock = t;
+            running.add(new Thread(() -> {
+                await(start);
+                for (int id = 1; id <= 500; id++) {
+                    if (inventory.addPart(part(id, stock)).isOk()) {
+                        won.add(id);
+                    }
+                }
+            }));
+        }
+        running.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+        assertEquals(500, won.size());
+        fx();
+        assertEquals(500, InventoryEngine.partInventory.size());
+        for (PartState p : inventory.partSnapshot().items()) {
+            assertEquals(p.stock(), InventoryEngine.findPart(p.id()).orElseThrow().getStock());
+        }
+    }
+
+    private static int pairA(int writer) {
+        return writer * 10;
+    }
+
+    private static int pairB(int writer) {
+        return 100_000 + writer * 10;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package smith.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvImporterTest {
+
+    @AfterEach
+    void clearInventory() {
+        InventoryEngine.productInventory.clear();
+        InventoryEngine.partInventory.clear();
+    }
+
+    // small chunks, so lines are spread over several chunks and workers
+    private static CsvImporter.Report importText(String text) throws IOException {
+        return new CsvImporter(2, 2, 100, Runnable::run).importFrom(new StringReader(text));
+    }
+
+    private static List<String> reasons(CsvImporter.Report report) {
+        return report.rejected().stream().map(r -> r.line() + ": " + r.reason()).toList();
+    }
+
+    @Test
+    void quotedFieldsKeepCommasAndQuotes() throws IOException {
+        CsvImporter.Report report = importText("""
+                type,id,name,price,stock,min,max,extra
+                outsourced,701,"Bolt, hex ""M6""\",0.5,10,1,20,"Acme, Inc."
+                inhouse,702,"Plain",1.25,5,0,10,"3"
+                """);
+        assertEquals(2, report.partsImported());
+        assertEquals(0, report.rejectedCount(), reasons(report).toString());
+        OutsourcedPart bolt = (OutsourcedPart) InventoryEngine.findPart(701).get();
+        assertEquals("Bolt, hex \"M6\"", bolt.getName());
+        assertEquals("Acme, Inc.", bolt.GetCompanyName());
+        assertEquals(3, ((InHousePart) InventoryEngine.findPart(702).get()).GetMachineID());
+    }
+
+    @Test
+    void malformedRowsAreRejectedWithTheirLine() throws IOException {
+        CsvImporter.Report report = importText("""
+                inhouse,711,good,1.0,5,0,10,1
+                inhouse,712,too few,1.0,5,0,10
+                inhouse,713,"open quote,1.0,5,0,10,1
+                inhouse,714,bad price,cheap,5,0,10,1
+                inhouse,715,max below min,1.0,5,10,0,1
+                inhouse,716,over max,1.0,50,0,10,1
+                widget,717,unknown,1.0,5,0,10,1
+                inhouse,711,same id,1.0,5,0,10,1
+                product,718,missing part,9.0,1,0,5,999
+                """);
+        assertEquals(1, report.partsImported());
+        assertEquals(0, report.productsImported());
+        assertEquals(8, report.rejectedCount());
+        List<Long> lines = report.rejected().stream().map(CsvImporter.Rejected::line).sorted().toList();
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), lines);
+        assertTrue(reasons(report).contains("3: A quoted field is not closed"));
+        assertTrue(reasons(report).contains("9: Unknown part ID 999"));
+        assertEquals("good", InventoryEngine.findPart(711).get().getName());
+    }
+
+    @Test
+    void productsLinkPartsFromLaterInTheFile() throws IOException {
+        CsvImporter.Report report = importText("""
+                product,,frame,30.0,2,0,5,721;722;722
+                inhouse,721,tube,2.0,10,0,50,1
+                outsourced,722,clamp,0.5,40,0,100,Acme
+
+                """);
+        assertEquals(2, report.partsImported());
+        assertEquals(1, report.productsImported());
+        Product frame = InventoryEngine.productInventory.get(0);
+        assertEquals("frame", frame.getName());
+        assertEquals(List.of(721, 722, 722), frame.getAssociatedParts().stream().map(Part::getId).toList());
+    }
+
+    @Test
+    void blankIDsGetNewIDs() throws IOException {
+        importText("inhouse,,first,1.0,1,0,5,1\ninhouse,,second,1.0,1,0,5,1\n");
+        assertEquals(2, InventoryEngine.partInventory.size());
+        int first = InventoryEngine.partInventory.get(0).getId();
+        int second = InventoryEngine.partInventory.get(1).getId();
+        assertTrue(first != second);
+    }
+}
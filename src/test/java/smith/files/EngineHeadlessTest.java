@@ -0,0 +1,56 @@
+package smith.files;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The engine side of the package must work with no FX toolkit, so none of its classes
+ * may refer to javafx.scene, javafx.stage or javafx.application. javafx.base, which holds
+ * the observable lists, is allowed.
+ */
+class EngineHeadlessTest {
+
+    private static final List<String> ENGINE_CLASSES = List.of(
+            "InventoryEngine", "InventoryList", "InventoryDiff", "InventoryBatch", "InventoryObserver",
+            "ColumnStore", "RangeIndex", "NGramIndex", "RadixTree", "WhereUsedIndex", "CostRollup",
+            "IdSequence", "LowStockTracker", "UndoStack", "BuildableCalculator", "SearchKeys",
+            "IntObjectMap", "IntIntMap", "Part", "InHousePart", "OutsourcedPart", "Product",
+            "InventoryJournal", "InventorySnapshot", "InventoryHistory", "CsvImporter");
+
+    private static final List<String> FORBIDDEN = List.of("javafx/scene", "javafx/stage", "javafx/application");
+
+    @Test
+    void engineClassesDoNotUseTheToolkit() throws IOException, URISyntaxException {
+        Path classes = Path.of(InventoryEngine.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .resolve("smith").resolve("files");
+        List<String> found = new ArrayList<>();
+        int checked = 0;
+        for (String name : ENGINE_CLASSES) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(classes, name + "{,$*}.class")) {
+                for (Path file : files) {
+                    checked++;
+                    // class names are kept as plain text in the constant pool
+                    String text = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+                    for (String forbidden : FORBIDDEN) {
+                        if (text.contains(forbidden)) {
+                            found.add(file.getFileName() + " uses " + forbidden);
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(checked >= ENGINE_CLASSES.size());
+        assertEquals(List.of(), found);
+    }
+}
@@ -0,0 +1,57 @@
+package smith.files;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdTreeTest {
+
+    // random puts and removes give the same items as a TreeMap, in the same order
+    @Test
+    void keepsTheSameItemsAsASortedMap() {
+        IdTree<String> tree = IdTree.empty();
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        Random random = new Random(10);
+        for (int step = 0; step < 20_000; step++) {
+            int id = random.nextInt(3_000) - 1_000;
+            if (random.nextInt(3) == 0) {
+                tree = tree.remove(id);
+                expected.remove(id);
+            } else {
+                tree = tree.put(id, "item " + step);
+                expected.put(id, "item " + step);
+            }
+        }
+        assertEquals(expected.size(), tree.size());
+        assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(tree.items()));
+        List<String> byPlace = new ArrayList<>();
+        for (int i = 0; i < tree.size(); i++) {
+            byPlace.add(tree.items().get(i));
+        }
+        assertEquals(new ArrayList<>(expected.values()), byPlace);
+        for (int id = -1_000; id < 2_000; id++) {
+            assertEquals(expected.get(id), tree.get(id));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> IdTree.<String>empty().items().get(0));
+    }
+
+    // a change gives a new tree and leaves every older one as it was
+    @Test
+    void olderTreesAreNotChanged() {
+        IdTree<String> first = IdTree.of(java.util.Map.of(1, "a", 2, "b", 3, "c"));
+        IdTree<String> second = first.put(2, "B").remove(3).put(4, "d");
+        assertEquals(List.of("a", "b", "c"), first.items());
+        assertEquals(List.of("a", "B", "d"), second.items());
+        assertSame(second, second.remove(99));
+        assertNull(second.get(3));
+        assertThrows(UnsupportedOperationException.class, () -> second.items().add("e"));
+    }
+}
@@ -0,0 +1,55 @@
+package smith.files;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryEngineTest {
+
+    @Test
+    void idOfPartInInventoryCannotChange() {
+        int id = InventoryEngine.nextPartID();
+        Part part = new InHousePart(id, "Guarded bolt", 1.0, 5, 1, 10, 1);
+        assertTrue(InventoryEngine.addPart(part).isOk());
+        assertThrows(IllegalStateException.class, () -> part.setId(id + 100000));
+        assertEquals(id, part.getId());
+        assertSame(part, InventoryEngine.findPart(id).get());
+        part.setId(id);
+        InventoryEngine.deletePart(id);
+        part.setId(id + 100000);
+        assertEquals(id + 100000, part.getId());
+    }
+
+    @Test
+    void idOfProductInInventoryCannotChange() {
+        int id = InventoryEngine.nextProductID();
+        Product product = new Product(id, "Guarded frame", 2.0, 5, 1, 10);
+        assertTrue(InventoryEngine.addProduct(product).isOk());
+        assertThrows(IllegalStateException.class, () -> product.setId(id + 100000));
+        assertSame(product, InventoryEngine.findProduct(id).get());
+        InventoryEngine.deleteProduct(id);
+        product.setId(id + 100000);
+        assertEquals(id + 100000, product.getId());
+    }
+
+    @Test
+    void replaceAndDeleteKeepListOrder() {
+        int first = InventoryEngine.nextPartID();
+        Part a = new InHousePart(first, "Order a", 1.0, 5, 1, 10, 1);
+        int second = InventoryEngine.nextPartID();
+        Part b = new InHousePart(second, "Order b", 1.0, 5, 1, 10, 1);
+        InventoryEngine.addPart(a);
+        InventoryEngine.addPart(b);
+        int at = InventoryEngine.partInventory.indexOf(a);
+        Part newA = new InHousePart(first, "Order a2", 1.0, 5, 1, 10, 1);
+        assertTrue(InventoryEngine.replacePart(newA).isOk());
+        assertEquals(at, InventoryEngine.partInventory.indexOf(newA));
+        assertEquals(at + 1, InventoryEngine.partInventory.indexOf(b));
+        InventoryEngine.deletePart(first);
+        assertEquals(at, InventoryEngine.partInventory.indexOf(b));
+        InventoryEngine.deletePart(second);
+    }
+}
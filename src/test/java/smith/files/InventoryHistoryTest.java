@@ -0,0 +1,218 @@
+package smith.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import smith.files.InventoryHistory.PartState;
+import smith.files.InventoryHistory.ProductState;
+import smith.files.InventoryHistory.State;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryHistoryTest {
+
+    @TempDir
+    Path directory;
+
+    private final TestClock clock = new TestClock();
+    private InventoryHistory history;
+
+    @BeforeEach
+    void open() {
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        if (history != null) {
+            history.close();
+        }
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    /**
+     * A clock that only moves when told to.
+     */
+    private static final class TestClock extends Clock {
+        private long millis = 1_000_000;
+
+        void advance(long by) {
+            millis += by;
+        }
+
+        Instant now() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return now();
+        }
+    }
+
+    private Part addPart(int id, int stock) {
+        Part part = new InHousePart(id, "Part " + id, 2.0, stock, 0, 1_000, 5);
+        assertTrue(InventoryEngine.addPart(part).isOk());
+        return part;
+    }
+
+    private long checkpointFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith("checkpoint-")).count();
+        }
+    }
+
+    @Test
+    void partsAndProductsAreFoundAsTheyWereAtATime() throws IOException {
+        Part bolt = addPart(1, 10);
+        history = InventoryHistory.open(directory, 100_000, clock);
+        Instant opened = clock.now();
+        clock.advance(1_000);
+        bolt.setStock(7);
+        Product cart = new Product(4, "Cart", 30.0, 1, 0, 5);
+        cart.AddAssociatedParts(bolt);
+        InventoryEngine.addProduct(cart);
+        Instant afterCart = clock.now();
+        clock.advance(1_000);
+        bolt.setStock(3);
+        InventoryEngine.deleteProduct(4);
+        Instant afterDelete = clock.now();
+
+        assertEquals(10, history.partAt(1, opened).orElseThrow().stock());
+        assertEquals(7, history.partAt(1, afterCart).orElseThrow().stock());
+        assertEquals(3, history.partAt(1, afterDelete).orElseThrow().stock());
+        assertTrue(history.partAt(1, opened.minusMillis(1)).isEmpty());
+        assertTrue(history.productAt(4, opened).isEmpty());
+        ProductState then = history.productAt(4, afterCart).orElseThrow();
+        assertArrayEquals(new int[] {1}, then.partIDs());
+        assertTrue(history.productAt(4, afterDelete).isEmpty());
+
+        State state = history.stateAt(afterCart).orElseThrow();
+        assertEquals(List.of(1), state.parts().stream().map(PartState::id).toList());
+        assertEquals("Cart", state.products().get(0).name());
+        assertTrue(history.stateAt(opened.minusMillis(1)).isEmpty());
+    }
+
+    // a start with nothing changed must not replace the last checkpoint with a later
+    // time, or the times between the two could no longer be looked at
+    @Test
+    void startWithNothingChangedWritesNothing() throws IOException {
+        addPart(1, 10);
+        history = InventoryHistory.open(directory, 100_000, clock);
+        Instant first = clock.now();
+        history.close();
+        long logSize = Files.size(directory.resolve("history.log"));
+
+        clock.advance(60_000);
+        history = InventoryHistory.open(directory, 100_000, clock);
+        history.flush();
+        assertEquals(logSize, Files.size(directory.resolve("history.log")));
+        assertEquals(1, checkpointFiles());
+        assertEquals(10, history.partAt(1, first.plusMillis(30_000)).orElseThrow().stock());
+    }
+
+    @Test
+    void changesMadeWhileClosedAreWrittenAtTheNextStart() throws IOException {
+        Part bolt = addPart(1, 10);
+        addPart(2, 4);
+        history = InventoryHistory.open(directory, 100_000, clock);
+        Instant before = clock.now();
+        history.close();
+
+        clock.advance(5_000);
+        bolt.setStock(25);
+        InventoryEngine.deletePart(2);
+        addPart(3, 8);
+        history = InventoryHistory.open(directory, 100_000, clock);
+        Instant after = clock.now();
+
+        assertEquals(10, history.partAt(1, before).orElseThrow().stock());
+        assertEquals(25, history.partAt(1, after).orElseThrow().stock());
+        assertTrue(history.partAt(2, before).isPresent());
+        assertTrue(history.partAt(2, after).isEmpty());
+        assertTrue(history.partAt(3, after).isPresent());
+    }
+
+    @Test
+    void onlySomeCheckpointsAreKeptAndOldTimesCanStillBeRead() throws IOException {
+        Part bolt = addPart(1, 0);
+        history = InventoryHistory.open(directory, 10, 4, clock);
+        Instant start = clock.now();
+        for (int i = 1; i <= 200; i++) {
+            clock.advance(10);
+            bolt.setStock(i);
+        }
+        history.flush();
+        assertEquals(4, checkpointFiles());
+        assertEquals(0, history.partAt(1, start).orElseThrow().stock());
+        assertEquals(55, history.partAt(1, start.plusMillis(550)).orElseThrow().stock());
+        assertEquals(200, history.partAt(1, clock.now()).orElseThrow().stock());
+
+        // the kept checkpoints are found again and trimmed to the number kept
+        history.close();
+        history = InventoryHistory.open(directory, 10, 2, clock);
+        assertEquals(2, checkpointFiles());
+        assertEquals(120, history.partAt(1, start.plusMillis(1_200)).orElseThrow().stock());
+    }
+
+    // checkpoints are built by the writer from the log, so what it read back must match
+    // the inventory, and a start after them finds nothing changed
+    @Test
+    void checkpointsHoldWhatTheLogLedTo() throws IOException {
+        Part bolt = addPart(1, 10);
+        addPart(2, 4);
+        history = InventoryHistory.open(directory, 3, clock);
+        Product cart = new Product(4, "Cart", 30.0, 1, 0, 5);
+        cart.AddAssociatedParts(bolt);
+        InventoryEngine.addProduct(cart);
+        for (int i = 0; i < 5; i++) {
+            clock.advance(10);
+            bolt.setStock(i);
+        }
+        InventoryEngine.deletePart(2);
+        addPart(3, 8);
+        history.flush();
+        assertTrue(checkpointFiles() > 1);
+        State state = history.stateAt(clock.now()).orElseThrow();
+        assertEquals(List.of(1, 3), state.parts().stream().map(PartState::id).toList());
+        assertEquals(4, state.parts().get(0).stock());
+        assertArrayEquals(new int[] {1}, state.products().get(0).partIDs());
+        history.close();
+
+        long logSize = Files.size(directory.resolve("history.log"));
+        clock.advance(60_000);
+        history = InventoryHistory.open(directory, 3, clock);
+        history.flush();
+        assertEquals(logSize, Files.size(directory.resolve("history.log")));
+    }
+}
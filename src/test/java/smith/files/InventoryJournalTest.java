@@ -0,0 +1,182 @@
+package smith.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearInventory() {
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    private static void addParts(int... ids) {
+        for (int id : ids) {
+            assertTrue(InventoryEngine.addPart(new InHousePart(id, "Part " + id, 1.5, 10, 1, 20, id)).isOk());
+        }
+    }
+
+    private Path writeThreeParts() throws IOException {
+        try (InventoryJournal journal = InventoryJournal.open(directory)) {
+            addParts(1, 2, 3);
+            journal.flush();
+        }
+        InventoryEngine.partInventory.clear();
+        return directory.resolve(InventoryJournal.JOURNAL_FILE);
+    }
+
+    // the length of the record starting at an offset, header included
+    private static int recordSize(Path log, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, offset);
+            return 8 + length.getInt(0);
+        }
+    }
+
+    @Test
+    void recordsAreReadBack() throws IOException {
+        writeThreeParts();
+        try (InventoryJournal journal = InventoryJournal.open(directory)) {
+            assertEquals(3, InventoryEngine.partInventory.size());
+            assertEquals("Part 2", InventoryEngine.findPart(2).get().getName());
+        }
+    }
+
+    @Test
+    void tornTailIsCutOff() throws IOException {
+        Path log = writeThreeParts();
+        long size = Files.size(log);
+        long twoRecords = recordSize(log, 0) + recordSize(log, recordSize(log, 0));
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+        try (InventoryJournal journal = InventoryJournal.open(directory)) {
+            assertEquals(2, InventoryEngine.partInventory.size());
+            assertFalse(InventoryEngine.findPart(3).isPresent());
+            assertEquals(twoRecords, Files.size(log));
+            // new records follow the good ones
+            addParts(4);
+            journal.flush();
+        }
+        InventoryEngine.partInventory.clear();
+        try (InventoryJournal journal = InventoryJournal.open(directory)) {
+            assertEquals(3, InventoryEngine.partInventory.size());
+            assertTrue(InventoryEngine.findPart(4).isPresent());
+        }
+    }
+
+    @Test
+    void badChecksumStopsRecovery() throws IOException {
+        Path log = writeThreeParts();
+        int first = recordSize(log, 0);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // a byte inside the name of the second part
+            long at = first + 8 + 12;
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, at);
+            b.put(0, (byte) (b.get(0) ^ 0x20)).rewind();
+            channel.write(b, at);
+        }
+        try (InventoryJournal journal = InventoryJournal.open(directory)) {
+            assertEquals(1, InventoryEngine.partInventory.size());
+            assertTrue(InventoryEngine.findPart(1).isPresent());
+            assertEquals(first, Files.size(log));
+        }
+    }
+
+    @Test
+    void failedWriterStopsTakingRecords() throws Exception {
+        // a directory where the snapshot is written makes the compaction fail
+        Files.createDirectories(directory.resolve(InventoryJournal.SNAPSHOT_FILE + ".tmp"));
+        InventoryJournal journal = InventoryJournal.open(directory, 2);
+        CountDownLatch failed = new CountDownLatch(1);
+        journal.setOnFailure(e -> failed.countDown());
+        addParts(1, 2);
+        assertTrue(failed.await(10, TimeUnit.SECONDS));
+        assertTrue(journal.isFailed());
+        assertThrows(IOException.class, journal::flush);
+        Path log = directory.resolve(InventoryJournal.JOURNAL_FILE);
+        long size = Files.size(log);
+        addParts(3);
+        assertThrows(IOException.class, journal::flush);
+        assertEquals(size, Files.size(log));
+        assertThrows(IOException.class, journal::close);
+    }
+
+    @Test
+    void journalIsAppliedOverSnapshot() throws IOException {
+        try (InventoryJournal journal = InventoryJournal.open(directory, 3)) {
+            addParts(1, 2, 3);
+            journal.flush();
+            // after the snapshot: part 2 is replaced, part 1 deleted and part 4 added
+            assertTrue(InventoryEngine.replacePart(new InHousePart(2, "Part 2b", 1.5, 10, 1, 20, 2)).isOk());
+            InventoryEngine.deletePart(1);
+            addParts(4);
+            journal.flush();
+        }
+        InventoryEngine.partInventory.clear();
+        try (InventoryJournal journal = InventoryJournal.open(directory)) {
+            assertEquals(List.of(2, 3, 4), InventoryEngine.partInventory.stream().map(Part::getId).toList());
+            assertEquals("Part 2b", InventoryEngine.findPart(2).get().getName());
+        }
+    }
+
+    @Test
+    void snapshotKeepsProductsAndAssociations() throws IOException {
+        try (InventoryJournal journal = InventoryJournal.open(directory, 3)) {
+            addParts(1, 2);
+            Product product = new Product(1, "Frame", 9.0, 2, 1, 5);
+            product.getAssociatedParts().add(InventoryEngine.findPart(2).get());
+            assertTrue(InventoryEngine.addProduct(product).isOk());
+            journal.flush();
+        }
+        assertEquals(1, InventorySnapshot.open(directory.resolve(InventoryJournal.SNAPSHOT_FILE)).productCount());
+        assertEquals(0, Files.size(directory.resolve(InventoryJournal.JOURNAL_FILE)));
+        InventoryEngine.productInventory.clear();
+        InventoryEngine.partInventory.clear();
+        try (InventoryJournal journal = InventoryJournal.open(directory)) {
+            Product product = InventoryEngine.findProduct(1).get();
+            assertEquals(1, product.getAssociatedParts().size());
+            assertEquals(2, product.getAssociatedParts().get(0).getId());
+        }
+    }
+
+    // names longer than 64KB are kept in the records and in the snapshot made from them
+    @Test
+    void longNamesAreReadBack() throws IOException {
+        String name = "écrou ".repeat(12_000);
+        try (InventoryJournal journal = InventoryJournal.open(directory, 2)) {
+            assertTrue(InventoryEngine.addPart(new OutsourcedPart(1, name, 1.0, 5, 0, 10, name)).isOk());
+            addParts(2, 3);
+            journal.flush();
+        }
+        InventoryEngine.partInventory.clear();
+        try (InventoryJournal journal = InventoryJournal.open(directory)) {
+            OutsourcedPart part = (OutsourcedPart) InventoryEngine.findPart(1).get();
+            assertEquals(name, part.getName());
+            assertEquals(name, part.GetCompanyName());
+            assertEquals(3, InventoryEngine.partInventory.size());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package smith.files;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InventoryListTest {
+
+    @Test
+    void matchesArrayListUnderRandomEdits() {
+        Random random = new Random(7);
+        InventoryList<String> list = new InventoryList<>();
+        List<String> expected = new ArrayList<>();
+        int next = 0;
+        for (int step = 0; step < 20000; step++) {
+            int op = random.nextInt(10);
+            if (op < 4 || expected.isEmpty()) {
+                String item = "i" + next++;
+                list.add(item);
+                expected.add(item);
+            } else if (op < 7) {
+                String item = expected.get(random.nextInt(expected.size()));
+                list.remove(item);
+                expected.remove(item);
+            } else if (op < 8) {
+                int index = random.nextInt(expected.size());
+                String item = "i" + next++;
+                list.set(index, item);
+                expected.set(index, item);
+            } else if (op < 9) {
+                int index = random.nextInt(expected.size() + 1);
+                String item = "i" + next++;
+                list.add(index, item);
+                expected.add(index, item);
+            } else {
+                String item = expected.get(random.nextInt(expected.size()));
+                assertEquals(expected.indexOf(item), list.indexOf(item));
+            }
+        }
+        assertEquals(expected, new ArrayList<>(list));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(i, list.indexOf(expected.get(i)));
+        }
+    }
+
+    @Test
+    void emptiesAreKeptAfterManyRemovals() {
+        InventoryList<String> list = new InventoryList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            list.add("i" + i);
+            expected.add("i" + i);
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            list.remove("i" + i);
+            expected.remove("i" + i);
+        }
+        for (int i = 0; i < 2000; i++) {
+            list.remove(expected.remove(0));
+        }
+        assertEquals(expected, new ArrayList<>(list));
+        assertEquals(-1, list.indexOf("i0"));
+        assertEquals(expected.size() - 1, list.indexOf(expected.get(expected.size() - 1)));
+    }
+
+    @Test
+    void batchKeepsPositions() {
+        InventoryList<String> list = new InventoryList<>();
+        for (int i = 0; i < 10; i++) {
+            list.add("i" + i);
+        }
+        Set<String> removed = new HashSet<>(List.of("i1", "i2", "i7"));
+        Map<String, String> replaced = new HashMap<>(Map.of("i5", "r5"));
+        list.applyBatch(removed, replaced, List.of("a", "b"));
+        assertEquals(List.of("i0", "i3", "i4", "r5", "i6", "i8", "i9", "a", "b"), new ArrayList<>(list));
+        assertEquals(3, list.indexOf("r5"));
+        assertEquals(-1, list.indexOf("i5"));
+        assertEquals(8, list.indexOf("b"));
+    }
+
+    @Test
+    void sameItemTwiceFallsBackToScan() {
+        InventoryList<String> list = new InventoryList<>();
+        String item = "x";
+        list.add(item);
+        list.add("y");
+        list.add(item);
+        assertEquals(0, list.indexOf(item));
+        assertEquals(2, list.lastIndexOf(item));
+        list.remove(0);
+        assertEquals(1, list.indexOf(item));
+        assertSame(item, list.get(1));
+    }
+
+    @Test
+    void badIndexThrows() {
+        InventoryList<String> list = new InventoryList<>();
+        list.add("a");
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(-1));
+    }
+}
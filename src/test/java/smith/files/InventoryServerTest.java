@@ -0,0 +1,172 @@
+package smith.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The test thread stands in for the FX thread, and fx() is only run where a test says so:
+ * every request is answered while the copy jobs are still waiting.
+ */
+class InventoryServerTest {
+
+    private static final String JSON = "application/json";
+
+    private final ConcurrentLinkedQueue<Runnable> fxQueue = new ConcurrentLinkedQueue<>();
+    private ConcurrentInventory inventory;
+    private StockReservations reservations;
+    private InventoryServer server;
+
+    /**
+     * An answer from the server.
+     * @param status the HTTP status
+     * @param body the body
+     */
+    private record Answer(int status, String body) {
+    }
+
+    @BeforeEach
+    void open() throws IOException {
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+        inventory = new ConcurrentInventory(fxQueue::add);
+        reservations = new StockReservations(fxQueue::add);
+        server = new InventoryServer(inventory, reservations, null,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void close() {
+        server.close();
+        reservations.close();
+        inventory.close();
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    private void fx() {
+        Runnable task;
+        while ((task = fxQueue.poll()) != null) {
+            task.run();
+        }
+    }
+
+    // a plain HTTP/1.1 request, so the Host and Content-Type headers are as the test sets them
+    private Answer send(String method, String path, String host, String type, String body) throws IOException {
+        byte[] content = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        StringBuilder request = new StringBuilder(method).append(" /api").append(path).append(" HTTP/1.1\r\n");
+        if (host != null) {
+            request.append("Host: ").append(host).append("\r\n");
+        }
+        if (type != null) {
+            request.append("Content-Type: ").append(type).append("\r\n");
+        }
+        request.append("Content-Length: ").append(content.length).append("\r\nConnection: close\r\n\r\n");
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+            out.write(content);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            String reply = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            int status = Integer.parseInt(reply.substring(9, 12));
+            return new Answer(status, reply.substring(reply.indexOf("\r\n\r\n") + 4));
+        }
+    }
+
+    private Answer send(String method, String path, String body) throws IOException {
+        return send(method, path, "localhost:" + server.port(), body == null ? null : JSON, body);
+    }
+
+    private static String part(String name, int stock) {
+        return "{\"name\":\"" + name + "\",\"price\":1.5,\"stock\":" + stock
+                + ",\"min\":0,\"max\":100,\"type\":\"inhouse\",\"machineId\":3}";
+    }
+
+    @Test
+    void readsAndWritesAreAnsweredWithoutTheFxThread() throws IOException {
+        assertEquals(201, send("POST", "/parts", "{\"id\":1," + part("Écrou", 10).substring(1)).status());
+        assertEquals(201, send("POST", "/parts", "{\"id\":2," + part("Bolt", 10).substring(1)).status());
+        assertEquals(201, send("POST", "/products",
+                "{\"id\":7,\"name\":\"Cart\",\"price\":9.0,\"stock\":1,\"min\":0,\"max\":5}").status());
+
+        Answer found = send("GET", "/parts?name=ECROU", null);
+        assertEquals(200, found.status());
+        assertTrue(found.body().startsWith("{\"total\":1,"), found.body());
+        assertEquals(200, send("POST", "/products/7/parts/2", null).status());
+        Answer using = send("GET", "/parts/2/products", null);
+        assertTrue(using.body().contains("\"id\":7"), using.body());
+        Answer replaced = send("PUT", "/products/7",
+                "{\"name\":\"Big cart\",\"price\":9.0,\"stock\":1,\"min\":0,\"max\":5}");
+        assertEquals(200, replaced.status());
+        assertTrue(send("GET", "/products/7/parts", null).body().contains("\"id\":2"));
+
+        // nothing has been copied to the lists yet, then all of it is
+        assertTrue(InventoryEngine.partInventory.isEmpty());
+        fx();
+        Product cart = InventoryEngine.findProduct(7).orElseThrow();
+        assertEquals("Big cart", cart.getName());
+        assertEquals(1, cart.getAssociatedParts().size());
+        assertEquals(2, cart.getAssociatedParts().get(0).getId());
+    }
+
+    @Test
+    void itemsInUseAreNotDeleted() throws IOException {
+        send("POST", "/parts", "{\"id\":2," + part("Bolt", 10).substring(1));
+        send("POST", "/products", "{\"id\":7,\"name\":\"Cart\",\"price\":9.0,\"stock\":1,\"min\":0,\"max\":5}");
+        send("POST", "/products/7/parts/2", null);
+
+        assertEquals(409, send("DELETE", "/parts/2", null).status());
+        assertEquals(409, send("DELETE", "/products/7", null).status());
+        assertEquals(404, send("POST", "/products/7/parts/9", null).status());
+        assertEquals(200, send("DELETE", "/products/7/parts/2", null).status());
+        assertEquals(404, send("DELETE", "/products/7/parts/2", null).status());
+        assertEquals(200, send("DELETE", "/parts/2", null).status());
+        assertEquals(200, send("DELETE", "/products/7", null).status());
+        assertEquals(404, send("DELETE", "/parts/2", null).status());
+        fx();
+        assertTrue(InventoryEngine.partInventory.isEmpty());
+        assertTrue(InventoryEngine.productInventory.isEmpty());
+    }
+
+    @Test
+    void badRequestsDoNotUseUpAnID() throws IOException {
+        int next = InventoryEngine.nextPartID() + 1;
+        assertEquals(400, send("POST", "/parts", part("Bolt", 500)).status());
+        assertEquals(400, send("POST", "/parts", "{\"name\":\"Bolt\"}").status());
+        Answer added = send("POST", "/parts", part("Bolt", 10));
+        assertEquals(201, added.status());
+        assertTrue(added.body().startsWith("{\"id\":" + next + ","), added.body());
+    }
+
+    @Test
+    void onlyJsonBodiesSentToLocalhostAreAccepted() throws IOException {
+        String host = "localhost:" + server.port();
+        assertEquals(415, send("POST", "/parts", host, null, part("Bolt", 10)).status());
+        assertEquals(415, send("POST", "/parts", host, "text/plain", part("Bolt", 10)).status());
+        assertEquals(201, send("POST", "/parts", host, "application/json; charset=utf-8", part("Bolt", 10)).status());
+        assertEquals(403, send("GET", "/parts", "evil.example:" + server.port(), null, null).status());
+        assertEquals(403, send("GET", "/parts", null, null, null).status());
+        assertEquals(200, send("GET", "/parts", "127.0.0.1:" + server.port(), null, null).status());
+        assertEquals(200, send("GET", "/parts", "[::1]:" + server.port(), null, null).status());
+    }
+
+    @Test
+    void serverIsOffUnlessAPortIsSet() throws IOException {
+        assertNull(System.getProperty("inventory.http.port"));
+        assertNull(InventoryServer.start(reservations, null));
+    }
+}
@@ -0,0 +1,154 @@
+package smith.files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventorySnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private Path writeSample() throws IOException {
+        Part bolt = new InHousePart(4, "bolt", 0.5, 10, 1, 50, 7);
+        Part screw = new OutsourcedPart(2, "screw", 0.25, 30, 0, 100, "Acme");
+        Product bike = new Product(9, "bike", 120.0, 3, 1, 10);
+        bike.getAssociatedParts().add(bolt);
+        bike.getAssociatedParts().add(screw);
+        Path file = directory.resolve("snapshot.dat");
+        InventorySnapshot.write(file, List.of(bolt, screw), List.of(bike));
+        return file;
+    }
+
+    @Test
+    void rowsAreReadBack() throws IOException {
+        InventorySnapshot snapshot = InventorySnapshot.open(writeSample());
+        assertEquals(2, snapshot.partCount());
+        assertEquals(1, snapshot.productCount());
+        assertEquals(1, snapshot.findPartRow(2));
+        assertEquals(-1, snapshot.findPartRow(3));
+        assertEquals("screw", snapshot.partName(1));
+        assertEquals("Acme", ((OutsourcedPart) snapshot.part(1)).GetCompanyName());
+        assertEquals(7, ((InHousePart) snapshot.part(0)).GetMachineID());
+        assertEquals(9, snapshot.productID(0));
+        Product bike = snapshot.product(0);
+        assertEquals(2, bike.getAssociatedParts().size());
+        assertEquals(snapshot.part(0), bike.getAssociatedParts().get(0));
+    }
+
+    @Test
+    void damagedSnapshotIsRefused() throws IOException {
+        Path file = writeSample();
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the last byte of the string table
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, size - 1);
+            b.put(0, (byte) (b.get(0) ^ 1)).rewind();
+            channel.write(b, size - 1);
+        }
+        IOException e = assertThrows(IOException.class, () -> InventorySnapshot.open(file));
+        assertTrue(e.getMessage().contains("corrupt"));
+    }
+
+    @Test
+    void cutSnapshotIsRefused() throws IOException {
+        Path file = writeSample();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 2);
+        }
+        assertThrows(IOException.class, () -> InventorySnapshot.open(file));
+    }
+
+    @Test
+    void nullStringsAreKept() throws IOException {
+        Path file = directory.resolve("nulls.dat");
+        InventorySnapshot.write(file, List.of(new OutsourcedPart(1, "nut", 1.0, 1, 0, 5, null)), List.of());
+        assertNull(((OutsourcedPart) InventorySnapshot.open(file).part(0)).GetCompanyName());
+    }
+
+    // flips one bit of a byte in the file
+    private static void damage(Path file, long at) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, at);
+            b.put(0, (byte) (b.get(0) ^ 1)).rewind();
+            channel.write(b, at);
+        }
+    }
+
+    // sets a header field and writes a header checksum that matches it, so only the
+    // bounds checks can refuse the file
+    private static void setHeader(Path file, int at, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer all = ByteBuffer.allocate((int) channel.size());
+            channel.read(all, 0);
+            int pagesAt = all.getInt(48);
+            all.putInt(at, value);
+            CRC32 crc = new CRC32();
+            crc.update(all.array(), 0, 52);
+            crc.update(all.array(), pagesAt, all.capacity() - pagesAt);
+            all.putInt(52, (int) crc.getValue());
+            channel.write(all.rewind(), 0);
+        }
+    }
+
+    // opening checks only the header, a damaged page is found when a row in it is read
+    @Test
+    void damagedPageIsFoundWhenItIsRead() throws IOException {
+        List<Part> parts = new ArrayList<>();
+        for (int id = 0; id < 5_000; id++) {
+            parts.add(new InHousePart(id, "Part " + id, 1.0, 5, 0, 10, id));
+        }
+        Path file = directory.resolve("large.dat");
+        InventorySnapshot.write(file, parts, List.of());
+        // the price of a row in the second page, the strings are in later pages
+        damage(file, 64 + 2_000 * 40 + 8);
+        InventorySnapshot snapshot = InventorySnapshot.open(file);
+        assertEquals("Part 10", snapshot.part(10).getName());
+        assertEquals(10, snapshot.findPartRow(10));
+        UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> snapshot.part(2_000));
+        assertTrue(e.getCause().getMessage().contains("corrupt"));
+        assertThrows(UncheckedIOException.class, () -> snapshot.partID(2_010));
+        assertEquals(4_999, snapshot.partID(4_999));
+    }
+
+    @Test
+    void sectionsOutsideTheFileAreRefused() throws IOException {
+        int[][] fields = {
+                {8, 1_000_000},          // more parts than the file holds
+                {24, Integer.MAX_VALUE}, // part rows past the end
+                {28, 0},                 // product rows over the header
+                {20, -2},                // a negative string count
+                {48, 10},                // page checksums inside the header
+        };
+        for (int[] field : fields) {
+            Path file = writeSample();
+            setHeader(file, field[0], field[1]);
+            assertThrows(IOException.class, () -> InventorySnapshot.open(file), "field at " + field[0]);
+        }
+    }
+
+    @Test
+    void otherVersionsAreRefused() throws IOException {
+        Path file = writeSample();
+        setHeader(file, 4, 1);
+        IOException e = assertThrows(IOException.class, () -> InventorySnapshot.open(file));
+        assertTrue(e.getMessage().contains("version"));
+    }
+}
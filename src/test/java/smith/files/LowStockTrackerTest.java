@@ -0,0 +1,116 @@
+package smith.files;
+
+import javafx.collections.ListChangeListener;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The tracker is told about parts and products straight through its observer methods, so
+ * no inventory is needed.
+ */
+class LowStockTrackerTest {
+
+    private final LowStockTracker tracker = new LowStockTracker();
+
+    private static Part part(int id, int stock, int min, int max) {
+        return new InHousePart(id, "Part " + id, 1.0, stock, min, max, 1);
+    }
+
+    private static String row(LowStockTracker.Entry entry) {
+        return entry.kind() + " " + entry.id();
+    }
+
+    private List<String> rows() {
+        return tracker.items().stream().map(LowStockTrackerTest::row).toList();
+    }
+
+    @Test
+    void lowComesBeforeHighWithTheWorstFirst() {
+        tracker.partAdded(part(1, 4, 5, 10));
+        tracker.partAdded(part(2, 20, 5, 10));
+        tracker.partAdded(part(3, 0, 5, 10));
+        tracker.partAdded(part(4, 7, 5, 10));
+        tracker.productAdded(new Product(1, "Cart", 1.0, 1, 5, 10));
+        tracker.partAdded(part(5, 11, 5, 10));
+        assertEquals(List.of("PART 3", "PRODUCT 1", "PART 1", "PART 2", "PART 5"), rows());
+        assertEquals(3, tracker.worst().id());
+        assertEquals(5, tracker.size());
+
+        tracker.partUpdated(part(3, 5, 5, 10));
+        tracker.partUpdated(part(1, 1, 5, 10));
+        assertEquals(List.of("PART 1", "PRODUCT 1", "PART 2", "PART 5"), rows());
+        tracker.partRemoved(part(1, 1, 5, 10));
+        tracker.productReplaced(null, new Product(1, "Cart", 1.0, 6, 5, 10));
+        assertEquals(List.of("PART 2", "PART 5"), rows());
+        assertThrows(UnsupportedOperationException.class, () -> tracker.items().clear());
+        tracker.clear();
+        assertEquals(List.of(), rows());
+        assertNull(tracker.worst());
+    }
+
+    // subscribers hear only when the status changes, not when an item moves within it
+    @Test
+    void subscribersAreToldOfChangesOfStatus() {
+        List<String> told = new ArrayList<>();
+        Runnable stop = tracker.subscribe(e -> told.add(e.entry().id() + " " + e.before() + " " + e.after()));
+        tracker.partAdded(part(1, 8, 5, 10));
+        tracker.partUpdated(part(1, 4, 5, 10));
+        tracker.partUpdated(part(1, 2, 5, 10));
+        tracker.partUpdated(part(1, 12, 5, 10));
+        tracker.partRemoved(part(1, 12, 5, 10));
+        assertEquals(List.of("1 OK LOW", "1 LOW HIGH", "1 HIGH OK"), told);
+        stop.run();
+        tracker.partAdded(part(2, 0, 5, 10));
+        assertEquals(3, told.size());
+    }
+
+    // the panel is told one row added or removed per change, at the row it happened, so
+    // a copy kept from the changes alone stays the same as the list
+    @Test
+    void listChangesAreSingleRowsThatKeepACopyInStep() {
+        List<LowStockTracker.Entry> copy = new ArrayList<>();
+        int[] changes = {0};
+        tracker.items().addListener((ListChangeListener<LowStockTracker.Entry>) change -> {
+            while (change.next()) {
+                changes[0]++;
+                assertTrue(change.getRemovedSize() + change.getAddedSize() == 1);
+                if (change.wasRemoved()) {
+                    assertEquals(change.getRemoved().get(0), copy.remove(change.getFrom()));
+                }
+                if (change.wasAdded()) {
+                    copy.add(change.getFrom(), change.getAddedSubList().get(0));
+                }
+            }
+        });
+        Random random = new Random(16);
+        int[] stock = new int[300];
+        for (int step = 0; step < 5_000; step++) {
+            int id = random.nextInt(stock.length);
+            stock[id] = random.nextInt(30);
+            if (random.nextInt(20) == 0) {
+                tracker.partRemoved(part(id, stock[id], 5, 20));
+            } else {
+                tracker.partUpdated(part(id, stock[id], 5, 20));
+            }
+        }
+        assertEquals(copy, tracker.items());
+        assertTrue(changes[0] > 0);
+        List<LowStockTracker.Entry> sorted = new ArrayList<>(copy);
+        sorted.sort(Comparator.comparing(LowStockTracker.Entry::status)
+                .thenComparing(Comparator.comparingInt(LowStockTracker.Entry::shortfall).reversed())
+                .thenComparingInt(LowStockTracker.Entry::id));
+        assertEquals(sorted, tracker.items());
+        for (int i = 0; i < copy.size(); i++) {
+            assertEquals(copy.get(i), tracker.items().get(i));
+        }
+    }
+}
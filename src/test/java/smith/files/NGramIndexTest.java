@@ -0,0 +1,114 @@
+package smith.files;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NGramIndexTest {
+
+    /**
+     * An item whose name can be changed, like a part.
+     */
+    private static final class Item {
+        final int id;
+        String name;
+
+        Item(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private final NGramIndex<Item> index = new NGramIndex<>(i -> i.id, i -> i.name);
+
+    private List<Integer> search(String text) {
+        List<Item> found = new ArrayList<>();
+        index.search(text, found);
+        return found.stream().map(i -> i.id).sorted().toList();
+    }
+
+    @Test
+    void findsNamesContainingTheText() {
+        index.add(new Item(1, "hex bolt"), "hex bolt");
+        index.add(new Item(2, "bolt cutter"), "bolt cutter");
+        index.add(new Item(3, "washer"), "washer");
+        assertEquals(List.of(1, 2), search("bolt"));
+        assertEquals(List.of(1), search("x bo"));
+        assertEquals(List.of(), search("boltz"));
+        assertEquals(List.of(3), search("washer"));
+    }
+
+    // shorter than a trigram, so every item is checked
+    @Test
+    void shortSearchesCheckEveryItem() {
+        index.add(new Item(1, "hex bolt"), "hex bolt");
+        index.add(new Item(2, "nut"), "nut");
+        index.add(new Item(3, "ox"), "ox");
+        assertEquals(List.of(1, 3), search("x"));
+        assertEquals(List.of(2), search("nu"));
+        assertEquals(List.of(1, 2, 3), search(""));
+    }
+
+    @Test
+    void renamedAndRemovedItemsAreFoundByTheirNewNamesOnly() {
+        Item bolt = new Item(1, "bolt");
+        Item nut = new Item(2, "nut");
+        index.add(bolt, bolt.name);
+        index.add(nut, nut.name);
+
+        bolt.name = "screw";
+        index.rename(bolt, "bolt", "screw");
+        assertEquals(List.of(), search("bolt"));
+        assertEquals(List.of(1), search("screw"));
+
+        index.remove(nut, nut.name);
+        assertEquals(List.of(), search("nut"));
+        assertEquals(1, index.size());
+        // adding the same item twice indexes it once
+        index.add(bolt, bolt.name);
+        assertEquals(List.of(1), search("scr"));
+    }
+
+    // a new version of an item with the same ID takes the place of the old one, and
+    // removing the old one after that leaves the new one alone
+    @Test
+    void aNewVersionWithTheSameIDReplacesTheOldOne() {
+        Item old = new Item(1, "bolt");
+        Item replaced = new Item(1, "bolt long");
+        index.add(old, old.name);
+        index.add(replaced, replaced.name);
+        index.remove(old, old.name);
+        List<Item> found = new ArrayList<>();
+        index.search("bolt", found);
+        assertEquals(1, found.size());
+        assertTrue(found.get(0) == replaced);
+    }
+
+    // removing most items rebuilds the posting lists under new slots
+    @Test
+    void searchesStayRightAfterTheListsAreRebuilt() {
+        List<Item> items = new ArrayList<>();
+        for (int id = 0; id < 5_000; id++) {
+            Item item = new Item(id, (id % 7 == 0 ? "gear " : "spring ") + id);
+            items.add(item);
+            index.add(item, item.name);
+        }
+        for (Item item : items) {
+            if (item.id % 5 != 0) {
+                index.remove(item, item.name);
+            }
+        }
+        assertEquals(1_000, index.size());
+        List<Integer> expected = new ArrayList<>();
+        for (int id = 0; id < 5_000; id += 35) {
+            expected.add(id);
+        }
+        assertEquals(expected, search("gear"));
+        assertEquals(List.of(2_000), search("g 2000"));
+        assertEquals(List.of(), search("spring 4001"));
+    }
+}
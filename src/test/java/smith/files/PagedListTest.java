@@ -0,0 +1,193 @@
+package smith.files;
+
+import javafx.collections.ListChangeListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A copy of the list is kept only from the changes the list reports, and must match the
+ * inventory in the order of the list after every edit.
+ */
+class PagedListTest {
+
+    private final ConcurrentLinkedQueue<Runnable> fxQueue = new ConcurrentLinkedQueue<>();
+    private final List<Part> copy = new ArrayList<>();
+    private final List<String> problems = new ArrayList<>();
+    private PagedList<Part> rows;
+    private int replaced;
+
+    @BeforeEach
+    void open() {
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    @AfterEach
+    void close() {
+        if (rows != null) {
+            rows.close();
+        }
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    private void follow() {
+        rows = PagedList.parts(fxQueue::add);
+        copy.addAll(rows);
+        rows.addListener((ListChangeListener<Part>) change -> {
+            while (change.next()) {
+                if (change.wasUpdated()) {
+                    for (int i = change.getFrom(); i < change.getTo(); i++) {
+                        copy.set(i, change.getList().get(i));
+                    }
+                    continue;
+                }
+                List<Part> gone = copy.subList(change.getFrom(), change.getFrom() + change.getRemovedSize());
+                for (int i = 0; i < gone.size(); i++) {
+                    if (change.getRemoved().get(i) != gone.get(i)) {
+                        problems.add("row " + (change.getFrom() + i) + " removed as " + change.getRemoved().get(i));
+                    }
+                }
+                if (change.getRemovedSize() == rows.size() && change.getAddedSize() == rows.size()) {
+                    replaced++;
+                }
+                gone.clear();
+                copy.addAll(change.getFrom(), change.getAddedSubList());
+            }
+        });
+    }
+
+    private static Part part(int id, int stock) {
+        return new InHousePart(id, "Part " + (id % 7), 1.0 + id % 5, stock, 0, 1_000_000, 1);
+    }
+
+    private void addParts(int count) {
+        InventoryEngine.batch(b -> {
+            for (int id = 1; id <= count; id++) {
+                b.addPart(part(id, id % 13));
+            }
+        });
+    }
+
+    private List<Part> sortedByStock(boolean ascending) {
+        List<Part> expected = new ArrayList<>(InventoryEngine.partInventory);
+        Comparator<Part> order = Comparator.comparingInt(Part::getStock).thenComparingInt(Part::getId);
+        expected.sort(ascending ? order : order.reversed());
+        return expected;
+    }
+
+    // touches every row, as a table scrolled over the whole list would
+    private void show() {
+        for (int i = 0; i < rows.size(); i++) {
+            assertNotNull(rows.get(i));
+        }
+    }
+
+    @Test
+    void changesAreToldRowByRowInInventoryOrder() {
+        addParts(1_000);
+        follow();
+        show();
+        Part kept = rows.get(10);
+        InventoryEngine.deletePart(500);
+        InventoryEngine.addPart(part(5_000, 3));
+        InventoryEngine.findPart(20).orElseThrow().setStock(99);
+        InventoryEngine.replacePart(part(30, 4));
+        assertTrue(problems.isEmpty(), problems.toString());
+        assertEquals(new ArrayList<>(InventoryEngine.partInventory), copy);
+        assertEquals(0, replaced);
+        assertSame(kept, rows.get(10));
+    }
+
+    @Test
+    void batchesAreToldRowByRowInInventoryOrder() {
+        addParts(2_000);
+        follow();
+        Random random = new Random(11);
+        int next = 10_000;
+        for (int round = 0; round < 50; round++) {
+            show();
+            int start = next;
+            next += 20;
+            InventoryEngine.batch(b -> {
+                for (int i = 0; i < 20; i++) {
+                    b.addPart(part(start + i, random.nextInt(50)));
+                    int id = InventoryEngine.partInventory.get(random.nextInt(InventoryEngine.partInventory.size())).getId();
+                    if (random.nextBoolean()) {
+                        b.deletePart(id);
+                    } else {
+                        b.updatePart(part(id, random.nextInt(50)));
+                    }
+                }
+            });
+            assertTrue(problems.isEmpty(), problems.toString());
+            assertEquals(new ArrayList<>(InventoryEngine.partInventory), copy);
+        }
+        assertEquals(0, replaced);
+    }
+
+    @Test
+    void sortedOrderIsKeptWithoutSortingAgain() {
+        addParts(3_000);
+        follow();
+        for (boolean ascending : new boolean[] {true, false}) {
+            rows.sort(ColumnStore.Field.STOCK, ascending);
+            // a new order is fetched again in full
+            copy.clear();
+            copy.addAll(rows);
+            problems.clear();
+            replaced = 0;
+            assertEquals(sortedByStock(ascending), copy);
+            Random random = new Random(ascending ? 3 : 5);
+            int[] next = {ascending ? 20_000 : 30_000};
+            for (int round = 0; round < 200; round++) {
+                show();
+                int op = random.nextInt(4);
+                Part some = InventoryEngine.partInventory.get(random.nextInt(InventoryEngine.partInventory.size()));
+                if (op == 0) {
+                    InventoryEngine.addPart(part(next[0]++, random.nextInt(15)));
+                } else if (op == 1) {
+                    InventoryEngine.deletePart(some.getId());
+                } else if (op == 2) {
+                    some.setStock(random.nextInt(15));
+                } else {
+                    InventoryEngine.batch(b -> {
+                        for (int i = 0; i < 10; i++) {
+                            b.addPart(part(next[0]++, random.nextInt(15)));
+                        }
+                        b.updatePart(part(some.getId(), random.nextInt(15)));
+                    });
+                }
+                assertTrue(problems.isEmpty(), problems.toString());
+                assertEquals(sortedByStock(ascending), copy);
+            }
+            assertEquals(0, replaced);
+        }
+    }
+
+    @Test
+    void onlyPagesAfterTheChangeAreDropped() {
+        addParts(2_000);
+        follow();
+        // the first copy fetched every page
+        assertEquals(8, rows.cachedPages());
+        InventoryEngine.deletePart(1_500);
+        assertEquals(5, rows.cachedPages());
+        InventoryEngine.findPart(1).orElseThrow().setStock(40);
+        assertEquals(5, rows.cachedPages());
+        assertTrue(problems.isEmpty(), problems.toString());
+        assertEquals(new ArrayList<>(InventoryEngine.partInventory), copy);
+    }
+}
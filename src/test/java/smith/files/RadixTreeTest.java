@@ -0,0 +1,117 @@
+package smith.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RadixTreeTest {
+
+    @BeforeEach
+    void open() {
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    @AfterEach
+    void close() {
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    private static List<String> names(List<Part> parts) {
+        return parts.stream().map(Part::getName).toList();
+    }
+
+    private static void addParts(String... names) {
+        for (int i = 0; i < names.length; i++) {
+            InventoryEngine.addPart(new InHousePart(i + 1, names[i], 1.0, 5, 0, 10, 1));
+        }
+    }
+
+    // a common name holds many items, and each one is removed or renamed on its own
+    @Test
+    void itemsSharingANameAreRemovedOneByOne() {
+        RadixTree<Part> tree = new RadixTree<>(Part::getName, Part::getId);
+        List<Part> bolts = new ArrayList<>();
+        for (int id = 1; id <= 200; id++) {
+            Part bolt = new InHousePart(id, "bolt", 1.0, 5, 0, 10, 1);
+            bolts.add(bolt);
+            tree.add(bolt, "bolt");
+        }
+        Collections.shuffle(bolts, new Random(23));
+        for (int i = 0; i < 150; i++) {
+            Part bolt = bolts.get(i);
+            if (i % 3 == 0) {
+                tree.rename(bolt, "bolt", "bolt long");
+            } else {
+                assertTrue(tree.remove(bolt, "bolt"));
+                assertFalse(tree.remove(bolt, "bolt"));
+            }
+        }
+        List<Part> left = new ArrayList<>();
+        tree.named("bolt", left);
+        assertEquals(50, left.size());
+        assertTrue(left.containsAll(bolts.subList(150, 200)));
+        List<Part> renamed = new ArrayList<>();
+        tree.named("bolt long", renamed);
+        assertEquals(50, renamed.size());
+        assertEquals(2, tree.size());
+
+        // a new version with the same ID is told apart from the old one
+        Part old = bolts.get(199);
+        Part newer = new InHousePart(old.getId(), "bolt", 2.0, 5, 0, 10, 1);
+        tree.add(newer, "bolt");
+        assertTrue(tree.remove(old, "bolt"));
+        left.clear();
+        tree.named("bolt", left);
+        assertEquals(50, left.size());
+        assertTrue(left.stream().anyMatch(p -> p == newer));
+        assertFalse(left.stream().anyMatch(p -> p == old));
+    }
+
+    @Test
+    void aSwappedPairOfLettersIsOneTypo() {
+        RadixTree<String> tree = new RadixTree<>(name -> name, String::hashCode);
+        tree.add("bolt", "bolt");
+        tree.add("belt", "belt");
+        Map<String, Integer> found = new HashMap<>();
+        tree.similar("blot", 1, found::put);
+        assertEquals(Map.of("bolt", 1), found);
+        found.clear();
+        tree.similar("blot", 2, found::put);
+        assertEquals(Map.of("bolt", 1, "belt", 2), found);
+    }
+
+    @Test
+    void closestNamesComeFirst() {
+        addParts("bolt cutter", "belts", "Bolts", "Bolt");
+        assertEquals(List.of("Bolt", "Bolts", "belts"), names(InventoryEngine.similarParts("bolt", 2)));
+        assertEquals(List.of("Bolt"), names(InventoryEngine.similarParts("blot", 1)));
+        assertEquals(List.of("Bolt", "Bolts"), names(InventoryEngine.similarParts("BLOT", 2)));
+    }
+
+    // short searches allow no typos, so two letters do not match most of the inventory
+    @Test
+    void typosAllowedGrowWithTheLengthOfTheSearch() {
+        assertEquals(0, InventoryEngine.typosAllowed("bo"));
+        assertEquals(1, InventoryEngine.typosAllowed("bol"));
+        assertEquals(1, InventoryEngine.typosAllowed("blots"));
+        assertEquals(2, InventoryEngine.typosAllowed("washer"));
+        addParts("by", "nut", "washer");
+        assertEquals(List.of(), names(InventoryEngine.similarParts("bx", InventoryEngine.typosAllowed("bx"))));
+        assertEquals(List.of("nut"), names(InventoryEngine.similarParts("nuy", InventoryEngine.typosAllowed("nuy"))));
+        assertEquals(List.of("washer"),
+                names(InventoryEngine.similarParts("wsaher", InventoryEngine.typosAllowed("wsaher"))));
+    }
+}
@@ -0,0 +1,112 @@
+package smith.files;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RangeIndexTest {
+
+    /**
+     * A pair as the index orders them, to check it against.
+     * @param key the key
+     * @param id the ID
+     */
+    private record Pair(long key, int id) {
+    }
+
+    private static final Comparator<Pair> ORDER = Comparator.comparingLong(Pair::key).thenComparingInt(Pair::id);
+
+    private static List<Integer> between(RangeIndex index, long low, long high) {
+        List<Integer> found = new ArrayList<>();
+        index.between(low, high, found::add);
+        return found;
+    }
+
+    private static List<Integer> between(TreeSet<Pair> pairs, long low, long high) {
+        return pairs.subSet(new Pair(low, Integer.MIN_VALUE), true, new Pair(high, Integer.MAX_VALUE), true)
+                .stream().map(Pair::id).toList();
+    }
+
+    @Test
+    void pricesKeepTheirOrderAsKeys() {
+        double[] prices = {Double.NEGATIVE_INFINITY, -1e300, -2.5, -1.0, -Double.MIN_VALUE,
+                0.0, Double.MIN_VALUE, 0.01, 1.0, 2.5, 1e300, Double.POSITIVE_INFINITY};
+        for (int i = 1; i < prices.length; i++) {
+            assertTrue(RangeIndex.priceKey(prices[i - 1]) < RangeIndex.priceKey(prices[i]),
+                    prices[i - 1] + " before " + prices[i]);
+        }
+        assertEquals(RangeIndex.priceKey(0.0), RangeIndex.priceKey(-0.0));
+    }
+
+    @Test
+    void negativeAndZeroPricesAreFoundInRange() {
+        RangeIndex index = new RangeIndex();
+        index.add(RangeIndex.priceKey(-3.0), 1);
+        index.add(RangeIndex.priceKey(-0.0), 2);
+        index.add(RangeIndex.priceKey(0.0), 3);
+        index.add(RangeIndex.priceKey(0.5), 4);
+        assertEquals(List.of(1, 2, 3), between(index, RangeIndex.priceKey(-5.0), RangeIndex.priceKey(0.0)));
+        assertEquals(List.of(2, 3), between(index, RangeIndex.priceKey(-0.0), RangeIndex.priceKey(-0.0)));
+        assertEquals(List.of(2, 3, 4), between(index, RangeIndex.priceKey(-1.0), RangeIndex.priceKey(1.0)));
+        assertEquals(List.of(), between(index, RangeIndex.priceKey(1.0), RangeIndex.priceKey(-1.0)));
+    }
+
+    // many adds split the blocks, and removing most pairs drops the blocks left empty
+    @Test
+    void blocksAreSplitAndDroppedWithoutLosingOrder() {
+        RangeIndex index = new RangeIndex();
+        TreeSet<Pair> pairs = new TreeSet<>(ORDER);
+        Random random = new Random(21);
+        for (int i = 0; i < 5_000; i++) {
+            Pair pair = new Pair(random.nextInt(200) - 100, random.nextInt(2_000));
+            index.add(pair.key(), pair.id());
+            pairs.add(pair);
+        }
+        assertEquals(pairs.size(), index.size());
+        assertEquals(between(pairs, Long.MIN_VALUE, Long.MAX_VALUE), between(index, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(between(pairs, -10, 10), between(index, -10, 10));
+
+        // removes a whole run of keys, which empties the blocks in the middle
+        for (Pair pair : new ArrayList<>(pairs)) {
+            if (pair.key() > -90 && pair.key() < 90) {
+                assertTrue(index.remove(pair.key(), pair.id()));
+                pairs.remove(pair);
+            }
+        }
+        assertFalse(index.remove(0, 1));
+        assertEquals(pairs.size(), index.size());
+        assertEquals(between(pairs, Long.MIN_VALUE, Long.MAX_VALUE), between(index, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(0, index.count(-89, 89));
+        assertEquals(between(pairs, -95, 95), between(index, -95, 95));
+
+        // the index still takes pairs in the gap after the blocks were dropped
+        index.add(0, 7);
+        index.add(0, 7);
+        index.move(0, 200, 7);
+        assertEquals(List.of(7), between(index, 150, 250));
+        assertEquals(pairs.size() + 1, index.size());
+    }
+
+    @Test
+    void removingEveryPairLeavesAnEmptyIndexThatStillWorks() {
+        RangeIndex index = new RangeIndex();
+        for (int id = 0; id < 2_000; id++) {
+            index.add(id % 50, id);
+        }
+        for (int id = 0; id < 2_000; id++) {
+            assertTrue(index.remove(id % 50, id));
+        }
+        assertEquals(0, index.size());
+        assertEquals(List.of(), between(index, Long.MIN_VALUE, Long.MAX_VALUE));
+        index.add(5, 1);
+        assertEquals(List.of(1), between(index, 0, 10));
+    }
+}
@@ -0,0 +1,41 @@
+package smith.files;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SearchKeysTest {
+
+    @Test
+    void caseIsFolded() {
+        assertEquals("hex bolt", SearchKeys.fold("Hex BOLT"));
+        assertEquals("strasse", SearchKeys.fold("STRAßE"));
+        assertEquals(SearchKeys.fold("straße"), SearchKeys.fold("STRASSE"));
+    }
+
+    @Test
+    void accentsAreDropped() {
+        assertEquals("ecrou", SearchKeys.fold("Écrou"));
+        assertEquals("senor", SearchKeys.fold("señor"));
+        assertEquals("cafe", SearchKeys.fold("café"));
+    }
+
+    // compatibility forms become the plain letters they stand for
+    @Test
+    void compatibilityCharactersBecomePlainLetters() {
+        assertEquals("file", SearchKeys.fold("ﬁle"));
+        assertEquals("bolt2", SearchKeys.fold("ＢＯＬＴ²"));
+        // the fraction keeps its fraction slash
+        assertEquals("1\u20442 inch", SearchKeys.fold("½ inch"));
+    }
+
+    @Test
+    void foldedTextIsReturnedAsItIs() {
+        String plain = "washer 10mm";
+        assertSame(plain, SearchKeys.fold(plain));
+        assertNull(SearchKeys.fold(null));
+        assertEquals("", SearchKeys.fold(""));
+    }
+}
@@ -0,0 +1,77 @@
+package smith.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The suggestions are checked through the Suggester the search boxes use, without the
+ * drop down itself, which needs the FX toolkit.
+ */
+class SearchSuggestionsTest {
+
+    @BeforeEach
+    void open() {
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    @AfterEach
+    void close() {
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    private static RadixTree<String> tree(String... names) {
+        RadixTree<String> tree = new RadixTree<>(name -> name, String::hashCode);
+        for (String name : names) {
+            tree.add(name, name);
+        }
+        return tree;
+    }
+
+    // only as many names as the array holds are found, the first ones in character order
+    @Test
+    void firstNamesInOrderFillTheArray() {
+        RadixTree<String> tree = tree("box", "bolts", "bolt cutter", "bolt", "bob", "bolt a", "nut");
+        String[] into = new String[3];
+        assertEquals(3, tree.suggest("bo", into));
+        assertArrayEquals(new String[] {"bob", "bolt", "bolt a"}, into);
+        String[] all = new String[10];
+        assertEquals(6, tree.suggest("b", all));
+        assertArrayEquals(new String[] {"bob", "bolt", "bolt a", "bolt cutter", "bolts", "box"},
+                Arrays.copyOf(all, 6));
+        assertEquals(0, tree.suggest("x", all));
+        assertEquals(0, tree.suggest("bo", new String[0]));
+    }
+
+    // the box keeps one array for every key typed, so only the count says what is current
+    @Test
+    void theArrayIsReusedAndOnlyTheCountedNamesAreCurrent() {
+        RadixTree<String> tree = tree("bolt", "bolts", "box", "washer");
+        String[] into = new String[8];
+        assertEquals(3, tree.suggest("b", into));
+        assertEquals(1, tree.suggest("wa", into));
+        assertEquals("washer", into[0]);
+        assertEquals(2, tree.suggest("bolt", into));
+        assertArrayEquals(new String[] {"bolt", "bolts"}, Arrays.copyOf(into, 2));
+    }
+
+    // suggestions ignore case and accents, and show the name as it was written
+    @Test
+    void partNamesAreSuggestedByTheirFoldedKeys() {
+        InventoryEngine.addPart(new InHousePart(1, "Écrou", 1.0, 5, 0, 10, 1));
+        InventoryEngine.addPart(new InHousePart(2, "ECROU long", 1.0, 5, 0, 10, 1));
+        InventoryEngine.addPart(new InHousePart(3, "Bolt", 1.0, 5, 0, 10, 1));
+        String[] into = new String[8];
+        int n = InventoryEngine.suggestPartNames("ecr", into);
+        assertArrayEquals(new String[] {"Écrou", "ECROU long"}, Arrays.copyOf(into, n));
+        assertEquals(1, InventoryEngine.suggestPartNames("BO", into));
+        assertEquals("Bolt", into[0]);
+    }
+}
@@ -0,0 +1,208 @@
+package smith.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The test thread stands in for the FX thread: committed stock is taken off the parts
+ * when fx() runs the queued jobs.
+ */
+class StockReservationsTest {
+
+    private static final Duration MINUTE = Duration.ofMinutes(1);
+
+    private final ConcurrentLinkedQueue<Runnable> fxQueue = new ConcurrentLinkedQueue<>();
+    private StockReservations reservations;
+
+    @BeforeEach
+    void open() {
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    @AfterEach
+    void close() {
+        if (reservations != null) {
+            reservations.close();
+        }
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    private Part addPart(int id, int stock, int min) {
+        Part part = new InHousePart(id, "Part " + id, 1.0, stock, min, 1_000_000, 1);
+        assertTrue(InventoryEngine.addPart(part).isOk());
+        return part;
+    }
+
+    private void fx() {
+        Runnable task;
+        while ((task = fxQueue.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    void threadsNeverReserveMoreThanIsFree() throws InterruptedException {
+        addPart(1, 10_000, 0);
+        reservations = new StockReservations(fxQueue::add);
+        int threads = 8;
+        AtomicInteger reserved = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int quantity = t + 1;
+            running.add(new Thread(() -> {
+                await(start);
+                while (true) {
+                    Optional<StockReservations.Reservation> held = reservations.reservePart(1, quantity, MINUTE);
+                    if (held.isEmpty()) {
+                        if (reservations.available(1) < quantity) {
+                            return;
+                        }
+                        continue;
+                    }
+                    reserved.addAndGet(quantity);
+                }
+            }));
+        }
+        running.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+        // the thread taking one at a time only stops once nothing is left
+        assertEquals(0, reservations.available(1));
+        assertEquals(10_000, reserved.get());
+    }
+
+    @Test
+    void productIsReservedWhollyOrNotAtAll() {
+        addPart(1, 10, 0);
+        addPart(2, 3, 0);
+        reservations = new StockReservations(fxQueue::add);
+        // part 2 is used twice, so three units need six of it
+        assertTrue(reservations.reserveProduct(new int[] {1, 2, 2}, 3, MINUTE).isEmpty());
+        assertEquals(10, reservations.available(1));
+        assertEquals(3, reservations.available(2));
+        StockReservations.Reservation held = reservations.reserveProduct(new int[] {2, 1, 2}, 1, MINUTE).orElseThrow();
+        assertEquals(2, held.getQuantity(2));
+        assertEquals(9, reservations.available(1));
+        assertEquals(1, reservations.available(2));
+    }
+
+    // two products share part 1. Threads reserving either must never leave a count below
+    // what the units they got would need, and a failed try must give back what it took.
+    @Test
+    void failedProductReservationsGiveBackUnderContention() throws InterruptedException {
+        addPart(1, 1_000, 0);
+        addPart(2, 300, 0);
+        addPart(3, 700, 0);
+        reservations = new StockReservations(fxQueue::add);
+        int[][] products = {{1, 2}, {1, 3}};
+        AtomicInteger[] units = {new AtomicInteger(), new AtomicInteger()};
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int product = t % 2;
+            running.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < 2_000; i++) {
+                    if (reservations.reserveProduct(products[product], 1, MINUTE).isPresent()) {
+                        units[product].incrementAndGet();
+                    }
+                }
+            }));
+        }
+        running.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+        assertEquals(1_000, units[0].get() + units[1].get() + reservations.available(1));
+        assertEquals(300, units[0].get() + reservations.available(2));
+        assertEquals(700, units[1].get() + reservations.available(3));
+    }
+
+    @Test
+    void stockBelowMinCannotBeReserved() {
+        Part part = addPart(1, 10, 4);
+        reservations = new StockReservations(fxQueue::add);
+        assertEquals(6, reservations.available(1));
+        assertTrue(reservations.reservePart(1, 6, MINUTE).isPresent());
+        assertTrue(reservations.reservePart(1, 1, MINUTE).isEmpty());
+        part.setMin(2);
+        assertEquals(2, reservations.available(1));
+        part.setMin(9);
+        assertEquals(0, reservations.available(1));
+        assertTrue(reservations.reservePart(1, 1, MINUTE).isEmpty());
+    }
+
+    @Test
+    void expiredReservationsAreReleased() {
+        addPart(1, 10, 0);
+        reservations = new StockReservations(fxQueue::add);
+        StockReservations.Reservation gone = reservations.reservePart(1, 4, Duration.ZERO).orElseThrow();
+        StockReservations.Reservation kept = reservations.reservePart(1, 3, MINUTE).orElseThrow();
+        assertTrue(reservations.expireDue() <= 1);
+        assertFalse(gone.isActive());
+        assertFalse(gone.commit());
+        assertTrue(reservations.find(gone.getId()).isEmpty());
+        assertTrue(kept.isActive());
+        assertEquals(7, reservations.available(1));
+        assertTrue(kept.release());
+        assertFalse(kept.release());
+        assertEquals(10, reservations.available(1));
+    }
+
+    // the free count must not move while waiting commits are taken off the part one at
+    // a time, or a reservation made in between could take stock below the min
+    @Test
+    void waitingCommitsDoNotFreeStockWhenTheyAreApplied() {
+        Part part = addPart(1, 10, 2);
+        reservations = new StockReservations(fxQueue::add);
+        List<Integer> seen = new ArrayList<>();
+        InventoryObserver watcher = new InventoryObserver() {
+            @Override
+            public void partUpdated(Part p) {
+                seen.add(reservations.available(1));
+            }
+        };
+        InventoryEngine.addObserver(watcher);
+        try {
+            StockReservations.Reservation first = reservations.reservePart(1, 3, MINUTE).orElseThrow();
+            StockReservations.Reservation second = reservations.reservePart(1, 4, MINUTE).orElseThrow();
+            assertTrue(first.commit());
+            assertTrue(second.commit());
+            assertEquals(1, reservations.available(1));
+            fx();
+            assertEquals(3, part.getStock());
+            assertEquals(List.of(1, 1), seen);
+            assertEquals(1, reservations.available(1));
+            assertTrue(reservations.reservePart(1, 2, MINUTE).isEmpty());
+        } finally {
+            InventoryEngine.removeObserver(watcher);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
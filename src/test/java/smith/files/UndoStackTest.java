@@ -0,0 +1,100 @@
+package smith.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UndoStackTest {
+
+    private final UndoStack stack = new UndoStack(100, 10_000);
+    private final List<InventoryDiff> diffs = new ArrayList<>();
+    private final Consumer<InventoryDiff> listener = diffs::add;
+
+    @BeforeEach
+    void open() {
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+        for (int id = 1; id <= 5; id++) {
+            assertTrue(InventoryEngine.addPart(new InHousePart(id, "Part " + id, 1.0, 10, 0, 100, 1)).isOk());
+        }
+        InventoryEngine.addDiffListener(listener);
+    }
+
+    @AfterEach
+    void close() {
+        InventoryEngine.removeDiffListener(listener);
+        InventoryEngine.partInventory.clear();
+        InventoryEngine.productInventory.clear();
+    }
+
+    private static List<Integer> partIDs() {
+        return InventoryEngine.partInventory.stream().map(Part::getId).toList();
+    }
+
+    @Test
+    void deletedPartGoesBackWhereItWas() {
+        Part third = InventoryEngine.findPart(3).orElseThrow();
+        assertSame(third, stack.deletePart(3).orElseThrow());
+        assertEquals(List.of(1, 2, 4, 5), partIDs());
+        assertTrue(stack.undo());
+        assertEquals(List.of(1, 2, 3, 4, 5), partIDs());
+        assertSame(third, InventoryEngine.findPart(3).orElseThrow());
+        assertTrue(stack.redo());
+        assertEquals(List.of(1, 2, 4, 5), partIDs());
+        assertTrue(stack.undo());
+        assertEquals(List.of(1, 2, 3, 4, 5), partIDs());
+    }
+
+    @Test
+    void groupIsMadeInOneBatchAndUndoneInOrder() {
+        diffs.clear();
+        stack.group("Tidy up", () -> {
+            stack.deletePart(2);
+            stack.deletePart(4);
+            // the group sees its own deletes before they reach the list
+            assertTrue(stack.deletePart(4).isEmpty());
+            stack.addPart(new InHousePart(9, "Part 9", 1.0, 10, 0, 100, 1));
+            assertEquals(List.of(1, 2, 3, 4, 5), partIDs());
+        });
+        assertEquals(List.of(1, 3, 5, 9), partIDs());
+        assertEquals(1, diffs.size());
+
+        diffs.clear();
+        assertTrue(stack.undo());
+        assertEquals(List.of(1, 2, 3, 4, 5), partIDs());
+        assertEquals(1, diffs.size());
+        assertTrue(stack.redo());
+        assertEquals(List.of(1, 3, 5, 9), partIDs());
+    }
+
+    @Test
+    void addRespectsIDsInUseAndBadFields() {
+        assertFalse(stack.addPart(new InHousePart(2, "Copy", 1.0, 10, 0, 100, 1)).isOk());
+        assertFalse(stack.addPart(new InHousePart(7, "Bad", 1.0, 500, 0, 100, 1)).isOk());
+        assertFalse(stack.canUndo());
+        assertTrue(stack.addPart(new InHousePart(7, "Part 7", 1.0, 10, 0, 100, 1)).isOk());
+        assertEquals(List.of(1, 2, 3, 4, 5, 7), partIDs());
+        assertTrue(stack.undo());
+        assertEquals(List.of(1, 2, 3, 4, 5), partIDs());
+    }
+
+    // a deleted part is not put back over another part that has taken its ID since
+    @Test
+    void undoDoesNotPutBackAPartWhoseIDWasTaken() {
+        stack.deletePart(3);
+        Part other = new InHousePart(3, "Other", 1.0, 10, 0, 100, 1);
+        assertTrue(InventoryEngine.addPart(other).isOk());
+        assertTrue(stack.undo());
+        assertSame(other, InventoryEngine.findPart(3).orElseThrow());
+        assertEquals(List.of(1, 2, 4, 5, 3), partIDs());
+    }
+}